@@ -0,0 +1,152 @@
+package yelp.dp.Benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import yelp.dp.Common.Compression;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// 실제 yelp 데이터셋 대신 사용할 부하 테스트용 데이터셋을 만드는 도구
+// 각 잡이 읽는 필드(business_id, state, categories(null 포함), user_id, friends)를 실제와 같은 형식으로 가진
+// business.json, us_business.json(미국 가게만, ReviewDataset과 MergeJson의 입력), review.json, user.json을 출력 폴더에 씀
+// 레코드를 하나씩 만들어 바로 쓰므로 수십 GB도 메모리 사용량이 일정하며, 출력 폴더는 로컬이나 hdfs 경로 모두 가능함
+// 분포는 -D generator.* 옵션으로 조정함 (YelpRecords 참고)
+// ex. -D generator.businessSkew=1.1 -D generator.userSkew=0.8 -D generator.states=NV:60,AZ:30,ON:10
+// -D generator.codec=bzip2 로 압축해서 쓸 수 있음 (파일 이름에 .bz2 등의 확장자가 붙고, 잡이 확장자로 풀어 읽음)
+public class DatasetGenerator {
+    public static final String CODEC = "generator.codec"; // 출력 파일의 압축 codec (기본값 none, Compression 참고)
+
+    public static void main(String[] args) throws Exception {
+        // usage : HADOOP_CLASSPATH=target/benchmarks.jar hadoop yelp.dp.Benchmark.DatasetGenerator [path: output directory (local or hdfs)] \
+        //                                                                                          [number: businesses (default 10000)] \
+        //                                                                                          [number: reviews (default 100000)] \
+        //                                                                                          [number: users (default 20000)]
+
+        System.out.println("###############################");
+        System.out.println("   Yelp Dataset Generator      ");
+        System.out.println("###############################");
+
+        Configuration conf = new Configuration();
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        if (args.length < 1) {
+            System.err.println("Usage: DatasetGenerator <output directory> [businesses] [reviews] [users]");
+            System.exit(2);
+        }
+        Path outputDir = new Path(args[0]);
+        int businessCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long reviewCount = args.length > 2 ? Long.parseLong(args[2]) : 100000;
+        int userCount = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+        YelpRecords records = new YelpRecords(businessCount, userCount, conf);
+        Class<? extends CompressionCodec> codecClass = Compression.codec(conf, CODEC);
+        CompressionCodec codec = codecClass == null ? null : ReflectionUtils.newInstance(codecClass, conf);
+        FileSystem fs = outputDir.getFileSystem(conf);
+        fs.mkdirs(outputDir);
+
+        // 가게 (미국 가게는 us_business.json에도 같은 줄을 씀)
+        long begin = System.nanoTime();
+        Output businesses = new Output(fs, outputDir, "business.json", codec);
+        Output usBusinesses = new Output(fs, outputDir, "us_business.json", codec);
+        try {
+            for (int i = 0; i < businessCount; i++) {
+                byte[] line = records.business(i).getBytes(StandardCharsets.UTF_8);
+                businesses.write(line);
+                if (YelpRecords.isUs(records.businessState(i))) { usBusinesses.write(line); }
+            }
+        } finally {
+            businesses.close();
+            usBusinesses.close();
+        }
+        businesses.print(begin);
+        usBusinesses.print(begin);
+
+        // 리뷰 (가게와 유저별 리뷰 수를 세서 skew를 확인함)
+        begin = System.nanoTime();
+        int[] reviewsPerBusiness = new int[businessCount];
+        int[] reviewsPerUser = new int[userCount];
+        Output reviews = new Output(fs, outputDir, "review.json", codec);
+        try {
+            for (long i = 0; i < reviewCount; i++) {
+                String review = records.review(i);
+                reviewsPerBusiness[records.lastReviewBusiness()]++;
+                reviewsPerUser[records.lastReviewUser()]++;
+                reviews.write(review.getBytes(StandardCharsets.UTF_8));
+                if ((i + 1) % 1000000 == 0) { System.out.println("    ... " + (i + 1) + " reviews"); }
+            }
+        } finally {
+            reviews.close();
+        }
+        reviews.print(begin);
+        printHottest("business", "businesses", reviewsPerBusiness, reviewCount);
+        printHottest("user", "users", reviewsPerUser, reviewCount);
+
+        // 유저
+        begin = System.nanoTime();
+        Output users = new Output(fs, outputDir, "user.json", codec);
+        try {
+            for (int i = 0; i < userCount; i++) {
+                users.write(records.user(i).getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            users.close();
+        }
+        users.print(begin);
+
+        System.out.println("Dataset written to " + fs.makeQualified(outputDir));
+        System.exit(0); // 정상 종료
+    }
+
+    // 리뷰가 가장 많은 가게(유저)와 상위 1%가 차지하는 리뷰 비율 (Zipf 지수를 정할 때 참고)
+    static void printHottest(String name, String plural, int[] counts, long reviews) {
+        if (reviews == 0) { return; }
+        int[] sorted = counts.clone();
+        Arrays.sort(sorted);
+        long top = 0;
+        int topCount = Math.max(1, sorted.length / 100);
+        for (int i = sorted.length - topCount; i < sorted.length; i++) {
+            top += sorted[i];
+        }
+        System.out.printf("    hottest %s: %,d reviews (%.2f%%), top 1%% of %s (%,d): %.1f%% of reviews%n", name,
+                sorted[sorted.length - 1], 100.0 * sorted[sorted.length - 1] / reviews, plural, topCount, 100.0 * top / reviews);
+    }
+
+    // 줄 단위로 쓰는 출력 파일 (codec이 있으면 압축하고 확장자를 붙임)
+    static class Output {
+        final Path path;
+        final OutputStream out;
+        long lines = 0;
+        long bytes = 0; // 압축 전 바이트
+
+        Output(FileSystem fs, Path dir, String name, CompressionCodec codec) throws IOException {
+            path = new Path(dir, codec == null ? name : name + codec.getDefaultExtension());
+            OutputStream file = new BufferedOutputStream(fs.create(path, true), 1 << 20);
+            out = codec == null ? file : codec.createOutputStream(file);
+        }
+
+        void write(byte[] line) throws IOException {
+            out.write(line);
+            out.write('\n');
+            lines++;
+            bytes += line.length + 1;
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+
+        void print(long begin) {
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%-20s %,14d lines %,18d bytes  (%.1f MB/s)%n", path.getName(), lines, bytes, bytes / (1024.0 * 1024) / seconds);
+        }
+    }
+}
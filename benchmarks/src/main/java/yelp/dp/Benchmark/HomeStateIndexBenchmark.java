@@ -0,0 +1,206 @@
+package yelp.dp.Benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import yelp.dp.SearchUserHomeState.HomeStateIndex;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+
+// JMH
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// HomeStateIndex의 생성 비용과 조회 비용을 재는 벤치마크
+// - build : 정렬된 (user_id, 주)를 index 파일로 쓰는 시간 (파일 크기는 setup에서 결과 json 한 줄에서 user_id와 home_state만 남긴 크기와 비교해 출력)
+// - single, miss, batch : memory map한 index에서 한 건씩 조회(있는 id, 없는 id)와 batch 조회의 건당 시간
+// - hashmap : 같은 데이터를 HashMap<String, String>에 올렸을 때의 건당 조회 시간 (heap에 전체를 올리는 기존 방식의 기준값)
+// ex. java -jar target/benchmarks.jar HomeStateIndexBenchmark -p users=1000000 -p blockSize=8,16,32
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HomeStateIndexBenchmark {
+    static final int LOOKUPS = 1 << 20; // 메서드 한 번의 조회 수 (batch 크기가 2의 거듭제곱이면 모든 id를 batch로 조회함)
+
+    @Param({"1000000"})
+    public int users; // index의 유저 수 (중복 제거 전)
+
+    @Param({"16"})
+    public int blockSize; // block 하나의 유저 수
+
+    @Param({"1024"})
+    public int batchSize; // batch 조회 크기
+
+    private Text[] userIds;
+    private Text[] states;
+    private Text[] hits; // index에 있는 id
+    private Text[] misses; // index에 없는 id
+    private String[] hitStrings;
+    private int[] codes;
+    private File file;
+    private File buildFile;
+    private HomeStateIndex index;
+    private HashMap<String, String> map;
+
+    @Setup
+    public void setup() throws IOException {
+        // yelp의 user_id와 같은 22자 id (정렬 후 중복 제거)
+        Random random = new Random(42);
+        String[] ids = new String[users];
+        for (int i = 0; i < users; i++) {
+            ids[i] = randomId(random);
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < users; i++) {
+            if (unique == 0 || !ids[unique - 1].equals(ids[i])) { ids[unique++] = ids[i]; }
+        }
+        userIds = new Text[unique];
+        states = new Text[unique];
+        long jsonBytes = 0;
+        for (int i = 0; i < unique; i++) {
+            userIds[i] = new Text(ids[i]);
+            states[i] = new Text(YelpRecords.US_STATES[random.nextInt(YelpRecords.US_STATES.length)]);
+            jsonBytes += "{\"user_id\":\"\",\"home_state\":\"\"}\n".length() + userIds[i].getLength() + states[i].getLength();
+        }
+
+        hits = new Text[LOOKUPS];
+        misses = new Text[LOOKUPS];
+        hitStrings = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits[i] = userIds[random.nextInt(unique)];
+            misses[i] = new Text(randomId(random));
+            hitStrings[i] = hits[i].toString();
+        }
+        codes = new int[batchSize];
+
+        file = File.createTempFile("home_state", ".idx");
+        buildFile = File.createTempFile("home_state_build", ".idx");
+        build(file, userIds, states, blockSize);
+        System.out.printf("%nusers   : %,d (block of %d users)%n", unique, blockSize);
+        System.out.printf("index   : %,d bytes (%.1f bytes per user, user_id/home_state json lines %,d bytes)%n",
+                file.length(), (double) file.length() / unique, jsonBytes);
+
+        index = HomeStateIndex.open(file);
+        map = new HashMap<String, String>();
+        for (int i = 0; i < unique; i++) {
+            map.put(userIds[i].toString(), states[i].toString());
+        }
+
+        // 결과 확인
+        for (int i = 0; i < Math.min(LOOKUPS, 100000); i++) {
+            String expected = map.get(hitStrings[i]);
+            if (!expected.equals(index.get(hitStrings[i]))) { throw new IllegalStateException("Wrong state for " + hits[i]); }
+            if (index.lookup(misses[i]) != HomeStateIndex.NOT_FOUND && !map.containsKey(misses[i].toString())) {
+                throw new IllegalStateException("Found a missing user " + misses[i]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        buildFile.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long build() throws IOException {
+        build(buildFile, userIds, states, blockSize);
+        return buildFile.length();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long single() {
+        return runSingle(index, hits);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long miss() {
+        return runSingle(index, misses);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long batch() {
+        return runBatch(index, hits, batchSize, codes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long hashmap() {
+        return runHashMap(map, hitStrings);
+    }
+
+    public static String randomId(Random random) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        char[] id = new char[22];
+        for (int j = 0; j < id.length; j++) {
+            id[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(id);
+    }
+
+    static void build(File file, Text[] userIds, Text[] states, int blockSize) throws IOException {
+        HomeStateIndex.Writer writer = new HomeStateIndex.Writer(new FileOutputStream(file), blockSize);
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                writer.add(userIds[i], states[i]);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // 결과: 찾은 수
+    static long runSingle(HomeStateIndex index, Text[] userIds) {
+        long found = 0;
+        for (Text userId : userIds) {
+            if (index.lookup(userId) != HomeStateIndex.NOT_FOUND) { found++; }
+        }
+        return found;
+    }
+
+    static long runBatch(HomeStateIndex index, Text[] userIds, int batchSize, int[] codes) {
+        long found = 0;
+        Text[] batch = new Text[batchSize];
+        for (int start = 0; start + batchSize <= userIds.length; start += batchSize) {
+            System.arraycopy(userIds, start, batch, 0, batchSize);
+            index.lookup(batch, codes);
+            for (int code : codes) {
+                if (code != HomeStateIndex.NOT_FOUND) { found++; }
+            }
+        }
+        return found;
+    }
+
+    static long runHashMap(HashMap<String, String> map, String[] userIds) {
+        long found = 0;
+        for (String userId : userIds) {
+            if (map.get(userId) != null) { found++; }
+        }
+        return found;
+    }
+}
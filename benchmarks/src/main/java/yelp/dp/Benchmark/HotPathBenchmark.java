@@ -0,0 +1,425 @@
+package yelp.dp.Benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import yelp.dp.BusinessSummaryByState;
+import yelp.dp.MergeJson;
+import yelp.dp.Common.CategorySketchWritable;
+import yelp.dp.Common.StateSummaryWritable;
+import yelp.dp.Common.StringDictionary;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Common.TaggedValue;
+import yelp.dp.ExtractUSData.ReviewDataset;
+import yelp.dp.SearchUserHomeState.UsersHomeState;
+import yelp.dp.SearchUserHomeState.VisitedUsersByBusiness;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// JMH
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// 모든 잡의 Mapper, Combiner, Reducer를 yelp 형식의 레코드로 실행해서 처리량과 메모리 할당량을 재는 JMH 벤치마크
+// 각 클래스를 StubContexts로 task와 같은 코드 경로(map 결과 직렬화, reducer 입력 역직렬화 포함)로 실행하며, 경우(caseName)마다
+// records, bytes 결과가 초당 레코드 수와 입력 바이트이고, -prof gc로 실행하면 할당량과 GC 횟수, 시간이 함께 나옴
+// ex. java -jar target/benchmarks.jar HotPathBenchmark -prof gc -p caseName=VisitedUsersByBusiness.Reduce
+//     분포는 -jvmArgsAppend -Dgenerator.businessSkew=1.1 과 같이 generator.* 옵션으로 조정함 (YelpRecords 참고)
+// main으로 실행하면 모든 경우를 -prof gc로 실행해서 표로 출력하고, 결과를 파일로 저장해 두었다가 다음 실행에서 비교하면 hot path의 성능 저하를 확인할 수 있음
+// ex. -D benchmark.save=baseline.tsv 로 저장하고, 코드 수정 후 -D benchmark.baseline=baseline.tsv 로 비교
+//     (처리량이 허용 범위보다 낮거나 할당량이 높은 경우가 있으면 종료 코드 1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HotPathBenchmark {
+    public static final String WARMUPS = "benchmark.warmups"; // 측정 전 예열 횟수 (기본값 3)
+    public static final String CASES = "benchmark.cases"; // 이름에 이 문자열이 들어간 경우만 실행 (기본값: 전체)
+    public static final String SAVE = "benchmark.save"; // 결과를 저장할 파일
+    public static final String BASELINE = "benchmark.baseline"; // 비교할 이전 결과 파일
+    public static final String TOLERANCE = "benchmark.tolerance"; // 허용하는 변화율 (기본값 0.2 = 20%)
+
+    @Param({"MergeJson.JsonMapper", "MergeJson.JsonReducer",
+            "BusinessSummaryByState.Map", "BusinessSummaryByState.Combine", "BusinessSummaryByState.Reduce",
+            "BusinessSummaryByState.TopKMap", "BusinessSummaryByState.TopKCombine", "BusinessSummaryByState.TopKReduce",
+            "ReviewDataset.BusinessMapper", "ReviewDataset.ReviewMapper", "ReviewDataset.Reduce",
+            "VisitedUsersByBusiness.BusinessMapper", "VisitedUsersByBusiness.ReviewMapper", "VisitedUsersByBusiness.Reduce",
+            "UsersHomeState.UserMapper", "UsersHomeState.Job1Mapper", "UsersHomeState.Combine", "UsersHomeState.Reduce"})
+    public String caseName; // 실행할 클래스 (잡 클래스.내부 클래스)
+
+    @Param({"10000"})
+    public int businesses;
+
+    @Param({"100000"})
+    public int reviews;
+
+    @Param({"20000"})
+    public int users;
+
+    private Case selected;
+    private Path scratch;
+
+    public static void main(String[] args) throws Exception {
+        // usage : java -cp target/benchmarks.jar yelp.dp.Benchmark.HotPathBenchmark \
+        //                        [number: businesses (default 10000)] \
+        //                        [number: reviews (default 100000)] \
+        //                        [number: users (default 20000)] \
+        //                        [number: measured rounds (default 5)]
+
+        System.out.println("###############################");
+        System.out.println("      Hot Path Benchmark       ");
+        System.out.println("###############################");
+
+        Configuration conf = new Configuration();
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(HotPathBenchmark.class.getName())
+                .addProfiler(GCProfiler.class) // 할당량과 GC
+                .warmupIterations(conf.getInt(WARMUPS, 3))
+                .measurementIterations(args.length > 3 ? Integer.parseInt(args[3]) : 5);
+        String[] sizes = {"businesses", "reviews", "users"};
+        for (int i = 0; i < sizes.length && i < args.length; i++) {
+            options.param(sizes[i], args[i]);
+        }
+        List<String> names = new ArrayList<String>();
+        for (String name : HotPathBenchmark.class.getField("caseName").getAnnotation(Param.class).value()) {
+            if (name.contains(conf.get(CASES, ""))) { names.add(name); }
+        }
+        options.param("caseName", names.toArray(new String[names.size()]));
+        for (Map.Entry<String, String> entry : conf.getValByRegex("^generator\\.").entrySet()) { // 분포 설정은 fork한 JVM의 system property로 전달
+            options.jvmArgsAppend("-D" + entry.getKey() + "=" + entry.getValue());
+        }
+
+        List<Result> results = new ArrayList<Result>();
+        for (RunResult run : new Runner(options.build()).run()) {
+            results.add(result(run));
+        }
+
+        System.out.println();
+        System.out.printf("%-38s %12s %9s %12s %6s %8s%n", "case", "records/s", "MB/s", "alloc B/rec", "GCs", "GC ms");
+        for (Result result : results) {
+            System.out.printf("%-38s %,12.0f %9.1f %,12.0f %6d %8d%n", result.name, result.recordsPerSecond,
+                    result.bytesPerSecond / (1024 * 1024), result.allocatedPerRecord, result.gcCount, result.gcMillis);
+        }
+
+        if (conf.get(SAVE) != null) { save(results, conf.get(SAVE)); }
+        if (conf.get(BASELINE) != null && !compare(results, conf.get(BASELINE), conf.getDouble(TOLERANCE, 0.2))) {
+            System.exit(1); // 성능 저하
+        }
+    }
+
+    // 입력을 만들고 caseName의 경우를 준비 (측정에서 제외)
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        Configuration conf = new Configuration();
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("generator.")) { conf.set(key, System.getProperty(key)); }
+        }
+        YelpRecords records = new YelpRecords(businesses, users, conf);
+        Text[] businessLines = records.businesses(false);
+        Text[] usBusinessLines = records.businesses(true);
+        Text[] reviewLines = records.reviews(reviews);
+
+        scratch = new Path(new File(System.getProperty("java.io.tmpdir"), "hot-path-benchmark-" + System.nanoTime()).toURI());
+        List<Case> cases = new ArrayList<Case>();
+        String job = caseName.substring(0, caseName.indexOf('.'));
+        if (job.equals("MergeJson")) {
+            addMergeJsonCases(conf, cases, businessLines, usBusinessLines);
+        } else if (job.equals("BusinessSummaryByState")) {
+            addBusinessSummaryCases(conf, cases, records, businessLines, scratch);
+        } else if (job.equals("ReviewDataset")) {
+            addReviewDatasetCases(conf, cases, usBusinessLines, reviewLines);
+        } else {
+            Text[] visitedUsers = addVisitedUsersCases(conf, cases, businessLines, reviewLines);
+            if (job.equals("UsersHomeState")) { addHomeStateCases(conf, cases, records.users(), visitedUsers); }
+        }
+        for (Case c : cases) {
+            if (c.name.equals(caseName)) { selected = c; }
+        }
+        if (selected == null) { throw new IllegalArgumentException("Unknown case: " + caseName); }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystem.getLocal(new Configuration()).delete(scratch, true);
+    }
+
+    @Benchmark
+    public void run(RecordCounter counter) throws Exception {
+        selected.run();
+        counter.add(selected.records, selected.bytes);
+    }
+
+    // 측정할 경우 하나 (run 한 번이 records개, bytes 바이트의 입력을 처리함)
+    abstract static class Case {
+        final String name;
+        long records;
+        long bytes;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract void run() throws Exception;
+    }
+
+    static class Result {
+        String name;
+        double recordsPerSecond;
+        double bytesPerSecond;
+        double allocatedPerRecord; // -prof gc의 할당량을 레코드 수로 나눈 값 (측정할 수 없는 JVM이면 -1)
+        long gcCount;
+        long gcMillis;
+    }
+
+    // JMH 결과에서 records, bytes와 -prof gc의 결과를 읽음 (할당량은 메서드 한 번의 값이므로 한 번에 처리하는 레코드 수로 나눔)
+    static Result result(RunResult run) {
+        Map<String, org.openjdk.jmh.results.Result> secondary = run.getSecondaryResults();
+        Result result = new Result();
+        result.name = run.getParams().getParam("caseName");
+        result.recordsPerSecond = score(secondary, "records");
+        result.bytesPerSecond = score(secondary, "bytes");
+        double allocated = score(secondary, "gc.alloc.rate.norm");
+        double recordsPerRun = result.recordsPerSecond / run.getPrimaryResult().getScore();
+        result.allocatedPerRecord = allocated < 0 ? -1 : allocated / Math.max(1, recordsPerRun);
+        result.gcCount = (long) Math.max(0, score(secondary, "gc.count"));
+        result.gcMillis = (long) Math.max(0, score(secondary, "gc.time"));
+        return result;
+    }
+
+    // 이름이 suffix로 끝나는 결과의 값 (없으면 -1, profiler 결과의 이름은 앞에 구분 문자가 붙음)
+    private static double score(Map<String, org.openjdk.jmh.results.Result> results, String suffix) {
+        for (Map.Entry<String, org.openjdk.jmh.results.Result> entry : results.entrySet()) {
+            if (entry.getKey().endsWith(suffix)) { return entry.getValue().getScore(); }
+        }
+        return -1;
+    }
+
+    // mapper 하나를 lines로 실행하는 경우 (map 결과는 매번 비우고 다시 직렬화함)
+    @SuppressWarnings("rawtypes")
+    static Case mapperCase(final Job job, final Class<? extends Mapper> mapperClass, final Text[] lines) throws IOException {
+        final StubContexts.MapOutput output = new StubContexts.MapOutput(job);
+        Case c = new Case(mapperClass.getName().substring(mapperClass.getPackage().getName().length() + 1).replace('$', '.')) {
+            @Override
+            void run() throws Exception {
+                output.clear();
+                StubContexts.runMapper(job, mapperClass, lines, output);
+            }
+        };
+        c.records = lines.length;
+        for (Text line : lines) {
+            c.bytes += line.getLength();
+        }
+        return c;
+    }
+
+    // 정렬된 map 결과로 reducer(또는 combiner) 하나를 실행하는 경우
+    @SuppressWarnings("rawtypes")
+    static Case reducerCase(final Job job, final Class<? extends Reducer> reducerClass, final StubContexts.MapOutput input) {
+        Case c = new Case(reducerClass.getName().substring(reducerClass.getPackage().getName().length() + 1).replace('$', '.')) {
+            @Override
+            void run() throws Exception {
+                StubContexts.runReducer(job, reducerClass, input, new StubContexts.CountingOutput(false));
+            }
+        };
+        c.records = input.records();
+        c.bytes = input.bytes();
+        return c;
+    }
+
+    // 여러 mapper의 결과를 모아서 정렬한 reducer 입력 (mapper마다 chunk 줄씩 나누어 실행하면 그만큼 task가 많은 것과 같음)
+    @SuppressWarnings("rawtypes")
+    static StubContexts.MapOutput shuffle(Job job, int chunk, Object... mappersAndLines) throws IOException, InterruptedException {
+        StubContexts.MapOutput output = new StubContexts.MapOutput(job);
+        for (int i = 0; i < mappersAndLines.length; i += 2) {
+            @SuppressWarnings("unchecked")
+            Class<? extends Mapper> mapperClass = (Class<? extends Mapper>) mappersAndLines[i];
+            Text[] lines = (Text[]) mappersAndLines[i + 1];
+            int size = chunk > 0 ? chunk : Math.max(1, lines.length);
+            for (int from = 0; from < lines.length; from += size) {
+                Text[] part = new Text[Math.min(size, lines.length - from)];
+                System.arraycopy(lines, from, part, 0, part.length);
+                StubContexts.runMapper(job, mapperClass, part, output);
+            }
+        }
+        output.sort();
+        return output;
+    }
+
+    static void addMergeJsonCases(Configuration conf, List<Case> cases, Text[] businesses, Text[] usBusinesses) throws IOException, InterruptedException {
+        Job job = Job.getInstance(new Configuration(conf));
+        job.getConfiguration().set("mergeKey", "business_id");
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(Text.class);
+
+        cases.add(mapperCase(job, MergeJson.JsonMapper.class, businesses));
+        cases.add(reducerCase(job, MergeJson.JsonReducer.class,
+                shuffle(job, 0, MergeJson.JsonMapper.class, businesses, MergeJson.JsonMapper.class, usBusinesses)));
+    }
+
+    static void addBusinessSummaryCases(Configuration conf, List<Case> cases, YelpRecords records, Text[] businesses, Path scratch) throws IOException, InterruptedException {
+        Job job = Job.getInstance(new Configuration(conf));
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(StateSummaryWritable.class);
+
+        // driver와 같이 이름순 사전을 cache 파일로 전달
+        String[][] dictionaries = {
+                {BusinessSummaryByState.STATE_DICTIONARY, "states"},
+                {BusinessSummaryByState.CATEGORY_DICTIONARY, "categories"}};
+        for (String[] dictionary : dictionaries) {
+            StringDictionary entries = new StringDictionary();
+            for (String name : dictionary[1].equals("states") ? records.states() : YelpRecords.categories()) {
+                entries.add(name);
+            }
+            Path file = new Path(scratch, dictionary[1]);
+            entries.write(job.getConfiguration(), file);
+            job.getConfiguration().set(dictionary[0], file.toString());
+            job.addCacheFile(file.toUri());
+        }
+
+        cases.add(mapperCase(job, BusinessSummaryByState.Map.class, businesses));
+        // in-mapper combining으로 task마다 주(state) 수만큼만 내보내므로 100줄씩 나누어 reducer 입력을 만듦
+        StubContexts.MapOutput shuffled = shuffle(job, 100, BusinessSummaryByState.Map.class, businesses);
+        cases.add(reducerCase(job, BusinessSummaryByState.Combine.class, shuffled));
+        cases.add(reducerCase(job, BusinessSummaryByState.Reduce.class, shuffled));
+
+        // top-K 모드 (기본 설정의 sketch)
+        Job topK = Job.getInstance(new Configuration(job.getConfiguration()));
+        topK.getConfiguration().setInt(BusinessSummaryByState.TOP_K, 10);
+        topK.setMapOutputKeyClass(IntWritable.class);
+        topK.setMapOutputValueClass(CategorySketchWritable.class);
+        for (URI file : job.getCacheFiles()) {
+            topK.addCacheFile(file);
+        }
+        cases.add(mapperCase(topK, BusinessSummaryByState.TopKMap.class, businesses));
+        StubContexts.MapOutput sketches = shuffle(topK, 100, BusinessSummaryByState.TopKMap.class, businesses);
+        cases.add(reducerCase(topK, BusinessSummaryByState.TopKCombine.class, sketches));
+        cases.add(reducerCase(topK, BusinessSummaryByState.TopKReduce.class, sketches));
+    }
+
+    static void addReviewDatasetCases(Configuration conf, List<Case> cases, Text[] usBusinesses, Text[] reviews) throws IOException, InterruptedException {
+        Job job = Job.getInstance(new Configuration(conf));
+        job.setSortComparatorClass(TaggedKey.Comparator.class);
+        job.setGroupingComparatorClass(TaggedKey.GroupingComparator.class);
+        job.setMapOutputKeyClass(TaggedKey.class);
+        job.setMapOutputValueClass(Text.class);
+
+        cases.add(mapperCase(job, ReviewDataset.BusinessMapper.class, usBusinesses));
+        cases.add(mapperCase(job, ReviewDataset.ReviewMapper.class, reviews));
+        cases.add(reducerCase(job, ReviewDataset.Reduce.class,
+                shuffle(job, 0, ReviewDataset.BusinessMapper.class, usBusinesses, ReviewDataset.ReviewMapper.class, reviews)));
+    }
+
+    // 다음 단계(UsersHomeState.Job1Mapper)의 입력으로 사용할 첫 번째 잡의 결과를 반환
+    static Text[] addVisitedUsersCases(Configuration conf, List<Case> cases, Text[] businesses, Text[] reviews) throws IOException, InterruptedException {
+        Job job = Job.getInstance(new Configuration(conf));
+        job.setSortComparatorClass(TaggedKey.Comparator.class);
+        job.setGroupingComparatorClass(TaggedKey.GroupingComparator.class);
+        job.setMapOutputKeyClass(TaggedKey.class);
+        job.setMapOutputValueClass(TaggedValue.class);
+
+        cases.add(mapperCase(job, VisitedUsersByBusiness.BusinessMapper.class, businesses));
+        cases.add(mapperCase(job, VisitedUsersByBusiness.ReviewMapper.class, reviews));
+        StubContexts.MapOutput shuffled = shuffle(job, 0, VisitedUsersByBusiness.BusinessMapper.class, businesses,
+                VisitedUsersByBusiness.ReviewMapper.class, reviews);
+        cases.add(reducerCase(job, VisitedUsersByBusiness.Reduce.class, shuffled));
+
+        StubContexts.CountingOutput visitedUsers = new StubContexts.CountingOutput(true);
+        StubContexts.runReducer(job, VisitedUsersByBusiness.Reduce.class, shuffled, visitedUsers);
+        return visitedUsers.lines.toArray(new Text[visitedUsers.lines.size()]);
+    }
+
+    static void addHomeStateCases(Configuration conf, List<Case> cases, Text[] users, Text[] visitedUsers) throws IOException, InterruptedException {
+        Job job = Job.getInstance(new Configuration(conf));
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(TaggedValue.class);
+
+        cases.add(mapperCase(job, UsersHomeState.UserMapper.class, users));
+        cases.add(mapperCase(job, UsersHomeState.Job1Mapper.class, visitedUsers));
+        StubContexts.MapOutput shuffled = shuffle(job, 0, UsersHomeState.UserMapper.class, users, UsersHomeState.Job1Mapper.class, visitedUsers);
+        cases.add(reducerCase(job, UsersHomeState.Combine.class, shuffled));
+        cases.add(reducerCase(job, UsersHomeState.Reduce.class, shuffled));
+    }
+
+    // 한 줄에 "이름\t초당 레코드 수\t레코드당 할당 바이트"
+    static void save(List<Result> results, String file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            for (Result result : results) {
+                out.printf("%s\t%.0f\t%.1f%n", result.name, result.recordsPerSecond, result.allocatedPerRecord);
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("Saved results to " + file + ".");
+    }
+
+    // 이전 결과보다 처리량이 (1 - tolerance)배 미만이거나 할당량이 (1 + tolerance)배 초과인 경우를 출력하고 false를 반환
+    static boolean compare(List<Result> results, String file, double tolerance) throws IOException {
+        Map<String, double[]> baseline = new HashMap<String, double[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3) { continue; }
+                baseline.put(fields[0], new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+            }
+        } finally {
+            reader.close();
+        }
+
+        boolean passed = true;
+        System.out.println();
+        System.out.printf("Compare with %s (tolerance %.0f%%)%n", file, tolerance * 100);
+        for (Result result : results) {
+            double[] previous = baseline.get(result.name);
+            if (previous == null) { continue; }
+            double throughput = result.recordsPerSecond / previous[0];
+            double allocation = previous[1] > 0 ? result.allocatedPerRecord / previous[1] : 1;
+            boolean regressed = throughput < 1 - tolerance || (result.allocatedPerRecord >= 0 && allocation > 1 + tolerance);
+            System.out.printf("%-38s throughput %6.2fx, allocation %6.2fx%s%n", result.name, throughput, allocation, regressed ? "  REGRESSED" : "");
+            passed &= !regressed;
+        }
+        return passed;
+    }
+}
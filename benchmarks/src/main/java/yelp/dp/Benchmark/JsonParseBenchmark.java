@@ -0,0 +1,149 @@
+package yelp.dp.Benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import yelp.dp.Common.JsonFieldExtractor;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+// JMH
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// mapper에서 사용하던 gson 파싱과 JsonFieldExtractor의 처리량을 비교하는 벤치마크
+// ex. java -jar target/benchmarks.jar JsonParseBenchmark -p dataset=business -p fields=business_id,state,categories
+//     java -jar target/benchmarks.jar JsonParseBenchmark -p file=review.json (실제 데이터셋의 앞부분을 읽음)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonParseBenchmark {
+    @Param({"review"})
+    public String dataset; // file이 없을 때 만들 레코드 종류 (business, review, user)
+
+    @Param({"business_id,user_id"})
+    public String fields; // 쉼표로 구분한 필드 이름
+
+    @Param({"100000"})
+    public int lines; // 읽거나 만들 최대 줄 수
+
+    @Param({""})
+    public String file; // 로컬의 json 파일 (비어 있으면 YelpRecords로 만듦)
+
+    private String[] fieldNames;
+    private List<Text> input;
+    private long totalBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        fieldNames = fields.split(",");
+        input = file.isEmpty() ? generate() : load();
+        totalBytes = 0;
+        for (Text line : input) {
+            totalBytes += line.getLength();
+        }
+        if (runGson(input, fieldNames) != runExtractor(input, fieldNames)) { // 두 방식이 같은 값을 추출했는지 확인
+            throw new IllegalStateException("Extracted values differ");
+        }
+    }
+
+    // 디스크 I/O를 제외하기 위해 입력을 미리 메모리로 읽어옴
+    private List<Text> load() throws IOException {
+        List<Text> result = new ArrayList<Text>();
+        LineReader reader = new LineReader(new FileInputStream(file));
+        try {
+            Text line = new Text();
+            while (result.size() < lines && reader.readLine(line) > 0) {
+                result.add(new Text(line));
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    private List<Text> generate() {
+        Configuration conf = new Configuration();
+        Text[] records;
+        if (dataset.equals("business")) {
+            records = new YelpRecords(lines, 1, conf).businesses(false);
+        } else if (dataset.equals("user")) {
+            records = new YelpRecords(1, lines, conf).users();
+        } else if (dataset.equals("review")) {
+            records = new YelpRecords(Math.max(1, lines / 10), Math.max(1, lines / 5), conf).reviews(lines);
+        } else {
+            throw new IllegalArgumentException("Unknown dataset: " + dataset);
+        }
+        List<Text> result = new ArrayList<Text>(records.length);
+        for (Text record : records) {
+            result.add(record);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long gson(RecordCounter counter) {
+        counter.add(input.size(), totalBytes);
+        return runGson(input, fieldNames);
+    }
+
+    @Benchmark
+    public long extractor(RecordCounter counter) {
+        counter.add(input.size(), totalBytes);
+        return runExtractor(input, fieldNames);
+    }
+
+    // 기존 mapper와 같이 String으로 변환 후 JsonObject를 생성하여 필드를 읽음
+    static long runGson(List<Text> lines, String[] fields) {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        long checksum = 0;
+        for (Text line : lines) {
+            JsonObject json = gson.fromJson(line.toString(), JsonObject.class);
+            for (String field : fields) {
+                JsonElement element = json.get(field);
+                if (element != null && !element.isJsonNull()) {
+                    checksum += element.getAsString().hashCode();
+                }
+            }
+        }
+        return checksum;
+    }
+
+    static long runExtractor(List<Text> lines, String[] fields) {
+        JsonFieldExtractor extractor = new JsonFieldExtractor(fields);
+        long checksum = 0;
+        for (Text line : lines) {
+            extractor.parse(line);
+            for (int i = 0; i < fields.length; i++) {
+                if (extractor.hasValue(i)) {
+                    checksum += extractor.getString(i).hashCode();
+                }
+            }
+        }
+        return checksum;
+    }
+}
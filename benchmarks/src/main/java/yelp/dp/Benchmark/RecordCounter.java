@@ -0,0 +1,27 @@
+package yelp.dp.Benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 벤치마크 메서드가 처리한 레코드 수와 입력 바이트 (JMH가 초당 값으로 바꿔서 "records", "bytes" 결과로 출력함)
+// 메서드 한 번이 여러 레코드를 처리하므로 ops/s 대신 이 값으로 처리량을 비교함
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class RecordCounter {
+    public long records;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        records = 0;
+        bytes = 0;
+    }
+
+    void add(long records, long bytes) {
+        this.records += records;
+        this.bytes += bytes;
+    }
+}
@@ -0,0 +1,288 @@
+package yelp.dp.Benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// 클러스터나 LocalEngine 없이 Mapper와 Reducer 하나를 메모리의 입력으로 직접 실행하는 도구 (벤치마크용)
+// 하둡의 MapContextImpl, ReduceContextImpl에 메모리의 RecordReader/RecordWriter를 연결하므로 task와 같은 코드 경로를 탐
+// - map 결과는 잡의 map output 자료형의 Serializer로 직렬화해서 모음 (shuffle에 쓰이는 직렬화 비용 포함)
+// - reducer 입력은 모은 map 결과를 잡의 정렬 comparator로 정렬한 것이며, reducer가 역직렬화하면서 읽음
+class StubContexts {
+    private static final TaskAttemptID MAP_ATTEMPT = new TaskAttemptID("benchmark", 1, TaskType.MAP, 0, 0);
+    private static final TaskAttemptID REDUCE_ATTEMPT = new TaskAttemptID("benchmark", 1, TaskType.REDUCE, 0, 0);
+
+    // lines를 입력으로 mapper를 한 번 실행 (setup, map, cleanup)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static void runMapper(Job job, Class<? extends Mapper> mapperClass, Text[] lines, RecordWriter<?, ?> output) throws IOException, InterruptedException {
+        JobConf taskConf = taskConf(job, MAP_ATTEMPT);
+        Mapper mapper = ReflectionUtils.newInstance(mapperClass, taskConf);
+        LinesReader reader = new LinesReader(lines);
+        MapContextImpl context = new MapContextImpl(taskConf, MAP_ATTEMPT, reader, output, null, new Reporter(), null);
+        mapper.run(new WrappedMapper().getMapContext(context));
+    }
+
+    // 정렬된 map 결과를 입력으로 reducer(또는 combiner)를 한 번 실행
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static void runReducer(Job job, Class<? extends Reducer> reducerClass, MapOutput input, RecordWriter<?, ?> output) throws IOException, InterruptedException {
+        JobConf taskConf = taskConf(job, REDUCE_ATTEMPT);
+        Reducer reducer = ReflectionUtils.newInstance(reducerClass, taskConf);
+        Reporter reporter = new Reporter();
+        ReduceContextImpl context = new ReduceContextImpl(taskConf, REDUCE_ATTEMPT, input.iterator(), reporter.getCounter("benchmark", "groups"),
+                reporter.getCounter("benchmark", "records"), output, null, reporter, job.getGroupingComparator(),
+                job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+        reducer.run(new WrappedReducer().getReducerContext(context));
+    }
+
+    private static JobConf taskConf(Job job, TaskAttemptID attemptId) {
+        JobConf taskConf = new JobConf(job.getConfiguration());
+        taskConf.set("mapreduce.task.attempt.id", attemptId.toString());
+        taskConf.setBoolean("mapreduce.task.ismap", attemptId.getTaskType() == TaskType.MAP);
+        taskConf.setInt("mapreduce.task.partition", 0);
+        return taskConf;
+    }
+
+    // 메모리의 줄을 LineRecordReader와 같이 (바이트 offset, 재사용하는 Text)로 전달
+    static class LinesReader extends RecordReader<LongWritable, Text> {
+        final Text[] lines;
+        final LongWritable key = new LongWritable();
+        final Text value = new Text();
+        int index = -1;
+        long offset = 0;
+
+        LinesReader(Text[] lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            if (index >= 0) { offset += lines[index].getLength() + 1; }
+            if (++index >= lines.length) { return false; }
+            key.set(offset);
+            value.set(lines[index]);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return lines.length == 0 ? 1 : (float) index / lines.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // map 결과를 잡의 Serializer로 직렬화해서 모음 (clear하면 버퍼를 재사용함)
+    static class MapOutput extends RecordWriter<Object, Object> {
+        final DataOutputBuffer data = new DataOutputBuffer();
+        final Serializer<Object> keySerializer;
+        final Serializer<Object> valueSerializer;
+        final RawComparator<?> comparator;
+        int[] meta = new int[3 * 1024]; // 레코드마다 [key 시작, value 시작, value 끝]
+        int[] order = new int[0]; // 정렬된 레코드 순서
+        int records = 0;
+
+        @SuppressWarnings("unchecked")
+        MapOutput(Job job) throws IOException {
+            Configuration conf = job.getConfiguration();
+            SerializationFactory serializations = new SerializationFactory(conf);
+            keySerializer = serializations.getSerializer((Class<Object>) job.getMapOutputKeyClass());
+            keySerializer.open(data);
+            valueSerializer = serializations.getSerializer((Class<Object>) job.getMapOutputValueClass());
+            valueSerializer.open(data);
+            comparator = job.getSortComparator();
+        }
+
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            if (records * 3 == meta.length) { meta = Arrays.copyOf(meta, meta.length * 2); }
+            int m = records * 3;
+            meta[m] = data.getLength();
+            keySerializer.serialize(key);
+            meta[m + 1] = data.getLength();
+            valueSerializer.serialize(value);
+            meta[m + 2] = data.getLength();
+            records++;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        void clear() {
+            data.reset();
+            records = 0;
+        }
+
+        int records() {
+            return records;
+        }
+
+        long bytes() {
+            return data.getLength();
+        }
+
+        // key 순서로 정렬 (같은 key는 들어온 순서 유지)
+        void sort() {
+            final byte[] bytes = data.getData();
+            order = new int[records];
+            for (int i = 0; i < records; i++) {
+                order[i] = i;
+            }
+            new QuickSort().sort(new IndexedSortable() {
+                @Override
+                public int compare(int i, int j) {
+                    int mi = order[i] * 3, mj = order[j] * 3;
+                    int result = comparator.compare(bytes, meta[mi], meta[mi + 1] - meta[mi], bytes, meta[mj], meta[mj + 1] - meta[mj]);
+                    return result != 0 ? result : order[i] - order[j];
+                }
+
+                @Override
+                public void swap(int i, int j) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                }
+            }, 0, records);
+        }
+
+        // 정렬된 순서로 읽는 reducer 입력 (호출할 때마다 처음부터)
+        RawKeyValueIterator iterator() {
+            return new RawKeyValueIterator() {
+                final DataInputBuffer key = new DataInputBuffer();
+                final DataInputBuffer value = new DataInputBuffer();
+                final Progress progress = new Progress();
+                int position = -1;
+
+                @Override
+                public boolean next() {
+                    if (++position >= order.length) { return false; }
+                    int m = order[position] * 3;
+                    key.reset(data.getData(), meta[m], meta[m + 1] - meta[m]);
+                    value.reset(data.getData(), meta[m + 1], meta[m + 2] - meta[m + 1]);
+                    return true;
+                }
+
+                @Override
+                public DataInputBuffer getKey() {
+                    return key;
+                }
+
+                @Override
+                public DataInputBuffer getValue() {
+                    return value;
+                }
+
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public Progress getProgress() {
+                    return progress;
+                }
+            };
+        }
+    }
+
+    // 결과의 레코드 수와 Text value의 바이트만 셈 (keep이면 Text value를 복사해서 보관)
+    static class CountingOutput extends RecordWriter<Object, Object> {
+        final boolean keep;
+        final List<Text> lines = new ArrayList<Text>();
+        long records = 0;
+        long bytes = 0;
+
+        CountingOutput(boolean keep) {
+            this.keep = keep;
+        }
+
+        @Override
+        public void write(Object key, Object value) {
+            records++;
+            if (value instanceof Text) {
+                bytes += ((Text) value).getLength();
+                if (keep) { lines.add(new Text((Text) value)); }
+            }
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+    // task의 counter (mapper와 reducer가 증가시키는 counter를 받기만 함)
+    static class Reporter extends StatusReporter {
+        final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package yelp.dp.Benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import yelp.dp.SearchUserHomeState.VisitedUsersByBusiness;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+
+// JMH
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 리뷰가 몰린 가게 하나의 방문 유저 목록을 만드는 비용을 비교하는 벤치마크
+// - concat: 기존 reducer와 같이 visited_users += ", " + user_id로 문자열을 이어붙인 후 gson으로 출력 (유저 수의 제곱에 비례)
+// - writer: VisitedUsersWriter로 chunk 단위로 출력 (유저 수에 비례)
+// ex. java -jar target/benchmarks.jar VisitedUsersBenchmark -p visits=5000,20000,80000 -p chunkSize=1000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VisitedUsersBenchmark {
+    @Param({"20000"})
+    public int visits; // 가게 하나의 방문 수
+
+    @Param({"1000"})
+    public int chunkSize; // writer의 줄당 유저 수
+
+    private Text[] users;
+    private final Text businessId = new Text("PtYgjmUhBel31iEl2hpChY");
+    private final Text state = new Text("NV");
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        // yelp의 user_id와 같은 22자 id
+        Random random = new Random(42);
+        users = new Text[visits];
+        for (int i = 0; i < visits; i++) {
+            users[i] = new Text(HomeStateIndexBenchmark.randomId(random));
+        }
+
+        // 두 방식이 만드는 줄의 크기 (시간은 JMH가 잼)
+        report("concat", runConcat(businessId, state, users));
+        report("writer", runWriter(businessId, state, users, chunkSize));
+    }
+
+    static void report(String name, long[] result) {
+        System.out.printf("%n%-8s: %,d lines, %,d bytes (longest line %,d bytes)%n", name, result[0], result[1], result[2]);
+    }
+
+    @Benchmark
+    public long[] concat() {
+        return runConcat(businessId, state, users);
+    }
+
+    @Benchmark
+    public long[] writer() throws IOException, InterruptedException {
+        return runWriter(businessId, state, users, chunkSize);
+    }
+
+    // 결과: [줄 수, 전체 바이트, 가장 긴 줄의 바이트]
+    static long[] runConcat(Text businessId, Text state, Text[] users) {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        JsonObject json = new JsonObject();
+        String visited_users = "";
+
+        json.addProperty("business_id", businessId.toString());
+        json.addProperty("state", state.toString());
+        for (Text user : users) {
+            if (visited_users.equals("")) {
+                visited_users = user.toString();
+            } else {
+                visited_users += ", " + user.toString();
+            }
+        }
+        json.addProperty("visited_users", visited_users);
+
+        long bytes = new Text(gson.toJson(json)).getLength();
+        return new long[] {1, bytes, bytes};
+    }
+
+    static long[] runWriter(Text businessId, Text state, Text[] users, int chunkSize) throws IOException, InterruptedException {
+        final long[] result = new long[3];
+        VisitedUsersByBusiness.VisitedUsersWriter writer = new VisitedUsersByBusiness.VisitedUsersWriter(chunkSize) {
+            @Override
+            protected void write(Text line) {
+                result[0]++;
+                result[1] += line.getLength();
+                result[2] = Math.max(result[2], line.getLength());
+            }
+        };
+
+        writer.start(businessId);
+        writer.setState(state);
+        for (Text user : users) {
+            writer.add(user);
+        }
+        writer.finish();
+        return result;
+    }
+}
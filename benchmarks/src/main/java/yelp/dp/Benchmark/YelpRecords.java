@@ -0,0 +1,345 @@
+package yelp.dp.Benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+// 벤치마크와 부하 테스트의 입력으로 사용할 yelp 데이터셋 형식의 레코드 (business.json, review.json, user.json의 한 줄)
+// 필드 구성, id 길이, 리뷰 본문 길이, escape가 필요한 문자(따옴표, 줄바꿈, 비ASCII) 등을 실제 데이터셋과 비슷하게 만듦
+// 모든 레코드는 (seed, 번호)만으로 결정되므로 같은 설정이면 항상 같은 레코드가 나오고, 레코드 수와 상관없이 메모리를 거의 쓰지 않음
+// 분포는 -D 옵션으로 조정함
+// - generator.businessSkew, generator.userSkew : 리뷰의 가게/유저를 고르는 Zipf 지수 (0이면 균등, 1 근처면 소수의 가게/유저에 리뷰가 몰림)
+// - generator.states : 주(state)별 가중치 ex. NV:30,AZ:25,ON:5 (기본값: 미국 주 90%, 캐나다 주 10%를 균등하게)
+// - generator.nullCategories : categories가 null인 가게의 비율 (기본값 0.05)
+// - generator.seed : 난수 seed (기본값 42)
+public class YelpRecords {
+    public static final String BUSINESS_SKEW = "generator.businessSkew";
+    public static final String USER_SKEW = "generator.userSkew";
+    public static final String STATES = "generator.states";
+    public static final String NULL_CATEGORIES = "generator.nullCategories";
+    public static final String SEED = "generator.seed";
+
+    static final String[] US_STATES = {"NV", "AZ", "OH", "NC", "PA", "WI", "IL", "SC", "NY", "CA", "TX", "FL"};
+    static final String[] OTHER_STATES = {"ON", "QC", "AB", "BC"}; // 미국이 아닌 주 (ReviewDataset에서 걸러짐)
+    static final String[] CATEGORIES = {"Restaurants", "Food", "Nightlife", "Bars", "Shopping", "Pizza", "Mexican",
+            "Coffee & Tea", "Beauty & Spas", "Auto Repair", "Cafés", "Sandwiches", "Breakfast & Brunch", "Italian",
+            "Chinese", "Burgers", "Fast Food", "Home Services", "Health & Medical", "Event Planning & Services",
+            "Hotels & Travel", "Active Life", "Arts & Entertainment", "Japanese", "Sushi Bars", "Korean", "Thai",
+            "Vietnamese", "Seafood", "Steakhouses", "Bakeries", "Desserts", "Ice Cream & Frozen Yogurt", "Hair Salons",
+            "Nail Salons", "Pets", "Fitness & Instruction", "Gyms", "Local Services", "Professional Services"};
+    static final String[] WORDS = {"the", "food", "was", "great", "service", "and", "place", "really", "good", "we",
+            "ordered", "friendly", "staff", "will", "come", "back", "again", "delicious", "a", "bit", "pricey", "but",
+            "worth", "it", "café", "crème", "brûlée", "\"amazing\"", "wait", "time", "long", "table", "menu", "drinks"};
+    static final String[] CITIES = {"Las Vegas", "Phoenix", "Charlotte", "Pittsburgh", "Toronto", "Montréal", "Madison"};
+    static final String ID_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    // 레코드 종류 (종류마다 번호 -> 난수가 따로 정해짐)
+    private static final int BUSINESS = 1;
+    private static final int BUSINESS_STATE = 2;
+    private static final int REVIEW = 3;
+    private static final int USER = 4;
+
+    // 실제 데이터셋과 같이 "categories": null 을 그대로 씀
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+    private final long seed;
+    private final int businessCount;
+    private final int userCount;
+    private final ZipfSampler businessSampler;
+    private final ZipfSampler userSampler;
+    private final long businessStride; // Zipf 순위 -> 가게 번호 (인기 있는 가게가 파일 앞쪽에 몰리지 않도록 흩어 놓음)
+    private final long userStride;
+    private final String[] stateNames;
+    private final double[] stateCumulative; // 가중치의 누적 비율
+    private final double nullCategories;
+    private int reviewBusiness; // 마지막으로 만든 리뷰의 가게, 유저 번호
+    private int reviewUser;
+
+    public YelpRecords(int businesses, int users, Configuration conf) {
+        if (businesses < 1 || users < 1) { throw new IllegalArgumentException("Need at least one business and one user"); }
+        seed = conf.getLong(SEED, 42);
+        businessCount = businesses;
+        userCount = users;
+        businessSampler = new ZipfSampler(businesses, conf.getDouble(BUSINESS_SKEW, 0));
+        userSampler = new ZipfSampler(users, conf.getDouble(USER_SKEW, 0));
+        businessStride = stride(businesses);
+        userStride = stride(users);
+        nullCategories = conf.getDouble(NULL_CATEGORIES, 0.05);
+
+        // 주(state)별 가중치
+        List<String> names = new ArrayList<String>();
+        List<Double> weights = new ArrayList<Double>();
+        String spec = conf.get(STATES);
+        if (spec == null) {
+            for (String state : US_STATES) {
+                names.add(state);
+                weights.add(90.0 / US_STATES.length);
+            }
+            for (String state : OTHER_STATES) {
+                names.add(state);
+                weights.add(10.0 / OTHER_STATES.length);
+            }
+        } else {
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split(":");
+                double weight = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1;
+                if (parts[0].trim().isEmpty() || weight < 0 || parts.length > 2) {
+                    throw new IllegalArgumentException("Bad " + STATES + " entry '" + entry + "' (expected STATE:weight)");
+                }
+                names.add(parts[0].trim());
+                weights.add(weight);
+            }
+        }
+        stateNames = names.toArray(new String[names.size()]);
+        stateCumulative = new double[stateNames.length];
+        double total = 0;
+        for (int i = 0; i < stateNames.length; i++) {
+            total += weights.get(i);
+            stateCumulative[i] = total;
+        }
+        if (total <= 0) { throw new IllegalArgumentException(STATES + " has no positive weight: " + spec); }
+        for (int i = 0; i < stateNames.length; i++) {
+            stateCumulative[i] /= total;
+        }
+    }
+
+    public int businessCount() {
+        return businessCount;
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    // 모든 가게 (usOnly면 미국 가게만, ReviewDataset의 us_business.json에 해당)
+    public Text[] businesses(boolean usOnly) {
+        List<Text> lines = new ArrayList<Text>();
+        for (int i = 0; i < businessCount; i++) {
+            if (usOnly && !isUs(businessState(i))) { continue; }
+            lines.add(new Text(business(i)));
+        }
+        return lines.toArray(new Text[lines.size()]);
+    }
+
+    public Text[] reviews(int count) {
+        Text[] lines = new Text[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = new Text(review(i));
+        }
+        return lines;
+    }
+
+    public Text[] users() {
+        Text[] lines = new Text[userCount];
+        for (int i = 0; i < userCount; i++) {
+            lines[i] = new Text(user(i));
+        }
+        return lines;
+    }
+
+    // 가게들이 사용할 수 있는 주(state) (이름순, BusinessSummaryByState의 사전)
+    public List<String> states() {
+        TreeSet<String> states = new TreeSet<String>();
+        Collections.addAll(states, stateNames);
+        return new ArrayList<String>(states);
+    }
+
+    public static List<String> categories() {
+        TreeSet<String> categories = new TreeSet<String>();
+        Collections.addAll(categories, CATEGORIES);
+        return new ArrayList<String>(categories);
+    }
+
+    static boolean isUs(String state) {
+        for (String us : US_STATES) {
+            if (us.equals(state)) { return true; }
+        }
+        return false;
+    }
+
+    public String businessId(int index) {
+        return id(BUSINESS, index);
+    }
+
+    public String userId(int index) {
+        return id(USER, index);
+    }
+
+    public String businessState(int index) {
+        double u = (hash(BUSINESS_STATE, index) >>> 11) * 0x1.0p-53; // [0, 1)
+        int low = 0, high = stateCumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (stateCumulative[middle] > u) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return stateNames[low];
+    }
+
+    public String business(int index) {
+        Random random = new Random(hash(BUSINESS, index));
+        JsonObject json = new JsonObject();
+        json.addProperty("business_id", businessId(index));
+        json.addProperty("name", pick(random, WORDS) + " \"" + pick(random, WORDS) + "\" " + pick(random, CITIES));
+        json.addProperty("address", (100 + random.nextInt(9900)) + " " + pick(random, WORDS) + " St");
+        json.addProperty("city", pick(random, CITIES));
+        json.addProperty("state", businessState(index));
+        json.addProperty("postal_code", String.valueOf(10000 + random.nextInt(89999)));
+        json.addProperty("latitude", 30 + random.nextDouble() * 20);
+        json.addProperty("longitude", -120 + random.nextDouble() * 40);
+        json.addProperty("stars", (2 + random.nextInt(7)) / 2.0);
+        json.addProperty("review_count", random.nextInt(500));
+        json.addProperty("is_open", random.nextInt(5) == 0 ? 0 : 1);
+
+        JsonObject attributes = new JsonObject();
+        attributes.addProperty("RestaurantsTakeOut", random.nextBoolean() ? "True" : "False");
+        attributes.addProperty("BusinessParking", "{'garage': False, 'street': True, 'validated': False, 'lot': False, 'valet': False}");
+        attributes.addProperty("WiFi", "u'free'");
+        json.add("attributes", attributes);
+
+        if (random.nextDouble() < nullCategories) { // 카테고리가 없는 가게도 있음
+            json.add("categories", JsonNull.INSTANCE);
+        } else {
+            List<String> categories = new ArrayList<String>();
+            int count = 1 + random.nextInt(5);
+            while (categories.size() < count) {
+                String category = pick(random, CATEGORIES);
+                if (!categories.contains(category)) { categories.add(category); }
+            }
+            StringBuilder joined = new StringBuilder();
+            for (String category : categories) {
+                if (joined.length() > 0) { joined.append(", "); }
+                joined.append(category);
+            }
+            json.addProperty("categories", joined.toString());
+        }
+
+        JsonObject hours = new JsonObject();
+        for (String day : new String[] {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"}) {
+            hours.addProperty(day, (6 + random.nextInt(6)) + ":0-" + (17 + random.nextInt(7)) + ":0");
+        }
+        json.add("hours", hours);
+        return gson.toJson(json);
+    }
+
+    // 리뷰의 가게와 유저는 각각의 Zipf 분포로 고름
+    public String review(long index) {
+        Random random = new Random(hash(REVIEW, index));
+        JsonObject json = new JsonObject();
+        json.addProperty("review_id", id(REVIEW, index));
+        reviewUser = scatter(userSampler.sample(random), userStride, userCount);
+        reviewBusiness = scatter(businessSampler.sample(random), businessStride, businessCount);
+        json.addProperty("user_id", userId(reviewUser));
+        json.addProperty("business_id", businessId(reviewBusiness));
+        json.addProperty("stars", 1 + random.nextInt(5));
+        json.addProperty("useful", random.nextInt(10));
+        json.addProperty("funny", random.nextInt(5));
+        json.addProperty("cool", random.nextInt(5));
+
+        // 본문은 대부분 수백 바이트이고 가끔 긴 리뷰가 있음 (문단 사이의 줄바꿈은 \n으로 escape됨)
+        int words = 20 + (random.nextInt(10) == 0 ? random.nextInt(800) : random.nextInt(150));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) { text.append(random.nextInt(40) == 0 ? "\n\n" : " "); }
+            text.append(pick(random, WORDS));
+        }
+        json.addProperty("text", text.toString());
+        json.addProperty("date", (2005 + random.nextInt(14)) + "-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + " 12:34:56");
+        return gson.toJson(json);
+    }
+
+    public int lastReviewBusiness() {
+        return reviewBusiness;
+    }
+
+    public int lastReviewUser() {
+        return reviewUser;
+    }
+
+    public String user(int index) {
+        Random random = new Random(hash(USER, index));
+        JsonObject json = new JsonObject();
+        json.addProperty("user_id", userId(index));
+        json.addProperty("name", pick(random, WORDS));
+        json.addProperty("review_count", random.nextInt(300));
+        json.addProperty("yelping_since", (2005 + random.nextInt(14)) + "-01-01 00:00:00");
+        json.addProperty("useful", random.nextInt(1000));
+        json.addProperty("funny", random.nextInt(500));
+        json.addProperty("cool", random.nextInt(500));
+        json.addProperty("elite", random.nextInt(10) == 0 ? "2015,2016,2017" : "");
+
+        StringBuilder friends = new StringBuilder();
+        int count = random.nextInt(4) == 0 ? random.nextInt(200) : random.nextInt(10);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) { friends.append(", "); }
+            friends.append(userId(random.nextInt(userCount)));
+        }
+        json.addProperty("friends", count == 0 ? "None" : friends.toString());
+        json.addProperty("fans", random.nextInt(50));
+        json.addProperty("average_stars", 1 + random.nextInt(400) / 100.0);
+        for (String compliment : new String[] {"hot", "more", "profile", "cute", "list", "note", "plain", "cool", "funny", "writer", "photos"}) {
+            json.addProperty("compliment_" + compliment, random.nextInt(20));
+        }
+        return gson.toJson(json);
+    }
+
+    // yelp의 id와 같은 22자 id
+    // 앞 11자에 번호마다 다른 64비트 값을 모두 담으므로 같은 종류의 id는 겹치지 않음
+    private String id(int kind, long index) {
+        long first = hash(kind, index);
+        long second = mix(first);
+        char[] id = new char[22];
+        for (int i = 0; i < 11; i++) {
+            id[i] = ID_ALPHABET.charAt((int) (first >>> (6 * i)) & 63);
+            id[11 + i] = ID_ALPHABET.charAt((int) (second >>> (6 * i)) & 63);
+        }
+        return new String(id);
+    }
+
+    // (seed, 종류, 번호)마다 다른 64비트 값 (같은 종류 안에서는 번호가 다르면 값도 다름)
+    private long hash(int kind, long index) {
+        return mix(mix(seed + kind * 0x9E3779B97F4A7C15L) + index * 0x9E3779B97F4A7C15L);
+    }
+
+    // splitmix64의 마무리 단계 (일대일 대응)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // 1..n의 순위를 0..n-1의 번호로 흩어 놓음 (stride가 n과 서로소이므로 일대일 대응)
+    private static int scatter(int rank, long stride, int n) {
+        return (int) ((rank - 1) * stride % n);
+    }
+
+    private static long stride(int n) {
+        long stride = (long) (n * 0.6180339887) | 1;
+        while (gcd(stride, n) != 1) {
+            stride += 2;
+        }
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
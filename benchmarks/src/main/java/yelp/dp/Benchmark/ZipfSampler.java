@@ -0,0 +1,64 @@
+package yelp.dp.Benchmark;
+
+import java.util.Random;
+
+// 1..n 중 k가 1/k^exponent에 비례하는 확률로 나오는 Zipf 분포의 표본 (exponent가 0이면 균등 분포)
+// 표나 누적 확률 배열 없이 rejection-inversion 방식(Hörmann, Derflinger)으로 뽑으므로 n이 커도 메모리와 시간이 일정함
+class ZipfSampler {
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    ZipfSampler(int n, double exponent) {
+        if (n < 1) { throw new IllegalArgumentException("Zipf needs at least one element: " + n); }
+        if (exponent < 0) { throw new IllegalArgumentException("Negative Zipf exponent: " + exponent); }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    // 1(가장 자주 나옴)부터 n 사이의 순위
+    int sample(Random random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) { return k; }
+        }
+    }
+
+    // h(x) = 1/x^exponent의 부정적분과 그 역함수 (exponent가 1 근처에서도 정확하도록 helper로 계산)
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) { t = -1; } // 반올림 오차
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
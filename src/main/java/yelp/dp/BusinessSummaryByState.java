@@ -1,9 +1,16 @@
 package yelp.dp;
 
 import java.io.IOException;
-import java.util.Set;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map.Entry;
-import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 // json 형식을 사용하기 위해 gson 라이브러리 이용
 import com.google.gson.Gson;
@@ -11,68 +18,727 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import yelp.dp.Common.BroadcastSideFile;
+import yelp.dp.Common.ByteSplitter;
+import yelp.dp.Common.CategorySketchWritable;
+import yelp.dp.Common.Compression;
+import yelp.dp.Common.DeltaStore;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.StateSummaryWritable;
+import yelp.dp.Common.StringDictionary;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
+
 // 하둡 라이브러리
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
 
 public class BusinessSummaryByState {
-    public static class Map extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    public static final String FLUSH_MEMORY_MB = "businessSummary.flushMemoryMb"; // in-mapper 집계 테이블을 내보내는 메모리 기준
+    public static final String REDUCES = "businessSummary.reduces"; // reducer 수
 
-        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("state").getAsString(); // json 파일에서 기준키에 해당하는 value 값을 mapper의 output key로 반환
-            
-            JsonObject _value = new JsonObject();
-            JsonObject _valueCategories = new JsonObject(); // 각 카테고리를 담을 json
+    // 주(state)와 카테고리 사전 파일 (StringDictionary 형식, 한 줄에 하나)
+    // 지정하지 않으면 driver가 입력을 한 번 훑어서 이름순으로 정렬된 사전을 만듦
+    // 지정한 사전에 없는 값이 입력에 있으면 task가 실패함
+    public static final String STATE_DICTIONARY = "businessSummary.stateDictionary";
+    public static final String CATEGORY_DICTIONARY = "businessSummary.categoryDictionary";
+
+    // 증분 모드: 입력은 지난 실행 이후 새로 생기거나 바뀐 가게만 담은 파일(delta)이고, 결과는 기본 모드와 같이 전체 가게의 주(state)별 합계
+    // 가게별 (주, 카테고리)는 DeltaStore에, 주별 합계는 작은 json 파일로 <workdir>/incremental/businessSummary에 유지하고
+    // 바뀐 가게는 이전 값을 빼고 새 값을 더하므로 실행 시간이 바뀐 가게 수에 비례함 (첫 실행의 delta는 전체 데이터셋, 삭제된 가게는 반영하지 않음)
+    public static final String INCREMENTAL = "businessSummary.incremental";
+
+    // top-K 모드: 주(state)마다 가게 수가 많은 카테고리 K개만 근사값으로 기록 (기본값 0: 모든 카테고리의 정확한 값)
+    // 카테고리별 개수를 CategorySketchWritable(Count-Min sketch + 후보)로 shuffle하므로 카테고리 종류와 관계없이 shuffle, reducer 메모리, 결과 크기가 일정함
+    // 결과의 categoryError에 오차 범위(추정값 - 실제 값의 상한, 1 - delta의 확률)를 기록함
+    public static final String TOP_K = "businessSummary.topK";
+    public static final String TOP_K_CANDIDATES = "businessSummary.topK.candidates"; // task마다 유지할 후보 수 (기본값 4K, 클수록 상위 카테고리를 놓칠 가능성이 낮음)
+    public static final String TOP_K_EPSILON = "businessSummary.topK.epsilon"; // 오차 범위 = epsilon * 주의 카테고리 개수 합 (기본값 0.001)
+    public static final String TOP_K_DELTA = "businessSummary.topK.delta"; // 오차 범위를 넘을 확률 (기본값 0.01)
+
+    static final String CATEGORY_DELIMITER = ", ";
+    static final String BUSINESS_STORE = "business"; // business_id -> "state\tcategories"
+    static final String SUMMARY = "summary"; // 주별 합계 파일 (결과와 같은 형식)
+    static final String CHANGES = "changes"; // 주별 합계의 차이 (named output)
+
+    // 가게 레코드를 주(state)별 부분 합계에 더하는 in-mapper 집계 테이블 (StateMap과 SharedScan의 가게 mapper에서 사용)
+    // 주(state)와 카테고리는 사전의 id로 바꾸어 id를 index로 하는 배열에서 셈 (문자열 생성, hashing, boxing 없음)
+    static class StateAggregator {
+        ByteSplitter splitter = new ByteSplitter(CATEGORY_DELIMITER);
+        StringDictionary states;
+        StringDictionary categories;
+        StateSummaryWritable[] summaries; // 주(state) id별 부분 합계 (아직 나오지 않은 주는 null)
+        int[] lastBusiness; // 카테고리 id별로 마지막으로 센 가게 번호 (한 가게 안의 중복 카테고리 제거)
+        int business = 0; // 현재 가게 번호
+        long estimatedBytes = 0; // 집계 테이블의 대략적인 메모리 사용량
+        long flushBytes;
 
-            _value.addProperty("count", 1); // 전체 개수
+        StateAggregator(Configuration conf, URI[] cacheFiles) throws IOException {
+            flushBytes = conf.getLong(FLUSH_MEMORY_MB, 64) * 1024 * 1024;
+            states = readDictionary(conf, cacheFiles, STATE_DICTIONARY);
+            categories = readDictionary(conf, cacheFiles, CATEGORY_DICTIONARY);
+            summaries = new StateSummaryWritable[states.size()];
+            lastBusiness = new int[categories.size()];
+        }
+
+        // extractor로 파싱한 가게 하나를 더함 (stateField에 값이 있어야 함), 메모리 기준을 넘으면 true를 반환하므로 내보낸 뒤 clear를 호출
+        boolean add(JsonFieldExtractor extractor, int stateField, int categoriesField, Text value) throws IOException {
+            int state = lookupState(extractor, stateField);
+
+            StateSummaryWritable summary = summaries[state];
+            if (summary == null) {
+                summary = new StateSummaryWritable();
+                summaries[state] = summary;
+                estimatedBytes += categories.size() * 8L + 64; // 카테고리 수만큼의 long 배열
+            }
+            summary.addBusiness();
+            business++;
 
             // 카테고리 별 계산
-            if(!json.get("categories").isJsonNull()) { // 가게에 카테고리가 있는 경우만 실행
-                String[] categories = json.get("categories").getAsString().split(", "); // ', '를 기준으로 문자열을 분할함
-                for (String category : categories) {
-                    _valueCategories.addProperty(category, 1);
+            if(extractor.hasValue(categoriesField)) { // 가게에 카테고리가 있는 경우만 실행
+                // ', '를 기준으로 원본 바이트를 분할함 (escape된 문자열만 디코딩 후 분할)
+                int count;
+                if (extractor.isEscaped(categoriesField)) {
+                    byte[] decoded = extractor.getString(categoriesField).getBytes(StandardCharsets.UTF_8);
+                    count = splitter.split(decoded, 0, decoded.length);
+                } else {
+                    count = splitter.split(extractor.getBytes(), extractor.getValueStart(categoriesField), extractor.getValueEnd(categoriesField));
+                }
+                for (int i = 0; i < count; i++) {
+                    int category = categories.lookup(splitter.getBytes(), splitter.start(i), splitter.length(i));
+                    if (category == StringDictionary.NOT_FOUND) {
+                        throw new IOException("Category '" + new String(splitter.getBytes(), splitter.start(i), splitter.length(i), StandardCharsets.UTF_8)
+                                + "' is not in the dictionary: " + value);
+                    }
+                    if (lastBusiness[category] == business) { continue; } // 같은 가게에서 이미 센 카테고리
+                    lastBusiness[category] = business;
+                    summary.addCategory(category, 1);
                 }
             }
-            _value.add("categories", _valueCategories); // value에 카테고리 별 계산을 한 결과를 넣음
+            return estimatedBytes > flushBytes;
+        }
+
+        // 내보낸 부분 합계를 비움
+        void clear() {
+            Arrays.fill(summaries, null);
+            estimatedBytes = 0;
+        }
+
+        private int lookupState(JsonFieldExtractor extractor, int field) throws IOException {
+            int id = extractor.isEscaped(field)
+                    ? states.lookup(extractor.getString(field))
+                    : states.lookup(extractor.getBytes(), extractor.getValueStart(field), extractor.getValueEnd(field) - extractor.getValueStart(field));
+            if (id == StringDictionary.NOT_FOUND) {
+                throw new IOException("State '" + extractor.getString(field) + "' is not in the dictionary");
+            }
+            return id;
+        }
+    }
+
+    // 가게마다 결과를 내보내지 않고 task 안에서 주(state)별로 합친 뒤 cleanup에서 한 번에 내보냄 (in-mapper combining)
+    // 합친 결과를 내보내는 형식은 하위 클래스가 정함 (Map: 정확한 값, TopKMap: sketch)
+    abstract static class StateMap<V extends Writable> extends Mapper<Object, Text, IntWritable, V> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("state", "categories"); // 필요한 필드만 추출
+        StateAggregator aggregator;
+        StageMetrics metrics;
+        IntWritable _key = new IntWritable();
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            aggregator = new StateAggregator(context.getConfiguration(), context.getCacheFiles());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            // json 파일에서 기준키에 해당하는 value 값을 mapper의 output key로 반환
+            if (!metrics.parse(extractor, value) || !extractor.hasValue(0)) { // 카테고리가 없는 가게는 MISSING_categories로 셈
+                metrics.invalid("Business record without state: " + value);
+                return;
+            }
+            if (aggregator.add(extractor, 0, 1, value)) { // 메모리 기준을 넘으면 중간에 내보냄
+                flush(context);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            flush(context);
+            metrics.flush(context);
+        }
+
+        private void flush(Context context) throws IOException, InterruptedException {
+            for (int state = 0; state < aggregator.summaries.length; state++) {
+                if (aggregator.summaries[state] == null) { continue; }
+                _key.set(state);
+                write(context, _key, aggregator.summaries[state]);
+            }
+            aggregator.clear();
+        }
+
+        abstract void write(Context context, IntWritable state, StateSummaryWritable summary) throws IOException, InterruptedException;
+    }
+
+    public static class Map extends StateMap<StateSummaryWritable> {
+        @Override
+        void write(Context context, IntWritable state, StateSummaryWritable summary) throws IOException, InterruptedException {
+            metrics.output(summary.serializedSize());
+            context.write(state, summary);
+        }
+    }
+
+    // top-K 모드의 mapper: 주(state)별 정확한 부분 합계를 sketch로 바꾸고, 부분 합계에서 많이 나온 카테고리를 후보로 남김
+    public static class TopKMap extends StateMap<CategorySketchWritable> {
+        CategorySketchWritable sketch;
+        int candidates;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            super.setup(context);
+            sketch = newSketch(context.getConfiguration());
+            candidates = topKCandidates(context.getConfiguration());
+        }
+
+        @Override
+        void write(Context context, IntWritable state, StateSummaryWritable summary) throws IOException, InterruptedException {
+            sketch.clear();
+            sketch.addBusiness(summary.getCount());
+            for (int category = 0; category < summary.getCategoryLimit(); category++) {
+                long count = summary.getCategoryCount(category);
+                if (count == 0) { continue; }
+                sketch.add(category, count);
+                sketch.addCandidate(category);
+            }
+            sketch.retainTop(candidates);
+            metrics.output(sketch.serializedSize());
+            context.write(state, sketch);
+        }
+    }
+
+    // 같은 주(state)의 부분 합계를 하나로 합치는 combiner
+    public static class Combine extends Reducer<IntWritable, StateSummaryWritable, IntWritable, StateSummaryWritable> {
+        StateSummaryWritable merged = new StateSummaryWritable();
+        StageMetrics metrics;
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(IntWritable key, Iterable<StateSummaryWritable> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            long size = 0;
+            for (StateSummaryWritable value : values) {
+                merged.merge(value);
+                size++;
+            }
+            metrics.output(merged.serializedSize());
+            context.write(key, merged);
+            metrics.group(key, size);
+        }
 
-            context.write(new Text(_key), new Text(_value.toString()));
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 
-    public static class Reduce extends Reducer<Text, Text, NullWritable, Text> {
+    // 결과를 쓸 때만 id를 문자열로 되돌림
+    public static class Reduce extends Reducer<IntWritable, StateSummaryWritable, NullWritable, Text> {
         Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        StringDictionary states;
+        StringDictionary categories;
+        StateSummaryWritable merged = new StateSummaryWritable();
+        StageMetrics metrics;
 
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            int countSummation = 0; // 현재 주의 가게의 합
-            HashMap<String, Integer> categoriesHashMap = new HashMap<String, Integer>();
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            states = readDictionary(conf, context.getCacheFiles(), STATE_DICTIONARY);
+            categories = readDictionary(conf, context.getCacheFiles(), CATEGORY_DICTIONARY);
+            metrics = new StageMetrics(getClass(), conf);
+        }
+
+        public void reduce(IntWritable key, Iterable<StateSummaryWritable> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            long size = 0;
+            for (StateSummaryWritable value : values) { // 현재 주의 가게 수와 카테고리별 가게 수를 합함
+                merged.merge(value);
+                size++;
+            }
+            metrics.group(states.getString(key.get()), size);
+
+            Text line = new Text(gson.toJson(summaryJson(states.getString(key.get()), merged, categories)));
+            metrics.output(line.getLength());
+            context.write(NullWritable.get(), line);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // 한 주(state)의 합계를 결과 json으로 바꿈 (카테고리는 사전 순서, 기본 사전은 이름순)
+    static JsonObject summaryJson(String state, StateSummaryWritable merged, StringDictionary categories) {
+        JsonObject categoriesJson = new JsonObject();
+        for (int category = 0; category < merged.getCategoryLimit(); category++) {
+            long count = merged.getCategoryCount(category);
+            if (count != 0) { categoriesJson.addProperty(categories.getString(category), count); }
+        }
+
+        JsonObject resultJson = new JsonObject(); // 결과 json 생성
+        resultJson.addProperty("state", state);
+        resultJson.addProperty("count", merged.getCount());
+        resultJson.add("categories", categoriesJson);
+        return resultJson;
+    }
+
+    // top-K 모드의 combiner: 같은 주(state)의 sketch를 합치고 후보를 다시 고름
+    public static class TopKCombine extends Reducer<IntWritable, CategorySketchWritable, IntWritable, CategorySketchWritable> {
+        CategorySketchWritable merged;
+        int candidates;
+        StageMetrics metrics;
+
+        @Override
+        protected void setup(Context context) {
+            merged = newSketch(context.getConfiguration());
+            candidates = topKCandidates(context.getConfiguration());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(IntWritable key, Iterable<CategorySketchWritable> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            long size = 0;
+            for (CategorySketchWritable value : values) {
+                merged.merge(value);
+                size++;
+            }
+            merged.retainTop(candidates);
+            metrics.output(merged.serializedSize());
+            context.write(key, merged);
+            metrics.group(key, size);
+        }
 
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // top-K 모드의 reducer: 추정값이 큰 카테고리 K개를 추정값 순서로 기록하고 오차 범위를 함께 기록
+    public static class TopKReduce extends Reducer<IntWritable, CategorySketchWritable, NullWritable, Text> {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        StringDictionary states;
+        StringDictionary categories;
+        CategorySketchWritable merged;
+        int k;
+        int candidates;
+        double epsilon;
+        double delta;
+        StageMetrics metrics;
+        long emitted = 0; // 기록한 카테고리 수
+        long dropped = 0; // 후보였지만 K개에 들지 못한 카테고리 수
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            states = readDictionary(conf, context.getCacheFiles(), STATE_DICTIONARY);
+            categories = readDictionary(conf, context.getCacheFiles(), CATEGORY_DICTIONARY);
+            merged = newSketch(conf);
+            k = conf.getInt(TOP_K, 0);
+            candidates = topKCandidates(conf);
+            epsilon = conf.getDouble(TOP_K_EPSILON, 0.001);
+            delta = conf.getDouble(TOP_K_DELTA, 0.01);
+            metrics = new StageMetrics(getClass(), conf);
+        }
+
+        public void reduce(IntWritable key, Iterable<CategorySketchWritable> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            long size = 0;
+            for (CategorySketchWritable value : values) {
+                merged.merge(value);
+                size++;
+            }
+            metrics.group(states.getString(key.get()), size);
+            merged.retainTop(candidates);
+
+            JsonObject categoriesJson = new JsonObject();
+            int top = Math.min(k, merged.getCandidateCount());
+            for (int i = 0; i < top; i++) { // 추정값이 큰 순서 (같으면 사전 순서)
+                int category = merged.getCandidate(i);
+                categoriesJson.addProperty(categories.getString(category), merged.estimate(category));
+            }
+            emitted += top;
+            dropped += merged.getCandidateCount() - top;
+
+            long total = merged.total();
+            JsonObject errorJson = new JsonObject();
+            errorJson.addProperty("epsilon", epsilon);
+            errorJson.addProperty("delta", delta);
+            errorJson.addProperty("categoryTotal", total); // 주의 모든 카테고리 개수의 합
+            errorJson.addProperty("maxOverestimate", (long) Math.ceil(epsilon * total)); // 1 - delta의 확률로 추정값 - 실제 값 <= maxOverestimate
+
+            JsonObject resultJson = new JsonObject(); // 결과 json 생성
+            resultJson.addProperty("state", states.getString(key.get()));
+            resultJson.addProperty("count", merged.getCount());
+            resultJson.add("categories", categoriesJson);
+            resultJson.add("categoryError", errorJson);
+            Text line = new Text(gson.toJson(resultJson));
+            metrics.output(line.getLength());
+            context.write(NullWritable.get(), line);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.counter(context, "TOP_K_CATEGORIES").increment(emitted);
+            metrics.counter(context, "DROPPED_CANDIDATES").increment(dropped);
+            metrics.flush(context);
+        }
+    }
+
+    // top-K 모드의 설정으로 만든 빈 sketch (설정이 잘못되면 예외)
+    static CategorySketchWritable newSketch(Configuration conf) {
+        double epsilon = conf.getDouble(TOP_K_EPSILON, 0.001);
+        double delta = conf.getDouble(TOP_K_DELTA, 0.01);
+        if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException(TOP_K_EPSILON + " and " + TOP_K_DELTA + " must be between 0 and 1: " + epsilon + ", " + delta);
+        }
+        CategorySketchWritable sketch = new CategorySketchWritable();
+        sketch.configure(CategorySketchWritable.width(epsilon), CategorySketchWritable.depth(delta));
+        return sketch;
+    }
+
+    static int topKCandidates(Configuration conf) {
+        int k = conf.getInt(TOP_K, 0);
+        int candidates = conf.getInt(TOP_K_CANDIDATES, 4 * k);
+        if (candidates < k) { throw new IllegalArgumentException(TOP_K_CANDIDATES + " must be at least " + TOP_K + ": " + candidates); }
+        return candidates;
+    }
+
+    // 증분 모드의 mapper: 가게를 business_id로 보내고, 값은 "state\tcategories" (카테고리가 null이면 탭 없이 state만)
+    public static class DeltaMap extends Mapper<Object, Text, Text, Text> {
+        static final byte[] TAB = {'\t'};
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "state", "categories"); // 필요한 필드만 추출
+        StageMetrics metrics;
+        Text _key = new Text();
+        Text _value = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key) || !extractor.getText(1, _value)) {
+                metrics.invalid("Business record without business_id or state: " + value);
+                return;
+            }
+            if (extractor.hasValue(2)) {
+                byte[] categories = extractor.getString(2).getBytes(StandardCharsets.UTF_8);
+                _value.append(TAB, 0, 1);
+                _value.append(categories, 0, categories.length);
+            }
+            metrics.output(_key.getLength() + _value.getLength());
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // 증분 모드의 reducer: 저장소의 이전 값과 비교해서 바뀐 가게만 새 층(MapFile)에 쓰고,
+    // 주(state)별 합계의 차이(이전 값은 빼고 새 값은 더함)를 모아서 cleanup에서 CHANGES named output으로 씀
+    public static class DeltaReduce extends Reducer<Text, Text, Text, Text> {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        DeltaStore.Reader store;
+        MultipleOutputs<Text, Text> changes;
+        StateTotals difference = new StateTotals();
+        StageMetrics metrics;
+        Text previous = new Text();
+        Text current = new Text();
+        long unchanged = 0; // delta에 있지만 이전 값과 같은 가게 수
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            store = new DeltaStore.Reader(context.getConfiguration(), BUSINESS_STORE);
+            changes = new MultipleOutputs<Text, Text>(context);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            long size = 0;
             for (Text value : values) {
-                JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // value값으로 json 생성
-                
-                countSummation += json.get("count").getAsInt(); // 전체 개수 합
+                if (size++ == 0) {
+                    current.set(value);
+                } else { // 같은 가게가 delta에 여러 번 있으면 어느 값이 최신인지 알 수 없음
+                    metrics.invalid("Business " + key + " appears more than once in the delta");
+                }
+            }
+            metrics.group(key, size);
 
-                Set<Entry<String, JsonElement>> categoriesEntries = json.get("categories").getAsJsonObject().entrySet(); // json의 categories를 각 key와 value값을 집합으로 정의
-                for(Entry<String, JsonElement> categoriesEntry: categoriesEntries) {
-                    categoriesHashMap.put(categoriesEntry.getKey(), categoriesHashMap.getOrDefault(categoriesEntry.getKey(), 0) + 1); // 각 카테고리에 대한 값이 있으면 해당 값에 +1을 하고, 없으면 1을 저장함
+            boolean existed = store.get(key, previous);
+            if (existed && previous.equals(current)) {
+                unchanged++;
+                return;
+            }
+            if (existed) { difference.addBusiness(previous.toString(), -1); }
+            difference.addBusiness(current.toString(), 1);
+            metrics.output(key.getLength() + current.getLength());
+            context.write(key, current);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            for (String line : difference.lines(gson)) {
+                changes.write(CHANGES, NullWritable.get(), new Text(line), CHANGES + "/part");
+            }
+            changes.close();
+            store.close();
+            metrics.counter(context, "UNCHANGED_BUSINESSES").increment(unchanged);
+            metrics.flush(context);
+        }
+    }
+
+    // 증분 모드에서 주(state)별 가게 수와 카테고리별 가게 수를 이름순으로 모으는 합계
+    // Reduce의 결과와 같은 json 한 줄 형식으로 읽고 쓰며, 바뀐 가게만큼의 차이(음수 포함)를 담을 때도 사용함
+    static class StateTotals {
+        static class Totals {
+            long count = 0;
+            TreeMap<String, Long> categories = new TreeMap<String, Long>(); // 0이 된 카테고리는 지움
+        }
+
+        TreeMap<String, Totals> states = new TreeMap<String, Totals>();
+
+        // DeltaMap의 값 하나를 sign(1 또는 -1)만큼 더함 (한 가게 안의 중복 카테고리는 Map과 같이 한 번만 셈)
+        void addBusiness(String business, long sign) {
+            int tab = business.indexOf('\t');
+            Totals totals = totals(tab < 0 ? business : business.substring(0, tab));
+            totals.count += sign;
+            if (tab < 0) { return; }
+            HashSet<String> seen = new HashSet<String>();
+            for (String category : business.substring(tab + 1).split(CATEGORY_DELIMITER)) { // ByteSplitter와 같은 결과
+                if (seen.add(category)) { addCategory(totals, category, sign); }
+            }
+        }
+
+        // 결과 형식의 json 한 줄을 더함
+        void addLine(Gson gson, String line) {
+            JsonObject json = gson.fromJson(line, JsonObject.class);
+            Totals totals = totals(json.get("state").getAsString());
+            totals.count += json.get("count").getAsLong();
+            for (Entry<String, JsonElement> category : json.getAsJsonObject("categories").entrySet()) {
+                addCategory(totals, category.getKey(), category.getValue().getAsLong());
+            }
+        }
+
+        // 값이 남아있는 주(state)마다 Reduce와 같은 형식의 json 한 줄 (주와 카테고리 모두 이름순으로 기본 사전의 순서와 같음)
+        List<String> lines(Gson gson) {
+            List<String> lines = new ArrayList<String>();
+            for (Entry<String, Totals> state : states.entrySet()) {
+                Totals totals = state.getValue();
+                if (totals.count == 0 && totals.categories.isEmpty()) { continue; }
+                JsonObject categoriesJson = new JsonObject();
+                for (Entry<String, Long> category : totals.categories.entrySet()) {
+                    categoriesJson.addProperty(category.getKey(), category.getValue());
                 }
+                JsonObject resultJson = new JsonObject();
+                resultJson.addProperty("state", state.getKey());
+                resultJson.addProperty("count", totals.count);
+                resultJson.add("categories", categoriesJson);
+                lines.add(gson.toJson(resultJson));
             }
+            return lines;
+        }
 
-            JsonObject resultJson = new JsonObject(); // 결과 json 생성
-            resultJson.addProperty("state", key.toString());
-            resultJson.addProperty("count", countSummation);
-            resultJson.add("categories", gson.toJsonTree(categoriesHashMap));
-            context.write(NullWritable.get(), new Text(gson.toJson(resultJson)));
+        private Totals totals(String state) {
+            Totals totals = states.get(state);
+            if (totals == null) {
+                totals = new Totals();
+                states.put(state, totals);
+            }
+            return totals;
+        }
+
+        private static void addCategory(Totals totals, String category, long count) {
+            Long previous = totals.categories.get(category);
+            long sum = (previous == null ? 0 : previous) + count;
+            if (sum == 0) {
+                totals.categories.remove(category);
+            } else {
+                totals.categories.put(category, sum);
+            }
+        }
+    }
+
+    // cache로 배포된 사전 파일을 읽음 (node에 내려받은 복사본을 원래 파일 이름의 symlink로 찾음)
+    static StringDictionary readDictionary(Configuration conf, URI[] cacheFiles, String property) throws IOException {
+        return StringDictionary.read(conf, BroadcastSideFile.find(cacheFiles, new Path(conf.get(property)).getName()));
+    }
+
+    // 입력을 한 번 훑어서 주(state)와 카테고리 사전을 만듦
+    // 이름순으로 정렬해서 id를 부여하므로 id 순서대로 쓰면 결과가 이름순이 됨
+    static void buildDictionaries(Configuration conf, Path input, Path statesFile, Path categoriesFile) throws IOException {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("state", "categories");
+        ByteSplitter splitter = new ByteSplitter(CATEGORY_DELIMITER);
+        TreeSet<String> stateNames = new TreeSet<String>();
+        TreeSet<String> categoryNames = new TreeSet<String>();
+        StringDictionary seen = new StringDictionary(); // 이미 본 카테고리는 String을 만들지 않음
+
+        Text line = new Text();
+        for (Path file : BroadcastSideFile.listFiles(conf, input)) {
+            LineReader reader = BroadcastSideFile.open(conf, file);
+            try {
+                while (reader.readLine(line) > 0) {
+                    if (!extractor.parse(line) || !extractor.hasValue(0)) { continue; } // mapper에서 오류로 처리됨
+                    stateNames.add(extractor.getString(0));
+                    if (!extractor.hasValue(1)) { continue; }
+                    byte[] bytes = extractor.getString(1).getBytes(StandardCharsets.UTF_8);
+                    int count = splitter.split(bytes, 0, bytes.length);
+                    for (int i = 0; i < count; i++) {
+                        if (seen.lookup(bytes, splitter.start(i), splitter.length(i)) != StringDictionary.NOT_FOUND) { continue; }
+                        categoryNames.add(seen.getString(seen.add(bytes, splitter.start(i), splitter.length(i))));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        writeDictionary(conf, stateNames, statesFile);
+        writeDictionary(conf, categoryNames, categoriesFile);
+    }
+
+    // 지정하지 않은 사전은 입력을 한 번 훑어서 <workdir>/dictionary에 만들고 conf에 설정함
+    static void prepareDictionaries(Configuration conf, Path workDir, Path input) throws IOException {
+        if (conf.get(STATE_DICTIONARY) != null && conf.get(CATEGORY_DICTIONARY) != null) { return; }
+        RunReport.phase("build dictionaries");
+        System.out.print("Build state and category dictionaries...    ");
+        Path dictionaryDir = new Path(workDir, "dictionary");
+        Path statesFile = new Path(dictionaryDir, "states");
+        Path categoriesFile = new Path(dictionaryDir, "categories");
+        buildDictionaries(conf, input, statesFile, categoriesFile);
+        if (conf.get(STATE_DICTIONARY) == null) { conf.set(STATE_DICTIONARY, statesFile.toString()); }
+        if (conf.get(CATEGORY_DICTIONARY) == null) { conf.set(CATEGORY_DICTIONARY, categoriesFile.toString()); }
+        System.out.println("Success!");
+    }
+
+    // 두 사전을 잡의 cache에 등록
+    static void addDictionaries(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        for (String property : new String[] {STATE_DICTIONARY, CATEGORY_DICTIONARY}) {
+            BroadcastSideFile.addCacheFile(job, new Path(conf.get(property)));
+        }
+    }
+
+    private static void writeDictionary(Configuration conf, TreeSet<String> names, Path file) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        for (String name : names) {
+            dictionary.add(name);
+        }
+        dictionary.write(conf, file);
+    }
+
+    // 증분 모드 실행 (성공하면 true)
+    // 가게별 값을 갱신하는 잡을 실행한 뒤, 이전 합계에 잡이 남긴 차이를 더해서 새 합계와 결과 파일을 씀
+    static boolean runIncremental(Configuration conf, Path workDir, Path input, Path output) throws Exception {
+        RunReport.phase("compact");
+        DeltaStore store = new DeltaStore(conf, new Path(new Path(workDir, "incremental"), "businessSummary"));
+        System.out.println("Incremental run " + (store.generation() + 1) + " with " + input + " as the delta.");
+        if (!store.compact(BUSINESS_STORE)) { return false; }
+
+        // 바뀐 가게가 저장소의 새 층이 되고, 주별 합계의 차이는 층 안의 changes 폴더에 남음
+        RunReport.phase("delta");
+        Job job = Job.getInstance(conf, "Summary of business by State (incremental)");
+        job.setJarByClass(BusinessSummaryByState.class); // Job 클래스 설정
+        job.setMapperClass(DeltaMap.class); // Mapper 클래스 설정
+        job.setReducerClass(DeltaReduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job, REDUCES); // reducer 수 설정
+
+        job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정 (business_id)
+        job.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job.setOutputKeyClass(Text.class); // Reducer의 output key 자료형 설정
+        job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
+        job.setOutputFormatClass(MapFileOutputFormat.class);
+        MultipleOutputs.addNamedOutput(job, CHANGES, TextOutputFormat.class, NullWritable.class, Text.class);
+
+        Path layer = store.newLayer(BUSINESS_STORE);
+        store.configure(job, BUSINESS_STORE);
+        FileInputFormat.addInputPath(job, input); // input file 설정
+        FileOutputFormat.setOutputPath(job, layer); // output file 설정
+        Counters counters = JobRunner.run(job);
+        if (counters == null) { return false; }
+        ShuffleStats.print(job, counters); // shuffle 크기 출력
+
+        // 이전 합계 + 차이
+        RunReport.phase("fold");
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        StateTotals totals = new StateTotals();
+        Path previous = store.current(SUMMARY);
+        if (previous != null) { readLines(conf, previous, totals, gson); }
+        Path changes = new Path(layer, CHANGES);
+        FileSystem fs = changes.getFileSystem(conf);
+        if (fs.exists(changes)) {
+            readLines(conf, changes, totals, gson);
+            fs.delete(changes, true); // 층에는 MapFile만 남김
+        }
+        List<String> lines = totals.lines(gson);
+        writeLines(conf, store.next(SUMMARY), lines, null);
+        Class<? extends CompressionCodec> codec = Compression.codec(conf, Compression.OUTPUT);
+        writeLines(conf, new Path(output, "part-r-00000"), lines, codec == null ? null : ReflectionUtils.newInstance(codec, conf));
+        store.commit();
+        System.out.println("Summary of " + lines.size() + " states updated.");
+        return true;
+    }
+
+    private static void readLines(Configuration conf, Path input, StateTotals totals, Gson gson) throws IOException {
+        Text line = new Text();
+        for (Path file : BroadcastSideFile.listFiles(conf, input)) {
+            LineReader reader = BroadcastSideFile.open(conf, file);
+            try {
+                while (reader.readLine(line) > 0) {
+                    totals.addLine(gson, line.toString());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // codec이 있으면 압축하고 확장자를 붙임 (TextOutputFormat과 같음)
+    private static void writeLines(Configuration conf, Path file, List<String> lines, CompressionCodec codec) throws IOException {
+        if (codec != null) { file = file.suffix(codec.getDefaultExtension()); }
+        OutputStream out = file.getFileSystem(conf).create(file, true);
+        if (codec != null) { out = codec.createOutputStream(out); }
+        try {
+            for (String line : lines) {
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+        } finally {
+            out.close();
         }
     }
 
@@ -85,44 +751,73 @@ public class BusinessSummaryByState {
         System.out.println("###############################");
 
         Configuration conf = new Configuration(); // 설정 정의
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
 
-        FileSystem hdfs = FileSystem.get(conf); // hdfs에 접근할 수 있도록 새로운 객체 생성
+    // -D 옵션을 뺀 인자로 driver를 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("BusinessSummaryByState", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
 
-        // 로컬에 있는 파일을 hdfs 내로 복사
-        System.out.print("Copy local files to hdfs...    ");
-        if(!hdfs.exists(new Path(args[1], "input"))) { hdfs.mkdirs(new Path(args[1], "input")); } // hdfs 내의 input 폴더가 없다면 생성
-        hdfs.copyFromLocalFile(false, true, new Path(args[0]), new Path(args[1], "input")); // 파일을 hdfs로 복사 및 덮어쓰기
-        System.out.println("Success!");
-        
-        // hdfs 내에 output 폴더가 존재한다면 삭제
-        if (hdfs.exists(new Path(args[1], "output"))) {
-            System.out.println("Delete output folder in hdfs.");
-            hdfs.delete(new Path(args[1], "output"), true);
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[1]);
+        Path input = Staging.input(conf, workDir, args[0]);
+        Path output = Staging.output(conf, workDir);
+
+        boolean succeeded;
+        if (conf.getBoolean(INCREMENTAL, false)) { // 증분 모드는 사전 없이 이름으로 합계를 갱신함
+            if (conf.getInt(TOP_K, 0) > 0) { System.out.println(TOP_K + " is ignored in the incremental mode."); }
+            succeeded = runIncremental(conf, workDir, input, output);
+        } else {
+            Job job = createJob(conf, workDir, input, output);
+            RunReport.phase("summary");
+            // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
+            Counters counters = JobRunner.run(job);
+            ShuffleStats.print(job, counters); // shuffle 크기 출력
+            succeeded = counters != null;
         }
+        if (succeeded) {
+            RunReport.phase("copy output");
+            Staging.copyOutput(conf, output); // 결과 파일을 로컬로 복사 (hdfs 내의 원본 output 폴더는 유지)
+        }
+        RunReport.finish(succeeded);
+        return succeeded;
+    }
+
+    // 사전을 준비하고 주(state)별 요약 잡을 만듦 (Pipeline에서도 사용)
+    public static Job createJob(Configuration conf, Path workDir, Path input, Path output) throws IOException {
+        prepareDictionaries(conf, workDir, input); // 주(state)와 카테고리 사전 준비
 
         // 잡 생성 및 설정
         Job job = Job.getInstance(conf, "Summary of business by State");
         job.setJarByClass(BusinessSummaryByState.class); // Job 클래스 설정
-        job.setMapperClass(Map.class); // Mapper 클래스 설정
-        job.setReducerClass(Reduce.class); // Reducer 클래스 설정
+        int k = conf.getInt(TOP_K, 0);
+        if (k > 0) { // 주마다 상위 K개 카테고리의 근사값
+            newSketch(conf); // 설정 확인
+            System.out.println("Top " + k + " categories per state with a " + CategorySketchWritable.width(conf.getDouble(TOP_K_EPSILON, 0.001))
+                    + "x" + CategorySketchWritable.depth(conf.getDouble(TOP_K_DELTA, 0.01)) + " Count-Min sketch and "
+                    + topKCandidates(conf) + " candidates per state.");
+            job.setMapperClass(TopKMap.class); // Mapper 클래스 설정
+            job.setCombinerClass(TopKCombine.class); // Combiner 클래스 설정
+            job.setReducerClass(TopKReduce.class); // Reducer 클래스 설정
+            job.setMapOutputValueClass(CategorySketchWritable.class); // Mapper의 output value 자료형 설정
+        } else {
+            job.setMapperClass(Map.class); // Mapper 클래스 설정
+            job.setCombinerClass(Combine.class); // Combiner 클래스 설정
+            job.setReducerClass(Reduce.class); // Reducer 클래스 설정
+            job.setMapOutputValueClass(StateSummaryWritable.class); // Mapper의 output value 자료형 설정
+        }
+        JobRunner.setReduces(job, REDUCES); // reducer 수 설정
 
-        job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
-        job.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job.setMapOutputKeyClass(IntWritable.class); // Mapper의 ouput key 자료형 설정 (주(state) id)
         job.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
         job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
 
-        FileInputFormat.addInputPath(job, new Path(new Path(args[1], "input"), new Path(args[0]).getName())); // input file 설정
-        FileOutputFormat.setOutputPath(job, new Path(args[1], "output")); // output file 설정
-
-        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
-        if(job.waitForCompletion(true)) {
-            hdfs.delete(new Path(args[1], "input"), true); // hdfs 내의 입력 데이터 삭제
-
-            // 결과 파일을 로컬로 복사
-            System.out.println("Copy output folder to local working directory.");
-            hdfs.copyToLocalFile(false, new Path(args[1], "output"), new Path(System.getProperty("user.dir"))); // hdfs 내의 원본 ouput 폴더는 유지
-            System.exit(0); // 정상 종료
-        }
-        System.exit(1); // 비정상 종료
+        addDictionaries(job); // 사전 배포
+        FileInputFormat.addInputPath(job, input); // input file 설정
+        FileOutputFormat.setOutputPath(job, output); // output file 설정
+        return job;
     }
 }
@@ -0,0 +1,131 @@
+package yelp.dp.Common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.LineReader;
+
+// map-side join에 사용할 작은 데이터셋을 distributed cache로 배포하기 위한 도구
+// driver에서 json 파일의 필요한 필드만 "key\tvalue..." 형식의 side file로 추려서 기록하고,
+// mapper에서는 cache에 등록된 side file을 한 줄씩 읽어서 메모리에 올림
+// cache 파일은 '#파일 이름'을 붙여서 등록하므로 task는 node에 내려받은 복사본을 작업 폴더의 symlink로 읽음 (원래 경로를 다시 읽지 않음)
+public class BroadcastSideFile {
+    public static final String MEMORY_LIMIT_MB = "broadcast.memoryLimitMb"; // 메모리에 올릴 수 있는 최대 크기
+    public static final int DEFAULT_MEMORY_LIMIT_MB = 256;
+
+    // side file의 통계 (메모리 사용량 추정에 사용)
+    public static class Stats {
+        public long records = 0;
+        public long keyBytes = 0;
+
+        public long estimatedBytes() {
+            return CompactStringMap.estimateBytes(records, keyBytes);
+        }
+    }
+
+    // input(파일 또는 폴더)의 각 json에서 fields 값을 tab으로 구분하여 output에 기록함
+    // 첫 번째 필드가 없는 레코드는 건너뜀
+    public static Stats write(Configuration conf, Path input, Path output, String... fields) throws IOException {
+        Stats stats = new Stats();
+        JsonFieldExtractor extractor = new JsonFieldExtractor(fields);
+        FileSystem outFs = output.getFileSystem(conf);
+        Text line = new Text();
+        Text field = new Text();
+
+        OutputStream out = outFs.create(output, true);
+        try {
+            for (Path file : listFiles(conf, input)) {
+                LineReader reader = open(conf, file);
+                try {
+                    while (reader.readLine(line) > 0) {
+                        if (!extractor.parse(line) || !extractor.getText(0, field)) { continue; }
+                        out.write(field.getBytes(), 0, field.getLength());
+                        stats.records++;
+                        stats.keyBytes += field.getLength();
+                        for (int i = 1; i < fields.length; i++) {
+                            out.write('\t');
+                            if (extractor.getText(i, field)) { out.write(field.getBytes(), 0, field.getLength()); }
+                        }
+                        out.write('\n');
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return stats;
+    }
+
+    // 추정 메모리 사용량이 설정된 한도 이내인지 확인
+    public static boolean fitsInMemory(Configuration conf, long estimatedBytes) {
+        return estimatedBytes <= conf.getLong(MEMORY_LIMIT_MB, DEFAULT_MEMORY_LIMIT_MB) * 1024 * 1024;
+    }
+
+    // file을 잡의 cache에 등록함 (task의 작업 폴더에 파일 이름과 같은 symlink가 생기도록 '#파일 이름'을 붙임)
+    public static void addCacheFile(Job job, Path file) throws IOException {
+        URI uri = file.getFileSystem(job.getConfiguration()).makeQualified(file).toUri();
+        try {
+            job.addCacheFile(new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), null, file.getName()));
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot add " + file + " to the distributed cache", e);
+        }
+    }
+
+    // cache에 등록된 파일 중 이름이 name인 파일의 읽을 위치
+    // - 로컬 파일(LocalEngine 등)은 원래 경로를 그대로 읽음
+    // - 그 외에는 node가 내려받은 복사본인 작업 폴더의 symlink를 읽음 (symlink가 없는 실행 환경에서만 원래 경로를 읽음)
+    public static Path find(URI[] cacheFiles, String name) throws IOException {
+        if (cacheFiles != null) {
+            for (URI cacheFile : cacheFiles) {
+                Path path = new Path(cacheFile.getScheme(), cacheFile.getAuthority(), cacheFile.getPath());
+                String link = cacheFile.getFragment() != null ? cacheFile.getFragment() : path.getName();
+                if (!link.equals(name)) { continue; }
+                if ("file".equals(cacheFile.getScheme())) { return path; }
+                File local = new File(link);
+                return local.exists() ? new Path(local.getAbsoluteFile().toURI()) : path;
+            }
+        }
+        throw new IOException("Broadcast file '" + name + "' is not in the distributed cache");
+    }
+
+    // 압축된 파일(.bz2, .deflate, ...)은 확장자로 codec을 찾아서 풀어 읽음
+    public static LineReader open(Configuration conf, Path path) throws IOException {
+        InputStream in = path.getFileSystem(conf).open(path);
+        CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+        if (codec != null) { in = codec.createInputStream(in); }
+        return new LineReader(in, conf);
+    }
+
+    // 폴더인 경우 숨김 파일(_SUCCESS 등)을 제외한 파일 목록을 반환
+    public static List<Path> listFiles(Configuration conf, Path input) throws IOException {
+        FileSystem fs = input.getFileSystem(conf);
+        List<Path> files = new ArrayList<Path>();
+        FileStatus status = fs.getFileStatus(input);
+        if (!status.isDirectory()) {
+            files.add(input);
+            return files;
+        }
+        for (FileStatus child : fs.listStatus(input)) {
+            String name = child.getPath().getName();
+            if (child.isFile() && !name.startsWith("_") && !name.startsWith(".")) { files.add(child.getPath()); }
+        }
+        return files;
+    }
+}
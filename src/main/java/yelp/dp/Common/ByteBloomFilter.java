@@ -0,0 +1,139 @@
+package yelp.dp.Common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.hash.MurmurHash;
+
+// byte 범위를 그대로 넣고 검사할 수 있는 Bloom filter
+// 하둡의 util.bloom.BloomFilter는 검사할 때마다 Key 객체와 byte 배열 복사가 필요하기 때문에 mapper의 hot loop용으로 별도 구현함
+public class ByteBloomFilter implements Writable {
+    private static final MurmurHash MURMUR = (MurmurHash) MurmurHash.getInstance();
+
+    private long[] bits;
+    private long numBits;
+    private int numHashes;
+
+    public ByteBloomFilter() { // Writable 역직렬화용
+    }
+
+    public ByteBloomFilter(long numBits, int numHashes) {
+        this.numBits = Math.max(64, numBits);
+        this.numHashes = Math.max(1, numHashes);
+        this.bits = new long[(int) ((this.numBits + 63) >>> 6)];
+    }
+
+    // expectedEntries개를 넣었을 때 오탐률(false positive rate)이 falsePositiveRate가 되도록 크기를 정함
+    public static ByteBloomFilter create(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        long numBits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int numHashes = (int) Math.round((double) numBits / entries * Math.log(2));
+        return new ByteBloomFilter(numBits, numHashes);
+    }
+
+    // create로 만든 filter의 메모리 크기
+    public static long estimateBytes(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        return (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))) / 8;
+    }
+
+    public void add(Text key) {
+        add(key.getBytes(), 0, key.getLength());
+    }
+
+    public void add(byte[] bytes, int offset, int length) {
+        // 두 개의 해시를 조합하여 numHashes개의 위치를 만듦 (Kirsch-Mitzenmacher)
+        int h1 = MURMUR.hash(bytes, offset, length, 0);
+        int h2 = MURMUR.hash(bytes, offset, length, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(Text key) {
+        return mightContain(key.getBytes(), 0, key.getLength());
+    }
+
+    public boolean mightContain(byte[] bytes, int offset, int length) {
+        int h1 = MURMUR.hash(bytes, offset, length, 0);
+        int h2 = MURMUR.hash(bytes, offset, length, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) { return false; }
+        }
+        return true;
+    }
+
+    // 같은 크기로 만든 다른 filter의 원소를 합침
+    public void or(ByteBloomFilter other) {
+        if (other.numBits != numBits || other.numHashes != numHashes) {
+            throw new IllegalArgumentException("Bloom filters have different sizes");
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    // 같은 크기로 만든 다른 filter와 공통인 비트만 남김 (두 집합의 교집합에 있는 원소는 항상 통과함)
+    public void and(ByteBloomFilter other) {
+        if (other.numBits != numBits || other.numHashes != numHashes) {
+            throw new IllegalArgumentException("Bloom filters have different sizes");
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] &= other.bits[i];
+        }
+    }
+
+    public long memoryBytes() {
+        return (long) bits.length * 8;
+    }
+
+    // cache로 배포할 수 있도록 파일로 저장
+    public void write(Configuration conf, Path path) throws IOException {
+        FSDataOutputStream out = path.getFileSystem(conf).create(path, true);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static ByteBloomFilter read(Configuration conf, Path path) throws IOException {
+        ByteBloomFilter filter = new ByteBloomFilter();
+        FSDataInputStream in = path.getFileSystem(conf).open(path);
+        try {
+            filter.readFields(in);
+        } finally {
+            in.close();
+        }
+        return filter;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(numBits);
+        out.writeInt(numHashes);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        numBits = in.readLong();
+        numHashes = in.readInt();
+        bits = new long[(int) ((numBits + 63) >>> 6)];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package yelp.dp.Common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// UTF-8 바이트 범위를 구분자로 나누어 각 조각의 위치만 기록함 (String.split과 같은 결과, String 생성 없음)
+// String.split과 같이 끝에 있는 빈 조각은 버리고, 입력 전체가 비어있으면 빈 조각 하나를 반환함
+public class ByteSplitter {
+    private final byte[] delimiter;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count = 0;
+    private byte[] bytes;
+
+    public ByteSplitter(String delimiter) {
+        this.delimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 조각의 개수를 반환함
+    public int split(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        count = 0;
+        if (start == end) { // "".split(", ")의 결과와 같이 빈 조각 하나
+            add(start, end);
+            return count;
+        }
+
+        int tokenStart = start;
+        int i = start;
+        while (i <= end - delimiter.length) {
+            if (matches(i)) {
+                add(tokenStart, i);
+                i += delimiter.length;
+                tokenStart = i;
+            } else {
+                i++;
+            }
+        }
+        add(tokenStart, end);
+
+        while (count > 0 && starts[count - 1] == ends[count - 1]) { count--; } // 끝의 빈 조각 제거
+        return count;
+    }
+
+    // 모든 조각이 비어있던 경우(ex. ", , ")에는 0을 반환할 수 있음
+    public int count() {
+        return count;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    public int length(int index) {
+        return ends[index] - starts[index];
+    }
+
+    private boolean matches(int position) {
+        for (int j = 0; j < delimiter.length; j++) {
+            if (bytes[position + j] != delimiter[j]) { return false; }
+        }
+        return true;
+    }
+
+    private void add(int tokenStart, int tokenEnd) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = tokenStart;
+        ends[count] = tokenEnd;
+        count++;
+    }
+}
@@ -0,0 +1,239 @@
+package yelp.dp.Common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// 한 주(state)에 대한 가게 수와 카테고리별 가게 수의 근사 요약 (top-K 모드)
+// 카테고리별 개수는 Count-Min sketch(depth개의 행 x width개의 칸)에 담고, 많이 나온 카테고리 후보(id)를 최대 capacity개 유지함
+// - 추정값은 실제 값보다 작지 않고, 1 - delta의 확률로 실제 값 + epsilon * (카테고리 개수의 합) 이하 (width = e / epsilon, depth = ln(1 / delta))
+// - 같은 크기의 sketch끼리 칸별로 더하면 합친 데이터의 sketch가 되므로 mapper, combiner, reducer에서 서로 합칠 수 있음
+// - 후보는 합칠 때마다 합친 sketch의 추정값으로 다시 골라서 상위 capacity개만 남김 (어느 task에서도 후보에 들지 못한 카테고리는 결과에서 빠짐)
+// 카테고리 종류가 아무리 많아도 크기가 width * depth + capacity로 일정함
+// 직렬화 형식: [vlong 가게 수][vint width][vint depth][vint 0이 아닌 칸 수]([vint 이전 칸과의 차이][vlong 개수])*[vint 후보 수]([vint 카테고리 id])*
+public class CategorySketchWritable implements Writable {
+    private long count = 0;
+    private int width = 0;
+    private int depth = 0;
+    private long[] table = new long[0]; // 행 단위로 이어 붙인 칸
+    private int[] candidates = new int[16];
+    private int candidateCount = 0;
+    private long[] estimates = new long[16]; // retainTop에서 후보와 함께 쓰는 추정값
+
+    public static int width(double epsilon) {
+        return (int) Math.ceil(Math.E / epsilon);
+    }
+
+    public static int depth(double delta) {
+        return Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    // 크기를 정하고 비움 (모든 task에서 같은 크기를 사용해야 합칠 수 있음)
+    public void configure(int width, int depth) {
+        if (this.width != width || this.depth != depth) {
+            this.width = width;
+            this.depth = depth;
+            table = new long[width * depth];
+        }
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        count = 0;
+        candidateCount = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void addBusiness(long businesses) {
+        count += businesses;
+    }
+
+    // 카테고리 개수를 sketch에 더함 (후보에는 추가하지 않음)
+    public void add(int categoryId, long categoryCount) {
+        for (int row = 0; row < depth; row++) {
+            table[row * width + cell(categoryId, row)] += categoryCount;
+        }
+    }
+
+    // 각 행에서 카테고리가 들어간 칸 중 가장 작은 값
+    public long estimate(int categoryId) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, table[row * width + cell(categoryId, row)]);
+        }
+        return depth == 0 ? 0 : estimate;
+    }
+
+    // sketch에 더한 카테고리 개수의 합 (오차 범위의 기준)
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < width; i++) {
+            total += table[i];
+        }
+        return total;
+    }
+
+    public void addCandidate(int categoryId) {
+        if (candidateCount == candidates.length) { candidates = Arrays.copyOf(candidates, candidates.length * 2); }
+        candidates[candidateCount++] = categoryId;
+    }
+
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    // retainTop 이후에는 추정값이 큰 순서 (같으면 id 순서)
+    public int getCandidate(int index) {
+        return candidates[index];
+    }
+
+    public void merge(CategorySketchWritable other) {
+        if (width != other.width || depth != other.depth) {
+            throw new IllegalArgumentException("Cannot merge a " + other.width + "x" + other.depth + " sketch into a " + width + "x" + depth + " sketch");
+        }
+        count += other.count;
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        for (int i = 0; i < other.candidateCount; i++) {
+            addCandidate(other.candidates[i]);
+        }
+    }
+
+    // 중복된 후보를 지우고 추정값이 큰 후보 capacity개만 남김 (크기가 capacity인 min heap으로 고름)
+    public void retainTop(int capacity) {
+        Arrays.sort(candidates, 0, candidateCount);
+        int unique = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            if (unique == 0 || candidates[unique - 1] != candidates[i]) { candidates[unique++] = candidates[i]; }
+        }
+        if (estimates.length < unique) { estimates = new long[candidates.length]; }
+
+        int heapSize = 0; // candidates[0, heapSize)를 heap으로 사용 (뒤쪽 후보는 아직 보지 않은 것)
+        for (int i = 0; i < unique; i++) {
+            int id = candidates[i];
+            long estimate = estimate(id);
+            if (heapSize < capacity) {
+                siftUp(heapSize++, id, estimate);
+            } else if (capacity > 0 && before(estimate, id, estimates[0], candidates[0])) { // heap의 최소보다 큼
+                siftDown(0, heapSize, id, estimate);
+            }
+        }
+        for (int end = heapSize - 1; end > 0; end--) { // heap 정렬 (최소를 뒤로 보내서 앞에서부터 큰 순서가 됨)
+            int id = candidates[0];
+            long estimate = estimates[0];
+            siftDown(0, end, candidates[end], estimates[end]);
+            candidates[end] = id;
+            estimates[end] = estimate;
+        }
+        candidateCount = heapSize;
+    }
+
+    // a가 b보다 앞에 와야 하면 true (추정값이 크거나, 같으면 id가 작음)
+    private static boolean before(long estimateA, int idA, long estimateB, int idB) {
+        return estimateA != estimateB ? estimateA > estimateB : idA < idB;
+    }
+
+    // heap의 위쪽이 가장 뒤에 올 후보
+    private void siftUp(int position, int id, long estimate) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!before(estimates[parent], candidates[parent], estimate, id)) { break; }
+            candidates[position] = candidates[parent];
+            estimates[position] = estimates[parent];
+            position = parent;
+        }
+        candidates[position] = id;
+        estimates[position] = estimate;
+    }
+
+    private void siftDown(int position, int size, int id, long estimate) {
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) { break; }
+            if (child + 1 < size && before(estimates[child], candidates[child], estimates[child + 1], candidates[child + 1])) { child++; }
+            if (!before(estimate, id, estimates[child], candidates[child])) { break; }
+            candidates[position] = candidates[child];
+            estimates[position] = estimates[child];
+            position = child;
+        }
+        candidates[position] = id;
+        estimates[position] = estimate;
+    }
+
+    // 행마다 다른 seed로 섞은 해시 (모든 task에서 같은 값)
+    private int cell(int categoryId, int row) {
+        long hash = (categoryId + 1L) * 0x9E3779B97F4A7C15L + row * 0xC2B2AE3D27D4EB4FL;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) ((hash >>> 1) % width);
+    }
+
+    // write로 직렬화했을 때의 크기
+    public int serializedSize() {
+        int size = WritableUtils.getVIntSize(count) + WritableUtils.getVIntSize(width) + WritableUtils.getVIntSize(depth);
+        int nonZero = 0;
+        int previous = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == 0) { continue; }
+            size += WritableUtils.getVIntSize(i - previous) + WritableUtils.getVIntSize(table[i]);
+            previous = i;
+            nonZero++;
+        }
+        size += WritableUtils.getVIntSize(nonZero) + WritableUtils.getVIntSize(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            size += WritableUtils.getVIntSize(candidates[i]);
+        }
+        return size;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVLong(out, count);
+        WritableUtils.writeVInt(out, width);
+        WritableUtils.writeVInt(out, depth);
+        int nonZero = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) { nonZero++; }
+        }
+        WritableUtils.writeVInt(out, nonZero);
+        int previous = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == 0) { continue; }
+            WritableUtils.writeVInt(out, i - previous);
+            WritableUtils.writeVLong(out, table[i]);
+            previous = i;
+        }
+        WritableUtils.writeVInt(out, candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            WritableUtils.writeVInt(out, candidates[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        long businesses = WritableUtils.readVLong(in);
+        configure(WritableUtils.readVInt(in), WritableUtils.readVInt(in));
+        count = businesses;
+        int nonZero = WritableUtils.readVInt(in);
+        int cell = 0;
+        for (int i = 0; i < nonZero; i++) {
+            cell += WritableUtils.readVInt(in);
+            table[cell] = WritableUtils.readVLong(in);
+        }
+        int size = WritableUtils.readVInt(in);
+        for (int i = 0; i < size; i++) {
+            addCandidate(WritableUtils.readVInt(in));
+        }
+    }
+}
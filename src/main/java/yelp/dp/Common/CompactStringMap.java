@@ -0,0 +1,178 @@
+package yelp.dp.Common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+
+// UTF-8 바이트 문자열을 key로, int를 value로 가지는 open addressing 해시맵
+// 모든 key를 하나의 byte 배열(arena)에 이어 저장하므로 String/HashMap에 비해 객체 수와 메모리 사용량이 매우 적음
+// 조회 시 byte 범위를 그대로 넘길 수 있어 mapper에서 String을 만들지 않고 검사할 수 있음
+public class CompactStringMap {
+    public static final int NOT_FOUND = -1;
+
+    private static final int ENTRY_OVERHEAD = 4; // arena 내 key 길이 저장 공간
+    private static final int SLOT_BYTES = 12; // slot 하나당 offset, hash, value (int 3개)
+
+    private byte[] arena; // [key 길이(4byte)][key 바이트]의 반복
+    private int arenaSize = 0;
+    private int[] offsets; // arena 내 위치 + 1 (0이면 빈 slot)
+    private int[] hashes;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+
+    public CompactStringMap() {
+        this(1024);
+    }
+
+    public CompactStringMap(int expectedSize) {
+        int capacity = tableCapacity(expectedSize);
+        offsets = new int[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        arena = new byte[Math.max(64, expectedSize * 24)];
+    }
+
+    // records개의 key(총 keyBytes 바이트)를 저장할 때 필요한 대략적인 메모리 크기
+    public static long estimateBytes(long records, long keyBytes) {
+        return keyBytes + records * ENTRY_OVERHEAD + (long) tableCapacity(records) * SLOT_BYTES;
+    }
+
+    // load factor 0.5 이하를 유지하는 2의 거듭제곱 크기
+    private static int tableCapacity(long expectedSize) {
+        long capacity = 16;
+        while (capacity < expectedSize * 2) { capacity <<= 1; }
+        if (capacity > (1 << 30)) { throw new IllegalArgumentException("Too many keys: " + expectedSize); }
+        return (int) capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 실제로 할당된 메모리 크기
+    public long memoryBytes() {
+        return arena.length + (long) offsets.length * SLOT_BYTES;
+    }
+
+    public void put(String key, int value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        put(bytes, 0, bytes.length, value);
+    }
+
+    public void put(Text key, int value) {
+        put(key.getBytes(), 0, key.getLength(), value);
+    }
+
+    // key가 이미 존재하면 value를 덮어씀
+    public void put(byte[] bytes, int offset, int length, int value) {
+        int hash = hash(bytes, offset, length);
+        int slot = find(bytes, offset, length, hash);
+        if (offsets[slot] != 0) {
+            values[slot] = value;
+            return;
+        }
+
+        ensureArena(ENTRY_OVERHEAD + length);
+        int entry = arenaSize;
+        arena[entry] = (byte) (length >>> 24);
+        arena[entry + 1] = (byte) (length >>> 16);
+        arena[entry + 2] = (byte) (length >>> 8);
+        arena[entry + 3] = (byte) length;
+        System.arraycopy(bytes, offset, arena, entry + ENTRY_OVERHEAD, length);
+        arenaSize += ENTRY_OVERHEAD + length;
+
+        offsets[slot] = entry + 1;
+        hashes[slot] = hash;
+        values[slot] = value;
+        if (++size * 2 > offsets.length) { rehash(); }
+    }
+
+    public int get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return get(bytes, 0, bytes.length);
+    }
+
+    public int get(Text key) {
+        return get(key.getBytes(), 0, key.getLength());
+    }
+
+    // key가 없으면 NOT_FOUND 반환
+    public int get(byte[] bytes, int offset, int length) {
+        int slot = find(bytes, offset, length, hash(bytes, offset, length));
+        return offsets[slot] == 0 ? NOT_FOUND : values[slot];
+    }
+
+    public boolean contains(byte[] bytes, int offset, int length) {
+        return offsets[find(bytes, offset, length, hash(bytes, offset, length))] != 0;
+    }
+
+    public boolean contains(Text key) {
+        return contains(key.getBytes(), 0, key.getLength());
+    }
+
+    // key가 있는 slot 또는 key가 들어갈 빈 slot을 반환 (linear probing)
+    private int find(byte[] bytes, int offset, int length, int hash) {
+        int slot = hash & mask;
+        while (true) {
+            int entry = offsets[slot];
+            if (entry == 0) { return slot; }
+            if (hashes[slot] == hash && keyEquals(entry - 1, bytes, offset, length)) { return slot; }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(int entry, byte[] bytes, int offset, int length) {
+        int keyLength = ((arena[entry] & 0xff) << 24) | ((arena[entry + 1] & 0xff) << 16)
+                | ((arena[entry + 2] & 0xff) << 8) | (arena[entry + 3] & 0xff);
+        if (keyLength != length) { return false; }
+        int keyStart = entry + ENTRY_OVERHEAD;
+        for (int i = 0; i < length; i++) {
+            if (arena[keyStart + i] != bytes[offset + i]) { return false; }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        int capacity = oldOffsets.length * 2;
+        offsets = new int[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == 0) { continue; }
+            int slot = oldHashes[i] & mask;
+            while (offsets[slot] != 0) { slot = (slot + 1) & mask; }
+            offsets[slot] = oldOffsets[i];
+            hashes[slot] = oldHashes[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void ensureArena(int extra) {
+        if (arenaSize + extra <= arena.length) { return; }
+        long capacity = Math.max((long) arena.length * 2, (long) arenaSize + extra);
+        if (capacity > Integer.MAX_VALUE - 8) { throw new IllegalStateException("Key arena exceeds 2GB"); }
+        arena = Arrays.copyOf(arena, (int) capacity);
+    }
+
+    // 바이트 해시에 murmur3의 finalizer를 적용하여 하위 비트를 고르게 섞음
+    public static int hash(byte[] bytes, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,86 @@
+package yelp.dp.Common;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// map 결과(shuffle), 최종 결과, 잡 사이의 중간 결과를 압축하는 설정
+// codec은 하둡의 이름(deflate, bzip2, ...)이나 클래스 이름으로 지정하며, 기본값은 none(압축하지 않음)
+// ex. -D compression.mapOutput=deflate -D compression.output=bzip2 -D compression.intermediate=deflate
+// native 라이브러리가 없는 노드에서도 동작하도록 순수 자바 구현이 있는 codec만 허용함 (deflate, bzip2 / gzip, lz4, snappy 등은 native 필요)
+// 입력은 TextInputFormat이 확장자(.bz2, .deflate, ...)로 codec을 찾아서 풀어 읽고, bzip2는 여러 split으로 나눠 읽을 수 있음
+public class Compression {
+    public static final String MAP_OUTPUT = "compression.mapOutput"; // shuffle되는 map 결과 (local 엔진은 map 결과를 메모리에 두므로 사용하지 않음)
+    public static final String OUTPUT = "compression.output"; // 최종 결과 파일
+    // 잡 사이의 중간 결과 (ex. SearchUserHomeState의 job1 -> job2)
+    // 설정하면 block 단위로 압축한 SequenceFile로 저장하므로 codec과 상관없이 다음 잡에서 split으로 나눠 읽을 수 있음
+    public static final String INTERMEDIATE = "compression.intermediate";
+
+    // 드라이버에서 잡을 만들기 전에 호출하면 이후에 만드는 모든 잡(hot key 부분 결과를 합치는 잡 포함)에 적용됨
+    public static void configure(Configuration conf) {
+        Class<? extends CompressionCodec> mapOutput = codec(conf, MAP_OUTPUT);
+        if (mapOutput != null) {
+            conf.setBoolean("mapreduce.map.output.compress", true);
+            conf.setClass("mapreduce.map.output.compress.codec", mapOutput, CompressionCodec.class);
+        }
+        Class<? extends CompressionCodec> output = codec(conf, OUTPUT);
+        if (output != null) {
+            conf.setBoolean(FileOutputFormat.COMPRESS, true);
+            conf.setClass(FileOutputFormat.COMPRESS_CODEC, output, CompressionCodec.class);
+            conf.set(FileOutputFormat.COMPRESS_TYPE, SequenceFile.CompressionType.BLOCK.name()); // hot key 부분 결과 등 SequenceFile 출력
+        }
+    }
+
+    // 다음 잡의 입력이 될 중간 결과를 저장하는 잡에 적용 (최종 결과의 압축 설정은 사용하지 않음)
+    public static void configureIntermediate(Job job) {
+        Class<? extends CompressionCodec> codec = codec(job.getConfiguration(), INTERMEDIATE);
+        if (codec == null) { // 기존과 같은 압축하지 않은 텍스트
+            FileOutputFormat.setCompressOutput(job, false);
+            return;
+        }
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        FileOutputFormat.setCompressOutput(job, true);
+        FileOutputFormat.setOutputCompressorClass(job, codec);
+        SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    }
+
+    // configureIntermediate를 적용한 잡의 결과를 읽을 InputFormat (value가 텍스트 한 줄)
+    @SuppressWarnings("rawtypes")
+    public static Class<? extends InputFormat> intermediateInputFormat(Configuration conf) {
+        return codec(conf, INTERMEDIATE) == null ? TextInputFormat.class : SequenceFileInputFormat.class;
+    }
+
+    // 설정된 codec 클래스 (none이면 null)
+    public static Class<? extends CompressionCodec> codec(Configuration conf, String key) {
+        String name = conf.get(key, "none");
+        if (name.equals("none")) { return null; }
+
+        Class<? extends CompressionCodec> codecClass = new CompressionCodecFactory(conf).getCodecClassByName(name);
+        if (codecClass == null) {
+            throw new IllegalArgumentException("Unknown codec " + key + "=" + name + " (none, deflate, bzip2 or a codec class)");
+        }
+        // CodecPool에서 compressor를 얻을 수 없는 codec은 native 라이브러리가 필요함 (IFile, SequenceFile이 압축 없이 쓰거나 실패함)
+        Compressor compressor;
+        try {
+            compressor = CodecPool.getCompressor(ReflectionUtils.newInstance(codecClass, conf));
+        } catch (RuntimeException e) { // ex. lz4, snappy는 native 라이브러리가 없으면 예외를 던짐
+            compressor = null;
+        }
+        if (compressor == null) {
+            throw new IllegalArgumentException(key + "=" + name + " needs the native hadoop library (use deflate or bzip2)");
+        }
+        CodecPool.returnCompressor(compressor);
+        return codecClass;
+    }
+}
@@ -0,0 +1,283 @@
+package yelp.dp.Common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import yelp.dp.Engine.JobRunner;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+// 증분(incremental) 모드에서 실행 사이에 유지하는 key -> 값(Text) 저장소
+// 실행마다 바뀐 key만 담은 층(layer)을 MapFile로 추가하고, 조회는 최신 층부터 찾으므로 실행 시간이 바뀐 양에 비례함
+// 폴더 구조 (root = <workdir>/incremental/<driver>)
+// - <root>/<store>/layer-N : N번째 실행에서 바뀐 key (MapFileOutputFormat으로 쓴 part-r-xxxxx, reducer에서 key 순서로 씀)
+// - <root>/<store>/base-N : N번째 실행까지의 모든 층을 합친 층 (compaction 결과, 이보다 오래된 층은 조회하지 않음)
+// - <root>/<이름>-N : 실행마다 새로 쓰는 작은 파일이나 폴더 (ex. 주(state)별 합계)
+// - <root>/GENERATION : 마지막으로 완료된 실행 번호. 이보다 번호가 큰 층과 파일은 실패한 실행이 남긴 것이므로 지움
+// 층이 incremental.maxLayers개를 넘으면 compact()가 모든 층을 base 하나로 합침 (같은 key는 최신 층의 값)
+public class DeltaStore {
+    public static final String MAX_LAYERS = "incremental.maxLayers"; // compaction 전까지 쌓을 층 수 (기본값 8)
+    public static final String REDUCES = "incremental.compaction.reduces"; // compaction 잡의 reducer 수
+
+    static final String LAYERS = "incremental.layers."; // + 저장소 이름: task에 전달하는 층 목록 (최신순)
+    private static final String GENERATION = "GENERATION";
+    private static final String LAYER = "layer-";
+    private static final String BASE = "base-";
+
+    private final Configuration conf;
+    private final Path root;
+    private final FileSystem fs;
+    private final long generation;
+
+    // 완료되지 않은 실행이 남긴 층과 파일을 지움
+    public DeltaStore(Configuration conf, Path root) throws IOException {
+        this.conf = conf;
+        this.root = root;
+        this.fs = root.getFileSystem(conf);
+        fs.mkdirs(root);
+        generation = readGeneration();
+
+        for (FileStatus entry : fs.listStatus(root)) {
+            if (generation(entry.getPath()) > generation) { fs.delete(entry.getPath(), true); }
+            if (!entry.isDirectory() || generation(entry.getPath()) >= 0) { continue; }
+            for (FileStatus layer : fs.listStatus(entry.getPath())) { // 저장소 폴더
+                if (generation(layer.getPath()) > generation) { fs.delete(layer.getPath(), true); }
+            }
+        }
+    }
+
+    // 마지막으로 완료된 실행 번호 (처음이면 0)
+    public long generation() {
+        return generation;
+    }
+
+    // 이번 실행이 쓸 층 (잡의 결과 폴더로 사용)
+    public Path newLayer(String store) throws IOException {
+        Path layer = new Path(new Path(root, store), String.format("%s%05d", LAYER, generation + 1));
+        fs.delete(layer, true);
+        return layer;
+    }
+
+    // 마지막 실행이 남긴 파일 (없으면 null)
+    public Path current(String name) throws IOException {
+        Path path = new Path(root, String.format("%s-%05d", name, generation));
+        return generation > 0 && fs.exists(path) ? path : null;
+    }
+
+    // 이번 실행이 남길 파일
+    public Path next(String name) {
+        return new Path(root, String.format("%s-%05d", name, generation + 1));
+    }
+
+    // 잡의 task가 Reader로 저장소를 조회할 수 있도록 층 목록을 설정
+    public void configure(Job job, String store) throws IOException {
+        List<Path> layers = layers(store);
+        String[] paths = new String[layers.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = fs.makeQualified(layers.get(i)).toString();
+        }
+        job.getConfiguration().setStrings(LAYERS + store, paths);
+    }
+
+    // 이번 실행을 완료함 (이후에는 새 층과 파일이 조회됨), 이전 실행의 파일은 지움
+    public void commit() throws IOException {
+        long next = generation + 1;
+        Path temporary = new Path(root, GENERATION + ".tmp");
+        OutputStream out = fs.create(temporary, true);
+        try {
+            out.write((next + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+        fs.delete(new Path(root, GENERATION), false); // 이 사이에 중단되면 다음 실행에서 .tmp를 읽음
+        fs.rename(temporary, new Path(root, GENERATION));
+
+        for (FileStatus entry : fs.listStatus(root)) {
+            long number = generation(entry.getPath());
+            if (number >= 0 && number < next) { fs.delete(entry.getPath(), true); }
+        }
+    }
+
+    // 층이 설정된 수를 넘으면 모든 층을 base 하나로 합치는 잡을 실행 (성공하거나 합칠 필요가 없으면 true)
+    public boolean compact(String store) throws IOException, InterruptedException, ClassNotFoundException {
+        List<Path> layers = layers(store);
+        if (layers.size() <= conf.getInt(MAX_LAYERS, 8)) { return true; }
+        System.out.println("Compact " + layers.size() + " layers of the incremental " + store + " store.");
+
+        Job job = Job.getInstance(conf, "Compact incremental " + store + " store");
+        job.setJarByClass(DeltaStore.class);
+        job.setInputFormatClass(SequenceFileInputFormat.class); // MapFile 폴더는 data 파일을 읽음
+        job.setMapperClass(CompactMapper.class);
+        job.setReducerClass(CompactReduce.class);
+        job.setPartitionerClass(HashPartitioner.class); // Reader가 같은 Partitioner로 part 파일을 찾음
+        JobRunner.setReduces(job, REDUCES);
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(TaggedValue.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        job.setOutputFormatClass(MapFileOutputFormat.class);
+
+        Path base = new Path(new Path(root, store), String.format("%s%05d", BASE, generation));
+        fs.delete(base, true);
+        for (Path layer : layers) {
+            FileInputFormat.addInputPath(job, layer);
+        }
+        FileOutputFormat.setOutputPath(job, base);
+        if (JobRunner.run(job) == null) { return false; }
+
+        for (Path layer : layers) { // base에 모두 들어감
+            if (!layer.equals(base)) { fs.delete(layer, true); }
+        }
+        return true;
+    }
+
+    // 완료된 층 (최신순, base가 나오면 그 이전 층은 제외)
+    List<Path> layers(String store) throws IOException {
+        Path dir = new Path(root, store);
+        List<Path> layers = new ArrayList<Path>();
+        if (!fs.exists(dir)) { return layers; }
+        for (FileStatus layer : fs.listStatus(dir)) {
+            long number = generation(layer.getPath());
+            if (number >= 1 && number <= generation && fs.exists(new Path(layer.getPath(), "_SUCCESS"))) { layers.add(layer.getPath()); }
+        }
+        Collections.sort(layers, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                int byNumber = Long.compare(generation(b), generation(a));
+                if (byNumber != 0) { return byNumber; }
+                return Boolean.compare(b.getName().startsWith(BASE), a.getName().startsWith(BASE)); // 번호가 같으면 base가 먼저
+            }
+        });
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i).getName().startsWith(BASE)) { return new ArrayList<Path>(layers.subList(0, i + 1)); }
+        }
+        return layers;
+    }
+
+    private long readGeneration() throws IOException {
+        Path file = new Path(root, GENERATION);
+        if (!fs.exists(file)) { file = new Path(root, GENERATION + ".tmp"); }
+        if (!fs.exists(file)) { return 0; }
+        InputStream in = fs.open(file);
+        try {
+            byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+            IOUtils.readFully(in, bytes, 0, bytes.length);
+            return Long.parseLong(new String(bytes, StandardCharsets.UTF_8).trim());
+        } finally {
+            in.close();
+        }
+    }
+
+    // 이름 끝의 "-N" 번호 (없으면 -1)
+    static long generation(Path path) {
+        String name = path.getName();
+        int dash = name.lastIndexOf('-');
+        if (dash < 0 || dash == name.length() - 1) { return -1; }
+        for (int i = dash + 1; i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') { return -1; }
+        }
+        return Long.parseLong(name.substring(dash + 1));
+    }
+
+    // task에서 저장소를 조회하는 도구 (층마다 MapFile의 index만 메모리에 올림)
+    public static class Reader implements Closeable {
+        private final List<MapFile.Reader[]> layers = new ArrayList<MapFile.Reader[]>();
+        private final HashPartitioner<Text, Text> partitioner = new HashPartitioner<Text, Text>();
+
+        public Reader(Configuration conf, String store) throws IOException {
+            for (String layer : conf.getTrimmedStrings(LAYERS + store)) {
+                layers.add(MapFileOutputFormat.getReaders(new Path(layer), conf));
+            }
+        }
+
+        // 최신 층부터 찾아서 value에 채움 (없으면 false)
+        public boolean get(Text key, Text value) throws IOException {
+            for (MapFile.Reader[] readers : layers) {
+                if (MapFileOutputFormat.getEntry(readers, partitioner, key, value) != null) { return true; }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (MapFile.Reader[] readers : layers) {
+                for (MapFile.Reader reader : readers) {
+                    reader.close();
+                }
+            }
+            layers.clear();
+        }
+    }
+
+    // 층의 번호를 TaggedValue의 개수에 담아서 전달
+    public static class CompactMapper extends Mapper<Text, Text, Text, TaggedValue> {
+        TaggedValue _value = new TaggedValue();
+        int layer;
+
+        @Override
+        protected void setup(Context context) {
+            Path data = ((FileSplit) context.getInputSplit()).getPath(); // <layer>/part-r-xxxxx/data
+            layer = (int) generation(data.getParent().getParent());
+        }
+
+        public void map(Text key, Text value, Context context) throws IOException, InterruptedException {
+            _value.set((byte) 0, value);
+            _value.setCount(layer);
+            context.write(key, _value);
+        }
+    }
+
+    // 가장 최신 층의 값만 남김
+    public static class CompactReduce extends Reducer<Text, TaggedValue, Text, Text> {
+        StageMetrics metrics;
+        Text latest = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            int latestLayer = -1;
+            long size = 0;
+            for (TaggedValue value : values) {
+                size++;
+                if (value.getCount() > latestLayer) {
+                    latestLayer = value.getCount();
+                    latest.set(value.getText());
+                }
+            }
+            metrics.group(key, size);
+            metrics.output(key.getLength() + latest.getLength());
+            context.write(key, latest);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+}
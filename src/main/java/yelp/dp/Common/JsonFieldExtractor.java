@@ -0,0 +1,370 @@
+package yelp.dp.Common;
+
+import java.nio.charset.StandardCharsets;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+
+// Text의 UTF-8 바이트를 한 번만 훑어서 요청한 최상위(top-level) 필드의 위치만 기록하는 추출기
+// gson처럼 String 변환과 json 트리 생성을 하지 않으며, 요청한 필드를 모두 찾으면 즉시 탐색을 멈춤
+// 하나의 객체를 mapper 안에서 재사용하는 것을 전제로 함 (thread-safe 하지 않음)
+public class JsonFieldExtractor {
+    public static final int MISSING = 0; // 필드가 없음
+    public static final int STRING = 1; // 문자열 값
+    public static final int NULL = 2; // json null
+    public static final int OTHER = 3; // 숫자, true/false, 객체, 배열
+
+    private static final byte[] OPEN = {'{'};
+    private static final byte[] COMMA = {','};
+    private static final byte[] CLOSE = {'}'};
+
+    private final String[] fieldNames;
+    private final byte[][] fieldBytes; // 비교를 위해 미리 UTF-8로 변환한 필드 이름
+
+    // 각 필드별 파싱 결과 (문자열의 경우 valueStart/valueEnd는 따옴표를 제외한 범위)
+    private final int[] types;
+    private final int[] valueStart;
+    private final int[] valueEnd;
+    private final int[] memberStart; // "key"의 시작 따옴표 위치
+    private final int[] memberEnd; // 값이 끝나는 위치 (exclusive)
+    private final boolean[] escaped; // 문자열 값에 escape 문자가 포함되어 있는지 여부
+
+    private byte[] bytes;
+    private int start;
+    private int end;
+    private int pos;
+    private int found;
+
+    public JsonFieldExtractor(String... fieldNames) {
+        this.fieldNames = fieldNames.clone();
+        this.fieldBytes = new byte[fieldNames.length][];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldBytes[i] = fieldNames[i].getBytes(StandardCharsets.UTF_8);
+        }
+        types = new int[fieldNames.length];
+        valueStart = new int[fieldNames.length];
+        valueEnd = new int[fieldNames.length];
+        memberStart = new int[fieldNames.length];
+        memberEnd = new int[fieldNames.length];
+        escaped = new boolean[fieldNames.length];
+    }
+
+    public boolean parse(Text value) {
+        return parse(value.getBytes(), 0, value.getLength());
+    }
+
+    // json 객체 한 줄을 파싱함. 최상위가 객체가 아니거나 문법이 깨진 경우 false 반환
+    // 같은 이름의 필드가 여러 번 나오면 처음 나온 값을 사용함
+    public boolean parse(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.start = offset;
+        this.end = offset + length;
+        this.pos = offset;
+        this.found = 0;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = MISSING;
+            escaped[i] = false;
+        }
+
+        try {
+            skipWhitespace();
+            if (pos >= end || bytes[pos] != '{') { return false; }
+            pos++;
+            skipWhitespace();
+            if (pos < end && bytes[pos] == '}') { return true; } // 빈 객체
+
+            while (pos < end) {
+                if (bytes[pos] != '"') { return false; }
+                int keyQuote = pos;
+                int keyStart = pos + 1;
+                boolean keyEscaped = skipString();
+                int keyEnd = pos - 1;
+
+                skipWhitespace();
+                if (pos >= end || bytes[pos] != ':') { return false; }
+                pos++;
+                skipWhitespace();
+                if (pos >= end) { return false; }
+
+                int field = matchField(keyStart, keyEnd, keyEscaped);
+                if (field >= 0 && types[field] == MISSING) {
+                    readValue(field, keyQuote);
+                    if (++found == types.length) { return true; } // 요청한 필드를 모두 찾으면 나머지는 읽지 않음
+                } else {
+                    skipValue();
+                }
+
+                skipWhitespace();
+                if (pos >= end) { return false; }
+                if (bytes[pos] == '}') { return true; }
+                if (bytes[pos] != ',') { return false; }
+                pos++;
+                skipWhitespace();
+            }
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) { // 닫히지 않은 문자열 등
+            return false;
+        }
+    }
+
+    public int size() {
+        return fieldNames.length;
+    }
+
+    public String getFieldName(int field) {
+        return fieldNames[field];
+    }
+
+    public int getType(int field) {
+        return types[field];
+    }
+
+    // 필드가 존재하는지 여부 (값이 null인 경우도 존재하는 것으로 봄)
+    public boolean has(int field) {
+        return types[field] != MISSING;
+    }
+
+    public boolean isNull(int field) {
+        return types[field] == NULL;
+    }
+
+    // 필드가 없거나 null이 아닌 경우 true
+    public boolean hasValue(int field) {
+        return types[field] == STRING || types[field] == OTHER;
+    }
+
+    // gson의 getAsString과 같이 문자열은 escape를 해제한 값을, 그 외의 값은 원문을 그대로 반환
+    // 필드가 없거나 null이면 null 반환
+    public String getString(int field) {
+        switch (types[field]) {
+            case STRING:
+                if (escaped[field]) {
+                    return unescape(bytes, valueStart[field], valueEnd[field]);
+                }
+                return new String(bytes, valueStart[field], valueEnd[field] - valueStart[field], StandardCharsets.UTF_8);
+            case OTHER:
+                return new String(bytes, valueStart[field], valueEnd[field] - valueStart[field], StandardCharsets.UTF_8);
+            default:
+                return null;
+        }
+    }
+
+    // getString과 같은 값을 out에 저장함. escape가 없는 경우 String을 거치지 않고 바이트를 바로 복사
+    public boolean getText(int field, Text out) {
+        if (!hasValue(field)) { return false; }
+        if (types[field] == STRING && escaped[field]) {
+            out.set(getString(field));
+        } else {
+            out.set(bytes, valueStart[field], valueEnd[field] - valueStart[field]);
+        }
+        return true;
+    }
+
+    // 값의 원본 바이트 범위 (문자열은 따옴표 제외)
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getValueStart(int field) {
+        return valueStart[field];
+    }
+
+    public int getValueEnd(int field) {
+        return valueEnd[field];
+    }
+
+    public boolean isEscaped(int field) {
+        return escaped[field];
+    }
+
+    // 원본 json에서 해당 필드("key": value)만 제외한 json을 out에 저장함
+    // 필드가 없으면 원본을 그대로 복사함
+    public void writeWithout(int field, Text out) {
+        if (types[field] == MISSING) {
+            out.set(bytes, start, end - start);
+            return;
+        }
+
+        int removeStart = memberStart[field];
+        int removeEnd = memberEnd[field];
+
+        int next = removeEnd;
+        while (next < end && isWhitespace(bytes[next])) { next++; }
+        if (next < end && bytes[next] == ',') { // 뒤에 다른 필드가 있으면 뒤쪽 쉼표까지 제거
+            removeEnd = next + 1;
+            while (removeEnd < end && isWhitespace(bytes[removeEnd])) { removeEnd++; }
+        } else { // 마지막 필드라면 앞쪽 쉼표를 제거
+            int prev = removeStart - 1;
+            while (prev > start && isWhitespace(bytes[prev])) { prev--; }
+            if (bytes[prev] == ',') { removeStart = prev; }
+        }
+
+        out.clear();
+        out.append(bytes, start, removeStart - start);
+        out.append(bytes, removeEnd, end - removeEnd);
+    }
+
+    // 원본 json에서 찾은 필드("key": value)만 원래 순서대로 남긴 json을 out에 저장함 (값은 원본 바이트 그대로)
+    public void writeFound(Text out) {
+        out.clear();
+        out.append(OPEN, 0, 1);
+        int previous = -1; // 마지막으로 쓴 필드의 위치
+        for (int n = 0; n < found; n++) { // 필드 수가 적으므로 매번 다음 위치의 필드를 찾음
+            int next = -1;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] != MISSING && memberStart[i] > previous && (next < 0 || memberStart[i] < memberStart[next])) { next = i; }
+            }
+            if (n > 0) { out.append(COMMA, 0, 1); }
+            out.append(bytes, memberStart[next], memberEnd[next] - memberStart[next]);
+            previous = memberStart[next];
+        }
+        out.append(CLOSE, 0, 1);
+    }
+
+    private int matchField(int keyStart, int keyEnd, boolean keyEscaped) {
+        if (keyEscaped) { // escape된 키는 드물기 때문에 문자열로 변환하여 비교
+            String key = unescape(bytes, keyStart, keyEnd);
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (fieldNames[i].equals(key)) { return i; }
+            }
+            return -1;
+        }
+
+        int keyLength = keyEnd - keyStart;
+        for (int i = 0; i < fieldBytes.length; i++) {
+            byte[] name = fieldBytes[i];
+            if (name.length != keyLength) { continue; }
+            int j = 0;
+            while (j < keyLength && name[j] == bytes[keyStart + j]) { j++; }
+            if (j == keyLength) { return i; }
+        }
+        return -1;
+    }
+
+    private void readValue(int field, int keyQuote) {
+        memberStart[field] = keyQuote;
+        byte c = bytes[pos];
+        if (c == '"') {
+            valueStart[field] = pos + 1;
+            escaped[field] = skipString();
+            valueEnd[field] = pos - 1;
+            types[field] = STRING;
+        } else {
+            valueStart[field] = pos;
+            skipValue();
+            valueEnd[field] = pos;
+            types[field] = (c == 'n') ? NULL : OTHER;
+        }
+        memberEnd[field] = pos;
+    }
+
+    // pos가 여는 따옴표를 가리킬 때 호출, 닫는 따옴표 다음으로 이동함. escape 문자가 있었는지 반환
+    private boolean skipString() {
+        boolean hasEscape = false;
+        pos++;
+        while (pos < end) {
+            byte c = bytes[pos];
+            if (c == '"') {
+                pos++;
+                return hasEscape;
+            }
+            if (c == '\\') {
+                hasEscape = true;
+                pos++;
+                if (pos < end && bytes[pos] == 'u') { // unescape가 실패하지 않도록 16진수 4자리인지 확인
+                    if (!isUnicodeEscape(bytes, pos, end)) { throw new ArrayIndexOutOfBoundsException(pos); }
+                    pos += 4;
+                }
+            }
+            pos++;
+        }
+        throw new ArrayIndexOutOfBoundsException(pos);
+    }
+
+    // bytes[u]의 'u' 뒤에 16진수 4자리가 to 안에 있는지 (유니코드 escape)
+    static boolean isUnicodeEscape(byte[] bytes, int u, int to) {
+        if (u + 4 >= to) { return false; }
+        for (int i = u + 1; i <= u + 4; i++) {
+            byte c = bytes[i];
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) { return false; }
+        }
+        return true;
+    }
+
+    private void skipValue() {
+        byte c = bytes[pos];
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') { // 중첩된 객체와 배열은 깊이만 세면서 건너뜀
+            int depth = 0;
+            while (pos < end) {
+                c = bytes[pos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        pos++;
+                        return;
+                    }
+                }
+                pos++;
+            }
+            throw new ArrayIndexOutOfBoundsException(pos);
+        } else { // 숫자, true, false, null
+            int literalStart = pos;
+            while (pos < end) {
+                c = bytes[pos];
+                if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) { break; }
+                pos++;
+            }
+            if (pos == literalStart) { throw new ArrayIndexOutOfBoundsException(pos); } // 값이 비어있음
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(bytes[pos])) { pos++; }
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    // json 문자열의 escape를 해제함 (유니코드 escape의 surrogate pair는 char 단위로 이어 붙이므로 그대로 복원됨)
+    public static String unescape(byte[] bytes, int from, int to) {
+        StringBuilder builder = new StringBuilder(to - from);
+        int runStart = from;
+        int i = from;
+        while (i < to) {
+            if (bytes[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > runStart) {
+                builder.append(new String(bytes, runStart, i - runStart, StandardCharsets.UTF_8));
+            }
+            byte c = bytes[i + 1];
+            switch (c) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(new String(bytes, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default: builder.append((char) c); break; // \" \\ \/
+            }
+            i += 2;
+            runStart = i;
+        }
+        if (runStart < to) {
+            builder.append(new String(bytes, runStart, to - runStart, StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// 하둡 라이브러리
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+// 줄 단위 json 파일을 (FIELD 필드의 값, json 한 줄)로 읽는 InputFormat
+// CompositeInputFormat의 map-side join 입력으로 사용하기 위해
+// - 파일을 나누지 않고 (part 파일 하나가 하나의 partition)
+// - 파일을 이름순으로 나열함 (입력마다 같은 번호의 part 파일끼리 짝을 지음, 로컬 파일시스템은 순서를 보장하지 않음)
+public class JsonKeyInputFormat extends FileInputFormat<Text, Text> {
+    public static final String FIELD = "jsonKeyInput.field"; // key로 사용할 최상위 필드
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = super.listStatus(job);
+        Collections.sort(files, new Comparator<FileStatus>() {
+            @Override
+            public int compare(FileStatus a, FileStatus b) {
+                return a.getPath().compareTo(b.getPath());
+            }
+        });
+        return files;
+    }
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new JsonKeyRecordReader(context.getConfiguration().get(FIELD));
+    }
+
+    static class JsonKeyRecordReader extends RecordReader<Text, Text> {
+        private final LineRecordReader lines = new LineRecordReader();
+        private final JsonFieldExtractor extractor;
+        private final String field;
+        private final Text key = new Text();
+
+        JsonKeyRecordReader(String field) {
+            if (field == null) { throw new IllegalArgumentException(FIELD + " is not set"); }
+            this.field = field;
+            this.extractor = new JsonFieldExtractor(field);
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            lines.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (!lines.nextKeyValue()) { return false; }
+            Text value = lines.getCurrentValue();
+            if (!extractor.parse(value) || !extractor.getText(0, key)) {
+                throw new IOException("Record without '" + field + "': " + value);
+            }
+            return true;
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return lines.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            return lines.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+// 줄 단위 json 입력에서 한 필드의 값을 샘플링해서 TotalOrderPartitioner의 구간 경계 파일을 만듦
+// 하둡의 InputSampler는 InputFormat이 만든 key를 샘플링하므로, json 필드를 직접 추출하는 샘플러를 사용함
+// 여러 split에 고르게 나누어 일정 확률로 값을 고르며, seed가 고정되어 있어 실행마다 같은 경계가 나옴
+public class JsonKeySampler {
+    public static final String SAMPLE_SIZE = "sampler.sampleSize"; // 전체 샘플 수
+    public static final String MAX_SPLITS = "sampler.maxSplits"; // 샘플링할 최대 split 수
+    public static final String FREQUENCY = "sampler.frequency"; // 각 레코드를 고를 확률
+
+    // partitions개의 구간으로 나누는 경계값(partitions - 1개)을 partitionFile에 기록하고 job에 TotalOrderPartitioner를 설정함
+    public static void setTotalOrder(Job job, Path input, String field, Path partitionFile) throws IOException, InterruptedException {
+        Configuration conf = job.getConfiguration();
+        int partitions = job.getNumReduceTasks();
+        List<Text> samples = sample(conf, input, field);
+        Collections.sort(samples);
+
+        // 정렬된 샘플에서 같은 간격으로 경계를 고름 (TotalOrderPartitioner는 경계값의 중복을 허용하지 않음)
+        List<Text> splitPoints = new ArrayList<Text>();
+        int index = 0;
+        for (int i = 1; i < partitions; i++) {
+            index = Math.max(index, (int) ((long) i * samples.size() / partitions));
+            while (index < samples.size() && !splitPoints.isEmpty() && samples.get(index).compareTo(splitPoints.get(splitPoints.size() - 1)) <= 0) {
+                index++;
+            }
+            if (index >= samples.size()) {
+                throw new IOException("Only " + samples.size() + " samples of '" + field + "' in " + input
+                        + "; not enough distinct values for " + partitions + " partitions");
+            }
+            splitPoints.add(samples.get(index));
+        }
+
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(partitionFile),
+                SequenceFile.Writer.keyClass(Text.class), SequenceFile.Writer.valueClass(NullWritable.class));
+        try {
+            for (Text splitPoint : splitPoints) {
+                writer.append(splitPoint, NullWritable.get());
+            }
+        } finally {
+            writer.close();
+        }
+        System.out.println("Sampled " + samples.size() + " values of '" + field + "' for " + partitions + " partitions.");
+
+        TotalOrderPartitioner.setPartitionFile(conf, partitionFile);
+        job.setPartitionerClass(TotalOrderPartitioner.class);
+    }
+
+    // 고르게 고른 split의 앞부분에서 읽은 줄 수와 그만큼의 바이트(압축 파일은 압축된 바이트)의 비율로 input 전체의 줄 수를 추정함
+    // 입력 전체를 읽지 않고 driver에서 크기를 미리 정해야 할 때 사용 (끝까지 읽은 split은 정확한 값)
+    public static long estimateRecords(Configuration conf, Path input) throws IOException, InterruptedException {
+        int sampleSize = conf.getInt(SAMPLE_SIZE, 10000);
+        int maxSplits = conf.getInt(MAX_SPLITS, 20);
+
+        Job inputJob = Job.getInstance(new Configuration(conf));
+        FileInputFormat.setInputPaths(inputJob, input);
+        List<InputSplit> splits = new TextInputFormat().getSplits(inputJob);
+        int step = Math.max(1, splits.size() / maxSplits);
+        int chosen = (splits.size() + step - 1) / step;
+        int perSplit = Math.max(1, sampleSize / Math.max(1, chosen));
+
+        long totalBytes = 0;
+        for (InputSplit split : splits) {
+            totalBytes += split.getLength();
+        }
+        long lines = 0;
+        double bytes = 0;
+        for (int i = 0; i < splits.size(); i += step) {
+            LineRecordReader reader = new LineRecordReader();
+            reader.initialize(splits.get(i), new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+            try {
+                int read = 0;
+                while (read < perSplit && reader.nextKeyValue()) {
+                    read++;
+                }
+                lines += read;
+                bytes += (read < perSplit ? 1.0 : reader.getProgress()) * splits.get(i).getLength();
+            } finally {
+                reader.close();
+            }
+        }
+        return bytes > 0 ? (long) Math.ceil(lines * (totalBytes / bytes)) : lines;
+    }
+
+    static List<Text> sample(Configuration conf, Path input, String field) throws IOException, InterruptedException {
+        int sampleSize = conf.getInt(SAMPLE_SIZE, 10000);
+        int maxSplits = conf.getInt(MAX_SPLITS, 20);
+        double frequency = conf.getDouble(FREQUENCY, 0.1);
+
+        Job inputJob = Job.getInstance(new Configuration(conf));
+        FileInputFormat.setInputPaths(inputJob, input);
+        List<InputSplit> splits = new TextInputFormat().getSplits(inputJob);
+        int step = Math.max(1, splits.size() / maxSplits); // 파일 전체에 고르게 분포하도록 일정 간격의 split을 고름
+        int chosen = (splits.size() + step - 1) / step;
+        int perSplit = Math.max(1, sampleSize / Math.max(1, chosen));
+
+        JsonFieldExtractor extractor = new JsonFieldExtractor(field);
+        Random random = new Random(0x5eed);
+        List<Text> samples = new ArrayList<Text>();
+        for (int i = 0; i < splits.size(); i += step) {
+            LineRecordReader reader = new LineRecordReader();
+            reader.initialize(splits.get(i), new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+            try {
+                int taken = 0;
+                while (taken < perSplit && reader.nextKeyValue()) {
+                    if (random.nextDouble() >= frequency) { continue; }
+                    Text value = new Text();
+                    if (extractor.parse(reader.getCurrentValue()) && extractor.getText(0, value)) {
+                        samples.add(value);
+                        taken++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return samples;
+    }
+}
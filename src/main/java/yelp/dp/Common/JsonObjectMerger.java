@@ -0,0 +1,300 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+// 여러 json 객체의 최상위 필드를 하나의 객체로 합치는 도구 (gson으로 트리를 만들고 다시 직렬화하던 방식을 대체)
+// 추가된 객체의 UTF-8 바이트를 재사용하는 버퍼에 복사해 두고, 합칠 때 객체마다 한 번 훑어서 최상위 필드("key": value)의 범위만 기록한 후
+// 그 범위들을 그대로 이어 붙여서 결과를 만듦 (값은 파싱하지 않으므로 원본의 숫자, 문자열 escape가 그대로 유지됨)
+// 같은 key가 여러 번 나오면 나중에 쓴 값을 사용함 (last writer wins)
+// - 순서 번호(order)가 큰 객체가 나중이고, 순서 번호가 같으면 나중에 추가된 객체, 한 객체 안에서는 뒤쪽 필드가 나중
+// - 필드의 위치는 처음 나온 위치를 유지함 (gson의 JsonObject.add와 같은 규칙)
+// 하나의 객체를 reducer 안에서 재사용하는 것을 전제로 함 (thread-safe 하지 않음)
+public class JsonObjectMerger {
+    private static final byte[] OPEN = {'{'};
+    private static final byte[] COMMA = {','};
+    private static final byte[] CLOSE = {'}'};
+
+    // 추가된 객체
+    private byte[] data = new byte[4096];
+    private int dataLength;
+    private int objects;
+    private int[] objectOrder = new int[16];
+    private int[] objectStart = new int[16];
+    private int[] objectEnd = new int[16];
+    private int[] sorted = new int[16]; // 합칠 객체의 index (순서 번호 순)
+    private int maxOrder = -1;
+
+    // 합친 결과의 필드 (처음 나온 순서대로)
+    private int fields;
+    private int[] keyStart = new int[64];
+    private int[] keyLength = new int[64];
+    private boolean[] keyUnescaped = new boolean[64]; // true면 key가 unescaped 버퍼에 있음
+    private int[] keyHash = new int[64];
+    private int[] memberStart = new int[64]; // 현재 값을 가진 필드의 원본 범위 ("key"의 따옴표부터 값의 끝까지)
+    private int[] memberEnd = new int[64];
+    private int[] tableIndex = new int[64]; // 필드가 들어있는 해시 테이블 위치
+    private int[] table = new int[128]; // key -> 필드 번호 + 1 (0이면 빈 칸, linear probing)
+    private byte[] unescaped = new byte[256]; // escape가 있는 key를 해제한 바이트 (드물게 사용)
+    private int unescapedLength;
+
+    private int pos;
+    private int end;
+
+    public void clear() {
+        dataLength = 0;
+        objects = 0;
+        maxOrder = -1;
+    }
+
+    // 순서 번호(0 이상)와 함께 객체를 추가함 (바이트를 복사하므로 호출 후 json을 재사용해도 됨)
+    public void add(int order, Text json) {
+        if (order < 0) { throw new IllegalArgumentException("Negative order: " + order); }
+        if (objects == objectOrder.length) {
+            objectOrder = Arrays.copyOf(objectOrder, objects * 2);
+            objectStart = Arrays.copyOf(objectStart, objects * 2);
+            objectEnd = Arrays.copyOf(objectEnd, objects * 2);
+            sorted = new int[objects * 2];
+        }
+        if (dataLength + json.getLength() > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + json.getLength()));
+        }
+        System.arraycopy(json.getBytes(), 0, data, dataLength, json.getLength());
+        objectOrder[objects] = order;
+        objectStart[objects] = dataLength;
+        dataLength += json.getLength();
+        objectEnd[objects] = dataLength;
+        objects++;
+        maxOrder = Math.max(maxOrder, order);
+    }
+
+    public int objects() {
+        return objects;
+    }
+
+    // 추가된 객체 중 가장 큰 순서 번호 (추가된 객체가 없으면 -1)
+    public int maxOrder() {
+        return maxOrder;
+    }
+
+    // 추가된 모든 객체를 합쳐서 out에 저장
+    public void merge(Text out) throws IOException {
+        // 순서 번호로 counting sort (같은 순서 번호에서는 추가된 순서 유지)
+        int[] counts = new int[maxOrder + 2];
+        for (int i = 0; i < objects; i++) { counts[objectOrder[i] + 1]++; }
+        for (int order = 1; order < counts.length; order++) { counts[order] += counts[order - 1]; }
+        for (int i = 0; i < objects; i++) { sorted[counts[objectOrder[i]]++] = i; }
+        merge(objects, out);
+    }
+
+    // 순서 번호가 order인 객체만 합쳐서 out에 저장 (해당하는 객체가 없으면 false)
+    public boolean merge(Text out, int order) throws IOException {
+        int count = 0;
+        for (int i = 0; i < objects; i++) {
+            if (objectOrder[i] == order) { sorted[count++] = i; }
+        }
+        if (count == 0) { return false; }
+        merge(count, out);
+        return true;
+    }
+
+    private void merge(int count, Text out) throws IOException {
+        fields = 0;
+        unescapedLength = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                scan(objectStart[sorted[i]], objectEnd[sorted[i]]);
+            }
+
+            out.clear();
+            out.append(OPEN, 0, 1);
+            for (int field = 0; field < fields; field++) {
+                if (field > 0) { out.append(COMMA, 0, 1); }
+                out.append(data, memberStart[field], memberEnd[field] - memberStart[field]);
+            }
+            out.append(CLOSE, 0, 1);
+        } finally {
+            for (int field = 0; field < fields; field++) { // 다음 그룹을 위해 사용한 칸만 비움
+                table[tableIndex[field]] = 0;
+            }
+        }
+    }
+
+    // 객체 하나의 최상위 필드를 훑어서 결과에 반영
+    private void scan(int from, int to) throws IOException {
+        pos = from;
+        end = to;
+        try {
+            skipWhitespace();
+            if (pos >= end || data[pos] != '{') { throw malformed(from, to); }
+            pos++;
+            skipWhitespace();
+            if (pos < end && data[pos] == '}') { return; } // 빈 객체
+
+            while (pos < end) {
+                if (data[pos] != '"') { throw malformed(from, to); }
+                int member = pos;
+                boolean escaped = skipString();
+                int keyEnd = pos - 1;
+
+                skipWhitespace();
+                if (pos >= end || data[pos] != ':') { throw malformed(from, to); }
+                pos++;
+                skipWhitespace();
+                if (pos >= end) { throw malformed(from, to); }
+                skipValue();
+                put(member + 1, keyEnd, escaped, member, pos);
+
+                skipWhitespace();
+                if (pos >= end) { throw malformed(from, to); }
+                if (data[pos] == '}') { return; }
+                if (data[pos] != ',') { throw malformed(from, to); }
+                pos++;
+                skipWhitespace();
+            }
+            throw malformed(from, to);
+        } catch (ArrayIndexOutOfBoundsException e) { // 닫히지 않은 문자열 등
+            throw malformed(from, to);
+        }
+    }
+
+    private IOException malformed(int from, int to) {
+        return new IOException("Malformed json object: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    // key가 처음 나오면 필드를 추가하고, 이미 있으면 값의 범위만 바꿈
+    private void put(int start, int keyEnd, boolean escaped, int member, int memberEndPos) {
+        byte[] keyBytes = data;
+        int length = keyEnd - start;
+        if (escaped) { // 같은 key를 다르게 escape한 경우도 같은 필드로 보도록 해제한 바이트로 비교
+            byte[] key = JsonFieldExtractor.unescape(data, start, keyEnd).getBytes(StandardCharsets.UTF_8);
+            if (unescapedLength + key.length > unescaped.length) {
+                unescaped = Arrays.copyOf(unescaped, Math.max(unescaped.length * 2, unescapedLength + key.length));
+            }
+            System.arraycopy(key, 0, unescaped, unescapedLength, key.length);
+            keyBytes = unescaped;
+            start = unescapedLength;
+            length = key.length;
+            unescapedLength += key.length;
+        }
+
+        int hash = WritableComparator.hashBytes(keyBytes, start, length);
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (table[index] != 0) {
+            int field = table[index] - 1;
+            if (keyHash[field] == hash && keyLength[field] == length
+                    && WritableComparator.compareBytes(keyUnescaped[field] ? unescaped : data, keyStart[field], length, keyBytes, start, length) == 0) {
+                memberStart[field] = member;
+                memberEnd[field] = memberEndPos;
+                if (escaped) { unescapedLength -= length; } // 이미 있는 key이므로 해제한 바이트는 버림
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+
+        if (fields == keyStart.length) { growFields(); }
+        int field = fields++;
+        keyStart[field] = start;
+        keyLength[field] = length;
+        keyUnescaped[field] = escaped;
+        keyHash[field] = hash;
+        memberStart[field] = member;
+        memberEnd[field] = memberEndPos;
+        table[index] = field + 1;
+        tableIndex[field] = index;
+        if (fields * 2 > table.length) { rehash(); }
+    }
+
+    private void growFields() {
+        int capacity = fields * 2;
+        keyStart = Arrays.copyOf(keyStart, capacity);
+        keyLength = Arrays.copyOf(keyLength, capacity);
+        keyUnescaped = Arrays.copyOf(keyUnescaped, capacity);
+        keyHash = Arrays.copyOf(keyHash, capacity);
+        memberStart = Arrays.copyOf(memberStart, capacity);
+        memberEnd = Arrays.copyOf(memberEnd, capacity);
+        tableIndex = Arrays.copyOf(tableIndex, capacity);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int field = 0; field < fields; field++) {
+            int index = keyHash[field] & mask;
+            while (table[index] != 0) { index = (index + 1) & mask; }
+            table[index] = field + 1;
+            tableIndex[field] = index;
+        }
+    }
+
+    // pos가 여는 따옴표를 가리킬 때 호출, 닫는 따옴표 다음으로 이동함. escape 문자가 있었는지 반환
+    private boolean skipString() {
+        boolean hasEscape = false;
+        pos++;
+        while (pos < end) {
+            byte c = data[pos];
+            if (c == '"') {
+                pos++;
+                return hasEscape;
+            }
+            if (c == '\\') {
+                hasEscape = true;
+                pos++;
+                if (pos < end && data[pos] == 'u') { // key의 escape를 해제할 때 실패하지 않도록 16진수 4자리인지 확인
+                    if (!JsonFieldExtractor.isUnicodeEscape(data, pos, end)) { throw new ArrayIndexOutOfBoundsException(pos); }
+                    pos += 4;
+                }
+            }
+            pos++;
+        }
+        throw new ArrayIndexOutOfBoundsException(pos);
+    }
+
+    private void skipValue() {
+        byte c = data[pos];
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') { // 중첩된 객체와 배열은 깊이만 세면서 건너뜀
+            int depth = 0;
+            while (pos < end) {
+                c = data[pos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        pos++;
+                        return;
+                    }
+                }
+                pos++;
+            }
+            throw new ArrayIndexOutOfBoundsException(pos);
+        } else { // 숫자, true, false, null
+            int literalStart = pos;
+            while (pos < end) {
+                c = data[pos];
+                if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) { break; }
+                pos++;
+            }
+            if (pos == literalStart) { throw new ArrayIndexOutOfBoundsException(pos); } // 값이 비어있음
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(data[pos])) { pos++; }
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,66 @@
+package yelp.dp.Common;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+// mapper가 shuffle로 보내는 json 레코드에서 결과에 필요한 최상위 필드만 남기는 도구
+// -D projection.<레코드>=필드1,필드2,... 로 설정하며, 설정하지 않으면 기존과 같이 모든 필드를 보냄
+// - projection.user : SearchUserHomeState의 유저 레코드 (user_id 필수, friends는 항상 제외되므로 지정할 수 없음)
+// - projection.review : ReviewDataset의 리뷰 레코드 (business_id 필수)
+// - projection.mergeJson : MergeJson의 모든 입력 레코드 (병합키 필수)
+// 필드는 원래 순서대로 원본 바이트 그대로 남김 (레코드에 없는 필드는 생략)
+public class JsonProjection {
+    public static final String PREFIX = "projection.";
+
+    private final String name;
+    private final String[] fields;
+    private final JsonFieldExtractor extractor;
+
+    private JsonProjection(String name, String[] fields) {
+        this.name = name;
+        this.fields = fields;
+        this.extractor = new JsonFieldExtractor(fields);
+    }
+
+    // 설정된 projection (없으면 null)
+    // required는 잡이 읽는 필드라서 반드시 남겨야 하고, removed는 잡이 항상 지우는 필드라서 남길 수 없음
+    public static JsonProjection get(Configuration conf, String name, String[] required, String... removed) {
+        String spec = conf.get(PREFIX + name);
+        if (spec == null) { return null; }
+        String[] fields = conf.getTrimmedStrings(PREFIX + name);
+        Set<String> names = new HashSet<String>();
+        for (String field : fields) {
+            if (field.isEmpty() || !names.add(field)) {
+                throw new IllegalArgumentException(PREFIX + name + " has an empty or duplicate field: " + spec);
+            }
+        }
+        for (String field : required) {
+            if (!names.contains(field)) {
+                throw new IllegalArgumentException(PREFIX + name + " must keep '" + field + "' (the job reads " + Arrays.toString(required) + "): " + spec);
+            }
+        }
+        for (String field : removed) {
+            if (names.contains(field)) {
+                throw new IllegalArgumentException(PREFIX + name + " cannot keep '" + field + "' (the job always removes it): " + spec);
+            }
+        }
+        return new JsonProjection(name, fields);
+    }
+
+    // value에서 설정된 필드만 남긴 json을 out에 저장 (json이 아니면 false)
+    public boolean project(Text value, Text out) {
+        if (!extractor.parse(value)) { return false; }
+        extractor.writeFound(out);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return PREFIX + name + "=" + Arrays.toString(fields);
+    }
+}
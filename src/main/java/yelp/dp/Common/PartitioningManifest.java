@@ -0,0 +1,176 @@
+package yelp.dp.Common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// 결과 폴더의 part 파일이 어떤 json 필드(key)로 나뉘고 정렬되었는지 기록하는 _PARTITIONING 파일
+// 각 part 파일이 key의 바이트 순서로 정렬되어 있고, 같은 key는 항상 같은 번호의 part 파일에 있다는 뜻이며,
+// 다음 잡은 이 파일을 비교해서 입력들이 같은 방식으로 나뉘었는지(co-partitioned) 확인할 수 있음 (ex. MergeJson의 map-side join)
+// 형식 (한 줄에 "이름=값"): key, partitions(part 파일 수), partitioner(Partitioner 클래스), partitionFile(TotalOrderPartitioner의 경계 파일, 선택),
+//                            partitionDigest(경계 파일에 있는 경계값의 MD5, 선택)
+// 경계 파일은 다음 실행에서 같은 경로에 다시 쓰일 수 있으므로 co-partition 여부는 경로가 아니라 partitionDigest로 비교함
+public class PartitioningManifest {
+    public static final String NAME = "_PARTITIONING"; // '_'로 시작하므로 FileInputFormat은 입력으로 읽지 않음
+
+    public final String key;
+    public final int partitions;
+    public final String partitioner;
+    public final String partitionFile; // 없으면 null
+    public final String partitionDigest; // 없으면 null
+
+    public PartitioningManifest(String key, int partitions, String partitioner, String partitionFile, String partitionDigest) {
+        this.key = key;
+        this.partitions = partitions;
+        this.partitioner = partitioner;
+        this.partitionFile = partitionFile;
+        this.partitionDigest = partitionDigest;
+    }
+
+    // reduce 잡이 끝난 후 결과 폴더에 manifest를 기록함 (key는 잡의 map output key가 된 json 필드)
+    // hot key를 salting한 잡은 같은 key가 여러 part 파일에 나뉘므로 기록하지 않음
+    public static void record(Job job, String key, Path output) throws IOException, ClassNotFoundException {
+        Configuration conf = job.getConfiguration();
+        if (job.getNumReduceTasks() < 1 || conf.get(SkewedKeys.HOT_KEYS) != null) { return; }
+
+        String partitioner = job.getPartitionerClass().getName();
+        String partitionFile = null;
+        String partitionDigest = null;
+        if (partitioner.equals(TotalOrderPartitioner.class.getName())) {
+            partitionFile = TotalOrderPartitioner.getPartitionFile(conf);
+            partitionDigest = digest(conf, new Path(partitionFile));
+        }
+        new PartitioningManifest(key, job.getNumReduceTasks(), partitioner, partitionFile, partitionDigest).write(conf, output);
+    }
+
+    // 경계 파일의 key class와 경계값(직렬화한 key)을 순서대로 합친 MD5
+    // SequenceFile의 sync marker는 파일마다 다르므로 파일 전체가 아니라 key만 사용함 (같은 경계값이면 다시 써도 같은 값)
+    static String digest(Configuration conf, Path partitionFile) throws IOException {
+        MessageDigest digest = MD5Hash.getDigester();
+        SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(partitionFile));
+        try {
+            digest.update(reader.getKeyClassName().getBytes(StandardCharsets.UTF_8));
+            Writable boundary = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+            DataOutputBuffer bytes = new DataOutputBuffer();
+            while (reader.next(boundary)) {
+                bytes.reset();
+                boundary.write(bytes);
+                digest.update(bytes.getData(), 0, bytes.getLength());
+            }
+        } finally {
+            reader.close();
+        }
+        return new MD5Hash(digest.digest()).toString();
+    }
+
+    public void write(Configuration conf, Path dir) throws IOException {
+        Path file = new Path(dir, NAME);
+        OutputStream out = file.getFileSystem(conf).create(file, true);
+        try {
+            StringBuilder builder = new StringBuilder();
+            builder.append("key=").append(key).append('\n');
+            builder.append("partitions=").append(partitions).append('\n');
+            builder.append("partitioner=").append(partitioner).append('\n');
+            if (partitionFile != null) { builder.append("partitionFile=").append(partitionFile).append('\n'); }
+            if (partitionDigest != null) { builder.append("partitionDigest=").append(partitionDigest).append('\n'); }
+            out.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    // 폴더에 manifest가 없으면 null
+    public static PartitioningManifest read(Configuration conf, Path dir) throws IOException {
+        Path file = new Path(dir, NAME);
+        FileSystem fs = file.getFileSystem(conf);
+        if (!fs.exists(file)) { return null; }
+
+        String key = null;
+        String partitioner = null;
+        String partitionFile = null;
+        String partitionDigest = null;
+        int partitions = -1;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int equals = line.indexOf('=');
+                if (equals < 0) { continue; }
+                String name = line.substring(0, equals);
+                String value = line.substring(equals + 1);
+                if (name.equals("key")) {
+                    key = value;
+                } else if (name.equals("partitions")) {
+                    partitions = Integer.parseInt(value);
+                } else if (name.equals("partitioner")) {
+                    partitioner = value;
+                } else if (name.equals("partitionFile")) {
+                    partitionFile = value;
+                } else if (name.equals("partitionDigest")) {
+                    partitionDigest = value;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (key == null || partitions < 1 || partitioner == null) {
+            throw new IOException("Incomplete " + file);
+        }
+        return new PartitioningManifest(key, partitions, partitioner, partitionFile, partitionDigest);
+    }
+
+    // 모든 폴더가 key로 같은 방식으로 나뉘어 있으면 그 manifest를, 아니면 이유를 출력하고 null을 반환
+    public static PartitioningManifest common(Configuration conf, String key, Path... dirs) throws IOException {
+        PartitioningManifest first = null;
+        for (Path dir : dirs) {
+            PartitioningManifest manifest = read(conf, dir);
+            if (manifest == null) {
+                System.out.println("No " + NAME + " in " + dir + ".");
+                return null;
+            }
+            if (!manifest.key.equals(key)) {
+                System.out.println(dir + " is partitioned on '" + manifest.key + "', not '" + key + "'.");
+                return null;
+            }
+            if (first == null) {
+                first = manifest;
+            } else if (!first.coPartitionedWith(manifest)) {
+                System.out.println(dir + " (" + manifest + ") is not partitioned like " + dirs[0] + " (" + first + ").");
+                return null;
+            }
+        }
+        return first;
+    }
+
+    // 같은 key가 항상 같은 번호의 part 파일에 있는지 (partition이 하나면 Partitioner는 상관없음)
+    // 경계 파일을 쓰는 Partitioner는 경계값이 같아야 하며, digest가 없는 이전 manifest는 경계를 확인할 수 없으므로 다르게 봄
+    public boolean coPartitionedWith(PartitioningManifest other) {
+        if (!key.equals(other.key) || partitions != other.partitions) { return false; }
+        if (partitions == 1) { return true; }
+        if (!partitioner.equals(other.partitioner)) { return false; }
+        if (partitionFile == null && other.partitionFile == null) { return true; }
+        return partitionDigest != null && partitionDigest.equals(other.partitionDigest);
+    }
+
+    @Override
+    public String toString() {
+        return "key=" + key + ", partitions=" + partitions + ", partitioner=" + partitioner
+                + (partitionFile == null ? "" : ", partitionFile=" + partitionFile)
+                + (partitionDigest == null ? "" : ", partitionDigest=" + partitionDigest);
+    }
+}
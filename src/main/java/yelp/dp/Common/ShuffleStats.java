@@ -0,0 +1,64 @@
+package yelp.dp.Common;
+
+// 하둡 라이브러리
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.FileSystemCounter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormatCounter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormatCounter;
+
+// 잡이 끝난 후 shuffle과 파일시스템(로컬, hdfs) 입출력 관련 counter를 요약해서 출력함
+public class ShuffleStats {
+    public static void print(Job job, Counters counters) {
+        if (counters == null) { return; }
+
+        System.out.println("[" + job.getJobName() + "] shuffle and I/O summary");
+        print(counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS));
+        print(counters.findCounter(TaskCounter.MAP_OUTPUT_BYTES));
+        print(counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES));
+        print(counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES));
+        print(counters.findCounter(TaskCounter.SPILLED_RECORDS));
+
+        // map 결과를 압축했다면 압축 전후의 크기를 비교
+        long mapOutputBytes = counters.findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue();
+        long materializedBytes = counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue();
+        if (job.getConfiguration().getBoolean("mapreduce.map.output.compress", false) && mapOutputBytes > 0) {
+            System.out.printf("    map output: %,d bytes -> %,d bytes compressed (%.1f%%)%n",
+                    mapOutputBytes, materializedBytes, 100.0 * materializedBytes / mapOutputBytes);
+        }
+
+        // 파일시스템별 읽고 쓴 바이트 (ex. FILE: BYTES_READ, HDFS: BYTES_WRITTEN)
+        for (Counter counter : counters.getGroup(FileSystemCounter.class.getName())) {
+            if (counter.getName().endsWith("BYTES_READ") || counter.getName().endsWith("BYTES_WRITTEN")) {
+                if (counter.getValue() > 0) { print(counter); }
+            }
+        }
+        // 입력, 결과 파일의 바이트 (MultipleInputs로 읽은 입력은 집계되지 않음)
+        for (Counter counter : new Counter[] {counters.findCounter(FileInputFormatCounter.BYTES_READ), counters.findCounter(FileOutputFormatCounter.BYTES_WRITTEN)}) {
+            if (counter.getValue() > 0) { print(counter); }
+        }
+
+        // TaggedValue를 사용한 잡이라면 기존 문자열 형식과의 크기 비교를 출력
+        CounterGroup tagged = counters.getGroup(TaggedValue.ShuffleCounter.class.getName());
+        long textBytes = tagged.findCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES.name()).getValue();
+        long binaryBytes = tagged.findCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES.name()).getValue();
+        if (textBytes > 0) {
+            System.out.printf("    map output values: %,d bytes as text -> %,d bytes as binary (%.1f%%)%n",
+                    textBytes, binaryBytes, 100.0 * binaryBytes / textBytes);
+        }
+
+        // hot key를 나누어 처리한 잡이라면 skew 관련 counter를 출력
+        if (counters.findCounter(SkewedKeys.Counter.SALTED_GROUPS).getValue() > 0) {
+            for (SkewedKeys.Counter counter : SkewedKeys.Counter.values()) {
+                print(counters.findCounter(counter));
+            }
+        }
+    }
+
+    private static void print(Counter counter) {
+        System.out.printf("    %-32s %,d%n", counter.getDisplayName(), counter.getValue());
+    }
+}
@@ -0,0 +1,261 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import yelp.dp.Engine.JobRunner;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// 레코드가 몰리는 key(hot key)를 여러 reducer로 나누어 처리하는 도구 (salting)
+// - driver: 입력을 샘플링하거나 설정된 목록으로 hot key를 정하고 잡에 SaltPartitioner를 설정함
+// - mapper: hot key 뒤에 "\0<salt 번호>"를 붙여서 레코드를 salt마다 나눔 (다른 쪽 입력은 모든 salt로 복제할 수 있음)
+// - reducer: salt를 떼어내고 부분 결과를 만듦
+//   부분 결과를 그대로 사용할 수 없는 잡은 PARTIALS named output에 map output과 같은 형식으로 남기고,
+//   mergePartials()의 2단계 잡이 같은 reducer로 hot key별로 다시 합침
+// key에 0 byte가 없다고 가정함 (json의 id 필드)
+public class SkewedKeys {
+    public static final String HOT_SHARE = "skew.hotShare"; // 샘플에서 이 비율 이상을 차지하는 key를 hot key로 봄 (기본값 0.5 / reducer 수)
+    public static final String MIN_SAMPLES = "skew.minSamples"; // hot key로 보기 위한 최소 샘플 수 (기본값 10)
+    public static final String SAMPLE = "skew.sample"; // 샘플링 pre-pass를 사용할지 (기본값 true, false면 설정된 목록만 사용)
+    public static final String SALTS = "skew.salts"; // hot key 하나를 나눌 reducer 수 (기본값 reducer 수)
+    public static final String PARTIALS = "skew"; // 부분 결과의 named output 이름이자 결과 폴더 안의 하위 폴더 이름
+
+    static final String HOT_KEYS = "skew.resolvedHotKeys"; // driver가 정한 hot key 목록 (task에 전달)
+    static final String RESOLVED_SALTS = "skew.resolvedSalts";
+    static final String PARTITIONER = "skew.partitioner"; // salt가 없는 key에 사용할 원래 Partitioner
+
+    public enum Counter {
+        HOT_KEYS, // hot key 수 (driver가 기록하지 못하므로 reducer에서 salt 0 그룹의 수로 셈)
+        SALTED_RECORDS, // salt를 붙인 map output 레코드 수
+        REPLICATED_RECORDS, // 모든 salt로 복제하면서 추가된 map output 레코드 수
+        SALTED_GROUPS, // salt가 붙은 reduce 그룹 수
+        PARTIAL_RECORDS // 2단계에서 합칠 부분 결과 레코드 수
+    }
+
+    private final Set<Text> hotKeys = new HashSet<Text>();
+    private final byte[][] suffixes;
+    private long next = 0; // round robin으로 고를 다음 salt
+
+    public SkewedKeys(Configuration conf) {
+        for (String key : conf.getTrimmedStrings(HOT_KEYS)) {
+            hotKeys.add(new Text(key));
+        }
+        suffixes = new byte[conf.getInt(RESOLVED_SALTS, 1)][];
+        for (int salt = 0; salt < suffixes.length; salt++) {
+            suffixes[salt] = ("\0" + salt).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // <scope>.skew가 true이고 reducer가 여러 개이면 hot key를 정하고 잡에 salting을 설정함
+    // hot key는 <scope>.hotKeys에 설정한 목록과 inputs의 field를 샘플링해서 찾은 key를 합친 것
+    public static void configure(Job job, String scope, String field, Path... inputs) throws IOException, InterruptedException, ClassNotFoundException {
+        Configuration conf = job.getConfiguration();
+        int reduces = job.getNumReduceTasks();
+        if (!conf.getBoolean(scope + ".skew", false) || reduces < 2) { return; }
+
+        Set<String> hot = new TreeSet<String>(conf.getTrimmedStringCollection(scope + ".hotKeys"));
+        if (conf.getBoolean(SAMPLE, true)) {
+            Map<Text, Integer> counts = new HashMap<Text, Integer>();
+            int total = 0;
+            for (Path input : inputs) {
+                List<Text> samples = JsonKeySampler.sample(conf, input, field);
+                for (Text sample : samples) {
+                    Integer count = counts.get(sample);
+                    counts.put(sample, count == null ? 1 : count + 1);
+                }
+                total += samples.size();
+            }
+            double threshold = Math.max(conf.getInt(MIN_SAMPLES, 10), conf.getDouble(HOT_SHARE, 0.5 / reduces) * total);
+            for (Map.Entry<Text, Integer> entry : counts.entrySet()) {
+                if (entry.getValue() >= threshold) {
+                    System.out.printf("Hot %s %s: %.1f%% of %,d sampled records.%n", field, entry.getKey(), 100.0 * entry.getValue() / total, total);
+                    hot.add(entry.getKey().toString());
+                }
+            }
+        }
+        if (hot.isEmpty()) {
+            System.out.println("No hot " + field + " found.");
+            return;
+        }
+
+        int salts = Math.max(2, Math.min(conf.getInt(SALTS, reduces), reduces)); // reducer 수보다 많이 나누어도 같은 reducer로 모임
+        System.out.println("Salt " + hot.size() + " hot " + field + "(s) across " + salts + " reducers.");
+        conf.setStrings(HOT_KEYS, hot.toArray(new String[hot.size()]));
+        conf.setInt(RESOLVED_SALTS, salts);
+        conf.setClass(PARTITIONER, job.getPartitionerClass(), Partitioner.class);
+        job.setPartitionerClass(SaltPartitioner.class);
+        MultipleOutputs.addNamedOutput(job, PARTIALS, SequenceFileOutputFormat.class, job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+    }
+
+    public boolean isHot(Text key) {
+        return !hotKeys.isEmpty() && hotKeys.contains(key);
+    }
+
+    public int salts() {
+        return suffixes.length;
+    }
+
+    // key 뒤에 salt를 붙임
+    public void salt(Text key, int salt) {
+        key.append(suffixes[salt], 0, suffixes[salt].length);
+    }
+
+    // hot key라면 다음 salt를 붙이고 true를 반환
+    public boolean saltNext(Text key, Mapper<?, ?, ?, ?>.Context context) {
+        if (!isHot(key)) { return false; }
+        salt(key, (int) (next++ % suffixes.length));
+        context.getCounter(Counter.SALTED_RECORDS).increment(1);
+        return true;
+    }
+
+    // hot key라면 모든 salt의 key로 복제해서 출력하고 true를 반환 (key는 원래대로 돌려놓음)
+    public <V> boolean replicate(Text key, V value, Mapper<?, ?, Text, V>.Context context) throws IOException, InterruptedException {
+        return replicate(key, key, value, context);
+    }
+
+    // TaggedKey를 사용하는 잡의 replicate (salt는 원래 key에 붙이고 tag는 그대로 둠)
+    public <V> boolean replicate(TaggedKey key, V value, Mapper<?, ?, TaggedKey, V>.Context context) throws IOException, InterruptedException {
+        return replicate(key.getKey(), key, value, context);
+    }
+
+    private <K, V> boolean replicate(Text key, K outputKey, V value, Mapper<?, ?, K, V>.Context context) throws IOException, InterruptedException {
+        if (!isHot(key)) { return false; }
+        int length = key.getLength();
+        for (int salt = 0; salt < suffixes.length; salt++) {
+            key.set(key.getBytes(), 0, length);
+            salt(key, salt);
+            context.write(outputKey, value);
+        }
+        key.set(key.getBytes(), 0, length);
+        context.getCounter(Counter.REPLICATED_RECORDS).increment(suffixes.length - 1);
+        return true;
+    }
+
+    // salt가 붙은 key라면 salt를 떼어내고 true를 반환
+    // reducer의 key는 값을 읽는 동안 다시 채워지므로 복사본에 사용해야 함
+    public static boolean unsalt(Text key, Reducer<?, ?, ?, ?>.Context context) {
+        int separator = separator(key);
+        if (separator < 0) { return false; }
+        if (separator == key.getLength() - 2 && key.getBytes()[separator + 1] == '0') { // salt 0
+            context.getCounter(Counter.HOT_KEYS).increment(1);
+        }
+        context.getCounter(Counter.SALTED_GROUPS).increment(1);
+        key.set(key.getBytes(), 0, separator);
+        return true;
+    }
+
+    // salt 앞의 0 byte 위치 (salt가 없으면 -1)
+    private static int separator(Text key) {
+        byte[] bytes = key.getBytes();
+        int i = key.getLength() - 1;
+        while (i > 0 && bytes[i] >= '0' && bytes[i] <= '9') { i--; }
+        return i > 0 && i < key.getLength() - 1 && bytes[i] == 0 ? i : -1;
+    }
+
+    // salt가 붙은 key는 원래 key의 hash에 salt를 더해서 salt마다 다른 reducer로 보내고, 나머지는 원래 Partitioner를 사용함
+    // (TotalOrderPartitioner처럼 key 순서로 나누는 Partitioner는 salt만 다른 key들을 같은 reducer로 보내기 때문)
+    // TaggedKey를 사용하는 잡은 tag를 뺀 원래 key의 salt를 봄
+    public static class SaltPartitioner extends Partitioner<Object, Object> implements Configurable {
+        Configuration conf;
+        Partitioner<Object, Object> partitioner;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            partitioner = ReflectionUtils.newInstance(conf.getClass(PARTITIONER, HashPartitioner.class, Partitioner.class), conf);
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+
+        @Override
+        public int getPartition(Object key, Object value, int numPartitions) {
+            Text text = key instanceof TaggedKey ? ((TaggedKey) key).getKey() : (Text) key;
+            int separator = separator(text);
+            if (separator < 0) { return partitioner.getPartition(key, value, numPartitions); }
+
+            byte[] bytes = text.getBytes();
+            int salt = 0;
+            for (int i = separator + 1; i < text.getLength(); i++) {
+                salt = salt * 10 + (bytes[i] - '0');
+            }
+            return ((WritableComparator.hashBytes(bytes, separator) & Integer.MAX_VALUE) + salt) % numPartitions;
+        }
+    }
+
+    // reducer가 부분 결과를 남길 때 사용 (결과 폴더의 PARTIALS 하위 폴더에 기록됨)
+    public static <K, V> void writePartial(MultipleOutputs<?, ?> outputs, K key, V value, Reducer<?, ?, ?, ?>.Context context) throws IOException, InterruptedException {
+        outputs.write(PARTIALS, key, value, PARTIALS + "/part");
+        context.getCounter(Counter.PARTIAL_RECORDS).increment(1);
+    }
+
+    // 1단계 잡의 결과 폴더에 부분 결과가 있으면 2단계 잡에서 hot key별로 다시 합치고,
+    // 결과 파일을 1단계 결과 폴더에 part-s-xxxxx로 옮김 (성공하거나 부분 결과가 없으면 true)
+    // 2단계 잡은 driver의 설정(conf)으로 만들고 identity mapper와 1단계 잡의 reducer를 사용함 (hot key가 없으므로 salting 없이 동작)
+    public static boolean mergePartials(Configuration conf, Job stageJob, Path output) throws IOException, InterruptedException, ClassNotFoundException {
+        Path partials = new Path(output, PARTIALS);
+        FileSystem fs = partials.getFileSystem(conf);
+        if (!fs.exists(partials)) { return true; }
+
+        Job job = Job.getInstance(conf, stageJob.getJobName() + " (skew merge)");
+        job.setJarByClass(stageJob.getReducerClass());
+        job.setInputFormatClass(SequenceFileInputFormat.class);
+        job.setMapperClass(Mapper.class); // 부분 결과를 그대로 전달
+        job.setReducerClass(stageJob.getReducerClass());
+        job.setPartitionerClass(HashPartitioner.class);
+        job.setNumReduceTasks(1); // hot key 수만큼의 작은 입력
+
+        job.setMapOutputKeyClass(stageJob.getMapOutputKeyClass());
+        job.setMapOutputValueClass(stageJob.getMapOutputValueClass());
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(Text.class);
+
+        Path mergeOutput = new Path(output.getParent(), output.getName() + "_" + PARTIALS);
+        if (fs.exists(mergeOutput)) { fs.delete(mergeOutput, true); }
+        FileInputFormat.setInputPaths(job, partials);
+        FileOutputFormat.setOutputPath(job, mergeOutput);
+        Counters counters = JobRunner.run(job);
+        if (counters == null) { return false; }
+        ShuffleStats.print(job, counters);
+
+        for (FileStatus file : fs.listStatus(mergeOutput)) {
+            String name = file.getPath().getName();
+            if (name.startsWith("part-r-")) {
+                fs.rename(file.getPath(), new Path(output, "part-s-" + name.substring("part-r-".length())));
+            }
+        }
+        fs.delete(mergeOutput, true);
+        fs.delete(partials, true);
+        return true;
+    }
+}
@@ -0,0 +1,223 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+// mapper, combiner, reducer에서 단계(stage)별로 기록하는 counter
+// counter group은 "stage." + 클래스 이름 (ex. stage.VisitedUsersByBusiness.ReviewMapper)이며 다음 값을 기록함
+// - RECORDS_IN, BYTES_IN, RECORDS_OUT, BYTES_OUT : 단계의 입출력 레코드 수와 바이트 (map 결과는 직렬화 전 본문의 크기)
+// - PARSE_MILLIS : json 파싱에 걸린 시간
+// - MALFORMED_RECORDS : json으로 파싱할 수 없는 줄, MISSING_<필드> : 필드가 없거나 null인 레코드 수
+// - SKIPPED_RECORDS : metrics.skipMalformed=true일 때 task를 실패시키지 않고 건너뛴 레코드 수
+// - GROUPS_1, GROUPS_2_TO_10, ... : reduce 그룹 크기(값의 개수)의 분포
+// 가장 큰 reduce 그룹은 reducer만 task마다 metrics.largestKeys개를 <output>/_largestKeys/<단계>-<partition> 파일로 남기고 RunReport가 합친 뒤 지움
+// (key 값을 counter 이름으로 쓰면 task 수만큼 counter가 늘어나서 잡의 counter 한도를 넘으므로 counter로 기록하지 않고, combiner는 남기지 않음)
+// 레코드마다 counter를 증가시키지 않고 task 안의 필드에 모았다가 cleanup에서 flush로 한 번에 옮김
+public class StageMetrics {
+    public static final String GROUP_PREFIX = "stage.";
+    public static final String LARGEST_KEYS_DIR = "_largestKeys"; // '_'로 시작하므로 FileInputFormat은 입력으로 읽지 않음
+    public static final String SKIP_MALFORMED = "metrics.skipMalformed"; // 잘못된 레코드를 세고 건너뜀 (기본값 false: 기존과 같이 task 실패)
+    public static final String LARGEST_KEYS = "metrics.largestKeys"; // reduce task마다 기록할 가장 큰 그룹 수 (기본값 3, 0이면 기록하지 않음)
+
+    // 그룹 크기 구간의 상한 (마지막 구간은 상한 없음)
+    static final long[] GROUP_LIMITS = {1, 10, 100, 1000, 10000, 100000};
+    static final String[] GROUP_NAMES = {"GROUPS_1", "GROUPS_2_TO_10", "GROUPS_11_TO_100", "GROUPS_101_TO_1K",
+            "GROUPS_1K_TO_10K", "GROUPS_10K_TO_100K", "GROUPS_OVER_100K"};
+
+    private final Class<?> stage;
+    private final String group;
+    private final boolean skipMalformed;
+    private long recordsIn, bytesIn, recordsOut, bytesOut, parseNanos, malformed, skipped;
+    private String[] fieldNames = new String[0];
+    private long[] missing = new long[0];
+    private final long[] groupSizes = new long[GROUP_NAMES.length];
+    private final String[] largestKeys; // 그룹 크기 내림차순
+    private final long[] largestSizes;
+    private int largestCount = 0;
+
+    // 클래스 이름으로 단계 이름을 정함 (ex. VisitedUsersByBusiness$ReviewMapper -> VisitedUsersByBusiness.ReviewMapper)
+    public StageMetrics(Class<?> stage, Configuration conf) {
+        this.stage = stage;
+        String name = stage.getName();
+        group = GROUP_PREFIX + name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+        skipMalformed = conf.getBoolean(SKIP_MALFORMED, false);
+        int largest = conf.getInt(LARGEST_KEYS, 3);
+        largestKeys = new String[largest];
+        largestSizes = new long[largest];
+    }
+
+    // 입력 한 줄을 파싱하면서 입력 크기, 파싱 시간, 잘못된 줄과 빠진 필드를 셈
+    public boolean parse(JsonFieldExtractor extractor, Text value) {
+        recordsIn++;
+        bytesIn += value.getLength();
+        long begin = System.nanoTime();
+        boolean parsed = extractor.parse(value);
+        parseNanos += System.nanoTime() - begin;
+        if (!parsed) {
+            malformed++;
+            return false;
+        }
+        if (missing.length != extractor.size()) {
+            missing = new long[extractor.size()];
+            fieldNames = new String[extractor.size()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = "MISSING_" + extractor.getFieldName(i);
+            }
+        }
+        for (int i = 0; i < missing.length; i++) {
+            if (!extractor.hasValue(i)) { missing[i]++; }
+        }
+        return true;
+    }
+
+    // 파싱하지 않고 읽은 입력의 바이트 (레코드 수는 group으로 셈)
+    public void inputBytes(long bytes) {
+        bytesIn += bytes;
+    }
+
+    public void addParseNanos(long nanos) {
+        parseNanos += nanos;
+    }
+
+    public void output(long bytes) {
+        recordsOut++;
+        bytesOut += bytes;
+    }
+
+    // 처리할 수 없는 레코드 (기본값은 기존과 같이 예외로 task를 실패시킴)
+    public void invalid(String message) throws IOException {
+        if (!skipMalformed) {
+            throw new IOException(message);
+        }
+        skipped++;
+    }
+
+    // reduce 그룹 하나 (그룹의 값 개수를 입력 레코드 수에 더함, key는 가장 큰 그룹에 들어갈 때만 문자열로 바꿈)
+    public void group(Object key, long size) {
+        recordsIn += size;
+        int bucket = 0;
+        while (bucket < GROUP_LIMITS.length && size > GROUP_LIMITS[bucket]) {
+            bucket++;
+        }
+        groupSizes[bucket]++;
+
+        if (largestKeys.length == 0 || (largestCount == largestKeys.length && size <= largestSizes[largestCount - 1])) { return; }
+        int position = largestCount < largestKeys.length ? largestCount++ : largestCount - 1;
+        while (position > 0 && largestSizes[position - 1] < size) { // 삽입 정렬
+            largestKeys[position] = largestKeys[position - 1];
+            largestSizes[position] = largestSizes[position - 1];
+            position--;
+        }
+        largestKeys[position] = key.toString();
+        largestSizes[position] = size;
+    }
+
+    // 단계마다 따로 세는 값의 counter (ex. 알 수 없는 tag, 레코드마다 세는 값은 필드에 모았다가 cleanup에서 더함)
+    public Counter counter(TaskInputOutputContext<?, ?, ?, ?> context, String name) {
+        return context.getCounter(group, name);
+    }
+
+    // 모은 값을 counter로 옮기고 초기화 (0인 값은 counter를 만들지 않음)
+    public void flush(TaskInputOutputContext<?, ?, ?, ?> context) {
+        increment(context, "RECORDS_IN", recordsIn);
+        increment(context, "BYTES_IN", bytesIn);
+        increment(context, "RECORDS_OUT", recordsOut);
+        increment(context, "BYTES_OUT", bytesOut);
+        increment(context, "PARSE_MILLIS", parseNanos / 1000000);
+        increment(context, "MALFORMED_RECORDS", malformed);
+        increment(context, "SKIPPED_RECORDS", skipped);
+        for (int i = 0; i < missing.length; i++) {
+            increment(context, fieldNames[i], missing[i]);
+            missing[i] = 0;
+        }
+        for (int i = 0; i < groupSizes.length; i++) {
+            increment(context, GROUP_NAMES[i], groupSizes[i]);
+            groupSizes[i] = 0;
+        }
+        if (largestCount > 0 && isReducer(context)) { writeLargestKeys(context); }
+        recordsIn = bytesIn = recordsOut = bytesOut = parseNanos = malformed = skipped = 0;
+        largestCount = 0;
+    }
+
+    // combiner는 map task나 reduce task의 병합 중에도 실행되므로 잡의 reducer 클래스인지로 구분함
+    private boolean isReducer(TaskInputOutputContext<?, ?, ?, ?> context) {
+        try {
+            return context.getTaskAttemptID().getTaskType() == TaskType.REDUCE && context.getReducerClass() == stage;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // 가장 큰 그룹을 (key, 그룹 크기) 순서로 씀 (task를 다시 실행하면 덮어씀, 진단용 기록이므로 실패해도 task는 계속함)
+    private void writeLargestKeys(TaskInputOutputContext<?, ?, ?, ?> context) {
+        Path output = FileOutputFormat.getOutputPath(context);
+        if (output == null) { return; }
+        Path file = new Path(new Path(output, LARGEST_KEYS_DIR),
+                String.format("%s-%05d", group.substring(GROUP_PREFIX.length()), context.getTaskAttemptID().getTaskID().getId()));
+        try {
+            FSDataOutputStream out = file.getFileSystem(context.getConfiguration()).create(file, true);
+            try {
+                for (int i = 0; i < largestCount; i++) {
+                    Text.writeString(out, largestKeys[i]);
+                    WritableUtils.writeVLong(out, largestSizes[i]);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write the largest keys to " + file + ": " + e);
+        }
+    }
+
+    // 잡이 끝난 뒤 reducer들이 남긴 가장 큰 그룹을 읽고 폴더를 지움: 단계 -> (key -> 그룹 크기, 여러 task에 나뉜 key는 합침)
+    public static Map<String, Map<String, Long>> collectLargestKeys(Configuration conf, Path output) throws IOException {
+        Map<String, Map<String, Long>> stages = new TreeMap<String, Map<String, Long>>();
+        if (output == null) { return stages; }
+        Path dir = new Path(output, LARGEST_KEYS_DIR);
+        FileSystem fs = dir.getFileSystem(conf);
+        if (!fs.exists(dir)) { return stages; }
+        for (FileStatus file : fs.listStatus(dir)) {
+            String name = file.getPath().getName();
+            int dash = name.lastIndexOf('-');
+            if (dash < 0 || name.startsWith(".")) { continue; } // checksum 파일
+            String stage = name.substring(0, dash);
+            Map<String, Long> keys = stages.get(stage);
+            if (keys == null) {
+                keys = new TreeMap<String, Long>();
+                stages.put(stage, keys);
+            }
+            FSDataInputStream in = fs.open(file.getPath());
+            try {
+                while (in.getPos() < file.getLen()) {
+                    String key = Text.readString(in);
+                    long size = WritableUtils.readVLong(in);
+                    Long previous = keys.get(key);
+                    keys.put(key, (previous == null ? 0 : previous) + size);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        fs.delete(dir, true);
+        return stages;
+    }
+
+    private void increment(TaskInputOutputContext<?, ?, ?, ?> context, String name, long value) {
+        if (value != 0) { context.getCounter(group, name).increment(value); }
+    }
+}
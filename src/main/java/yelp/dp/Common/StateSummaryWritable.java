@@ -0,0 +1,101 @@
+package yelp.dp.Common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// 한 주(state)에 대한 가게 수와 카테고리별 가게 수의 부분 합계
+// mapper(in-mapper combining), combiner, reducer에서 서로 합칠 수 있으며, json 대신 바이너리로 shuffle됨
+// 카테고리는 StringDictionary의 id로 다루며, id를 index로 하는 long 배열에 개수를 저장함
+// 직렬화 형식: [vlong 가게 수][vint 0이 아닌 카테고리 수]([vint 이전 id와의 차이][vlong 가게 수])*
+public class StateSummaryWritable implements Writable {
+    private long count = 0;
+    private long[] categoryCounts = new long[64];
+    private int limit = 0; // 사용 중인 가장 큰 id + 1
+
+    public long getCount() {
+        return count;
+    }
+
+    // getCategoryCount에 넘길 수 있는 id의 상한 (exclusive)
+    public int getCategoryLimit() {
+        return limit;
+    }
+
+    public long getCategoryCount(int categoryId) {
+        return categoryId < limit ? categoryCounts[categoryId] : 0;
+    }
+
+    public void clear() {
+        Arrays.fill(categoryCounts, 0, limit, 0L);
+        count = 0;
+        limit = 0;
+    }
+
+    public void addBusiness() {
+        count++;
+    }
+
+    public void addCategory(int categoryId, long categoryCount) {
+        if (categoryId >= categoryCounts.length) {
+            categoryCounts = Arrays.copyOf(categoryCounts, Math.max(categoryCounts.length * 2, categoryId + 1));
+        }
+        categoryCounts[categoryId] += categoryCount;
+        if (categoryId >= limit) { limit = categoryId + 1; }
+    }
+
+    public void merge(StateSummaryWritable other) {
+        count += other.count;
+        for (int id = other.limit - 1; id >= 0; id--) { // 큰 id부터 더해서 배열 확장을 한 번만 함
+            if (other.categoryCounts[id] != 0) { addCategory(id, other.categoryCounts[id]); }
+        }
+    }
+
+    // write로 직렬화했을 때의 크기
+    public int serializedSize() {
+        int size = WritableUtils.getVIntSize(count);
+        int nonZero = 0;
+        int previous = 0;
+        for (int id = 0; id < limit; id++) {
+            if (categoryCounts[id] == 0) { continue; }
+            size += WritableUtils.getVIntSize(id - previous) + WritableUtils.getVIntSize(categoryCounts[id]);
+            previous = id;
+            nonZero++;
+        }
+        return size + WritableUtils.getVIntSize(nonZero);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVLong(out, count);
+        int nonZero = 0;
+        for (int id = 0; id < limit; id++) {
+            if (categoryCounts[id] != 0) { nonZero++; }
+        }
+        WritableUtils.writeVInt(out, nonZero);
+        int previous = 0;
+        for (int id = 0; id < limit; id++) {
+            if (categoryCounts[id] == 0) { continue; }
+            WritableUtils.writeVInt(out, id - previous);
+            WritableUtils.writeVLong(out, categoryCounts[id]);
+            previous = id;
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        clear();
+        count = WritableUtils.readVLong(in);
+        int nonZero = WritableUtils.readVInt(in);
+        int id = 0;
+        for (int i = 0; i < nonZero; i++) {
+            id += WritableUtils.readVInt(in);
+            addCategory(id, WritableUtils.readVLong(in));
+        }
+    }
+}
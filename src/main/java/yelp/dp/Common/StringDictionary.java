@@ -0,0 +1,100 @@
+package yelp.dp.Common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+// 문자열(주, 카테고리 등)을 0부터 시작하는 연속된 int id로 바꾸는 사전
+// 집계는 id를 index로 하는 primitive 배열에서 하고, 결과를 쓸 때만 id를 문자열로 되돌림
+// side file 형식: 한 줄에 하나의 문자열 (줄 번호 = id)
+public class StringDictionary {
+    public static final int NOT_FOUND = CompactStringMap.NOT_FOUND;
+
+    private final CompactStringMap ids = new CompactStringMap(64);
+    private final ArrayList<Text> texts = new ArrayList<Text>();
+    private final ArrayList<String> strings = new ArrayList<String>();
+
+    public int size() {
+        return texts.size();
+    }
+
+    // 문자열의 id를 반환하고, 없으면 새로운 id를 부여함
+    public int add(byte[] bytes, int offset, int length) {
+        int id = ids.get(bytes, offset, length);
+        if (id != NOT_FOUND) { return id; }
+        id = texts.size();
+        ids.put(bytes, offset, length, id);
+        Text text = new Text();
+        text.set(bytes, offset, length);
+        texts.add(text);
+        strings.add(text.toString());
+        return id;
+    }
+
+    public int add(Text value) {
+        return add(value.getBytes(), 0, value.getLength());
+    }
+
+    public int add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    // 없으면 NOT_FOUND 반환
+    public int lookup(byte[] bytes, int offset, int length) {
+        return ids.get(bytes, offset, length);
+    }
+
+    public int lookup(Text value) {
+        return ids.get(value);
+    }
+
+    public int lookup(String value) {
+        return ids.get(value);
+    }
+
+    public String getString(int id) {
+        return strings.get(id);
+    }
+
+    public Text getText(int id) {
+        return texts.get(id);
+    }
+
+    public void write(Configuration conf, Path path) throws IOException {
+        OutputStream out = path.getFileSystem(conf).create(path, true);
+        try {
+            for (Text text : texts) {
+                if (text.find("\n") >= 0) { throw new IOException("Dictionary entry contains a line break: " + text); }
+                out.write(text.getBytes(), 0, text.getLength());
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static StringDictionary read(Configuration conf, Path path) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        LineReader reader = new LineReader(path.getFileSystem(conf).open(path), conf);
+        try {
+            Text line = new Text();
+            while (reader.readLine(line) > 0) {
+                if (dictionary.lookup(line) != NOT_FOUND) {
+                    throw new IOException("Duplicate entry '" + line + "' in dictionary " + path);
+                }
+                dictionary.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return dictionary;
+    }
+}
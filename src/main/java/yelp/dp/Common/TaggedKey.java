@@ -0,0 +1,142 @@
+package yelp.dp.Common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+// reduce-side join을 위한 복합 key (원래의 key + 1byte tag)
+// 정렬은 (key, tag) 순서로 하고 partition과 grouping은 key만으로 하므로,
+// 하나의 reduce 그룹 안에서 tag가 작은 레코드가 항상 먼저 들어옴 (secondary sort)
+public class TaggedKey implements WritableComparable<TaggedKey> {
+    private final Text key = new Text();
+    private byte tag;
+
+    public TaggedKey() {
+    }
+
+    public TaggedKey(String key, byte tag) {
+        set(key, tag);
+    }
+
+    public void set(String key, byte tag) {
+        this.key.set(key);
+        this.tag = tag;
+    }
+
+    public void set(Text key, byte tag) {
+        this.key.set(key);
+        this.tag = tag;
+    }
+
+    public Text getKey() {
+        return key;
+    }
+
+    public byte getTag() {
+        return tag;
+    }
+
+    public void setTag(byte tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        key.write(out);
+        out.writeByte(tag);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        key.readFields(in);
+        tag = in.readByte();
+    }
+
+    @Override
+    public int compareTo(TaggedKey other) {
+        int result = key.compareTo(other.key);
+        return result != 0 ? result : Byte.compare(tag, other.tag);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TaggedKey)) { return false; }
+        TaggedKey that = (TaggedKey) other;
+        return tag == that.tag && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode() * 31 + tag;
+    }
+
+    @Override
+    public String toString() {
+        return key + "\t" + tag;
+    }
+
+    // 역직렬화 없이 (key, tag) 순서로 비교하는 정렬용 comparator
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(TaggedKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                int k1 = readVInt(b1, s1);
+                int k2 = readVInt(b2, s2);
+                int result = compareBytes(b1, s1 + n1, k1, b2, s2 + n2, k2);
+                if (result != 0) { return result; }
+                return Byte.compare(b1[s1 + n1 + k1], b2[s2 + n2 + k2]);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    // tag를 무시하고 key만 비교하는 grouping comparator
+    public static class GroupingComparator extends WritableComparator {
+        public GroupingComparator() {
+            super(TaggedKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                return compareBytes(b1, s1 + n1, readVInt(b1, s1), b2, s2 + n2, readVInt(b2, s2));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((TaggedKey) a).key.compareTo(((TaggedKey) b).key);
+        }
+    }
+
+    // tag와 상관없이 같은 key는 같은 reducer로 보내는 partitioner
+    public static class NaturalKeyPartitioner<V> extends Partitioner<TaggedKey, V> {
+        @Override
+        public int getPartition(TaggedKey key, V value, int numPartitions) {
+            return (key.getKey().hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+
+    static { // 정렬 시 기본 comparator로 raw comparator를 사용하도록 등록
+        WritableComparator.define(TaggedKey.class, new Comparator());
+    }
+}
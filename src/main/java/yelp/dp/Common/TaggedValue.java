@@ -0,0 +1,174 @@
+package yelp.dp.Common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 하둡 라이브러리
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+// reduce-side join에서 mapper의 output value로 사용하는 값 (1byte tag + UTF-8 본문 + 개수)
+// "business, NV"처럼 문자열로 tag를 붙이고 reducer에서 split하던 방식을 대체함
+// 개수는 combiner가 같은 값을 합칠 때 사용하며, 1인 경우에는 직렬화하지 않음
+// 직렬화 형식: [tag 1byte (개수가 있으면 최상위 bit 설정)][vint 개수 (선택)][vint 길이][본문]
+public class TaggedValue implements WritableComparable<TaggedValue> {
+    private static final int COUNT_FLAG = 0x80;
+
+    // 기존 "tag, value" 문자열 형식과 비교한 shuffle 크기 (mapper에서 기록)
+    public enum ShuffleCounter {
+        TEXT_ENCODED_BYTES, // "tag, value" 형식의 Text였다면 필요했을 크기
+        BINARY_ENCODED_BYTES // 실제 직렬화된 크기
+    }
+
+    private byte tag;
+    private final Text text = new Text();
+    private int count = 1;
+
+    public TaggedValue() {
+    }
+
+    public TaggedValue(byte tag, String text) {
+        set(tag, text);
+    }
+
+    public void set(byte tag, String text) {
+        this.tag = tag;
+        this.text.set(text);
+        this.count = 1;
+    }
+
+    public void set(byte tag, Text text) {
+        this.tag = tag;
+        this.text.set(text);
+        this.count = 1;
+    }
+
+    public void set(byte tag, byte[] bytes, int offset, int length) {
+        this.tag = tag;
+        this.text.set(bytes, offset, length);
+        this.count = 1;
+    }
+
+    public void set(TaggedValue other) {
+        this.tag = other.tag;
+        this.text.set(other.text);
+        this.count = other.count;
+    }
+
+    public byte getTag() {
+        return tag;
+    }
+
+    public void setTag(byte tag) {
+        this.tag = tag;
+    }
+
+    // 본문을 직접 채울 수 있도록 내부 Text를 그대로 반환
+    public Text getText() {
+        return text;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    // 직렬화된 크기
+    public int serializedSize() {
+        int size = 1 + WritableUtils.getVIntSize(text.getLength()) + text.getLength();
+        return count == 1 ? size : size + WritableUtils.getVIntSize(count);
+    }
+
+    // 같은 값을 "prefix, 본문" 형식의 Text로 직렬화했을 때의 크기
+    public int textEncodedSize(String prefix) {
+        int length = prefix.length() + 2 + text.getLength();
+        return WritableUtils.getVIntSize(length) + length;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (count == 1) {
+            out.writeByte(tag);
+        } else {
+            out.writeByte(tag | COUNT_FLAG);
+            WritableUtils.writeVInt(out, count);
+        }
+        text.write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int header = in.readByte();
+        tag = (byte) (header & ~COUNT_FLAG);
+        count = (header & COUNT_FLAG) != 0 ? WritableUtils.readVInt(in) : 1;
+        text.readFields(in);
+    }
+
+    @Override
+    public int compareTo(TaggedValue other) {
+        int result = Byte.compare(tag, other.tag);
+        if (result != 0) { return result; }
+        result = text.compareTo(other.text);
+        return result != 0 ? result : Integer.compare(count, other.count);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TaggedValue)) { return false; }
+        TaggedValue that = (TaggedValue) other;
+        return tag == that.tag && count == that.count && text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode() * 31 + tag;
+    }
+
+    @Override
+    public String toString() {
+        return tag + "\t" + text + (count == 1 ? "" : "\t" + count);
+    }
+
+    // 역직렬화 없이 (tag, 본문, 개수) 순서로 비교하는 comparator
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(TaggedValue.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int tag1 = (byte) (b1[s1] & ~COUNT_FLAG);
+            int tag2 = (byte) (b2[s2] & ~COUNT_FLAG);
+            if (tag1 != tag2) { return Integer.compare(tag1, tag2); }
+            try {
+                // 개수가 있으면 본문은 개수 다음에 위치함
+                int c1 = 1, c2 = 1;
+                int p1 = s1 + 1, p2 = s2 + 1;
+                if ((b1[s1] & COUNT_FLAG) != 0) {
+                    c1 = readVInt(b1, p1);
+                    p1 += WritableUtils.decodeVIntSize(b1[p1]);
+                }
+                if ((b2[s2] & COUNT_FLAG) != 0) {
+                    c2 = readVInt(b2, p2);
+                    p2 += WritableUtils.decodeVIntSize(b2[p2]);
+                }
+                int n1 = WritableUtils.decodeVIntSize(b1[p1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[p2]);
+                int result = compareBytes(b1, p1 + n1, readVInt(b1, p1), b2, p2 + n2, readVInt(b2, p2));
+                return result != 0 ? result : Integer.compare(c1, c2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    static { // raw comparator 등록
+        WritableComparator.define(TaggedValue.class, new Comparator());
+    }
+}
@@ -0,0 +1,133 @@
+package yelp.dp.Engine;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+
+// 설정에 따라 잡을 하둡(기본값) 또는 LocalEngine으로 실행함
+// ex. hadoop jar ... -D yelp.engine=local [인자들]
+public class JobRunner {
+    public static final String ENGINE = "yelp.engine"; // hadoop(기본값) | local
+
+    public static boolean isLocal(Configuration conf) {
+        return conf.get(ENGINE, "hadoop").equals("local");
+    }
+
+    // 성공하면 잡의 counter, 실패하면 null을 반환 (실행 시간과 counter는 RunReport에 기록됨)
+    public static Counters run(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        long begin = System.nanoTime();
+        Counters counters = null;
+        try {
+            if (isLocal(job.getConfiguration())) {
+                counters = new LocalEngine(job).run();
+            } else {
+                counters = job.waitForCompletion(true) ? job.getCounters() : null;
+            }
+            return counters;
+        } finally {
+            RunReport.recordJob(job, counters, System.nanoTime() - begin);
+        }
+    }
+
+    // 잡을 제출하고 끝나기를 기다리지 않고 반환 (하둡은 Job.submit, local 엔진은 잡마다 thread 하나에서 실행)
+    // 끝났는지는 Submission.isComplete로 확인하며, RunReport에는 호출한 쪽(Pipeline)이 기록함
+    public static Submission submit(final Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        if (!isLocal(job.getConfiguration())) {
+            job.submit();
+            System.out.println("Submitted " + job.getJobName() + " (" + job.getJobID() + ").");
+            return new Submission(job, null);
+        }
+        final LocalEngine engine = new LocalEngine(job);
+        FutureTask<Counters> task = new FutureTask<Counters>(new Callable<Counters>() {
+            @Override
+            public Counters call() throws Exception {
+                Counters counters = engine.run();
+                if (counters == null) { throw new ExecutionException(engine.getFailure()); } // 실패한 task의 예외를 Submission에 전달
+                return counters;
+            }
+        });
+        Thread thread = new Thread(task, "local-" + job.getJobName());
+        thread.setDaemon(true); // 실패한 pipeline이 끝나지 않은 잡 때문에 종료되지 않는 일이 없도록 함
+        thread.start();
+        return new Submission(job, task);
+    }
+
+    // submit으로 제출한 잡
+    public static class Submission {
+        private final Job job;
+        private final FutureTask<Counters> local; // local 엔진의 실행 (하둡이면 null)
+        private final long startNanos = System.nanoTime();
+        private String failure;
+
+        Submission(Job job, FutureTask<Counters> local) {
+            this.job = job;
+            this.local = local;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public boolean isComplete() throws IOException {
+            return local != null ? local.isDone() : job.isComplete();
+        }
+
+        // 끝난 잡의 counter (실패하면 null이며 이유는 failure로 확인)
+        public Counters counters() throws IOException, InterruptedException {
+            if (local == null) {
+                if (job.isSuccessful()) { return job.getCounters(); }
+                failure = job.getStatus().getFailureInfo();
+                return null;
+            }
+            try {
+                return local.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                while (cause != null && cause.getCause() != null && (cause instanceof ExecutionException || cause instanceof RuntimeException)) {
+                    cause = cause.getCause(); // task를 감싼 예외 대신 원래 예외
+                }
+                failure = String.valueOf(cause);
+                return null;
+            }
+        }
+
+        // counters가 null을 반환한 이유
+        public String failure() {
+            return failure;
+        }
+
+        // 제출한 뒤 지난 시간
+        public long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+    }
+
+    // 잡별 설정(key)으로 reducer 수를 정함 (없으면 mapreduce.job.reduces, 기본값 1)
+    // ex. -D searchUserHomeState.homeState.reduces=4
+    public static void setReduces(Job job, String key) {
+        Configuration conf = job.getConfiguration();
+        int reduces = conf.getInt(key, conf.getInt("mapreduce.job.reduces", 1));
+        if (reduces < 1) {
+            throw new IllegalArgumentException(key + " must be at least 1: " + reduces);
+        }
+        job.setNumReduceTasks(reduces);
+    }
+
+    // local 엔진에서는 모든 경로를 로컬 파일시스템의 경로로 사용하고, 아니면 기본 파일시스템(hdfs)의 경로로 사용
+    public static Path resolve(Configuration conf, String path) throws IOException {
+        return isLocal(conf) ? FileSystem.getLocal(conf).makeQualified(new Path(path)) : new Path(path);
+    }
+
+    // local 엔진의 최종 결과 폴더 (하둡으로 실행한 결과를 복사해 오는 위치와 같음)
+    public static Path localOutput(Configuration conf) throws IOException {
+        return FileSystem.getLocal(conf).makeQualified(new Path(System.getProperty("user.dir"), "output"));
+    }
+}
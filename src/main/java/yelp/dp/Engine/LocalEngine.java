@@ -0,0 +1,690 @@
+package yelp.dp.Engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.PriorityQueue;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// 하둡 클러스터(또는 LocalJobRunner) 없이 한 JVM 안에서 잡을 실행하는 엔진
+// 잡에 설정된 Mapper, Combiner, Partitioner, 정렬/그룹 comparator, Reducer, OutputFormat을 그대로 사용함
+// - map: split마다 task 하나, ForkJoinPool에서 병렬 실행 (로컬 텍스트 파일은 mmap으로 읽음)
+// - shuffle: map 결과를 디스크에 쓰지 않고 partition별로 메모리에 보관
+//   spill하지 않으므로 잡 전체의 map 결과가 yelp.engine.bufferMb를 넘으면 heap이 부족해지기 전에 잡을 실패시킴 (hadoop 엔진으로 실행해야 함)
+// - reduce: partition마다 task 하나, 병렬 실행
+// 정렬과 병합은 하둡의 MapOutputBuffer, Merger와 같은 순서를 따르므로 map 결과가 한 번의 spill에 들어가는 한
+// 같은 key 안의 value 순서까지 하둡과 같고, 결과 파일도 같음
+public class LocalEngine {
+    public static final String THREADS = "yelp.engine.threads"; // 동시에 실행할 task 수 (기본값: CPU 수)
+    public static final String BUFFER_MB = "yelp.engine.bufferMb"; // 메모리에 보관할 잡 전체의 map 결과 크기 (기본값: 최대 heap의 절반)
+
+    private static final long MAX_TASK_BUFFER_BYTES = 1L << 30; // task의 map 결과는 두 배씩 늘리는 한 배열에 int 위치로 보관하므로 1GB까지만 받음
+    private static final int IFILE_CHECKSUM_BYTES = 4; // 하둡이 map 결과 파일의 partition마다 붙이는 checksum (counter를 맞추기 위해 더함)
+    private static final AtomicInteger jobNumber = new AtomicInteger();
+
+    private final Job job;
+    private final Configuration conf;
+    private final JobID jobId;
+    private final Counters counters = new Counters();
+    private final long bufferLimit; // 메모리에 보관할 잡 전체의 map 결과 크기
+    private final AtomicLong buffered = new AtomicLong(); // 지금까지 보관한 map 결과 크기
+    private Throwable failure; // 실패한 task의 예외
+
+    public LocalEngine(Job job) {
+        this.job = job;
+        this.conf = job.getConfiguration();
+        this.jobId = new JobID("localengine", jobNumber.incrementAndGet());
+        this.bufferLimit = conf.getLong(BUFFER_MB, Runtime.getRuntime().maxMemory() >> 21) << 20;
+    }
+
+    // 성공하면 잡 전체의 counter, 실패하면 null을 반환
+    public Counters run() throws IOException, InterruptedException, ClassNotFoundException {
+        long startTime = System.currentTimeMillis();
+        JobContext jobContext = new JobContextImpl(conf, jobId);
+        OutputFormat<?, ?> outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), conf);
+        outputFormat.checkOutputSpecs(jobContext);
+        OutputCommitter jobCommitter = outputFormat.getOutputCommitter(new TaskAttemptContextImpl(conf, new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(), TaskType.JOB_SETUP, 0, 0)));
+        jobCommitter.setupJob(jobContext);
+
+        List<MapTask> mapTasks = createMapTasks(jobContext);
+        int reduces = job.getNumReduceTasks();
+        int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+        System.out.println("Run '" + job.getJobName() + "' on the local engine: " + mapTasks.size() + " map tasks, "
+                + reduces + " reduce tasks, " + threads + " threads.");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            runAll(pool, mapTasks);
+            if (reduces > 0) {
+                List<ReduceTask> reduceTasks = new ArrayList<ReduceTask>();
+                for (int partition = 0; partition < reduces; partition++) {
+                    reduceTasks.add(new ReduceTask(partition, mapTasks));
+                }
+                mapTasks = null; // 각 reduce task가 자기 partition의 map 결과만 참조함
+                runAll(pool, reduceTasks);
+            }
+            jobCommitter.commitJob(jobContext);
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+            jobCommitter.abortJob(jobContext, JobStatus.State.FAILED);
+            System.err.println("Job '" + job.getJobName() + "' failed on the local engine: " + e.getCause());
+            return null;
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.printf("Job '%s' finished on the local engine in %.1f s.%n", job.getJobName(), (System.currentTimeMillis() - startTime) / 1000.0);
+        return counters;
+    }
+
+    // run이 null을 반환했을 때 실패한 task의 예외
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private void runAll(ForkJoinPool pool, List<? extends Callable<Counters>> tasks) throws ExecutionException, InterruptedException {
+        List<Future<Counters>> results = new ArrayList<Future<Counters>>();
+        for (Callable<Counters> task : tasks) {
+            results.add(pool.submit(task));
+        }
+        for (Future<Counters> result : results) {
+            counters.incrAllCounters(result.get()); // 실패한 task가 있으면 ExecutionException
+        }
+    }
+
+    // 입력 경로별 InputFormat으로 split을 만들고 split마다 map task를 만듦
+    // MultipleInputs를 사용한 잡은 DelegatingMapper 대신 경로에 지정된 Mapper를 바로 실행함
+    @SuppressWarnings("unchecked")
+    private List<MapTask> createMapTasks(JobContext jobContext) throws IOException, InterruptedException, ClassNotFoundException {
+        List<MapTask> tasks = new ArrayList<MapTask>();
+        String formats = conf.get(MultipleInputs.DIR_FORMATS);
+        if (formats == null) {
+            InputFormat<?, ?> inputFormat = ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+            for (InputSplit split : inputFormat.getSplits(jobContext)) {
+                tasks.add(new MapTask(tasks.size(), split, job.getInputFormatClass(), job.getMapperClass()));
+            }
+            return tasks;
+        }
+
+        String mappers = conf.get(MultipleInputs.DIR_MAPPERS);
+        for (String formatMapping : formats.split(",")) {
+            String[] pathAndFormat = formatMapping.split(";");
+            Path path = new Path(pathAndFormat[0]);
+            Class<? extends InputFormat<?, ?>> formatClass = (Class<? extends InputFormat<?, ?>>) conf.getClassByName(pathAndFormat[1]);
+            Class<? extends Mapper<?, ?, ?, ?>> mapperClass = job.getMapperClass();
+            if (mappers != null) {
+                for (String mapperMapping : mappers.split(",")) {
+                    String[] pathAndMapper = mapperMapping.split(";");
+                    if (new Path(pathAndMapper[0]).equals(path)) {
+                        mapperClass = (Class<? extends Mapper<?, ?, ?, ?>>) conf.getClassByName(pathAndMapper[1]);
+                    }
+                }
+            }
+
+            Job pathJob = Job.getInstance(new Configuration(conf)); // 해당 경로만 입력으로 가지는 설정
+            FileInputFormat.setInputPaths(pathJob, path);
+            InputFormat<?, ?> inputFormat = ReflectionUtils.newInstance(formatClass, pathJob.getConfiguration());
+            for (InputSplit split : inputFormat.getSplits(pathJob)) {
+                tasks.add(new MapTask(tasks.size(), split, formatClass, mapperClass));
+            }
+        }
+        return tasks;
+    }
+
+    // task마다 따로 가지는 설정 (LocalJobRunner와 같이 task 정보를 기록함)
+    private JobConf taskConf(TaskAttemptID attemptId) {
+        JobConf taskConf = new JobConf(conf);
+        taskConf.set("mapreduce.job.id", jobId.toString());
+        taskConf.set("mapreduce.task.id", attemptId.getTaskID().toString());
+        taskConf.set("mapreduce.task.attempt.id", attemptId.toString());
+        taskConf.setBoolean("mapreduce.task.ismap", attemptId.getTaskType() == TaskType.MAP);
+        taskConf.setInt("mapreduce.task.partition", attemptId.getTaskID().getId());
+        return taskConf;
+    }
+
+    class MapTask implements Callable<Counters> {
+        final int index;
+        final InputSplit split;
+        final Class<? extends InputFormat<?, ?>> inputFormatClass;
+        final Class<? extends Mapper<?, ?, ?, ?>> mapperClass;
+        Segment[] partitions; // reducer별 정렬된 map 결과
+
+        MapTask(int index, InputSplit split, Class<? extends InputFormat<?, ?>> inputFormatClass, Class<? extends Mapper<?, ?, ?, ?>> mapperClass) {
+            this.index = index;
+            this.split = split;
+            this.inputFormatClass = inputFormatClass;
+            this.mapperClass = mapperClass;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Counters call() throws Exception {
+            TaskAttemptID attemptId = new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(), TaskType.MAP, index, 0);
+            JobConf taskConf = taskConf(attemptId);
+            TaskReporter reporter = new TaskReporter();
+            TaskAttemptContext taskContext = new TaskAttemptContextImpl(taskConf, attemptId, reporter);
+
+            RecordReader reader = MappedLineRecordReader.supports(taskConf, inputFormatClass, split)
+                    ? new MappedLineRecordReader()
+                    : ReflectionUtils.newInstance(inputFormatClass, taskConf).createRecordReader(split, taskContext);
+            reader = new CountingRecordReader(reader, reporter.getCounter(TaskCounter.MAP_INPUT_RECORDS));
+
+            OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), taskConf);
+            OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+            RecordWriter writer;
+            MapOutputCollector collector = null;
+            if (job.getNumReduceTasks() == 0) { // map-only 잡은 바로 OutputFormat으로 기록
+                committer.setupTask(taskContext);
+                writer = new CountingRecordWriter(outputFormat.getRecordWriter(taskContext), reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS));
+            } else {
+                collector = new MapOutputCollector(taskConf, reporter);
+                writer = collector;
+            }
+
+            Mapper mapper = ReflectionUtils.newInstance(mapperClass, taskConf);
+            MapContextImpl mapContext = new MapContextImpl(taskConf, attemptId, reader, writer, committer, reporter, split);
+            try {
+                reader.initialize(split, mapContext);
+                mapper.run(new WrappedMapper().getMapContext(mapContext));
+                reader.close();
+                writer.close(mapContext);
+            } catch (Exception e) {
+                if (collector == null) { committer.abortTask(taskContext); }
+                throw e;
+            }
+
+            if (collector == null) {
+                if (committer.needsTaskCommit(taskContext)) { committer.commitTask(taskContext); }
+            } else {
+                partitions = collector.sortAndCombine(attemptId, committer);
+            }
+            return reporter.counters;
+        }
+    }
+
+    class ReduceTask implements Callable<Counters> {
+        final int partition;
+        final List<Segment> segments = new ArrayList<Segment>();
+
+        ReduceTask(int partition, List<MapTask> mapTasks) {
+            this.partition = partition;
+            for (MapTask mapTask : mapTasks) {
+                Segment segment = mapTask.partitions[partition];
+                if (segment.size() > 0) { segments.add(segment); }
+            }
+            // 하둡의 MergeManager와 같이 크기가 작은 map 결과부터 병합 대상에 넣음 (크기가 같으면 map task 순서)
+            Collections.sort(segments, new Comparator<Segment>() {
+                @Override
+                public int compare(Segment a, Segment b) {
+                    return Long.compare(a.ifileBytes(), b.ifileBytes());
+                }
+            });
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Counters call() throws Exception {
+            TaskAttemptID attemptId = new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(), TaskType.REDUCE, partition, 0);
+            JobConf taskConf = taskConf(attemptId);
+            TaskReporter reporter = new TaskReporter();
+            TaskAttemptContext taskContext = new TaskAttemptContextImpl(taskConf, attemptId, reporter);
+            for (Segment segment : segments) {
+                reporter.getCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).increment(segment.ifileBytes() + IFILE_CHECKSUM_BYTES);
+            }
+
+            OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), taskConf);
+            OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+            committer.setupTask(taskContext);
+            RecordWriter writer = new CountingRecordWriter(outputFormat.getRecordWriter(taskContext), reporter.getCounter(TaskCounter.REDUCE_OUTPUT_RECORDS));
+
+            Reducer reducer = ReflectionUtils.newInstance(job.getReducerClass(), taskConf);
+            ReduceContextImpl reduceContext = new ReduceContextImpl(taskConf, attemptId, new SegmentMerger(segments, job.getSortComparator()),
+                    reporter.getCounter(TaskCounter.REDUCE_INPUT_GROUPS), reporter.getCounter(TaskCounter.REDUCE_INPUT_RECORDS),
+                    writer, committer, reporter, job.getGroupingComparator(), job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+            try {
+                reducer.run(new WrappedReducer().getReducerContext(reduceContext));
+                writer.close(reduceContext);
+            } catch (Exception e) {
+                committer.abortTask(taskContext);
+                throw e;
+            }
+            segments.clear();
+
+            if (committer.needsTaskCommit(taskContext)) { committer.commitTask(taskContext); }
+            return reporter.counters;
+        }
+    }
+
+    // map 결과를 직렬화해서 메모리에 모으고, task가 끝나면 partition과 key로 정렬한 뒤 combiner를 적용함
+    // 하둡의 MapOutputBuffer와 같이 레코드 정보를 나중에 쓴 것부터 배열한 뒤 QuickSort로 정렬함 (같은 key의 value 순서를 맞추기 위함)
+    class MapOutputCollector extends RecordWriter<Object, Object> {
+        final JobConf taskConf;
+        final TaskReporter reporter;
+        final int reduces = job.getNumReduceTasks();
+        final Partitioner<Object, Object> partitioner;
+        final RawComparator<?> comparator = job.getSortComparator();
+        final Serializer<Object> keySerializer;
+        final Serializer<Object> valueSerializer;
+        final DataOutputBuffer data = new DataOutputBuffer();
+        int[] meta = new int[4 * 1024]; // 레코드마다 [partition, key 시작, value 시작, value 끝]
+        int records = 0;
+
+        @SuppressWarnings("unchecked")
+        MapOutputCollector(JobConf taskConf, TaskReporter reporter) throws IOException, ClassNotFoundException {
+            this.taskConf = taskConf;
+            this.reporter = reporter;
+            if (reduces > 1) {
+                partitioner = (Partitioner<Object, Object>) ReflectionUtils.newInstance(job.getPartitionerClass(), taskConf);
+            } else { // 하둡과 같이 reducer가 하나면 Partitioner를 호출하지 않음
+                partitioner = new Partitioner<Object, Object>() {
+                    @Override
+                    public int getPartition(Object key, Object value, int numPartitions) {
+                        return 0;
+                    }
+                };
+            }
+            SerializationFactory serializations = new SerializationFactory(taskConf);
+            keySerializer = serializations.getSerializer((Class<Object>) job.getMapOutputKeyClass());
+            keySerializer.open(data);
+            valueSerializer = serializations.getSerializer((Class<Object>) job.getMapOutputValueClass());
+            valueSerializer.open(data);
+        }
+
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            int partition = partitioner.getPartition(key, value, reduces);
+            if (partition < 0 || partition >= reduces) {
+                throw new IOException("Illegal partition for " + key + " (" + partition + ")");
+            }
+            if (records * 4 == meta.length) { meta = Arrays.copyOf(meta, meta.length * 2); }
+            int keyStart = data.getLength();
+            keySerializer.serialize(key);
+            int valueStart = data.getLength();
+            valueSerializer.serialize(value);
+            int m = records * 4;
+            meta[m] = partition;
+            meta[m + 1] = keyStart;
+            meta[m + 2] = valueStart;
+            meta[m + 3] = data.getLength();
+            records++;
+            checkBuffer(data.getLength() - keyStart);
+
+            reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS).increment(1);
+            reporter.getCounter(TaskCounter.MAP_OUTPUT_BYTES).increment(data.getLength() - keyStart);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        // spill 대신 map 결과가 메모리 기준을 넘으면 task를 실패시킴
+        private void checkBuffer(int recordBytes) throws IOException {
+            long total = buffered.addAndGet(recordBytes);
+            if (total > bufferLimit) {
+                throw new IOException("Map output held in memory (" + (total >> 20) + " MB) exceeds " + BUFFER_MB + " (" + (bufferLimit >> 20)
+                        + " MB). The local engine does not spill; raise the limit and the heap or run on the hadoop engine.");
+            }
+            if (data.getLength() > MAX_TASK_BUFFER_BYTES) {
+                throw new IOException("Map output of one task exceeds " + (MAX_TASK_BUFFER_BYTES >> 20)
+                        + " MB, which the local engine cannot hold. Use smaller splits or run on the hadoop engine.");
+            }
+        }
+
+        Segment[] sortAndCombine(TaskAttemptID attemptId, OutputCommitter committer) throws IOException, InterruptedException, ClassNotFoundException {
+            final byte[] bytes = data.getData();
+            final int[] order = new int[records];
+            for (int i = 0; i < records; i++) {
+                order[i] = records - 1 - i;
+            }
+            if (records > 0) { // QuickSort는 빈 범위를 정렬하지 못함 (ex. 빈 입력 파일의 map task)
+                new QuickSort().sort(new IndexedSortable() {
+                    @Override
+                    public int compare(int i, int j) {
+                        int mi = order[i] * 4, mj = order[j] * 4;
+                        if (meta[mi] != meta[mj]) { return meta[mi] - meta[mj]; }
+                        return comparator.compare(bytes, meta[mi + 1], meta[mi + 2] - meta[mi + 1], bytes, meta[mj + 1], meta[mj + 2] - meta[mj + 1]);
+                    }
+
+                    @Override
+                    public void swap(int i, int j) {
+                        int temp = order[i];
+                        order[i] = order[j];
+                        order[j] = temp;
+                    }
+                }, 0, records);
+            }
+
+            Segment[] partitions = new Segment[reduces];
+            int from = 0;
+            for (int partition = 0; partition < reduces; partition++) {
+                int to = from;
+                while (to < records && meta[order[to] * 4] == partition) { to++; }
+                Segment sorted = new Segment(bytes, meta, order, from, to);
+                partitions[partition] = job.getCombinerClass() == null ? sorted : combine(sorted, attemptId, committer);
+                reporter.getCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).increment(partitions[partition].ifileBytes() + IFILE_CHECKSUM_BYTES);
+                from = to;
+            }
+            return partitions;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Segment combine(Segment sorted, TaskAttemptID attemptId, OutputCommitter committer) throws IOException, InterruptedException, ClassNotFoundException {
+            if (sorted.size() == 0) { return sorted; }
+            SegmentWriter combined = new SegmentWriter(taskConf, reporter.getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS));
+            Reducer combiner = ReflectionUtils.newInstance(job.getCombinerClass(), taskConf);
+            ReduceContextImpl combineContext = new ReduceContextImpl(taskConf, attemptId, new SegmentMerger(Collections.singletonList(sorted), comparator),
+                    new GenericCounter(), reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS),
+                    combined, committer, reporter, job.getCombinerKeyGroupingComparator(), job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+            combiner.run(new WrappedReducer().getReducerContext(combineContext));
+            return combined.toSegment();
+        }
+    }
+
+    // combiner의 결과를 새로운 Segment로 모음 (입력이 정렬되어 있으므로 결과도 정렬되어 있음)
+    static class SegmentWriter extends RecordWriter<Object, Object> {
+        final DataOutputBuffer data = new DataOutputBuffer();
+        final Serializer<Object> keySerializer;
+        final Serializer<Object> valueSerializer;
+        final Counter outputRecords;
+        int[] meta = new int[4 * 64];
+        int records = 0;
+
+        @SuppressWarnings("unchecked")
+        SegmentWriter(JobConf taskConf, Counter outputRecords) throws IOException {
+            SerializationFactory serializations = new SerializationFactory(taskConf);
+            keySerializer = serializations.getSerializer((Class<Object>) taskConf.getMapOutputKeyClass());
+            keySerializer.open(data);
+            valueSerializer = serializations.getSerializer((Class<Object>) taskConf.getMapOutputValueClass());
+            valueSerializer.open(data);
+            this.outputRecords = outputRecords;
+        }
+
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            if (records * 4 == meta.length) { meta = Arrays.copyOf(meta, meta.length * 2); }
+            int m = records * 4;
+            meta[m + 1] = data.getLength();
+            keySerializer.serialize(key);
+            meta[m + 2] = data.getLength();
+            valueSerializer.serialize(value);
+            meta[m + 3] = data.getLength();
+            records++;
+            outputRecords.increment(1);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        Segment toSegment() {
+            int[] order = new int[records];
+            for (int i = 0; i < records; i++) {
+                order[i] = i;
+            }
+            return new Segment(data.getData(), meta, order, 0, records);
+        }
+    }
+
+    // map task 하나가 reducer 하나에 보내는 정렬된 레코드 (order[from, to)의 순서)
+    static class Segment {
+        final byte[] data;
+        final int[] meta;
+        final int[] order;
+        final int from;
+        final int to;
+        private long ifileBytes = -1;
+
+        Segment(byte[] data, int[] meta, int[] order, int from, int to) {
+            this.data = data;
+            this.meta = meta;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        // 하둡의 IFile 형식으로 썼을 때의 크기 (레코드마다 key, value 길이 + EOF 표시)
+        long ifileBytes() {
+            if (ifileBytes < 0) {
+                long bytes = 2;
+                for (int i = from; i < to; i++) {
+                    int m = order[i] * 4;
+                    int keyLength = meta[m + 2] - meta[m + 1];
+                    int valueLength = meta[m + 3] - meta[m + 2];
+                    bytes += WritableUtils.getVIntSize(keyLength) + WritableUtils.getVIntSize(valueLength) + keyLength + valueLength;
+                }
+                ifileBytes = bytes;
+            }
+            return ifileBytes;
+        }
+    }
+
+    // 여러 Segment를 key 순서로 병합하는 iterator
+    // 하둡의 Merger와 같은 우선순위 큐를 사용하므로 같은 key의 레코드가 나오는 순서도 같음
+    static class SegmentMerger extends PriorityQueue<SegmentMerger.Cursor> implements RawKeyValueIterator {
+        class Cursor {
+            final Segment segment;
+            int position;
+
+            Cursor(Segment segment) {
+                this.segment = segment;
+                this.position = segment.from;
+            }
+
+            int meta() {
+                return segment.order[position] * 4;
+            }
+        }
+
+        final RawComparator<?> comparator;
+        final DataInputBuffer key = new DataInputBuffer();
+        final DataInputBuffer value = new DataInputBuffer();
+        final Progress progress = new Progress();
+        Cursor current;
+
+        SegmentMerger(List<Segment> segments, RawComparator<?> comparator) {
+            this.comparator = comparator;
+            initialize(segments.size());
+            for (Segment segment : segments) {
+                if (segment.size() > 0) { put(new Cursor(segment)); }
+            }
+        }
+
+        @Override
+        protected boolean lessThan(Object a, Object b) {
+            Cursor ca = (Cursor) a, cb = (Cursor) b;
+            int ma = ca.meta(), mb = cb.meta();
+            return comparator.compare(ca.segment.data, ca.segment.meta[ma + 1], ca.segment.meta[ma + 2] - ca.segment.meta[ma + 1],
+                    cb.segment.data, cb.segment.meta[mb + 1], cb.segment.meta[mb + 2] - cb.segment.meta[mb + 1]) < 0;
+        }
+
+        @Override
+        public boolean next() {
+            if (current != null) { // 이전 레코드를 꺼낸 Segment를 한 칸 전진
+                current.position++;
+                if (current.position < current.segment.to) {
+                    adjustTop();
+                } else {
+                    pop();
+                }
+            }
+            if (size() == 0) {
+                current = null;
+                return false;
+            }
+            current = top();
+            int m = current.meta();
+            int[] meta = current.segment.meta;
+            key.reset(current.segment.data, meta[m + 1], meta[m + 2] - meta[m + 1]);
+            value.reset(current.segment.data, meta[m + 2], meta[m + 3] - meta[m + 2]);
+            return true;
+        }
+
+        @Override
+        public DataInputBuffer getKey() {
+            return key;
+        }
+
+        @Override
+        public DataInputBuffer getValue() {
+            return value;
+        }
+
+        @Override
+        public void close() {
+            clear();
+        }
+
+        @Override
+        public Progress getProgress() {
+            return progress;
+        }
+    }
+
+    // task별 counter (task가 끝나면 잡 전체 counter에 더함)
+    static class TaskReporter extends StatusReporter {
+        final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+
+    static class CountingRecordReader<K, V> extends RecordReader<K, V> {
+        final RecordReader<K, V> reader;
+        final Counter inputRecords;
+
+        CountingRecordReader(RecordReader<K, V> reader, Counter inputRecords) {
+            this.reader = reader;
+            this.inputRecords = inputRecords;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            reader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            boolean hasNext = reader.nextKeyValue();
+            if (hasNext) { inputRecords.increment(1); }
+            return hasNext;
+        }
+
+        @Override
+        public K getCurrentKey() throws IOException, InterruptedException {
+            return reader.getCurrentKey();
+        }
+
+        @Override
+        public V getCurrentValue() throws IOException, InterruptedException {
+            return reader.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    static class CountingRecordWriter<K, V> extends RecordWriter<K, V> {
+        final RecordWriter<K, V> writer;
+        final Counter outputRecords;
+
+        CountingRecordWriter(RecordWriter<K, V> writer, Counter outputRecords) {
+            this.writer = writer;
+            this.outputRecords = outputRecords;
+        }
+
+        @Override
+        public void write(K key, V value) throws IOException, InterruptedException {
+            writer.write(key, value);
+            outputRecords.increment(1);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+            writer.close(context);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package yelp.dp.Engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+// 로컬 파일의 FileSplit을 메모리 매핑(mmap)해서 한 줄씩 읽는 RecordReader (TextInputFormat 대체)
+// 하둡의 LineRecordReader와 같은 규칙으로 줄을 나눔
+// - 줄 끝: \n, \r, \r\n
+// - split의 시작이 파일 처음이 아니면 첫 줄(이전 split이 읽는 줄)은 건너뜀
+// - 시작 위치가 split의 끝 이하인 줄까지 읽음 (split 경계를 넘는 줄도 끝까지 읽음)
+// - 파일 첫 줄의 UTF-8 BOM은 제거함
+public class MappedLineRecordReader extends RecordReader<LongWritable, Text> {
+    private MappedByteBuffer buffer;
+    private boolean mappedToEnd; // 파일 끝까지 매핑했는지 (2GB를 넘는 부분은 매핑하지 않음)
+    private long start; // split의 시작 위치 (파일 기준)
+    private int limit; // split의 끝 위치 (buffer 기준)
+    private int position; // 다음 줄의 시작 위치 (buffer 기준)
+    private byte[] line = new byte[4096];
+    private final LongWritable key = new LongWritable();
+    private final Text value = new Text();
+
+    // 이 RecordReader로 대신 읽을 수 있는 split인지 확인 (압축 파일, 다른 구분자, 로컬이 아닌 파일은 제외)
+    public static boolean supports(Configuration conf, Class<?> inputFormat, InputSplit split) throws IOException {
+        if (inputFormat != TextInputFormat.class || !(split instanceof FileSplit)) { return false; }
+        if (conf.get("textinputformat.record.delimiter") != null) { return false; }
+        Path path = ((FileSplit) split).getPath();
+        if (new CompressionCodecFactory(conf).getCodec(path) != null) { return false; }
+        return localFile(conf, path) != null;
+    }
+
+    private static File localFile(Configuration conf, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        if (fs instanceof LocalFileSystem) { return ((LocalFileSystem) fs).pathToFile(path); }
+        if (fs instanceof RawLocalFileSystem) { return ((RawLocalFileSystem) fs).pathToFile(path); }
+        return null;
+    }
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        start = split.getStart();
+
+        RandomAccessFile file = new RandomAccessFile(localFile(context.getConfiguration(), split.getPath()), "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size() - start;
+            mappedToEnd = size <= Integer.MAX_VALUE;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, Integer.MAX_VALUE)); // 채널을 닫아도 매핑은 유지됨
+        } finally {
+            file.close();
+        }
+        if (split.getLength() > buffer.capacity()) {
+            throw new IOException("Split is too large to map: " + split);
+        }
+        limit = (int) split.getLength();
+
+        position = 0;
+        if (start != 0) { // 첫 줄은 이전 split에서 읽음
+            position = nextLine(lineEnd(0));
+        }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        if (position > limit || position >= buffer.capacity()) { return false; }
+
+        int lineStart = position;
+        int lineEnd = lineEnd(lineStart);
+        position = nextLine(lineEnd);
+
+        int length = lineEnd - lineStart;
+        if (length > line.length) { line = new byte[Math.max(length, line.length * 2)]; }
+        buffer.position(lineStart);
+        buffer.get(line, 0, length);
+
+        int offset = 0;
+        if (start + lineStart == 0 && length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+            offset = 3; // UTF-8 BOM
+        }
+        key.set(start + lineStart);
+        value.set(line, offset, length - offset);
+        return true;
+    }
+
+    // from부터 시작하는 줄의 끝(줄바꿈 문자의 위치)
+    private int lineEnd(int from) throws IOException {
+        int capacity = buffer.capacity();
+        for (int i = from; i < capacity; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') { return i; }
+        }
+        if (!mappedToEnd) {
+            throw new IOException("Line at offset " + (start + from) + " is longer than the mapped region");
+        }
+        return capacity;
+    }
+
+    // 줄바꿈 문자 다음 위치
+    private int nextLine(int lineEnd) {
+        if (lineEnd >= buffer.capacity()) { return lineEnd; }
+        if (buffer.get(lineEnd) == '\r' && lineEnd + 1 < buffer.capacity() && buffer.get(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+        return key;
+    }
+
+    @Override
+    public Text getCurrentValue() {
+        return value;
+    }
+
+    @Override
+    public float getProgress() {
+        return limit == 0 ? 1.0f : Math.min(1.0f, position / (float) limit);
+    }
+
+    @Override
+    public void close() {
+        buffer = null; // 매핑은 GC될 때 해제됨
+    }
+}
@@ -0,0 +1,343 @@
+package yelp.dp.Engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+
+// 여러 잡을 이름 붙은 데이터셋을 입출력으로 하는 DAG로 선언해서 실행하는 도구
+// - 입력 데이터셋이 모두 준비된 단계는 바로 제출하므로 서로 의존하지 않는 잡은 동시에 실행됨
+//   (JobRunner.submit으로 제출하고 pipeline.pollMillis마다 끝났는지 확인하며, 준비와 마무리는 driver thread 하나에서 순서대로 함)
+// - 단계의 결과는 <workdir>/pipeline/<데이터셋>-<fingerprint>에 쓰고, 마무리까지 끝나면 _PIPELINE 파일을 남김
+//   fingerprint는 단계 이름, 입력 데이터셋(외부 입력은 파일마다 경로, 크기, 수정 시각 / 중간 결과는 그 fingerprint), 단계가 읽는 설정으로 정해지므로
+//   다시 실행하면 바뀌지 않은 단계는 남아 있는 결과를 그대로 사용함 (-D pipeline.cache=false면 항상 다시 실행)
+//   코드가 바뀐 것은 fingerprint에 들어가지 않으므로 이때는 pipeline.cache=false로 실행하거나 <workdir>/pipeline을 지움
+// - 단계마다 시작 시각, 준비(사전, side file 등 driver 쪽 작업), 잡, 마무리 시간을 RunReport의 stages에 기록하고 끝날 때 표로 출력함
+public class Pipeline {
+    public static final String CACHE = "pipeline.cache"; // 바뀌지 않은 단계의 결과를 다시 사용할지 (기본값 true)
+    public static final String POLL_MILLIS = "pipeline.pollMillis"; // 실행 중인 잡을 확인하는 간격 (기본값 200)
+    public static final String MARKER = "_PIPELINE"; // 단계가 끝난 결과 폴더에 남기는 파일 (fingerprint를 만든 내용)
+
+    // 모든 단계의 fingerprint에 들어가는 설정 (결과 파일의 수, 형식, 내용을 바꾸는 공통 설정)
+    private static final String[] COMMON_PREFIXES = {"compression.", JsonProjection.PREFIX, StageMetrics.SKIP_MALFORMED, "mapreduce.job.reduces"};
+
+    // DAG의 단계 하나: inputs 데이터셋을 읽어서 name 데이터셋(폴더)을 만드는 잡
+    public abstract static class Stage {
+        final String name;
+        final String[] inputs;
+        final String[] configPrefixes; // 결과에 영향을 주는 설정의 접두사 (ex. "businessSummary.")
+
+        protected Stage(String name, String[] inputs, String... configPrefixes) {
+            this.name = name;
+            this.inputs = inputs;
+            this.configPrefixes = configPrefixes;
+        }
+
+        // driver 쪽 준비까지 하고 output에 쓰는 잡을 만듦 (conf는 단계마다 따로 복사한 설정, workDir은 단계의 작업 폴더)
+        protected abstract Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception;
+
+        // 잡이 성공한 뒤 driver 쪽 마무리 (hot key 부분 결과 병합, manifest 등), 실패하면 false
+        protected boolean finish(Configuration conf, Job job, Map<String, Path> inputs, Path output) throws Exception {
+            return true;
+        }
+    }
+
+    // 제출한 단계
+    private static class Running {
+        final Stage stage;
+        final RunReport.Phase record;
+        final Configuration conf;
+        final Map<String, Path> inputs;
+        final Path output;
+        final String source;
+        final long prepareNanos;
+        final JobRunner.Submission submission;
+
+        Running(Stage stage, RunReport.Phase record, Configuration conf, Map<String, Path> inputs, Path output, String source,
+                long prepareNanos, JobRunner.Submission submission) {
+            this.stage = stage;
+            this.record = record;
+            this.conf = conf;
+            this.inputs = inputs;
+            this.output = output;
+            this.source = source;
+            this.prepareNanos = prepareNanos;
+            this.submission = submission;
+        }
+    }
+
+    private final Configuration conf;
+    private final Path dir; // <workdir>/pipeline
+    private final Map<String, Path> externalInputs = new LinkedHashMap<String, Path>();
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+    private final Map<String, Path> datasets = new HashMap<String, Path>(); // 준비된 데이터셋
+    private final Map<String, String> fingerprints = new HashMap<String, String>();
+    private final List<String> timings = new ArrayList<String>(); // 끝난 순서대로 출력할 단계별 시간
+    private long startNanos;
+
+    public Pipeline(Configuration conf, Path workDir) {
+        this.conf = conf;
+        this.dir = new Path(workDir, "pipeline");
+    }
+
+    // 프로그램 인자로 받은 입력 데이터셋
+    public void addInput(String name, Path path) {
+        if (externalInputs.containsKey(name) || stages.containsKey(name)) { throw new IllegalArgumentException("Duplicate dataset '" + name + "'"); }
+        externalInputs.put(name, path);
+    }
+
+    public void addStage(Stage stage) {
+        if (externalInputs.containsKey(stage.name) || stages.containsKey(stage.name)) { throw new IllegalArgumentException("Duplicate dataset '" + stage.name + "'"); }
+        stages.put(stage.name, stage);
+    }
+
+    // run이 끝난 뒤 데이터셋의 폴더 (만들지 못했으면 null)
+    public Path output(String name) {
+        return datasets.get(name);
+    }
+
+    // 모든 단계를 실행 (모두 성공하면 true, 단계가 실패하면 새 단계는 시작하지 않고 실행 중인 잡이 끝나기를 기다림)
+    public boolean run() throws Exception {
+        List<Stage> pending = order();
+        FileSystem fs = dir.getFileSystem(conf);
+        boolean cache = conf.getBoolean(CACHE, true);
+        long pollMillis = conf.getLong(POLL_MILLIS, 200);
+        startNanos = System.nanoTime();
+        for (Map.Entry<String, Path> input : externalInputs.entrySet()) {
+            datasets.put(input.getKey(), input.getValue());
+            fingerprints.put(input.getKey(), fingerprint(input.getValue()));
+        }
+
+        List<Running> running = new ArrayList<Running>();
+        boolean failed = false;
+        while (!running.isEmpty() || (!failed && !pending.isEmpty())) {
+            boolean progressed = false;
+            // 입력이 모두 준비된 단계를 시작 (cache를 사용한 단계는 바로 끝나므로 뒤의 단계도 같은 차례에 시작할 수 있음)
+            for (Iterator<Stage> it = pending.iterator(); !failed && it.hasNext(); ) {
+                Stage stage = it.next();
+                if (!ready(stage)) { continue; }
+                it.remove();
+                progressed = true;
+                if (!start(stage, fs, cache, running)) { failed = true; }
+            }
+            // 끝난 잡을 마무리
+            for (Iterator<Running> it = running.iterator(); it.hasNext(); ) {
+                Running stage = it.next();
+                if (!stage.submission.isComplete()) { continue; }
+                it.remove();
+                progressed = true;
+                if (!complete(stage, fs)) { failed = true; }
+            }
+            if (!progressed) { Thread.sleep(pollMillis); }
+        }
+        for (Stage stage : pending) {
+            System.out.println("Skip stage " + stage.name + " because an earlier stage failed.");
+        }
+
+        System.out.println("Stage timing (ms):");
+        System.out.printf("  %-16s %8s %8s %8s %8s %8s%n", "stage", "start", "prepare", "job", "finish", "total");
+        for (String timing : timings) {
+            System.out.println(timing);
+        }
+        return !failed;
+    }
+
+    // 입력이 모두 정의되어 있고 순환이 없는지 확인하고, 선언 순서를 유지하면서 의존하는 단계가 뒤에 오도록 정렬
+    private List<Stage> order() {
+        List<Stage> ordered = new ArrayList<Stage>();
+        Set<String> placed = new HashSet<String>(externalInputs.keySet());
+        List<Stage> remaining = new ArrayList<Stage>(stages.values());
+        while (!remaining.isEmpty()) {
+            boolean placedAny = false;
+            for (Iterator<Stage> it = remaining.iterator(); it.hasNext(); ) {
+                Stage stage = it.next();
+                boolean inputsPlaced = true;
+                for (String input : stage.inputs) {
+                    if (!externalInputs.containsKey(input) && !stages.containsKey(input)) {
+                        throw new IllegalArgumentException("Stage " + stage.name + " reads an unknown dataset '" + input + "'");
+                    }
+                    if (!placed.contains(input)) { inputsPlaced = false; }
+                }
+                if (inputsPlaced) {
+                    ordered.add(stage);
+                    placed.add(stage.name);
+                    it.remove();
+                    placedAny = true;
+                }
+            }
+            if (!placedAny) { throw new IllegalArgumentException("Stages depend on each other in a cycle: " + remaining.get(0).name); }
+        }
+        return ordered;
+    }
+
+    private boolean ready(Stage stage) {
+        for (String input : stage.inputs) {
+            if (!datasets.containsKey(input)) { return false; }
+        }
+        return true;
+    }
+
+    // 단계를 시작해서 제출한 잡을 running에 추가 (남아 있는 결과를 사용하면 추가하지 않음, 잡을 만들지 못하면 false)
+    private boolean start(Stage stage, FileSystem fs, boolean cache, List<Running> running) throws Exception {
+        Map<String, Path> inputs = new LinkedHashMap<String, Path>();
+        StringBuilder source = new StringBuilder("stage ").append(stage.name).append('\n');
+        for (String input : stage.inputs) {
+            inputs.put(input, datasets.get(input));
+            source.append("input ").append(input).append(' ').append(fingerprints.get(input)).append('\n');
+        }
+        for (Map.Entry<String, String> property : properties(stage).entrySet()) {
+            source.append("conf ").append(property.getKey()).append('=').append(property.getValue()).append('\n');
+        }
+        String fingerprint = MD5Hash.digest(source.toString().getBytes(StandardCharsets.UTF_8)).toString().substring(0, 16);
+        Path output = fs.makeQualified(new Path(dir, stage.name + "-" + fingerprint));
+
+        long begin = System.nanoTime();
+        RunReport.Phase record = RunReport.stage(stage.name);
+        record.details.addProperty("startOffsetMillis", (begin - startNanos) / 1000000);
+        record.details.addProperty("output", output.toString());
+        if (cache && fs.exists(new Path(output, MARKER))) {
+            System.out.println("Stage " + stage.name + " is unchanged. Reuse " + output + ".");
+            record.details.addProperty("cached", true);
+            done(stage, record, output, fingerprint, true, 0, 0, 0);
+            return true;
+        }
+        if (fs.exists(output)) { fs.delete(output, true); } // 마무리하지 못한 이전 결과
+
+        System.out.println("Start stage " + stage.name + ".");
+        record.details.addProperty("cached", false);
+        Configuration stageConf = new Configuration(conf); // 단계에서 바꾼 설정(사전 경로 등)이 다른 단계에 섞이지 않도록 함
+        RunReport.activate(record);
+        Job job;
+        try {
+            job = stage.createJob(stageConf, new Path(new Path(dir, "work"), stage.name), inputs, output);
+        } catch (Exception e) { // 실행 중인 다른 단계의 잡은 끝날 때까지 기다려야 하므로 complete처럼 실패로 기록만 함
+            String reason = "creating the job failed: " + e;
+            System.err.println("Stage " + stage.name + " failed: " + reason);
+            record.details.addProperty("succeeded", false);
+            record.details.addProperty("failure", reason);
+            record.nanos = System.nanoTime() - record.startNanos;
+            timing(stage, record, record.nanos, 0, 0, " (failed)");
+            return false;
+        } finally {
+            RunReport.activate(null);
+        }
+        long prepareNanos = System.nanoTime() - begin;
+        running.add(new Running(stage, record, stageConf, inputs, output, source.toString(), prepareNanos, JobRunner.submit(job)));
+        return true;
+    }
+
+    // 끝난 잡을 기록하고 마무리 (성공하면 true)
+    private boolean complete(Running stage, FileSystem fs) throws Exception {
+        Job job = stage.submission.getJob();
+        long jobNanos = stage.submission.elapsedNanos();
+        Counters counters = stage.submission.counters();
+        long begin = System.nanoTime();
+        boolean succeeded;
+        RunReport.activate(stage.record);
+        try {
+            RunReport.recordJob(job, counters, jobNanos);
+            if (counters != null) { ShuffleStats.print(job, counters); } // shuffle 크기 출력
+            succeeded = counters != null && stage.stage.finish(stage.conf, job, stage.inputs, stage.output);
+        } finally {
+            RunReport.activate(null);
+        }
+        long finishNanos = System.nanoTime() - begin;
+        stage.record.details.addProperty("succeeded", succeeded);
+        if (!succeeded) {
+            String reason = counters == null ? "job '" + job.getJobName() + "' failed: " + stage.submission.failure() : "the finish step failed";
+            System.err.println("Stage " + stage.stage.name + " failed: " + reason);
+            stage.record.details.addProperty("failure", reason);
+            stage.record.nanos = System.nanoTime() - stage.record.startNanos;
+            timing(stage.stage, stage.record, stage.prepareNanos, jobNanos, finishNanos, " (failed)");
+            return false;
+        }
+
+        OutputStream out = fs.create(new Path(stage.output, MARKER), true);
+        try {
+            out.write(stage.source.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+        // 같은 데이터셋의 이전 fingerprint 결과는 다시 쓰이지 않으므로 지움
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (name.startsWith(stage.stage.name + "-") && name.length() == stage.stage.name.length() + 17 && !status.getPath().equals(stage.output)) {
+                fs.delete(status.getPath(), true);
+            }
+        }
+        String fingerprint = stage.output.getName().substring(stage.stage.name.length() + 1);
+        done(stage.stage, stage.record, stage.output, fingerprint, false, stage.prepareNanos, jobNanos, finishNanos);
+        System.out.println("Stage " + stage.stage.name + " is finished.");
+        return true;
+    }
+
+    private void done(Stage stage, RunReport.Phase record, Path output, String fingerprint, boolean cached,
+            long prepareNanos, long jobNanos, long finishNanos) {
+        datasets.put(stage.name, output);
+        fingerprints.put(stage.name, fingerprint);
+        record.nanos = System.nanoTime() - record.startNanos;
+        record.details.addProperty("fingerprint", fingerprint);
+        record.details.addProperty("prepareMillis", prepareNanos / 1000000);
+        record.details.addProperty("jobMillis", jobNanos / 1000000);
+        record.details.addProperty("finishMillis", finishNanos / 1000000);
+        timing(stage, record, prepareNanos, jobNanos, finishNanos, cached ? " (cached)" : "");
+    }
+
+    private void timing(Stage stage, RunReport.Phase record, long prepareNanos, long jobNanos, long finishNanos, String note) {
+        timings.add(String.format("  %-16s %8d %8d %8d %8d %8d%s", stage.name, (record.startNanos - startNanos) / 1000000, prepareNanos / 1000000,
+                jobNanos / 1000000, finishNanos / 1000000, record.nanos / 1000000, note));
+    }
+
+    // 단계의 fingerprint에 들어가는 설정 (이름순)
+    private Map<String, String> properties(Stage stage) {
+        Map<String, String> properties = new TreeMap<String, String>();
+        for (Map.Entry<String, String> property : conf) {
+            if (matches(property.getKey(), COMMON_PREFIXES) || matches(property.getKey(), stage.configPrefixes)) {
+                properties.put(property.getKey(), property.getValue());
+            }
+        }
+        return properties;
+    }
+
+    private static boolean matches(String key, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) { return true; }
+        }
+        return false;
+    }
+
+    // 외부 입력의 fingerprint (폴더면 모든 파일의 경로, 크기, 수정 시각)
+    private String fingerprint(Path input) throws IOException {
+        FileSystem fs = input.getFileSystem(conf);
+        StringBuilder source = new StringBuilder();
+        RemoteIterator<LocatedFileStatus> files = fs.listFiles(input, true);
+        while (files.hasNext()) {
+            LocatedFileStatus file = files.next();
+            source.append(fs.makeQualified(file.getPath())).append(' ').append(file.getLen()).append(' ').append(file.getModificationTime()).append('\n');
+        }
+        return MD5Hash.digest(source.toString().getBytes(StandardCharsets.UTF_8)).toString().substring(0, 16);
+    }
+}
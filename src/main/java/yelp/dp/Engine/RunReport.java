@@ -0,0 +1,254 @@
+package yelp.dp.Engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import yelp.dp.Common.StageMetrics;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+// driver 한 번의 실행을 기록해서 끝날 때 json 파일로 남기는 보고서
+// driver는 시작할 때 begin, 단계(입력 준비, 잡 실행, 결과 복사 등)가 바뀔 때 phase, 끝날 때 finish를 호출하고
+// JobRunner.run으로 실행한 잡(hot key 부분 결과를 합치는 잡 포함)은 실행 시간, 성공 여부, 모든 counter와 함께 현재 단계에 자동으로 기록됨
+// 단계마다 걸린 시간과 잡들의 counter 합계를, 보고서 전체에 모든 잡의 counter 합계와 가장 큰 reduce 그룹(StageMetrics)을 기록함
+// Pipeline으로 실행하면 동시에 실행되는 단계들은 phases와 따로 stages에 기록함 (시작 시각, 준비/잡/마무리 시간, cache 사용 여부 포함)
+// 파일은 로컬의 report.path (기본값: 현재 폴더의 run-report.json, none이면 쓰지 않음)
+public class RunReport {
+    public static final String PATH = "report.path";
+
+    private static RunReport current; // 실행 중인 driver의 보고서 (driver마다 프로세스가 따로 실행됨)
+
+    private final String driver;
+    private final Configuration conf;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final List<Phase> stages = new ArrayList<Phase>(); // Pipeline의 단계
+    private Phase activeStage; // driver 쪽 작업(사전, side file, 결과 병합 등)이나 잡 기록을 진행 중인 Pipeline 단계
+
+    static class Phase {
+        final String name;
+        final long startNanos = System.nanoTime();
+        long nanos = -1; // 끝나지 않은 단계
+        final List<JsonObject> jobs = new ArrayList<JsonObject>();
+        final List<Counters> counters = new ArrayList<Counters>();
+        final List<Map<String, Map<String, Long>>> largestKeys = new ArrayList<Map<String, Map<String, Long>>>(); // 잡마다 단계 -> (key -> 그룹 크기)
+        final JsonObject details = new JsonObject(); // Pipeline 단계의 시간 구성 등 추가 항목
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private RunReport(String driver, Configuration conf) {
+        this.driver = driver;
+        this.conf = conf;
+    }
+
+    public static void begin(String driver, Configuration conf) {
+        current = new RunReport(driver, conf);
+    }
+
+    // 이전 단계를 끝내고 새 단계를 시작 (Pipeline 단계를 진행 중이면 그 단계에 포함되므로 무시)
+    public static void phase(String name) {
+        if (current == null || current.activeStage != null) { return; }
+        current.endPhase();
+        current.phases.add(new Phase(name));
+    }
+
+    // Pipeline이 단계를 시작할 때 호출 (보고서가 없어도 시간 기록용으로 반환)
+    static Phase stage(String name) {
+        Phase stage = new Phase(name);
+        if (current != null) { current.stages.add(stage); }
+        return stage;
+    }
+
+    // 이후의 phase 호출과 잡 기록을 stage에 모음 (null이면 원래대로 phases에 기록)
+    static void activate(Phase stage) {
+        if (current != null) { current.activeStage = stage; }
+    }
+
+    // JobRunner.run, Pipeline에서 호출 (counters는 실패하면 null)
+    static void recordJob(Job job, Counters counters, long nanos) throws IOException {
+        // reducer가 남긴 가장 큰 그룹 파일은 보고서가 없어도 결과 폴더에 남지 않도록 읽어서 지움
+        Map<String, Map<String, Long>> largestKeys = StageMetrics.collectLargestKeys(job.getConfiguration(), FileOutputFormat.getOutputPath(job));
+        if (current == null) { return; }
+        if (current.phases.isEmpty() && current.activeStage == null) { current.phases.add(new Phase("jobs")); }
+        Phase phase = current.activeStage != null ? current.activeStage : current.phases.get(current.phases.size() - 1);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("name", job.getJobName());
+        json.addProperty("succeeded", counters != null);
+        json.addProperty("wallClockMillis", nanos / 1000000);
+        json.addProperty("reduces", job.getNumReduceTasks());
+        if (counters != null) {
+            json.add("counters", countersJson(Collections.singletonList(counters)));
+            json.add("largestKeys", largestKeysJson(Collections.singletonList(largestKeys), job.getConfiguration().getInt(StageMetrics.LARGEST_KEYS, 3)));
+            phase.counters.add(counters);
+            phase.largestKeys.add(largestKeys);
+        }
+        phase.jobs.add(json);
+    }
+
+    // 보고서를 파일로 씀 (설정된 경로가 none이면 생략)
+    public static void finish(boolean succeeded) throws IOException {
+        if (current == null) { return; }
+        RunReport report = current;
+        current = null;
+        report.endPhase();
+        String path = report.conf.get(PATH, "run-report.json");
+        if (path.equals("none")) { return; }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("driver", report.driver);
+        json.addProperty("engine", JobRunner.isLocal(report.conf) ? "local" : "hadoop");
+        json.addProperty("succeeded", succeeded);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        json.addProperty("startTime", format.format(new Date(report.startMillis)));
+        json.addProperty("wallClockMillis", (System.nanoTime() - report.startNanos) / 1000000);
+
+        List<Counters> allCounters = new ArrayList<Counters>();
+        List<Map<String, Map<String, Long>>> allLargestKeys = new ArrayList<Map<String, Map<String, Long>>>();
+        json.add("phases", phasesJson(report.phases, allCounters, allLargestKeys));
+        if (!report.stages.isEmpty()) { json.add("stages", phasesJson(report.stages, allCounters, allLargestKeys)); }
+        json.add("totals", countersJson(allCounters));
+        json.add("largestKeys", largestKeysJson(allLargestKeys, report.conf.getInt(StageMetrics.LARGEST_KEYS, 3)));
+
+        File file = new File(path);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(json, writer);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+        System.out.println("Run report written to " + file.getAbsolutePath());
+    }
+
+    // 단계별 시간과 잡, 잡들의 counter 합계 (모든 잡의 counter와 가장 큰 그룹은 allCounters, allLargestKeys에 모음)
+    private static JsonArray phasesJson(List<Phase> phases, List<Counters> allCounters, List<Map<String, Map<String, Long>>> allLargestKeys) {
+        JsonArray array = new JsonArray();
+        for (Phase phase : phases) {
+            JsonObject phaseJson = new JsonObject();
+            phaseJson.addProperty("name", phase.name);
+            phaseJson.addProperty("wallClockMillis", phase.nanos / 1000000);
+            for (Map.Entry<String, JsonElement> detail : phase.details.entrySet()) {
+                phaseJson.add(detail.getKey(), detail.getValue());
+            }
+            if (!phase.jobs.isEmpty()) {
+                JsonArray jobs = new JsonArray();
+                for (JsonObject job : phase.jobs) {
+                    jobs.add(job);
+                }
+                phaseJson.add("jobs", jobs);
+                phaseJson.add("totals", countersJson(phase.counters));
+            }
+            array.add(phaseJson);
+            allCounters.addAll(phase.counters);
+            allLargestKeys.addAll(phase.largestKeys);
+        }
+        return array;
+    }
+
+    private void endPhase() {
+        if (phases.isEmpty()) { return; }
+        Phase last = phases.get(phases.size() - 1);
+        if (last.nanos < 0) { last.nanos = System.nanoTime() - last.startNanos; }
+    }
+
+    // 여러 잡의 counter를 group, 이름별로 합친 json (0인 counter는 생략)
+    // 여러 잡을 합치면 Counters의 개수 제한을 넘을 수 있으므로 Map으로 합침
+    static JsonObject countersJson(List<Counters> countersList) {
+        Map<String, Map<String, Long>> groups = new TreeMap<String, Map<String, Long>>();
+        for (Counters counters : countersList) {
+            for (CounterGroup group : counters) {
+                Map<String, Long> values = groups.get(group.getName());
+                if (values == null) {
+                    values = new TreeMap<String, Long>();
+                    groups.put(group.getName(), values);
+                }
+                for (Counter counter : group) {
+                    Long value = values.get(counter.getName());
+                    values.put(counter.getName(), (value == null ? 0 : value) + counter.getValue());
+                }
+            }
+        }
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Map<String, Long>> group : groups.entrySet()) {
+            JsonObject groupJson = new JsonObject();
+            for (Map.Entry<String, Long> counter : group.getValue().entrySet()) {
+                if (counter.getValue() != 0) { groupJson.addProperty(counter.getKey(), counter.getValue()); }
+            }
+            if (!groupJson.entrySet().isEmpty()) { json.add(shortGroupName(group.getKey()), groupJson); }
+        }
+        return json;
+    }
+
+    // 단계별로 가장 큰 reduce 그룹 (여러 잡이나 task에 나뉜 key는 합침)
+    static JsonObject largestKeysJson(List<Map<String, Map<String, Long>>> largestKeysList, int limit) {
+        Map<String, Map<String, Long>> stages = new TreeMap<String, Map<String, Long>>();
+        for (Map<String, Map<String, Long>> largestKeys : largestKeysList) {
+            for (Map.Entry<String, Map<String, Long>> stage : largestKeys.entrySet()) {
+                Map<String, Long> sizes = stages.get(stage.getKey());
+                if (sizes == null) {
+                    sizes = new TreeMap<String, Long>();
+                    stages.put(stage.getKey(), sizes);
+                }
+                for (Map.Entry<String, Long> key : stage.getValue().entrySet()) {
+                    Long size = sizes.get(key.getKey());
+                    sizes.put(key.getKey(), (size == null ? 0 : size) + key.getValue());
+                }
+            }
+        }
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Map<String, Long>> stage : stages.entrySet()) {
+            List<Map.Entry<String, Long>> keys = new ArrayList<Map.Entry<String, Long>>(stage.getValue().entrySet());
+            Collections.sort(keys, new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                    return Long.compare(b.getValue(), a.getValue());
+                }
+            });
+            JsonArray array = new JsonArray();
+            for (Map.Entry<String, Long> key : keys.subList(0, Math.min(limit, keys.size()))) {
+                JsonObject keyJson = new JsonObject();
+                keyJson.addProperty("key", key.getKey());
+                keyJson.addProperty("records", key.getValue());
+                array.add(keyJson);
+            }
+            json.add(stage.getKey(), array);
+        }
+        return json;
+    }
+
+    // org.apache.hadoop.mapreduce.TaskCounter -> TaskCounter
+    private static String shortGroupName(String name) {
+        return name.startsWith(StageMetrics.GROUP_PREFIX) ? name : name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+    }
+}
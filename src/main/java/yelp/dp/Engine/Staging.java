@@ -0,0 +1,203 @@
+package yelp.dp.Engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import yelp.dp.Common.PartitioningManifest;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MD5Hash;
+
+// 잡의 입력과 결과 폴더를 준비하는 도구
+// - 입력은 가능하면 원래 위치(file://, hdfs:// 등)에서 바로 읽음
+// - hdfs로 복사가 필요한 경우에는 <workdir>/input에 복사하고 원본의 MD5를 ".<이름>.md5" 파일로 남겨서,
+//   다음 실행에서 크기와 MD5가 같으면 복사를 건너뜀 (복사한 입력은 지우지 않고 유지함)
+// - 결과 폴더는 part 파일 단위로 병렬로 로컬에 복사하며, 설정으로 생략할 수 있음
+public class Staging {
+    // auto(기본값): 스킴이 없는 경로(로컬 파일)이고 작업 폴더가 다른 파일시스템(hdfs)에 있을 때만 복사
+    // always: 작업 폴더와 다른 파일시스템에 있는 입력은 모두 복사
+    // never: 항상 원래 위치에서 읽음 (클러스터의 모든 노드에서 접근 가능한 경로여야 함)
+    public static final String INPUT_MODE = "staging.input";
+    public static final String COPY_OUTPUT = "staging.copyOutput"; // 결과 폴더를 로컬 작업 폴더로 복사할지 (기본값 true)
+    public static final String COPY_THREADS = "staging.copyThreads"; // 결과 복사에 사용할 thread 수
+
+    // 프로그램 인자로 받은 입력 경로를 잡에서 읽을 경로로 바꿈
+    public static Path input(Configuration conf, Path workDir, String input) throws IOException {
+        Path path = new Path(input);
+        boolean schemeless = path.toUri().getScheme() == null;
+        if (schemeless) { path = FileSystem.getLocal(conf).makeQualified(path); } // 스킴이 없는 경로는 로컬 파일
+        FileSystem sourceFs = path.getFileSystem(conf);
+        FileSystem workFs = workDir.getFileSystem(conf);
+
+        String mode = conf.get(INPUT_MODE, "auto");
+        boolean stage;
+        if (mode.equals("never") || JobRunner.isLocal(conf) || sourceFs.getUri().equals(workFs.getUri())) {
+            stage = false;
+        } else if (mode.equals("always")) {
+            stage = true;
+        } else if (mode.equals("auto")) {
+            stage = schemeless;
+        } else {
+            throw new IllegalArgumentException("Unknown " + INPUT_MODE + " '" + mode + "' (auto, always or never)");
+        }
+
+        if (!stage) {
+            System.out.println("Read " + path + " in place.");
+            return path;
+        }
+        Path staged = new Path(new Path(workDir, "input"), path.getName());
+        stage(sourceFs, path, workFs, staged);
+        return staged;
+    }
+
+    // 최종 결과 폴더 (local 엔진이면 로컬의 ./output, 아니면 <workdir>/output이며 이미 있으면 삭제함)
+    public static Path output(Configuration conf, Path workDir) throws IOException {
+        Path output = JobRunner.isLocal(conf) ? JobRunner.localOutput(conf) : new Path(workDir, "output");
+        FileSystem fs = output.getFileSystem(conf);
+        if (fs.exists(output)) {
+            System.out.println("Delete output folder " + output + ".");
+            fs.delete(output, true);
+        }
+        return output;
+    }
+
+    // 결과 폴더의 파일들을 병렬로 로컬 작업 폴더의 output 폴더로 복사
+    public static void copyOutput(Configuration conf, Path output) throws IOException, InterruptedException {
+        copyOutput(conf, output, JobRunner.localOutput(conf));
+    }
+
+    // 결과 폴더의 파일들을 병렬로 로컬의 localOutput 폴더로 복사 (Pipeline은 데이터셋마다 ./output/<이름>으로 복사)
+    public static void copyOutput(final Configuration conf, Path output, final Path localOutput) throws IOException, InterruptedException {
+        final FileSystem fs = output.getFileSystem(conf);
+        final FileSystem localFs = FileSystem.getLocal(conf);
+        if (!conf.getBoolean(COPY_OUTPUT, true) || fs.makeQualified(output).equals(localOutput)) { return; }
+
+        System.out.println("Copy output folder to local working directory.");
+        localFs.delete(localOutput, true); // 이전 실행의 part 파일이나 _PARTITIONING이 남지 않도록 비움
+        localFs.mkdirs(localOutput);
+        FileStatus[] files = fs.listStatus(output);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(conf.getInt(COPY_THREADS, 4), files.length)));
+        try {
+            List<Future<Boolean>> copies = new ArrayList<Future<Boolean>>();
+            for (final FileStatus file : files) {
+                copies.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return FileUtil.copy(fs, file.getPath(), localFs, new Path(localOutput, file.getPath().getName()), false, true, conf);
+                    }
+                }));
+            }
+            for (Future<Boolean> copy : copies) {
+                copy.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to copy " + output + " to " + localOutput, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // 폴더는 파일마다 따로 비교하고 복사함
+    private static void stage(FileSystem sourceFs, Path source, FileSystem fs, Path staged) throws IOException {
+        FileStatus status = sourceFs.getFileStatus(source);
+        if (status.isDirectory()) {
+            fs.mkdirs(staged);
+            Set<String> names = new HashSet<String>();
+            for (FileStatus child : sourceFs.listStatus(source)) {
+                String name = child.getPath().getName();
+                if (name.startsWith(".") || (name.startsWith("_") && !name.equals(PartitioningManifest.NAME))) { continue; } // manifest는 입력이 어떻게 나뉘었는지 확인하기 위해 복사
+                names.add(name);
+                stage(sourceFs, child.getPath(), fs, new Path(staged, name));
+            }
+            for (FileStatus child : fs.listStatus(staged)) { // 원본에서 사라진 파일은 삭제
+                String name = child.getPath().getName();
+                if (!name.startsWith(".") && !names.contains(name)) {
+                    fs.delete(child.getPath(), true);
+                    fs.delete(marker(child.getPath()), false);
+                }
+            }
+            return;
+        }
+
+        Path marker = marker(staged);
+        if (fs.exists(staged) && fs.exists(marker) && fs.getFileStatus(staged).getLen() == status.getLen()
+                && digest(sourceFs, source).equals(readMarker(fs, marker))) {
+            System.out.println("Skip copying " + source.getName() + " (unchanged since the last copy).");
+            return;
+        }
+
+        System.out.print("Copy " + source + " to hdfs...    ");
+        fs.delete(marker, false); // 복사 도중 실패하면 다음 실행에서 다시 복사하도록 표시를 먼저 지움
+        fs.delete(staged, true);
+        MessageDigest md5 = newMd5();
+        InputStream in = new DigestInputStream(sourceFs.open(source), md5);
+        OutputStream out = fs.create(staged, true);
+        IOUtils.copyBytes(in, out, 1 << 20, true); // 복사하면서 MD5를 계산함
+        writeMarker(fs, marker, new MD5Hash(md5.digest()).toString());
+        System.out.println("Success!");
+    }
+
+    private static Path marker(Path staged) {
+        return new Path(staged.getParent(), "." + staged.getName() + ".md5");
+    }
+
+    private static String digest(FileSystem fs, Path file) throws IOException {
+        MessageDigest md5 = newMd5();
+        InputStream in = new DigestInputStream(fs.open(file), md5);
+        try {
+            byte[] buffer = new byte[1 << 20];
+            while (in.read(buffer) >= 0) { }
+        } finally {
+            in.close();
+        }
+        return new MD5Hash(md5.digest()).toString();
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readMarker(FileSystem fs, Path marker) throws IOException {
+        InputStream in = fs.open(marker);
+        try {
+            byte[] bytes = new byte[(int) fs.getFileStatus(marker).getLen()];
+            IOUtils.readFully(in, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeMarker(FileSystem fs, Path marker, String digest) throws IOException {
+        OutputStream out = fs.create(marker, true);
+        try {
+            out.write((digest + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
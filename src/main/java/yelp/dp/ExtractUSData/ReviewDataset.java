@@ -2,70 +2,215 @@ package yelp.dp.ExtractUSData;
 
 import java.io.IOException;
 
-// json 형식을 사용하기 위해 gson 라이브러리 이용
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
+import yelp.dp.Common.BroadcastSideFile;
+import yelp.dp.Common.ByteBloomFilter;
+import yelp.dp.Common.CompactStringMap;
+import yelp.dp.Common.Compression;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
 
 // 하둡 라이브러리
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
 
 // 해당 클래스를 실행하기 전 input 비즈니스 데이터셋이 미국 비즈니스 데이터셋이어야 함
 public class ReviewDataset {
-    public static class BusinessMapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    public static final String JOIN_MODE = "reviewDataset.joinMode"; // reduce(기본값) 또는 broadcast
+    public static final String BLOOM_FILTER = "reviewDataset.bloomFilter"; // broadcast 모드에서 Bloom filter를 앞단에 둘지 여부
+    public static final String BLOOM_FILTER_FPR = "reviewDataset.bloomFilterFpr"; // Bloom filter의 오탐률
+    public static final String BUSINESS_ID_COUNT = "reviewDataset.businessIdCount"; // driver가 계산한 비즈니스 id 개수
+    public static final String BUSINESS_IDS_FILE = "us_business_ids"; // cache로 배포되는 side file 이름
+    public static final String REDUCES = "reviewDataset.reduces"; // reduce-side join의 reducer 수
+    public static final String REVIEW_PROJECTION = "review"; // -D projection.review=...: 결과에 남길 리뷰 필드 (JsonProjection 참고)
+
+    // reduce-side join에서 같은 business_id 그룹 안의 정렬 순서 (비즈니스 표시가 항상 리뷰보다 먼저 들어옴)
+    public static final byte BUSINESS_TAG = 0;
+    public static final byte REVIEW_TAG = 1;
+
+    public static class BusinessMapper extends Mapper<Object, Text, TaggedKey, Text> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id"); // business_id만 추출
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        Text _value = new Text("us_business");
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
 
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("business_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output key로 저장
+            // json 파일에서 business_id 값을 mapper의 output key로 저장
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey())) {
+                metrics.invalid("Business record without business_id: " + value);
+                return;
+            }
+            _key.setTag(BUSINESS_TAG);
+
+            metrics.output(_key.getKey().getLength() + 1 + _value.getLength());
+            context.write(_key, _value);
+        }
 
-            context.write(new Text(_key), new Text("us_business"));
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 
-    public static class ReviewMapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    public static class ReviewMapper extends Mapper<Object, Text, TaggedKey, Text> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id"); // 리뷰 본문은 파싱하지 않고 business_id만 추출
+        JsonProjection projection; // 설정된 경우에만 사용
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        Text projected = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            projection = projection(context.getConfiguration());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
 
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("business_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output key로 저장
-            
-            context.write(new Text(_key), new Text(value.toString()));
+            // json 파일에서 business_id 값을 mapper의 output key로 저장
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey())) {
+                metrics.invalid("Review record without business_id: " + value);
+                return;
+            }
+            _key.setTag(REVIEW_TAG);
+            if (projection != null && projection.project(value, projected)) { value = projected; } // 결과에 남길 필드만 shuffle
+
+            metrics.output(_key.getKey().getLength() + 1 + value.getLength());
+            context.write(_key, value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 
-    public static class Reduce extends Reducer<Text, Text, NullWritable, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+    // broadcast 모드에서 사용하는 mapper
+    // distributed cache로 받은 미국 비즈니스 id 집합에 없는 리뷰는 map 단계에서 버리므로 shuffle과 reducer가 필요 없음
+    public static class BroadcastReviewMapper extends Mapper<Object, Text, NullWritable, Text> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id"); // 리뷰 본문은 파싱하지 않고 business_id만 추출
+        CompactStringMap usBusinessIds; // 미국 비즈니스 id 집합
+        ByteBloomFilter bloomFilter; // 설정된 경우에만 사용
+        JsonProjection projection; // 설정된 경우에만 사용
+        StageMetrics metrics;
+        long bloomFilterRejected = 0; // Bloom filter만으로 버린 리뷰 수
+        Text businessId = new Text();
+        Text projected = new Text();
 
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            Boolean isTargetState = false;
-            for (Text value : values) {
-                if (value.toString().equals("us_business")) { // 만약 미국 비즈니스 데이터가 존재한다면 실행
-                    isTargetState = true;
-                    break;
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            int expected = conf.getInt(BUSINESS_ID_COUNT, 1024);
+            usBusinessIds = new CompactStringMap(expected);
+            projection = projection(conf);
+            metrics = new StageMetrics(getClass(), conf);
+            if (conf.getBoolean(BLOOM_FILTER, false)) {
+                bloomFilter = ByteBloomFilter.create(expected, conf.getDouble(BLOOM_FILTER_FPR, 0.01));
+            }
+
+            // cache로 받은 side file의 각 줄(business_id)을 집합에 추가
+            LineReader reader = BroadcastSideFile.open(conf, BroadcastSideFile.find(context.getCacheFiles(), BUSINESS_IDS_FILE));
+            try {
+                Text line = new Text();
+                while (reader.readLine(line) > 0) {
+                    usBusinessIds.put(line, 0);
+                    if (bloomFilter != null) { bloomFilter.add(line); }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, businessId)) {
+                metrics.invalid("Review record without business_id: " + value);
+                return;
+            }
+
+            if (bloomFilter != null && !bloomFilter.mightContain(businessId)) { // Bloom filter에 없으면 확실히 미국 비즈니스가 아님
+                bloomFilterRejected++;
+                return;
+            }
+            if (usBusinessIds.contains(businessId)) {
+                if (projection != null && projection.project(value, projected)) { value = projected; } // 결과에 남길 필드만 기록
+                metrics.output(value.getLength());
+                context.write(NullWritable.get(), value);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.counter(context, "BLOOM_FILTER_REJECTED").increment(bloomFilterRejected);
+            metrics.flush(context);
+        }
+    }
+
+    // 리뷰 레코드의 projection (설정되지 않았으면 null)
+    public static JsonProjection projection(Configuration conf) {
+        return JsonProjection.get(conf, REVIEW_PROJECTION, new String[] {"business_id"});
+    }
+
+    // values는 한 번만 순회할 수 있으므로, secondary sort로 비즈니스 표시를 그룹의 맨 앞에 오게 하여 한 번에 처리함
+    // 리뷰를 메모리에 모아두지 않으므로 리뷰가 많은 가게도 일정한 메모리로 처리됨
+    public static class Reduce extends Reducer<TaggedKey, Text, NullWritable, Text> {
+        StageMetrics metrics;
+        long nonUsGroups = 0; // 미국 비즈니스가 아닌 가게의 리뷰 그룹 수
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(TaggedKey key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            // reduce 호출 시점의 key는 그룹의 첫 번째 레코드의 key이므로, 첫 tag가 비즈니스가 아니면 미국 비즈니스가 아님
+            if (key.getTag() != BUSINESS_TAG) {
+                long size = 0;
+                for (Text value : values) { // 그룹 크기만 셈 (하둡은 다음 그룹으로 넘어갈 때 남은 값을 어차피 모두 읽음)
+                    size++;
                 }
+                nonUsGroups++;
+                metrics.group(key.getKey(), size);
+                return;
             }
-            
-            if (isTargetState) {
-                for (Text value : values) {
-                    if (value.toString().equals("us_business")) { // 만약 미국 비즈니스 데이터가 존재한다면 실행
-                        continue;
-                    }
-                    context.write(NullWritable.get(), value);
+
+            // 순회하면서 key도 현재 값의 key로 바뀌므로 tag로 비즈니스 표시와 리뷰를 구분함
+            long size = 0;
+            for (Text value : values) {
+                size++;
+                if (key.getTag() == BUSINESS_TAG) { // 비즈니스 표시는 출력하지 않음
+                    continue;
                 }
+                metrics.output(value.getLength());
+                context.write(NullWritable.get(), value);
             }
+            metrics.group(key.getKey(), size);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.counter(context, "NON_US_GROUPS").increment(nonUsGroups);
+            metrics.flush(context);
         }
     }
 
@@ -79,45 +224,95 @@ public class ReviewDataset {
         System.out.println("########################");
 
         Configuration conf = new Configuration(); // 설정 정의
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
+
+    // -D 옵션을 뺀 인자로 driver를 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("ReviewDataset", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
+
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[2]);
+        Path businessInput = Staging.input(conf, workDir, args[0]); // 비즈니스 데이터셋
+        Path reviewInput = Staging.input(conf, workDir, args[1]); // 리뷰 데이터셋
+        Path output = Staging.output(conf, workDir);
+        Job job = createJob(conf, workDir, businessInput, reviewInput, output);
 
-        FileSystem hdfs = FileSystem.get(conf); // hdfs에 접근할 수 있도록 새로운 객체 생성
-
-        // 로컬에 있는 파일을 hdfs 내로 복사
-        System.out.print("Copy local files to hdfs...    ");
-        Path[] localFiles = {new Path(args[0]), new Path(args[1])}; // 복사할 파일들
-        if(!hdfs.exists(new Path(args[2], "input"))) { hdfs.mkdirs(new Path(args[2], "input")); } // hdfs 내의 input 폴더가 없다면 생성
-        hdfs.copyFromLocalFile(false, true, localFiles, new Path(args[2], "input")); // 파일들을 hdfs로 복사 및 덮어쓰기
-        System.out.println("Success!");
-        
-        // hdfs 내에 output 폴더가 존재한다면 삭제
-        if (hdfs.exists(new Path(args[2], "output"))) {
-            System.out.println("Delete output folder in hdfs.");
-            hdfs.delete(new Path(args[2], "output"), true);
+        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
+        RunReport.phase("extract");
+        Counters counters = JobRunner.run(job);
+        if(counters != null) {
+            ShuffleStats.print(job, counters); // shuffle 크기 출력
+            RunReport.phase("copy output");
+            Staging.copyOutput(conf, output); // 결과 파일을 로컬로 복사 (hdfs 내의 원본 output 폴더는 유지)
+        }
+        RunReport.finish(counters != null);
+        return counters != null;
+    }
+
+    // 설정에 맞는 추출 잡을 만듦 (Pipeline에서도 사용)
+    // broadcast 모드라면 비즈니스 id 집합이 메모리 한도 안에 들어오는지 확인하고, 초과하면 reduce-side join으로 전환
+    public static Job createJob(Configuration conf, Path workDir, Path businessInput, Path reviewInput, Path output) throws IOException {
+        JsonProjection projection = projection(conf); // 잡을 실행하기 전에 설정을 확인
+        if (projection != null) { System.out.println("Project reviews to " + projection + "."); }
+
+        if (conf.get(JOIN_MODE, "reduce").equals("broadcast")) {
+            RunReport.phase("broadcast side file");
+            Path idsFile = new Path(new Path(workDir, "broadcast"), BUSINESS_IDS_FILE);
+            BroadcastSideFile.Stats stats = BroadcastSideFile.write(conf, businessInput, idsFile, "business_id");
+            long estimatedBytes = stats.estimatedBytes();
+            if (conf.getBoolean(BLOOM_FILTER, false)) {
+                estimatedBytes += ByteBloomFilter.estimateBytes(stats.records, conf.getDouble(BLOOM_FILTER_FPR, 0.01));
+            }
+
+            if (BroadcastSideFile.fitsInMemory(conf, estimatedBytes)) {
+                System.out.println("Broadcast " + stats.records + " business ids (about " + (estimatedBytes >> 10) + " KB in memory).");
+                conf.setLong(BUSINESS_ID_COUNT, stats.records);
+                return createBroadcastJob(conf, reviewInput, idsFile, output);
+            }
+            System.out.println("Business id set (about " + (estimatedBytes >> 10) + " KB) exceeds the " + BroadcastSideFile.MEMORY_LIMIT_MB + " limit of "
+                    + conf.getLong(BroadcastSideFile.MEMORY_LIMIT_MB, BroadcastSideFile.DEFAULT_MEMORY_LIMIT_MB) + " MB. Falling back to reduce-side join.");
         }
+        return createReduceJoinJob(conf, businessInput, reviewInput, output);
+    }
 
-        // 잡 생성 및 설정
+    // 비즈니스와 리뷰를 business_id로 shuffle하여 reducer에서 합치는 잡
+    static Job createReduceJoinJob(Configuration conf, Path businessInput, Path reviewInput, Path output) throws IOException {
         Job job = Job.getInstance(conf, "Extract US Review Data");
         job.setJarByClass(ReviewDataset.class); // Job 클래스 설정
         job.setReducerClass(Reduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job, REDUCES); // reducer 수 설정
+        job.setPartitionerClass(TaggedKey.NaturalKeyPartitioner.class); // business_id만으로 reducer를 정함
+        job.setSortComparatorClass(TaggedKey.Comparator.class); // (business_id, tag) 순서로 정렬
+        job.setGroupingComparatorClass(TaggedKey.GroupingComparator.class); // business_id만으로 그룹을 묶음
 
-        job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
+        job.setMapOutputKeyClass(TaggedKey.class); // Mapper의 ouput key 자료형 설정
         job.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
         job.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
         job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
 
-        MultipleInputs.addInputPath(job, new Path(new Path(args[2], "input"), new Path(args[0]).getName()), TextInputFormat.class, ReviewDataset.BusinessMapper.class); // 비즈니스 데이터셋
-        MultipleInputs.addInputPath(job, new Path(new Path(args[2], "input"), new Path(args[1]).getName()), TextInputFormat.class, ReviewDataset.ReviewMapper.class); // 리뷰 데이터셋
-        FileOutputFormat.setOutputPath(job, new Path(args[2], "output")); // output file 설정
+        MultipleInputs.addInputPath(job, businessInput, TextInputFormat.class, ReviewDataset.BusinessMapper.class); // 비즈니스 데이터셋
+        MultipleInputs.addInputPath(job, reviewInput, TextInputFormat.class, ReviewDataset.ReviewMapper.class); // 리뷰 데이터셋
+        FileOutputFormat.setOutputPath(job, output); // output file 설정
+        return job;
+    }
 
-        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
-        if(job.waitForCompletion(true)) {
-            hdfs.delete(new Path(args[2], "input"), true); // hdfs 내의 입력 데이터 삭제
+    // 비즈니스 id 집합을 cache로 배포하고 리뷰만 읽는 map-only 잡
+    static Job createBroadcastJob(Configuration conf, Path reviewInput, Path idsFile, Path output) throws IOException {
+        Job job = Job.getInstance(conf, "Extract US Review Data (broadcast)");
+        job.setJarByClass(ReviewDataset.class); // Job 클래스 설정
+        job.setMapperClass(BroadcastReviewMapper.class); // Mapper 클래스 설정
+        job.setNumReduceTasks(0); // reducer 없이 mapper의 결과를 바로 저장
 
-            // 결과 파일을 로컬로 복사
-            System.out.println("Copy output folder to local working directory.");
-            hdfs.copyToLocalFile(false, new Path(args[2], "output"), new Path(System.getProperty("user.dir"))); // hdfs 내의 원본 ouput 폴더는 유지
-            System.exit(0); // 정상 종료
-        }
-        System.exit(1); // 비정상 종료
+        job.setOutputKeyClass(NullWritable.class); // Mapper의 output key 자료형 설정
+        job.setOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+
+        BroadcastSideFile.addCacheFile(job, idsFile); // 비즈니스 id 집합 배포
+        FileInputFormat.addInputPath(job, reviewInput); // 리뷰 데이터셋
+        FileOutputFormat.setOutputPath(job, output); // output file 설정
+        return job;
     }
 }
\ No newline at end of file
@@ -10,45 +10,112 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import yelp.dp.Common.Compression;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.JsonKeyInputFormat;
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.JsonObjectMerger;
+import yelp.dp.Common.PartitioningManifest;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.TaggedValue;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
+
 // 하둡 라이브러리
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.join.CompositeInputFormat;
+import org.apache.hadoop.mapreduce.lib.join.TupleWritable;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.StringUtils;
 
 public class MergeJson {
+    public static final String REDUCES = "mergeJson.reduces"; // reducer 수
+    // gson(기본값): 값을 gson으로 파싱해서 합친 후 다시 직렬화 (같은 key의 값은 reducer에 들어온 순서대로 덮어씀)
+    // splice: 원본 바이트에서 최상위 필드의 범위만 찾아 이어 붙임 (같은 key는 뒤쪽 입력 파일의 값을 사용)
+    public static final String MODE = "mergeJson.mode";
+    static final String INPUTS = "mergeJson.inputs"; // splice 모드에서 입력 순서를 정하기 위한 입력 경로 목록 (driver가 설정)
+    // reduce(기본값): mapper가 병합키로 shuffle하고 reducer에서 합침
+    // map: 모든 입력이 병합키로 정렬되고 같은 방식으로 나뉘어 있을 때(_PARTITIONING manifest가 같을 때) shuffle 없이
+    //      CompositeInputFormat으로 입력마다 같은 번호의 part 파일을 짝지어 읽으면서 mapper에서 합침 (reducer 없음)
+    // auto: 입력의 manifest가 모두 맞으면 map, 아니면 이유를 출력하고 reduce
+    public static final String JOIN = "mergeJson.join";
+    public static final String PROJECTION = "mergeJson"; // -D projection.mergeJson=...: 결과에 남길 필드 (모든 입력에 적용, JsonProjection 참고)
+
     public static class JsonMapper extends Mapper<Object, Text, Text, Text> {
         String mergeKey = "";
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+        JsonFieldExtractor extractor; // json 전체를 파싱하지 않고 병합키만 추출
+        JsonProjection projection; // 설정된 경우에만 사용
+        SkewedKeys skew; // 레코드가 몰리는 병합키
+        StageMetrics metrics;
+        Text _key = new Text();
+        Text projected = new Text();
 
         @Override
         protected void setup(Context context) {
             Configuration conf = context.getConfiguration();
             mergeKey = conf.get("mergeKey"); // conf에서 병합키를 가져옴
+            extractor = new JsonFieldExtractor(mergeKey);
+            projection = projection(conf);
+            skew = new SkewedKeys(conf);
+            metrics = new StageMetrics(getClass(), conf);
         }
 
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            String _key = json.get(mergeKey).getAsString(); // json 파일에서 기준키에 해당하는 value 값을 mapper의 output key로 반환
-            context.write(new Text(_key), value);
+            // json 파일에서 기준키에 해당하는 value 값을 mapper의 output key로 반환
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key)) {
+                metrics.invalid("Record without merge key '" + mergeKey + "': " + value);
+                return;
+            }
+            if (projection != null && projection.project(value, projected)) { value = projected; } // 결과에 남길 필드만 shuffle
+            metrics.output(_key.getLength() + value.getLength());
+            skew.saltNext(_key, context); // hot key라면 여러 reducer로 나눔
+            context.write(_key, value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 
     public static class JsonReducer extends Reducer<Text, Text, NullWritable, Text> {
         Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        MultipleOutputs<NullWritable, Text> partials; // hot key의 부분 결과
+        StageMetrics metrics;
+        Text mergeKey = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            partials = new MultipleOutputs<NullWritable, Text>(context);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
 
         public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            mergeKey.set(key);
+            boolean salted = SkewedKeys.unsalt(mergeKey, context);
             JsonObject mergedJson = new JsonObject(); // 빈 json 생성
 
             // 같은 key 값으로 들어온 values의 각 요소(value)의 json key와 value를 mergedJson으로 복사
+            long size = 0;
             for (Text value : values) {
+                size++;
+                long begin = System.nanoTime();
                 JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // value값으로 json 생성
+                metrics.addParseNanos(System.nanoTime() - begin);
                 Set<Map.Entry<String, JsonElement>> entries = json.entrySet(); // json의 각 key와 value값을 집합으로 정의
 
                 // 생성된 집합의 각 요소(key, value) 값을 mergedJson에 추가
@@ -56,63 +123,332 @@ public class MergeJson {
                     mergedJson.add(entry.getKey(), json.get(entry.getKey()));
                 }
             }
-            context.write(NullWritable.get(), new Text(gson.toJson(mergedJson))); // NullWritable은 결과 파일을 조정하기 위함
+            metrics.group(mergeKey, size);
+            if (salted) { // hot key는 일부 레코드만 합친 결과이므로 2단계에서 다시 합침
+                SkewedKeys.writePartial(partials, mergeKey, new Text(gson.toJson(mergedJson)), context);
+                return;
+            }
+            Text line = new Text(gson.toJson(mergedJson));
+            metrics.output(line.getLength());
+            context.write(NullWritable.get(), line); // NullWritable은 결과 파일을 조정하기 위함
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            partials.close();
+            metrics.flush(context);
+        }
+    }
+
+    // splice 모드의 mapper: 병합키와 함께 입력 파일의 순서 번호를 tag로 붙인 원본 json을 전달
+    public static class SpliceMapper extends Mapper<Object, Text, Text, TaggedValue> {
+        String mergeKey = "";
+        JsonFieldExtractor extractor; // json 전체를 파싱하지 않고 병합키만 추출
+        JsonProjection projection; // 설정된 경우에만 사용
+        SkewedKeys skew; // 레코드가 몰리는 병합키
+        StageMetrics metrics;
+        Text _key = new Text();
+        TaggedValue _value = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            mergeKey = conf.get("mergeKey"); // conf에서 병합키를 가져옴
+            extractor = new JsonFieldExtractor(mergeKey);
+            projection = projection(conf);
+            skew = new SkewedKeys(conf);
+            metrics = new StageMetrics(getClass(), conf);
+
+            // 이 split이 속한 입력의 순서 번호 (폴더 입력은 하위 파일도 포함)
+            String split = ((FileSplit) context.getInputSplit()).getPath().toString();
+            String[] inputs = StringUtils.split(conf.get(INPUTS));
+            for (int i = 0; i < inputs.length; i++) {
+                String input = StringUtils.unEscapeString(inputs[i]);
+                if (split.equals(input) || split.startsWith(input + "/")) {
+                    _value.setTag((byte) i);
+                    return;
+                }
+            }
+            throw new IOException("Split " + split + " does not belong to any input of " + conf.get(INPUTS));
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key)) {
+                metrics.invalid("Record without merge key '" + mergeKey + "': " + value);
+                return;
+            }
+            if (projection == null || !projection.project(value, _value.getText())) { // 결과에 남길 필드만 shuffle
+                _value.getText().set(value);
+            }
+            metrics.output(_key.getLength() + _value.serializedSize());
+            skew.saltNext(_key, context); // hot key라면 여러 reducer로 나눔
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // splice 모드의 reducer: 입력 파일 순서대로 최상위 필드를 합침 (같은 key는 뒤쪽 입력의 값이 남음)
+    public static class SpliceReducer extends Reducer<Text, TaggedValue, NullWritable, Text> {
+        JsonObjectMerger merger = new JsonObjectMerger();
+        MultipleOutputs<NullWritable, Text> partials; // hot key의 부분 결과
+        StageMetrics metrics;
+        Text mergeKey = new Text();
+        Text merged = new Text();
+        TaggedValue partial = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) {
+            partials = new MultipleOutputs<NullWritable, Text>(context);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            mergeKey.set(key);
+            boolean salted = SkewedKeys.unsalt(mergeKey, context);
+
+            merger.clear();
+            long size = 0;
+            for (TaggedValue value : values) {
+                merger.add(value.getTag(), value.getText());
+                size++;
+            }
+            metrics.group(mergeKey, size);
+
+            if (salted) { // hot key는 입력 순서를 유지할 수 있도록 입력 파일별로 합친 부분 결과를 남기고 2단계에서 다시 합침
+                for (int order = 0; order <= merger.maxOrder(); order++) {
+                    if (merger.merge(merged, order)) {
+                        partial.set((byte) order, merged);
+                        SkewedKeys.writePartial(partials, mergeKey, partial, context);
+                    }
+                }
+                return;
+            }
+            merger.merge(merged);
+            metrics.output(merged.getLength());
+            context.write(NullWritable.get(), merged);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            partials.close();
+            metrics.flush(context);
+        }
+    }
+
+    // map-side join 모드의 mapper: CompositeInputFormat의 outer join은 병합키 순서대로 (병합키, 입력별 json)을 전달함
+    // 한 입력에 같은 병합키가 여러 줄 있으면 조합마다 호출되므로, 병합키가 바뀔 때까지 모았다가 한 번에 합침
+    public static class JoinMapper extends Mapper<Text, TupleWritable, NullWritable, Text> {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        boolean splice;
+        JsonObjectMerger merger = new JsonObjectMerger(); // splice 모드
+        JsonObject mergedJson = new JsonObject(); // gson 모드
+        JsonProjection projection; // 설정된 경우에만 사용
+        Text projected = new Text();
+        Text mergeKey = new Text(); // 합치고 있는 병합키
+        boolean pending = false;
+        long groupSize = 0; // 합치고 있는 병합키의 레코드 수
+        Text merged = new Text();
+        StageMetrics metrics;
+
+        @Override
+        protected void setup(Context context) {
+            splice = context.getConfiguration().get(MODE, "gson").equals("splice");
+            projection = projection(context.getConfiguration());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void map(Text key, TupleWritable tuple, Context context) throws IOException, InterruptedException {
+            if (pending && !key.equals(mergeKey)) {
+                flush(context);
+            }
+            mergeKey.set(key);
+            pending = true;
+
+            // 입력 순서대로 추가 (같은 key는 뒤쪽 입력의 값이 남음)
+            for (int i = 0; i < tuple.size(); i++) {
+                if (!tuple.has(i)) { continue; } // 이 입력에는 없는 병합키
+                Text value = (Text) tuple.get(i);
+                metrics.inputBytes(value.getLength());
+                if (projection != null && projection.project(value, projected)) { value = projected; } // reduce 모드와 같은 필드만 합침
+                groupSize++;
+                if (splice) {
+                    merger.add(i, value);
+                    continue;
+                }
+                long begin = System.nanoTime();
+                JsonObject json = gson.fromJson(value.toString(), JsonObject.class);
+                metrics.addParseNanos(System.nanoTime() - begin);
+                for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+                    mergedJson.add(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        void flush(Context context) throws IOException, InterruptedException {
+            if (splice) {
+                merger.merge(merged);
+                merger.clear();
+            } else {
+                merged.set(gson.toJson(mergedJson));
+                mergedJson = new JsonObject();
+            }
+            metrics.output(merged.getLength());
+            context.write(NullWritable.get(), merged);
+            metrics.group(mergeKey, groupSize);
+            pending = false;
+            groupSize = 0;
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (pending) { flush(context); } // 마지막 병합키
+            metrics.flush(context);
         }
     }
 
+    // 입력 레코드의 projection (설정되지 않았으면 null)
+    static JsonProjection projection(Configuration conf) {
+        return JsonProjection.get(conf, PROJECTION, new String[] {conf.get("mergeKey")});
+    }
+
     public static void main(String[] args) throws Exception {
         // usage : hadoop jar ... [path: file path in local] \
-        //                        [path: file path in local] \
-        //                        [key: keyword to merge two files] \
+        //                        [path: file path in local] ... (하나 이상, splice 모드에서는 뒤쪽 파일의 값이 우선) \
+        //                        [key: keyword to merge files] \
         //                        [path: working directory in hdfs]
 
         System.out.println("########################");
-        System.out.println("  Merge Two Json Files  ");
+        System.out.println("    Merge Json Files    ");
         System.out.println("########################");
 
         Configuration conf = new Configuration(); // 설정 정의
-        conf.set("mergeKey", args[2]); // 프로그램 인자 중 병합키를 conf에 저장
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        if (args.length < 3) {
+            System.err.println("Usage: MergeJson <input>... <merge key> <working directory>");
+            System.exit(2);
+        }
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
+
+    // -D 옵션을 뺀 인자로 driver를 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("MergeJson", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
+        String mergeKey = args[args.length - 2];
+
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[args.length - 1]);
+        Path[] inputs = new Path[args.length - 2];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = Staging.input(conf, workDir, args[i]);
+        }
+        Path output = Staging.output(conf, workDir);
+        Job job = createJob(conf, mergeKey, inputs, output);
+
+        RunReport.phase("merge");
+        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시 (hot key가 있었다면 부분 결과를 2단계 잡에서 합침)
+        Counters counters = JobRunner.run(job);
+        ShuffleStats.print(job, counters); // shuffle 크기 출력
+        boolean succeeded = counters != null && finish(conf, job, inputs, output);
+        if (succeeded) {
+            RunReport.phase("copy output");
+            Staging.copyOutput(conf, output); // 결과 파일을 로컬로 복사 (hdfs 내의 원본 output 폴더는 유지)
+        }
+        RunReport.finish(succeeded);
+        return succeeded;
+    }
+
+    // 입력들을 mergeKey로 합치는 잡을 만듦 (Pipeline에서도 사용)
+    public static Job createJob(Configuration conf, String mergeKey, Path[] inputs, Path output) throws IOException, InterruptedException, ClassNotFoundException {
+        conf.set("mergeKey", mergeKey); // 프로그램 인자 중 병합키를 conf에 저장
         conf.set("mapreduce.reduce.shuffle.memory.limit.percent", "0.15");
+        JsonProjection projection = projection(conf); // 잡을 실행하기 전에 설정을 확인
+        if (projection != null) { System.out.println("Project records to " + projection + "."); }
 
-        FileSystem hdfs = FileSystem.get(conf); // hdfs에 접근할 수 있도록 새로운 객체 생성
+        String mode = conf.get(MODE, "gson");
+        if (!mode.equals("gson") && !mode.equals("splice")) {
+            throw new IllegalArgumentException("Unknown " + MODE + " '" + mode + "' (gson or splice)");
+        }
+        boolean splice = mode.equals("splice");
+        if (splice && inputs.length > Byte.MAX_VALUE) { // 입력 순서 번호는 TaggedValue의 tag로 전달
+            throw new IllegalArgumentException("splice mode merges at most " + Byte.MAX_VALUE + " inputs");
+        }
+        String[] qualifiedInputs = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            qualifiedInputs[i] = StringUtils.escapeString(inputs[i].getFileSystem(conf).makeQualified(inputs[i]).toString());
+        }
+        conf.set(INPUTS, StringUtils.join(",", qualifiedInputs));
 
-        // 로컬에 있는 파일을 hdfs 내로 복사
-        System.out.print("Copy local files to hdfs...    ");
-        Path[] localFiles = {new Path(args[0]), new Path(args[1])}; // 복사할 파일들
-        if(!hdfs.exists(new Path(args[3], "input"))) { hdfs.mkdirs(new Path(args[3], "input")); } // hdfs 내의 input 폴더가 없다면 생성
-        hdfs.copyFromLocalFile(false, true, localFiles, new Path(args[3], "input")); // 파일들을 hdfs로 복사 및 덮어쓰기
-        System.out.println("Success!");
-        
-        // hdfs 내에 output 폴더가 존재한다면 삭제
-        if (hdfs.exists(new Path(args[3], "output"))) {
-            System.out.println("Delete output folder in hdfs.");
-            hdfs.delete(new Path(args[3], "output"), true);
+        // 입력이 병합키로 같은 방식으로 나뉘어 있으면 map-side join으로 합침
+        String join = conf.get(JOIN, "reduce");
+        PartitioningManifest partitioning = null;
+        if (join.equals("map") || join.equals("auto")) {
+            partitioning = PartitioningManifest.common(conf, mergeKey, inputs);
+            if (partitioning == null && join.equals("map")) {
+                throw new IllegalArgumentException(JOIN + "=map needs inputs partitioned and sorted on '" + mergeKey + "' in the same way");
+            }
+            System.out.println(partitioning == null ? "Fall back to the reduce-side merge." : "Merge with a map-side join (" + partitioning + ").");
+        } else if (!join.equals("reduce")) {
+            throw new IllegalArgumentException("Unknown " + JOIN + " '" + join + "' (reduce, map or auto)");
         }
+        return partitioning != null ? createMapJoinJob(conf, inputs, output) : createReduceJob(conf, splice, mergeKey, inputs, output);
+    }
 
+    // 성공한 잡의 hot key 부분 결과를 합치고 manifest를 남김 (실패하면 false)
+    public static boolean finish(Configuration conf, Job job, Path[] inputs, Path output) throws IOException, InterruptedException, ClassNotFoundException {
+        if (!SkewedKeys.mergePartials(conf, job, output)) { return false; }
+        RunReport.phase("write manifest");
+        // 결과도 병합키로 정렬되어 있으므로 다음 잡이 확인할 수 있도록 manifest를 남김 (map join은 입력과 같은 방식으로 나뉨)
+        String mergeKey = conf.get("mergeKey");
+        if (job.getNumReduceTasks() == 0) {
+            PartitioningManifest.common(conf, mergeKey, inputs).write(conf, output);
+        } else {
+            PartitioningManifest.record(job, mergeKey, output);
+        }
+        return true;
+    }
+
+    static Job createReduceJob(Configuration conf, boolean splice, String mergeKey, Path[] inputs, Path output) throws IOException, InterruptedException, ClassNotFoundException {
         // 잡 생성 및 설정
         Job job = Job.getInstance(conf, "Merge Json");
         job.setJarByClass(MergeJson.class); // Job 클래스 설정
-        job.setMapperClass(JsonMapper.class); // Mapper 클래스 설정
-        job.setReducerClass(JsonReducer.class); // Reducer 클래스 설정
+        job.setMapperClass(splice ? SpliceMapper.class : JsonMapper.class); // Mapper 클래스 설정
+        job.setReducerClass(splice ? SpliceReducer.class : JsonReducer.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job, REDUCES); // reducer 수 설정
 
         job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
-        job.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job.setMapOutputValueClass(splice ? TaggedValue.class : Text.class); // Mapper의 output value 자료형 설정
         job.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
         job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
 
-        FileInputFormat.addInputPath(job, new Path(new Path(args[3], "input"), new Path(args[0]).getName())); // 첫번째 input file 설정
-        FileInputFormat.addInputPath(job, new Path(new Path(args[3], "input"), new Path(args[1]).getName())); // 두번째 input file 설정
-        FileOutputFormat.setOutputPath(job, new Path(args[3], "output")); // output file 설정
+        for (Path input : inputs) {
+            FileInputFormat.addInputPath(job, input); // input file 설정
+        }
+        FileOutputFormat.setOutputPath(job, output); // output file 설정
+        SkewedKeys.configure(job, "mergeJson", mergeKey, inputs); // -D mergeJson.skew=true면 hot key를 여러 reducer로 나눔
+        return job;
+    }
 
-        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
-        if(job.waitForCompletion(true)) {
-            hdfs.delete(new Path(args[3], "input"), true); // hdfs 내의 입력 데이터 삭제
+    // shuffle과 reducer 없이 입력마다 같은 번호의 part 파일을 병합키 순서로 함께 읽으면서 합치는 잡
+    static Job createMapJoinJob(Configuration conf, Path[] inputs, Path output) throws IOException {
+        Job job = Job.getInstance(conf, "Merge Json (map-side join)");
+        job.setJarByClass(MergeJson.class);
+        job.setMapperClass(JoinMapper.class);
+        job.setNumReduceTasks(0); // map 결과가 바로 최종 결과
 
-            // 결과 파일을 로컬로 복사
-            System.out.println("Copy output folder to local working directory.");
-            hdfs.copyToLocalFile(false, new Path(args[3], "output"), new Path(System.getProperty("user.dir"))); // hdfs 내의 원본 ouput 폴더는 유지
-            System.exit(0); // 정상 종료
-        }
-        System.exit(1); // 비정상 종료
+        Configuration jobConf = job.getConfiguration();
+        jobConf.set(JsonKeyInputFormat.FIELD, conf.get("mergeKey")); // 각 입력에서 병합키를 key로 읽음
+        jobConf.set(CompositeInputFormat.JOIN_EXPR, CompositeInputFormat.compose("outer", JsonKeyInputFormat.class, inputs));
+        job.setInputFormatClass(CompositeInputFormat.class);
+
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(Text.class);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,474 @@
+package yelp.dp.SearchUserHomeState;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.StringDictionary;
+import yelp.dp.Engine.JobRunner;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+// 결과의 user_id -> home_state를 한 건씩 조회하기 위한 정렬된 binary index (-D searchUserHomeState.index=true면 최종 잡 뒤에 만듦)
+// 결과 폴더의 _index/home_state.idx에 파일 하나로 쓰며, '_'로 시작하므로 결과를 입력으로 읽는 잡에는 영향이 없음
+// 파일 형식 (int는 big endian, vint는 7bit씩 나눈 unsigned varint, 위치는 파일 처음부터의 byte 수)
+// - block : user_id 순서로 blockSize명씩 ([vint 앞 key와 같은 앞부분 길이][vint 나머지 길이][나머지 바이트][vint 주(state) 코드])*
+//           block의 첫 key는 앞 key와 상관없이 전체를 씀
+// - block index : block마다 [long 첫 key의 앞 8byte][int block 위치][int 첫 key 위치] + 끝을 나타내는 항목 하나
+//                 (고정 크기라서 바로 이진 탐색하고, 대부분 앞 8byte만으로 비교가 끝나서 첫 key 영역을 읽지 않음)
+// - 첫 key : 각 block의 첫 user_id를 이어 붙인 것 (첫 key 위치는 이 영역의 처음부터)
+// - 주(state) 사전 : [int 개수]([vint 길이][UTF-8])* (코드는 처음 나온 순서)
+// - footer : [int 유저 수][int block 수][int blockSize][int block index 위치][int 첫 key 위치][int 사전 위치][int VERSION][int MAGIC]
+// 조회는 memory map한 파일에서 block index로 block 하나를 찾은 뒤 block 안의 key를 앞에서부터 비교하므로 heap에 객체를 만들지 않음
+public class HomeStateIndex {
+    public static final String ENABLED = "searchUserHomeState.index"; // true면 최종 잡 뒤에 index를 만듦 (기본값 false, 증분 모드에서는 만들지 않음)
+    public static final String BLOCK_SIZE = "searchUserHomeState.index.blockSize"; // block 하나의 유저 수 (기본값 16, 작을수록 조회가 빠르고 파일이 커짐)
+    public static final String DIR = "_index"; // 결과 폴더 안의 index 폴더
+    public static final String FILE_NAME = "home_state.idx";
+    public static final int NOT_FOUND = -1;
+
+    static final int MAGIC = 0x48534958; // "HSIX"
+    static final int VERSION = 1;
+    static final int FOOTER_BYTES = 32;
+    static final int INDEX_ENTRY_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int users;
+    private final int blocks;
+    private final int blockSize;
+    private final int indexOffset;
+    private final int keysOffset;
+    private final String[] states;
+
+    // buffer의 처음부터 끝까지가 index 파일 하나
+    public HomeStateIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int footer = buffer.limit() - FOOTER_BYTES;
+        if (footer < 0 || buffer.getInt(footer + 28) != MAGIC) { throw new IOException("Not a home state index"); }
+        if (buffer.getInt(footer + 24) != VERSION) { throw new IOException("Unsupported home state index version " + buffer.getInt(footer + 24)); }
+        users = buffer.getInt(footer);
+        blocks = buffer.getInt(footer + 4);
+        blockSize = buffer.getInt(footer + 8);
+        indexOffset = buffer.getInt(footer + 12);
+        keysOffset = buffer.getInt(footer + 16);
+
+        int position = buffer.getInt(footer + 20);
+        states = new String[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < states.length; i++) {
+            long length = readVInt(position);
+            position = (int) length;
+            byte[] bytes = new byte[(int) (length >>> 32)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(position++);
+            }
+            states[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // 로컬 파일을 memory map해서 엶 (파일을 닫아도 map은 유지되고, GC가 buffer를 회수할 때 해제됨)
+    public static HomeStateIndex open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) { throw new IOException(file + " is larger than 2GB"); }
+            return new HomeStateIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int size() {
+        return users;
+    }
+
+    public int stateCount() {
+        return states.length;
+    }
+
+    public String state(int code) {
+        return states[code];
+    }
+
+    // user_id의 주(state) (없으면 null)
+    public String get(String userId) {
+        byte[] key = userId.getBytes(StandardCharsets.UTF_8);
+        int code = lookup(key, 0, key.length);
+        return code == NOT_FOUND ? null : states[code];
+    }
+
+    public int lookup(Text userId) {
+        return lookup(userId.getBytes(), 0, userId.getLength());
+    }
+
+    // UTF-8 user_id의 주(state) 코드 (없으면 NOT_FOUND)
+    public int lookup(byte[] key, int offset, int length) {
+        int block = findBlock(key, offset, length, prefix(key, offset, length), 0);
+        return block < 0 ? NOT_FOUND : searchBlock(block, key, offset, length);
+    }
+
+    // 여러 user_id의 코드를 codes에 채움 (codes[i]는 userIds[i]의 코드)
+    // user_id 순서로 조회하면서 앞에서 찾은 block부터 이진 탐색하므로 index와 block을 한 방향으로만 읽음
+    public void lookup(final Text[] userIds, int[] codes) {
+        Integer[] order = new Integer[userIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return userIds[a].compareTo(userIds[b]);
+            }
+        });
+
+        int low = 0;
+        for (int i : order) {
+            Text userId = userIds[i];
+            int block = findBlock(userId.getBytes(), 0, userId.getLength(), prefix(userId.getBytes(), 0, userId.getLength()), low);
+            if (block < 0) { // 첫 block의 첫 key보다 작음
+                codes[i] = NOT_FOUND;
+                continue;
+            }
+            low = block;
+            codes[i] = searchBlock(block, userId.getBytes(), 0, userId.getLength());
+        }
+    }
+
+    // [low, blocks)에서 첫 key가 key 이하인 마지막 block (low의 첫 key보다 작으면 low - 1)
+    private int findBlock(byte[] key, int offset, int length, long prefix, int low) {
+        int high = blocks - 1;
+        int found = low - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareFirstKey(mid, key, offset, length, prefix) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // block의 첫 key - key (unsigned byte 순서, Text와 같음)
+    private int compareFirstKey(int block, byte[] key, int offset, int length, long prefix) {
+        int entry = indexOffset + block * INDEX_ENTRY_BYTES;
+        long firstPrefix = buffer.getLong(entry);
+        if (firstPrefix != prefix) { return firstPrefix + Long.MIN_VALUE < prefix + Long.MIN_VALUE ? -1 : 1; } // unsigned 비교
+        int start = keysOffset + buffer.getInt(entry + 12);
+        int end = keysOffset + buffer.getInt(entry + INDEX_ENTRY_BYTES + 12); // 다음 항목의 첫 key 위치 (마지막 block 뒤에는 끝을 나타내는 항목이 있음)
+        int common = Math.min(end - start, length);
+        for (int i = 0; i < common; i++) {
+            int a = buffer.get(start + i) & 0xff;
+            int b = key[offset + i] & 0xff;
+            if (a != b) { return a - b; }
+        }
+        return (end - start) - length;
+    }
+
+    // block 안에서 key를 찾음
+    // 앞 key는 항상 찾는 key보다 작고 matched는 앞 key와 찾는 key가 같은 앞부분의 길이이므로, key를 복원하지 않고 같은 앞부분 길이(shared)만으로 비교함
+    // - shared < matched : 이 key는 shared 위치에서 앞 key(= 찾는 key)보다 크므로 찾는 key보다 큼
+    // - shared > matched : 이 key는 matched 위치까지 앞 key와 같으므로 찾는 key보다 작음
+    // - shared == matched : 나머지 바이트를 찾는 key의 matched 위치부터 비교
+    private int searchBlock(int block, byte[] key, int offset, int length) {
+        int position = buffer.getInt(indexOffset + block * INDEX_ENTRY_BYTES + 8);
+        int count = block == blocks - 1 ? users - block * blockSize : blockSize;
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            int shared = buffer.get(position);
+            int suffix = buffer.get(position + 1);
+            int suffixStart = position + 2;
+            if ((shared | suffix) < 0) { // 128 이상인 길이 (user_id에서는 거의 없음)
+                long value = readVInt(position);
+                shared = (int) (value >>> 32);
+                value = readVInt((int) value);
+                suffix = (int) (value >>> 32);
+                suffixStart = (int) value;
+            }
+            int code = buffer.get(suffixStart + suffix);
+            position = suffixStart + suffix + 1;
+            if (code < 0) {
+                long value = readVInt(suffixStart + suffix);
+                code = (int) (value >>> 32);
+                position = (int) value;
+            }
+
+            if (shared < matched) { return NOT_FOUND; }
+            if (shared > matched) { continue; }
+            int compare = 0;
+            for (int j = 0; j < suffix; j++) {
+                if (matched == length) { // 이 key가 더 김
+                    compare = 1;
+                    break;
+                }
+                int a = buffer.get(suffixStart + j) & 0xff;
+                int b = key[offset + matched] & 0xff;
+                if (a != b) {
+                    compare = a - b;
+                    break;
+                }
+                matched++;
+            }
+            if (compare > 0) { return NOT_FOUND; }
+            if (compare == 0 && matched == length) { return code; }
+        }
+        return NOT_FOUND;
+    }
+
+    // key의 앞 8byte를 big endian long으로 (짧으면 0으로 채움, unsigned로 비교하면 바이트 순서와 같음)
+    static long prefix(byte[] key, int offset, int length) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (i < length ? key[offset + i] & 0xff : 0);
+        }
+        return prefix;
+    }
+
+    // position의 vint: (값 << 32) | 다음 위치
+    private long readVInt(int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) { break; }
+        }
+        return ((long) value << 32) | position;
+    }
+
+    // user_id 순서로 받은 (user_id, 주)를 index 파일 형식으로 씀 (block index와 첫 key는 메모리에 모았다가 close에서 씀)
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int blockSize;
+        private final StringDictionary states = new StringDictionary();
+        private final DataOutputBuffer firstKeys = new DataOutputBuffer();
+        private long[] prefixes = new long[32]; // block마다 첫 key의 앞 8byte
+        private int[] index = new int[64]; // block마다 [block 위치, 첫 key 위치]
+        private int blocks = 0;
+        private int users = 0;
+        private final Text previous = new Text();
+
+        public Writer(OutputStream out, int blockSize) {
+            if (blockSize < 1) { throw new IllegalArgumentException(BLOCK_SIZE + " must be positive: " + blockSize); }
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.blockSize = blockSize;
+        }
+
+        public void add(Text userId, Text state) throws IOException {
+            if (users > 0 && userId.compareTo(previous) <= 0) {
+                throw new IOException("User ids must be added in increasing order: '" + previous + "' then '" + userId + "'");
+            }
+            byte[] bytes = userId.getBytes();
+            int length = userId.getLength();
+            int shared = 0;
+            if (users % blockSize == 0) { // 새 block
+                if (prefixes.length == blocks) {
+                    prefixes = Arrays.copyOf(prefixes, blocks * 2);
+                    index = Arrays.copyOf(index, blocks * 4);
+                }
+                prefixes[blocks] = prefix(bytes, 0, length);
+                index[blocks * 2] = out.size();
+                index[blocks * 2 + 1] = firstKeys.getLength();
+                blocks++;
+                firstKeys.write(bytes, 0, length);
+            } else {
+                int limit = Math.min(length, previous.getLength());
+                while (shared < limit && bytes[shared] == previous.getBytes()[shared]) {
+                    shared++;
+                }
+            }
+            writeVInt(shared);
+            writeVInt(length - shared);
+            out.write(bytes, shared, length - shared);
+            int code = states.lookup(state);
+            writeVInt(code != StringDictionary.NOT_FOUND ? code : states.add(state));
+
+            previous.set(userId);
+            users++;
+            if (out.size() == Integer.MAX_VALUE) { throw new IOException("Home state index is larger than 2GB"); } // size()는 2GB에서 멈춤
+        }
+
+        public int size() {
+            return users;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                int indexOffset = out.size();
+                for (int block = 0; block < blocks; block++) {
+                    out.writeLong(prefixes[block]);
+                    out.writeInt(index[block * 2]);
+                    out.writeInt(index[block * 2 + 1]);
+                }
+                out.writeLong(0); // 끝을 나타내는 항목
+                out.writeInt(indexOffset);
+                out.writeInt(firstKeys.getLength());
+
+                int keysOffset = out.size();
+                out.write(firstKeys.getData(), 0, firstKeys.getLength());
+
+                int statesOffset = out.size();
+                out.writeInt(states.size());
+                for (int code = 0; code < states.size(); code++) {
+                    Text state = states.getText(code);
+                    writeVInt(state.getLength());
+                    out.write(state.getBytes(), 0, state.getLength());
+                }
+
+                out.writeInt(users);
+                out.writeInt(blocks);
+                out.writeInt(blockSize);
+                out.writeInt(indexOffset);
+                out.writeInt(keysOffset);
+                out.writeInt(statesOffset);
+                out.writeInt(VERSION);
+                out.writeInt(MAGIC);
+                if (out.size() == Integer.MAX_VALUE) { throw new IOException("Home state index is larger than 2GB"); }
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeVInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    // 결과의 각 줄에서 user_id와 home_state만 보냄
+    public static class IndexMapper extends Mapper<Object, Text, Text, Text> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("user_id", "home_state"); // 필요한 필드만 추출
+        StageMetrics metrics;
+        Text _key = new Text();
+        Text _value = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key) || !extractor.getText(1, _value)) {
+                metrics.invalid("Result record without user_id or home_state: " + value);
+                return;
+            }
+            metrics.output(_key.getLength() + _value.getLength());
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // reducer 하나가 user_id 순서로 받아서 IndexOutputFormat으로 씀
+    public static class IndexReduce extends Reducer<Text, Text, Text, Text> {
+        StageMetrics metrics;
+        Text state = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            long size = 0;
+            for (Text value : values) {
+                if (size++ == 0) { state.set(value); }
+            }
+            metrics.group(key, size);
+            if (size > 1) { // 결과에 같은 유저가 여러 번 있으면 어느 값이 맞는지 알 수 없음
+                metrics.invalid("User " + key + " appears more than once in the result");
+                return;
+            }
+            metrics.output(key.getLength() + state.getLength());
+            context.write(key, state);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // task의 작업 폴더에 index 파일 하나를 씀 (잡이 성공하면 committer가 결과 폴더로 옮김)
+    public static class IndexOutputFormat extends FileOutputFormat<Text, Text> {
+        @Override
+        public RecordWriter<Text, Text> getRecordWriter(TaskAttemptContext context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            Path file = new Path(getDefaultWorkFile(context, "").getParent(), FILE_NAME);
+            final Writer writer = new Writer(file.getFileSystem(conf).create(file, false), conf.getInt(BLOCK_SIZE, 16));
+            return new RecordWriter<Text, Text>() {
+                @Override
+                public void write(Text key, Text value) throws IOException {
+                    writer.add(key, value);
+                }
+
+                @Override
+                public void close(TaskAttemptContext context) throws IOException {
+                    writer.close();
+                }
+            };
+        }
+    }
+
+    // 결과 폴더의 part 파일로 <output>/_index/home_state.idx를 만드는 잡을 실행 (성공하면 true)
+    static boolean build(Configuration conf, Path output) throws IOException, InterruptedException, ClassNotFoundException {
+        Job job = Job.getInstance(conf, "Search User's Home State - index");
+        job.setJarByClass(HomeStateIndex.class); // Job 클래스 설정
+        job.setMapperClass(IndexMapper.class); // Mapper 클래스 설정
+        job.setReducerClass(IndexReduce.class); // Reducer 클래스 설정
+        job.setNumReduceTasks(1); // 파일 하나를 user_id 순서로 쓰기 위해 reducer는 하나 (user_id와 주만 shuffle됨)
+
+        job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
+        job.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job.setOutputKeyClass(Text.class); // Reducer의 output key 자료형 설정
+        job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
+        job.setOutputFormatClass(IndexOutputFormat.class);
+
+        Path indexDir = new Path(output, DIR);
+        FileSystem fs = indexDir.getFileSystem(conf);
+        fs.delete(indexDir, true);
+        FileInputFormat.addInputPath(job, output); // '_'로 시작하는 파일과 폴더는 읽지 않음
+        FileOutputFormat.setOutputPath(job, indexDir);
+        Counters counters = JobRunner.run(job);
+        if (counters == null) { return false; }
+        ShuffleStats.print(job, counters); // shuffle 크기 출력
+
+        long users = counters.findCounter(TaskCounter.REDUCE_OUTPUT_RECORDS).getValue();
+        long bytes = fs.getFileStatus(new Path(indexDir, FILE_NAME)).getLen();
+        System.out.printf("Home state index of %,d users: %,d bytes (%.1f bytes per user).%n", users, bytes, users == 0 ? 0.0 : (double) bytes / users);
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package yelp.dp.SearchUserHomeState;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import yelp.dp.Common.DeltaStore;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Common.TaggedValue;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+// SearchUserHomeState의 증분 모드 (searchUserHomeState.incremental=true)
+// 입력은 지난 실행 이후 새로 생긴 리뷰와 새로 생기거나 바뀐 가게, 유저만 담은 파일(delta)이고 (첫 실행의 delta는 전체 데이터셋)
+// <workdir>/incremental/homeState의 DeltaStore에 가게별 주(state)와 유저별 (주(state)별 리뷰 수, 유저 정보)를 유지함
+// - 1번 잡: delta의 리뷰를 가게별로 모아 가게의 주(state)를 붙임 (delta에 없는 가게는 저장소에서 찾음), 바뀐 가게는 저장소의 새 층이 됨
+// - 2번 잡: 유저별로 이전 리뷰 수에 새 리뷰 수를 더하고, home_state가 바뀌었거나 유저 정보가 바뀐 유저만 결과로 다시 출력함
+// 리뷰는 추가만 된다고 가정하며, 가게의 주(state)가 바뀌면 이후의 리뷰부터 새 주로 셈 (BUSINESS_STATE_CHANGES counter)
+public class IncrementalHomeState {
+    static final String BUSINESS_STORE = "business"; // business_id -> state
+    static final String USER_STORE = "user"; // user_id -> "주(state)별 리뷰 수 json\t유저 json(없으면 빈 문자열)"
+    static final String VISITS = "visits"; // 1번 잡이 남기는 job1 형식의 방문 유저 목록 (named output)
+    static final String CHANGED = "changed"; // 2번 잡이 남기는 결과 (named output)
+
+    // 가게별로 delta의 리뷰를 모아서 job1과 같은 형식의 줄을 VISITS named output으로 씀
+    public static class VisitsReduce extends Reducer<TaggedKey, TaggedValue, Text, Text> {
+        VisitedUsersByBusiness.VisitedUsersWriter writer;
+        DeltaStore.Reader store;
+        MultipleOutputs<Text, Text> visits;
+        StageMetrics metrics;
+        Text businessId = new Text();
+        Text state = new Text();
+        Text previous = new Text();
+        long stateChanges = 0; // 주(state)가 바뀐 가게 수
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            store = new DeltaStore.Reader(conf, BUSINESS_STORE);
+            visits = new MultipleOutputs<Text, Text>(context);
+            metrics = new StageMetrics(getClass(), conf);
+            writer = new VisitedUsersByBusiness.VisitedUsersWriter(conf.getInt(VisitedUsersByBusiness.CHUNK_SIZE, 1000)) {
+                @Override
+                protected void write(Text line) throws IOException, InterruptedException {
+                    metrics.output(line.getLength());
+                    visits.write(VISITS, NullWritable.get(), line, VISITS + "/part");
+                }
+            };
+        }
+
+        public void reduce(TaggedKey key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            businessId.set(key.getKey());
+            writer.start(businessId);
+            boolean existed = store.get(businessId, previous);
+            if (existed) { writer.setState(previous); } // delta에 없는 가게는 저장소의 주(state)를 사용 (저장소에도 없으면 빈 주(state))
+            boolean hasBusiness = false;
+            long size = 0;
+            for (TaggedValue value : values) { // delta의 주(state)가 방문 유저보다 먼저 들어옴
+                size++;
+                if (value.getTag() == VisitedUsersByBusiness.BUSINESS) {
+                    hasBusiness = true;
+                    state.set(value.getText());
+                    writer.setState(state);
+                } else {
+                    writer.add(value.getText()); // 방문한 유저 추가 (chunk가 차면 출력)
+                }
+            }
+
+            if (hasBusiness && (!existed || !previous.equals(state))) {
+                if (existed) { stateChanges++; }
+                context.write(businessId, state); // 저장소의 새 층
+            }
+            writer.finish();
+            metrics.group(businessId, size);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            visits.close();
+            store.close();
+            metrics.counter(context, "BUSINESS_STATE_CHANGES").increment(stateChanges);
+            metrics.flush(context);
+        }
+    }
+
+    // 유저별로 저장소의 이전 값에 delta를 합쳐서 새 층에 쓰고, 결과가 바뀐 유저만 CHANGED named output으로 출력함
+    // 결과 줄은 UsersHomeState.Reduce와 같은 형식
+    public static class HomeStateReduce extends Reducer<Text, TaggedValue, Text, Text> {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        UsersHomeState.StateCounter before = new UsersHomeState.StateCounter(); // 이전 실행까지의 리뷰 수
+        UsersHomeState.StateCounter after = new UsersHomeState.StateCounter(); // 이번 delta를 더한 리뷰 수
+        DeltaStore.Reader store;
+        MultipleOutputs<Text, Text> changed;
+        StageMetrics metrics;
+        Text previous = new Text();
+        Text state = new Text();
+        Text stored = new Text();
+        long newUsers = 0, homeStateChanges = 0, recordChanges = 0;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            store = new DeltaStore.Reader(context.getConfiguration(), USER_STORE);
+            changed = new MultipleOutputs<Text, Text>(context);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            String user = null; // delta의 유저 정보
+            long size = 0;
+            boolean hasReviews = false;
+            for (TaggedValue value : values) {
+                size++;
+                if (value.getTag() == UsersHomeState.USER) {
+                    if (user != null) { // 같은 유저가 delta에 여러 번 있으면 어느 값이 최신인지 알 수 없음
+                        metrics.invalid("User " + key + " appears more than once in the delta");
+                        continue;
+                    }
+                    user = value.getText().toString();
+                } else if (value.getTag() == UsersHomeState.STATE) {
+                    after.add(value.getText(), value.getCount());
+                    hasReviews = true;
+                }
+            }
+            metrics.group(key, size);
+
+            String previousUser = null;
+            if (store.get(key, previous)) {
+                String[] fields = previous.toString().split("\t", 2);
+                long begin = System.nanoTime();
+                for (Entry<String, JsonElement> count : gson.fromJson(fields[0], JsonObject.class).entrySet()) {
+                    state.set(count.getKey());
+                    before.add(state, count.getValue().getAsInt());
+                    after.add(state, count.getValue().getAsInt());
+                }
+                metrics.addParseNanos(System.nanoTime() - begin);
+                if (!fields[1].isEmpty()) { previousUser = fields[1]; }
+            }
+            boolean userChanged = user != null && !user.equals(previousUser);
+            if (user == null) { user = previousUser; }
+
+            if (hasReviews || userChanged) { // 저장소의 새 층
+                JsonObject counts = new JsonObject();
+                for (int i = 0; i < after.size(); i++) {
+                    counts.addProperty(after.state(i).toString(), after.count(i));
+                }
+                stored.set(gson.toJson(counts) + "\t" + (user == null ? "" : user));
+                context.write(key, stored);
+            }
+
+            // 유저 정보와 리뷰가 모두 있어야 결과가 있음 (UsersHomeState.Reduce와 같음)
+            if (user != null && after.size() > 0) {
+                String homeState = after.top();
+                String previousHomeState = previousUser != null && before.size() > 0 ? before.top() : null; // 이전 실행에서 출력된 값
+                if (previousHomeState == null) {
+                    newUsers++;
+                } else if (!homeState.equals(previousHomeState)) {
+                    homeStateChanges++;
+                } else if (userChanged) {
+                    recordChanges++;
+                }
+                if (previousHomeState == null || !homeState.equals(previousHomeState) || userChanged) {
+                    JsonObject json = gson.fromJson(user, JsonObject.class);
+                    json.addProperty("home_state", homeState);
+                    Text line = new Text(gson.toJson(json));
+                    metrics.output(line.getLength());
+                    changed.write(CHANGED, NullWritable.get(), line, CHANGED + "/part");
+                }
+            }
+            before.clear();
+            after.clear();
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            changed.close();
+            store.close();
+            metrics.counter(context, "NEW_USERS").increment(newUsers);
+            metrics.counter(context, "HOME_STATE_CHANGES").increment(homeStateChanges);
+            metrics.counter(context, "RECORD_CHANGES").increment(recordChanges);
+            metrics.flush(context);
+        }
+    }
+
+    // 증분 모드 실행 (성공하면 true), 결과 폴더에는 이번 실행에서 바뀐 유저만 남음
+    static boolean run(Configuration conf, Path workDir, Path businessInput, Path reviewInput, Path userInput, Path output) throws Exception {
+        RunReport.phase("compact");
+        DeltaStore store = new DeltaStore(conf, new Path(new Path(workDir, "incremental"), "homeState"));
+        System.out.println("Incremental run " + (store.generation() + 1) + " with the given files as the delta.");
+        if (!store.compact(BUSINESS_STORE) || !store.compact(USER_STORE)) { return false; }
+
+        // 1번 잡: 가게별 방문 유저 (바뀐 가게는 저장소의 새 층, 방문 유저 목록은 층 안의 visits 폴더)
+        RunReport.phase("visited users");
+        Job job1 = Job.getInstance(conf, "Search User's Home State - 1 (incremental)");
+        job1.setJarByClass(IncrementalHomeState.class); // Job 클래스 설정
+        job1.setReducerClass(VisitsReduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job1, Main.VISITED_USERS_REDUCES); // reducer 수 설정
+        job1.setPartitionerClass(TaggedKey.NaturalKeyPartitioner.class); // business_id만으로 reducer를 정함
+        job1.setSortComparatorClass(TaggedKey.Comparator.class); // (business_id, tag) 순서로 정렬해서 주(state)가 방문 유저보다 먼저 들어옴
+        job1.setGroupingComparatorClass(TaggedKey.GroupingComparator.class); // business_id만으로 그룹을 묶음
+
+        job1.setMapOutputKeyClass(TaggedKey.class); // Mapper의 ouput key 자료형 설정
+        job1.setMapOutputValueClass(TaggedValue.class); // Mapper의 output value 자료형 설정
+        job1.setOutputKeyClass(Text.class); // Reducer의 output key 자료형 설정 (business_id)
+        job1.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정 (state)
+        job1.setOutputFormatClass(MapFileOutputFormat.class);
+        MultipleOutputs.addNamedOutput(job1, VISITS, TextOutputFormat.class, NullWritable.class, Text.class);
+
+        MultipleInputs.addInputPath(job1, businessInput, TextInputFormat.class, VisitedUsersByBusiness.BusinessMapper.class); // 비즈니스 데이터셋
+        MultipleInputs.addInputPath(job1, reviewInput, TextInputFormat.class, VisitedUsersByBusiness.ReviewMapper.class); // 리뷰 데이터셋
+        Path businessLayer = store.newLayer(BUSINESS_STORE);
+        store.configure(job1, BUSINESS_STORE);
+        FileOutputFormat.setOutputPath(job1, businessLayer);
+        Counters job1Counters = JobRunner.run(job1);
+        if (job1Counters == null) { return false; }
+        ShuffleStats.print(job1, job1Counters); // shuffle 크기 출력
+
+        // 층에는 MapFile만 남도록 방문 유저 목록을 밖으로 옮김
+        FileSystem fs = businessLayer.getFileSystem(conf);
+        Path visits = store.next(VISITS);
+        fs.delete(visits, true);
+        if (fs.exists(new Path(businessLayer, VISITS))) { fs.rename(new Path(businessLayer, VISITS), visits); } // 리뷰와 가게가 없는 delta
+
+        // 2번 잡: 유저별 home_state 갱신
+        RunReport.phase("home state");
+        Job job2 = Job.getInstance(conf, "Search User's Home State - 2 (incremental)");
+        job2.setJarByClass(IncrementalHomeState.class); // Job 클래스 설정
+        job2.setCombinerClass(UsersHomeState.Combine.class); // 유저별 주(state) 개수를 map 단계에서 미리 합침
+        job2.setReducerClass(HomeStateReduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job2, Main.HOME_STATE_REDUCES); // reducer 수 설정
+
+        job2.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
+        job2.setMapOutputValueClass(TaggedValue.class); // Mapper의 output value 자료형 설정
+        job2.setOutputKeyClass(Text.class); // Reducer의 output key 자료형 설정 (user_id)
+        job2.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
+        job2.setOutputFormatClass(MapFileOutputFormat.class);
+        MultipleOutputs.addNamedOutput(job2, CHANGED, TextOutputFormat.class, NullWritable.class, Text.class);
+
+        MultipleInputs.addInputPath(job2, userInput, TextInputFormat.class, UsersHomeState.UserMapper.class); // 유저 데이터셋
+        if (fs.exists(visits)) {
+            MultipleInputs.addInputPath(job2, visits, TextInputFormat.class, UsersHomeState.Job1Mapper.class); // 1번 잡의 방문 유저 목록
+        }
+        Path userLayer = store.newLayer(USER_STORE);
+        store.configure(job2, USER_STORE);
+        FileOutputFormat.setOutputPath(job2, userLayer);
+        Counters counters = JobRunner.run(job2);
+        if (counters == null) { return false; }
+        ShuffleStats.print(job2, counters); // shuffle 크기 출력
+
+        // 바뀐 유저를 결과 폴더로 옮기고 실행을 완료함
+        RunReport.phase("commit");
+        Path changed = new Path(userLayer, CHANGED);
+        fs.mkdirs(output);
+        if (fs.exists(changed)) {
+            for (FileStatus file : fs.listStatus(changed)) {
+                fs.rename(file.getPath(), new Path(output, file.getPath().getName()));
+            }
+            fs.delete(changed, true);
+        }
+        store.commit();
+        return true;
+    }
+}
@@ -1,17 +1,52 @@
 package yelp.dp.SearchUserHomeState;
 
+import java.io.IOException;
+
+import yelp.dp.Common.BroadcastSideFile;
+import yelp.dp.Common.Compression;
+import yelp.dp.Common.JsonKeySampler;
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.PartitioningManifest;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Common.TaggedValue;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
+
 // 하둡 라이브러리
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 public class Main {
+    // reduce(기본값): 두 개의 잡으로 처리
+    // broadcast: business_id -> state를 cache로 배포하여 한 번의 shuffle로 처리 (메모리 한도를 넘으면 reduce로 전환)
+    public static final String JOIN_MODE = "searchUserHomeState.joinMode";
+    public static final String VISITED_USERS_REDUCES = "searchUserHomeState.visitedUsers.reduces"; // 첫 번째 잡의 reducer 수
+    public static final String HOME_STATE_REDUCES = "searchUserHomeState.homeState.reduces"; // 최종 잡의 reducer 수
+    // true면 유저 데이터셋의 user_id를 샘플링해서 최종 잡의 reducer마다 user_id 구간을 나눔
+    // (part 파일을 순서대로 이으면 user_id 순으로 정렬된 결과가 되고, reducer 간 부하도 고르게 나뉨)
+    public static final String TOTAL_ORDER = "searchUserHomeState.totalOrder";
+    // -D searchUserHomeState.visitedUsers.skew=true: 리뷰가 몰리는 가게(business_id)를 첫 번째 잡의 여러 reducer로 나눔
+    // -D searchUserHomeState.homeState.skew=true: 리뷰를 많이 작성한 유저(user_id)를 최종 잡의 여러 reducer로 나누고 2단계 잡에서 합침
+    // (hot key는 리뷰 데이터셋을 샘플링해서 찾고, <scope>.hotKeys로 직접 지정할 수도 있음)
+    // true면 입력을 지난 실행 이후의 delta로 보고 <workdir>/incremental에 유지하는 유저별 리뷰 수를 갱신함 (IncrementalHomeState 참고)
+    public static final String INCREMENTAL = "searchUserHomeState.incremental";
+    // -D searchUserHomeState.semiJoin=true: user_id Bloom filter로 결과에 나오지 않을 유저와 리뷰를 map 단계에서 버림 (SemiJoinFilters 참고)
+    // -D searchUserHomeState.index=true: 최종 잡 뒤에 user_id -> home_state 조회용 binary index를 <output>/_index에 만듦 (HomeStateIndex 참고)
+    static final String VISITED_USERS = "searchUserHomeState.visitedUsers";
+    static final String HOME_STATE = "searchUserHomeState.homeState";
+
     public static void main(String[] args) throws Exception {
         // usage : hadoop jar ... [path: business.json file path in local] \
         //                        [path: review.json file path in local] \
@@ -23,72 +58,177 @@ public class Main {
         System.out.println("###############################");
 
         Configuration conf = new Configuration(); // 설정 정의
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
+
+    // -D 옵션을 뺀 인자로 driver를 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("SearchUserHomeState", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
+        JsonProjection projection = UsersHomeState.projection(conf); // 잡을 실행하기 전에 설정을 확인
+        if (projection != null) { System.out.println("Project users to " + projection + "."); }
+
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[3]);
+        Path businessInput = Staging.input(conf, workDir, args[0]); // 비즈니스 데이터셋
+        Path reviewInput = Staging.input(conf, workDir, args[1]); // 리뷰 데이터셋
+        Path userInput = Staging.input(conf, workDir, args[2]); // 유저 데이터셋
+        Path output = Staging.output(conf, workDir);
+
+        boolean succeeded;
+        if (conf.getBoolean(INCREMENTAL, false)) { // 결과 폴더에는 home_state나 유저 정보가 바뀐 유저만 남음
+            if (conf.getBoolean(HomeStateIndex.ENABLED, false)) { System.out.println(HomeStateIndex.ENABLED + " is ignored in the incremental mode."); }
+            succeeded = IncrementalHomeState.run(conf, workDir, businessInput, reviewInput, userInput, output);
+        } else {
+            succeeded = runJobs(conf, workDir, businessInput, reviewInput, userInput, output);
+        }
+        if (succeeded) {
+            RunReport.phase("copy output");
+            Staging.copyOutput(conf, output); // 결과 파일을 로컬로 복사 (hdfs 내의 원본 output 폴더는 유지)
+        }
+        RunReport.finish(succeeded);
+        return succeeded;
+    }
 
-        FileSystem hdfs = FileSystem.get(conf); // hdfs에 접근할 수 있도록 새로운 객체 생성
-
-        // 로컬에 있는 파일을 hdfs 내로 복사
-        System.out.print("Copy local files to hdfs...    ");
-        if(!hdfs.exists(new Path(args[3], "input"))) { hdfs.mkdirs(new Path(args[3], "input")); } // hdfs 내의 input 폴더가 없다면 생성
-        Path[] localFiles = {new Path(args[0]), new Path(args[1]), new Path(args[2])}; // 복사할 파일들
-        hdfs.copyFromLocalFile(false, true, localFiles, new Path(args[3], "input")); // 파일들을 hdfs로 복사 및 덮어쓰기
-        System.out.println("Success!");
-        
-        // hdfs 내에 이미 visited_users_output 폴더가 존재한다면 삭제
-        if (hdfs.exists(new Path(args[3], "visited_users_output"))) {
+    // 증분 모드가 아닐 때의 잡들을 실행 (성공하면 true)
+    private static boolean runJobs(Configuration conf, Path workDir, Path businessInput, Path reviewInput, Path userInput, Path output) throws Exception {
+        FileSystem hdfs = workDir.getFileSystem(conf); // hdfs에 접근할 수 있도록 새로운 객체 생성
+
+        // 유저 데이터셋과 리뷰 데이터셋의 user_id filter를 만들어 이후의 잡에 배포
+        if (conf.getBoolean(SemiJoinFilters.ENABLED, false)) {
+            RunReport.phase("semi-join filters");
+            if (!SemiJoinFilters.build(conf, userInput, reviewInput, new Path(workDir, "semijoin"))) { return false; }
+        }
+
+        // 이미 visited_users_output 폴더가 존재한다면 삭제
+        Path visitedUsersOutput = new Path(workDir, "visited_users_output");
+        if (hdfs.exists(visitedUsersOutput)) {
             System.out.println("Delete visited_users_output folder in hdfs.");
-            hdfs.delete(new Path(args[3], "visited_users_output"), true);
+            hdfs.delete(visitedUsersOutput, true);
         }
-        // hdfs 내에 이미 output 폴더가 존재한다면 삭제
-        if (hdfs.exists(new Path(args[3], "output"))) {
-            System.out.println("Delete output folder in hdfs.");
-            hdfs.delete(new Path(args[3], "output"), true);
+
+        // broadcast 모드라면 business_id -> state가 메모리 한도 안에 들어오는지 확인
+        Job finalJob = null;
+        if (conf.get(JOIN_MODE, "reduce").equals("broadcast")) {
+            RunReport.phase("broadcast side file");
+            Path statesFile = new Path(new Path(workDir, "broadcast"), UsersHomeState.BUSINESS_STATES_FILE);
+            BroadcastSideFile.Stats stats = BroadcastSideFile.write(conf, businessInput, statesFile, "business_id", "state");
+            if (BroadcastSideFile.fitsInMemory(conf, stats.estimatedBytes())) {
+                System.out.println("Broadcast states of " + stats.records + " businesses (about " + (stats.estimatedBytes() >> 10) + " KB in memory).");
+                conf.setLong(UsersHomeState.BUSINESS_COUNT, stats.records);
+                finalJob = createSingleJob(conf, reviewInput, userInput, statesFile, output);
+            } else {
+                System.out.println("Business states (about " + (stats.estimatedBytes() >> 10) + " KB) exceed the " + BroadcastSideFile.MEMORY_LIMIT_MB + " limit of "
+                        + conf.getLong(BroadcastSideFile.MEMORY_LIMIT_MB, BroadcastSideFile.DEFAULT_MEMORY_LIMIT_MB) + " MB. Falling back to two jobs.");
+            }
+        }
+
+        if (finalJob == null) {
+            // 각 가게에 다녀간 손님 리스트
+            RunReport.phase("visited users");
+            Job job1 = createVisitedUsersJob(conf, businessInput, reviewInput, visitedUsersOutput);
+            Counters job1Counters = JobRunner.run(job1);
+            if(job1Counters == null) { return false; } // job1을 돌리는 중 문제가 발생하면 프로그램 중단
+            ShuffleStats.print(job1, job1Counters); // shuffle 크기 출력
+
+            System.out.println("First job is finished! Starting Second Job...");
+            finalJob = createHomeStateJob(conf, userInput, visitedUsersOutput, output);
         }
 
-        // 첫 번째 잡 생성 및 설정
-        // 각 가게에 다녀간 손님 리스트
+        RunReport.phase("home state");
+        configureFinalJob(conf, workDir, finalJob, userInput, reviewInput);
+        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
+        Counters counters = JobRunner.run(finalJob);
+        ShuffleStats.print(finalJob, counters); // shuffle 크기 출력
+        return counters != null && finish(conf, finalJob, output);
+    }
+
+    // 첫 번째 잡 생성 및 설정 (Pipeline에서도 사용)
+    // 각 가게에 다녀간 손님 리스트
+    public static Job createVisitedUsersJob(Configuration conf, Path businessInput, Path reviewInput, Path output) throws IOException, InterruptedException, ClassNotFoundException {
         Job job1 = Job.getInstance(conf, "Search User's Home State - 1");
         job1.setJarByClass(VisitedUsersByBusiness.class); // Job 클래스 설정
         job1.setReducerClass(VisitedUsersByBusiness.Reduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job1, VISITED_USERS_REDUCES); // reducer 수 설정
+        job1.setPartitionerClass(TaggedKey.NaturalKeyPartitioner.class); // business_id만으로 reducer를 정함
+        job1.setSortComparatorClass(TaggedKey.Comparator.class); // (business_id, tag) 순서로 정렬해서 주(state)가 방문 유저보다 먼저 들어옴
+        job1.setGroupingComparatorClass(TaggedKey.GroupingComparator.class); // business_id만으로 그룹을 묶음
 
-        job1.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
-        job1.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job1.setMapOutputKeyClass(TaggedKey.class); // Mapper의 ouput key 자료형 설정
+        job1.setMapOutputValueClass(TaggedValue.class); // Mapper의 output value 자료형 설정
         job1.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
         job1.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
 
-        MultipleInputs.addInputPath(job1, new Path(new Path(args[3], "input"), new Path(args[0]).getName()), TextInputFormat.class, VisitedUsersByBusiness.BusinessMapper.class); // 비즈니스 데이터셋
-        MultipleInputs.addInputPath(job1, new Path(new Path(args[3], "input"), new Path(args[1]).getName()), TextInputFormat.class, VisitedUsersByBusiness.ReviewMapper.class); // 리뷰 데이터셋
-        FileOutputFormat.setOutputPath(job1, new Path(args[3], "visited_users_output")); // output file 설정
-        if(job1.waitForCompletion(true) == false) { // job1을 돌리는 중 문제가 발생하면 프로그램 중단
-            System.exit(1); // 비정상 종료
-        }
-
-        System.out.println("First job is finished! Starting Second Job...");
-
+        MultipleInputs.addInputPath(job1, businessInput, TextInputFormat.class, VisitedUsersByBusiness.BusinessMapper.class); // 비즈니스 데이터셋
+        MultipleInputs.addInputPath(job1, reviewInput, TextInputFormat.class, VisitedUsersByBusiness.ReviewMapper.class); // 리뷰 데이터셋
+        FileOutputFormat.setOutputPath(job1, output); // output file 설정
+        Compression.configureIntermediate(job1); // -D compression.intermediate가 있으면 압축한 SequenceFile로 저장
+        SkewedKeys.configure(job1, VISITED_USERS, "business_id", reviewInput);
+        SemiJoinFilters.configure(job1);
+        return job1;
+    }
 
-        // 두 번째 잡 생성 및 설정
-        // 유저 데이터셋에 유저가 가장 많이 방문한 가게의 주(state)를 추가
+    // 두 번째 잡 생성 및 설정 (Pipeline에서도 사용)
+    // 유저 데이터셋에 유저가 가장 많이 방문한 가게의 주(state)를 추가
+    public static Job createHomeStateJob(Configuration conf, Path userInput, Path visitedUsersOutput, Path output) throws IOException {
         Job job2 = Job.getInstance(conf, "Search User's Home State - 2");
         job2.setJarByClass(UsersHomeState.class); // Job 클래스 설정
+        job2.setCombinerClass(UsersHomeState.Combine.class); // 유저별 주(state) 개수를 map 단계에서 미리 합침
         job2.setReducerClass(UsersHomeState.Reduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job2, HOME_STATE_REDUCES); // reducer 수 설정
 
         job2.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
-        job2.setMapOutputValueClass(Text.class); // Mapper의 output value 자료형 설정
+        job2.setMapOutputValueClass(TaggedValue.class); // Mapper의 output value 자료형 설정
         job2.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
         job2.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
 
-        MultipleInputs.addInputPath(job2, new Path(new Path(args[3], "input"), new Path(args[2]).getName()), TextInputFormat.class, UsersHomeState.UserMapper.class); // 유저 데이터셋
-        MultipleInputs.addInputPath(job2, new Path(new Path(args[3], "visited_users_output"), "part-r-00000"), TextInputFormat.class, UsersHomeState.Job1Mapper.class); // Job1 데이터셋
-        FileOutputFormat.setOutputPath(job2, new Path(args[3], "output")); // 최종 output file 설정
+        MultipleInputs.addInputPath(job2, userInput, TextInputFormat.class, UsersHomeState.UserMapper.class); // 유저 데이터셋
+        MultipleInputs.addInputPath(job2, visitedUsersOutput, Compression.intermediateInputFormat(conf), UsersHomeState.Job1Mapper.class); // Job1 데이터셋 (모든 part 파일)
+        FileOutputFormat.setOutputPath(job2, output); // 최종 output file 설정
+        return job2;
+    }
 
-        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
-        if(job2.waitForCompletion(true)) {
-            hdfs.delete(new Path(args[3], "input"), true); // hdfs 내의 입력 데이터 삭제
+    // 최종 잡(두 번째 잡 또는 broadcast 잡)의 partition, hot key, semi-join filter 설정
+    public static void configureFinalJob(Configuration conf, Path workDir, Job finalJob, Path userInput, Path reviewInput) throws IOException, InterruptedException, ClassNotFoundException {
+        // 최종 잡의 reducer가 여러 개이고 설정되어 있으면 user_id 구간으로 partition을 나눔
+        if (conf.getBoolean(TOTAL_ORDER, false) && finalJob.getNumReduceTasks() > 1) {
+            Path partitionFile = workDir.getFileSystem(conf).makeQualified(new Path(new Path(workDir, "partitions"), "user_id"));
+            JsonKeySampler.setTotalOrder(finalJob, userInput, "user_id", partitionFile);
+        }
+        SkewedKeys.configure(finalJob, HOME_STATE, "user_id", reviewInput);
+        SemiJoinFilters.configure(finalJob);
+    }
 
-            // 결과 파일을 로컬로 복사
-            System.out.println("Copy output folder to local working directory.");
-            hdfs.copyToLocalFile(false, new Path(args[3], "output"), new Path(System.getProperty("user.dir"))); // hdfs 내의 원본 ouput 폴더는 유지
-            System.exit(0); // 정상 종료
+    // 성공한 최종 잡의 hot key 부분 결과를 합치고 manifest와 index를 남김 (실패하면 false)
+    public static boolean finish(Configuration conf, Job finalJob, Path output) throws Exception {
+        if (!SkewedKeys.mergePartials(conf, finalJob, output)) { return false; } // hot key의 부분 결과를 합침 (hot key가 없으면 생략)
+        PartitioningManifest.record(finalJob, "user_id", output); // 결과가 user_id로 어떻게 나뉘고 정렬되었는지 기록
+        if (conf.getBoolean(HomeStateIndex.ENABLED, false)) { // 결과로 user_id -> home_state index 생성
+            RunReport.phase("home state index");
+            return HomeStateIndex.build(conf, output);
         }
-        System.exit(1); // 비정상 종료
+        return true;
+    }
+
+    // job1 없이 리뷰에서 바로 (user_id, state)를 만들어 유저 데이터셋과 합치는 잡
+    static Job createSingleJob(Configuration conf, Path reviewInput, Path userInput, Path statesFile, Path output) throws IOException {
+        Job job = Job.getInstance(conf, "Search User's Home State (broadcast)");
+        job.setJarByClass(UsersHomeState.class); // Job 클래스 설정
+        job.setCombinerClass(UsersHomeState.Combine.class); // 유저별 주(state) 개수를 map 단계에서 미리 합침
+        job.setReducerClass(UsersHomeState.Reduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job, HOME_STATE_REDUCES); // reducer 수 설정
+
+        job.setMapOutputKeyClass(Text.class); // Mapper의 ouput key 자료형 설정
+        job.setMapOutputValueClass(TaggedValue.class); // Mapper의 output value 자료형 설정
+        job.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
+        job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
+
+        BroadcastSideFile.addCacheFile(job, statesFile); // business_id -> state 배포
+        MultipleInputs.addInputPath(job, userInput, TextInputFormat.class, UsersHomeState.UserMapper.class); // 유저 데이터셋
+        MultipleInputs.addInputPath(job, reviewInput, TextInputFormat.class, UsersHomeState.BroadcastReviewMapper.class); // 리뷰 데이터셋
+        FileOutputFormat.setOutputPath(job, output); // 최종 output file 설정
+        return job;
     }
 }
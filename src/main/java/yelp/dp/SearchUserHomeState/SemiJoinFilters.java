@@ -0,0 +1,165 @@
+package yelp.dp.SearchUserHomeState;
+
+import java.io.IOException;
+import java.net.URI;
+
+import yelp.dp.Common.BroadcastSideFile;
+import yelp.dp.Common.ByteBloomFilter;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.JsonKeySampler;
+import yelp.dp.Engine.JobRunner;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+// 최종 잡의 reducer에서 버려질 레코드를 map 단계에서 미리 버리기 위한 user_id Bloom filter (semi-join)
+// - users : 유저 데이터셋의 user_id. 유저 데이터셋에 없는 유저의 리뷰는 결과에 나오지 않으므로 리뷰와 방문 기록을 버림
+// - reviewers : 리뷰를 작성한 user_id 중 users에 있는 것. 리뷰가 없는 유저는 결과에 나오지 않으므로 유저 레코드를 버림
+// 유저 데이터셋과 리뷰 데이터셋을 map-only 잡으로 한 번씩 읽어서 task마다 부분 filter를 만들고, driver가 부분 filter를 OR로 합친 뒤
+// reviewers는 users와 AND해서 cache로 배포함 (오탐은 그대로 shuffle되므로 결과는 같음)
+// 두 filter 모두 유저 수를 기준으로 같은 크기로 만듦 (유저 수는 유저 데이터셋의 일부를 읽어서 추정하고, 실제보다 적으면 오탐률만 조금 높아짐)
+public class SemiJoinFilters {
+    public static final String ENABLED = "searchUserHomeState.semiJoin"; // true면 filter를 만들어 mapper에서 사용 (기본값 false, 증분 모드에서는 사용하지 않음)
+    public static final String FPR = "searchUserHomeState.semiJoin.fpr"; // filter의 오탐률 (기본값 0.01)
+
+    static final String USERS = "searchUserHomeState.semiJoin.users"; // driver가 설정하는 filter 파일 경로
+    static final String REVIEWERS = "searchUserHomeState.semiJoin.reviewers";
+    static final String EXPECTED_USERS = "searchUserHomeState.semiJoin.expectedUsers"; // driver가 추정해서 부분 filter를 만드는 task에 전달하는 유저 수
+
+    public enum Counter {
+        USERS, // filter에 넣은 유저 레코드 수
+        REVIEWS // filter에 넣은 리뷰 레코드 수
+    }
+
+    // 두 filter를 dir에 만들고 conf에 경로를 설정함 (이후에 만드는 잡은 configure로 cache에 등록, 잡이 실패하면 false)
+    static boolean build(Configuration conf, Path userInput, Path reviewInput, Path dir) throws IOException, InterruptedException, ClassNotFoundException {
+        double fpr = conf.getDouble(FPR, 0.01);
+        if (!(fpr > 0 && fpr < 1)) { throw new IllegalArgumentException(FPR + " must be between 0 and 1: " + fpr); }
+        long expectedUsers = JsonKeySampler.estimateRecords(conf, userInput); // 크기를 정하기 위해 유저 데이터셋의 일부만 읽음
+
+        Job job = Job.getInstance(conf, "Search User's Home State - semi-join filters");
+        job.setJarByClass(SemiJoinFilters.class); // Job 클래스 설정
+        job.setNumReduceTasks(0); // 부분 filter를 그대로 파일로 씀
+        job.getConfiguration().setLong(EXPECTED_USERS, expectedUsers);
+
+        job.setOutputKeyClass(Text.class); // filter 이름 (users, reviewers)
+        job.setOutputValueClass(ByteBloomFilter.class); // 부분 filter
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+        Path partials = new Path(dir, "partial");
+        FileSystem fs = dir.getFileSystem(conf);
+        fs.delete(partials, true);
+        MultipleInputs.addInputPath(job, userInput, TextInputFormat.class, UserFilterMapper.class); // 유저 데이터셋
+        MultipleInputs.addInputPath(job, reviewInput, TextInputFormat.class, ReviewerFilterMapper.class); // 리뷰 데이터셋
+        FileOutputFormat.setOutputPath(job, partials);
+        Counters counters = JobRunner.run(job);
+        if (counters == null) { return false; }
+
+        // 부분 filter를 이름별로 OR로 합침 (리뷰 쪽은 모든 작성자이므로 users와 AND해서 users에 있는 작성자만 남김)
+        ByteBloomFilter users = ByteBloomFilter.create(expectedUsers, fpr);
+        ByteBloomFilter reviewers = ByteBloomFilter.create(expectedUsers, fpr);
+        Text name = new Text();
+        ByteBloomFilter partial = new ByteBloomFilter();
+        for (FileStatus status : fs.listStatus(partials)) {
+            if (!status.getPath().getName().startsWith("part-")) { continue; } // _SUCCESS 등
+            SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()));
+            try {
+                while (reader.next(name, partial)) {
+                    (name.toString().equals("users") ? users : reviewers).or(partial);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        reviewers.and(users);
+        fs.delete(partials, true);
+
+        Path usersFile = fs.makeQualified(new Path(dir, "users.bloom"));
+        Path reviewersFile = fs.makeQualified(new Path(dir, "reviewers.bloom"));
+        users.write(conf, usersFile);
+        reviewers.write(conf, reviewersFile);
+        conf.set(USERS, usersFile.toString());
+        conf.set(REVIEWERS, reviewersFile.toString());
+        System.out.println("Semi-join filters over " + counters.findCounter(Counter.USERS).getValue() + " users (estimated " + expectedUsers + ", "
+                + (users.memoryBytes() >> 10) + " KB each, false positive rate " + fpr + ") and " + counters.findCounter(Counter.REVIEWS).getValue() + " reviews.");
+        return true;
+    }
+
+    // task가 읽은 레코드의 user_id를 부분 filter에 넣고 cleanup에서 (이름, filter) 하나를 씀
+    // 잘못된 레코드는 최종 잡의 mapper에서 오류로 처리되므로 여기서는 건너뜀
+    abstract static class PartialFilterMapper extends Mapper<Object, Text, Text, ByteBloomFilter> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("user_id"); // 필요한 필드만 추출
+        ByteBloomFilter filter;
+        Text userId = new Text();
+        long records = 0;
+
+        abstract String name();
+
+        abstract Counter counter();
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            filter = ByteBloomFilter.create(conf.getLong(EXPECTED_USERS, 1), conf.getDouble(FPR, 0.01)); // 모든 task에서 같은 크기
+        }
+
+        public void map(Object key, Text value, Context context) {
+            if (!extractor.parse(value) || !extractor.getText(0, userId)) { return; }
+            filter.add(userId);
+            records++;
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            context.getCounter(counter()).increment(records);
+            context.write(new Text(name()), filter);
+        }
+    }
+
+    public static class UserFilterMapper extends PartialFilterMapper {
+        String name() {
+            return "users";
+        }
+
+        Counter counter() {
+            return Counter.USERS;
+        }
+    }
+
+    public static class ReviewerFilterMapper extends PartialFilterMapper {
+        String name() {
+            return "reviewers";
+        }
+
+        Counter counter() {
+            return Counter.REVIEWS;
+        }
+    }
+
+    // build로 만든 filter를 잡의 cache에 등록 (만들지 않았으면 아무것도 하지 않음)
+    static void configure(Job job) throws IOException {
+        for (String property : new String[] {USERS, REVIEWERS}) {
+            String path = job.getConfiguration().get(property);
+            if (path != null) { BroadcastSideFile.addCacheFile(job, new Path(path)); }
+        }
+    }
+
+    // task에서 cache로 받은 filter를 node에 내려받은 복사본에서 읽음 (driver가 만들지 않았으면 null)
+    static ByteBloomFilter load(Configuration conf, URI[] cacheFiles, String property) throws IOException {
+        String path = conf.get(property);
+        if (path == null) { return null; }
+        return ByteBloomFilter.read(conf, BroadcastSideFile.find(cacheFiles, new Path(path).getName()));
+    }
+}
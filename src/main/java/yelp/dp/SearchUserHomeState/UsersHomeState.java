@@ -1,7 +1,7 @@
 package yelp.dp.SearchUserHomeState;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.Map.Entry;
 
@@ -11,77 +11,396 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import yelp.dp.Common.BroadcastSideFile;
+import yelp.dp.Common.ByteBloomFilter;
+import yelp.dp.Common.CompactStringMap;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.StringDictionary;
+import yelp.dp.Common.TaggedValue;
+
 // 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.util.LineReader;
 
 public class UsersHomeState {
-    public static class UserMapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    // mapper output value(TaggedValue)의 tag
+    public static final byte USER = 0; // 본문: friends를 제외한 유저 json
+    public static final byte STATE = 1; // 본문: 유저가 리뷰를 작성한 가게의 주(state), 개수: 해당 주의 리뷰 수
+
+    public static final String BUSINESS_STATES_FILE = "business_states"; // broadcast 모드에서 cache로 배포되는 "business_id\tstate" 파일
+    public static final String BUSINESS_COUNT = "searchUserHomeState.businessCount"; // driver가 계산한 비즈니스 개수
+    public static final String USER_PROJECTION = "user"; // -D projection.user=...: 결과에 남길 유저 필드 (JsonProjection 참고)
+
+    public static class UserMapper extends Mapper<Object, Text, Text, TaggedValue> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("user_id", "friends"); // 필요한 필드의 위치만 추출
+        SkewedKeys skew; // 리뷰를 많이 작성한 유저
+        ByteBloomFilter reviewers; // 리뷰를 작성한 user_id (semi-join 모드에서만 사용)
+        JsonProjection projection; // 설정된 경우에만 사용
+        StageMetrics metrics;
+        long pruned = 0; // reviewers에 없어서 버린 유저 수
+        long prunedBytes = 0;
+        Text _key = new Text();
+        TaggedValue _value = new TaggedValue();
 
-        // business 데이터셋에서 state를 가져옴
+        @Override
+        protected void setup(Context context) throws IOException {
+            skew = new SkewedKeys(context.getConfiguration());
+            reviewers = SemiJoinFilters.load(context.getConfiguration(), context.getCacheFiles(), SemiJoinFilters.REVIEWERS);
+            projection = projection(context.getConfiguration());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        // user 데이터셋에서 friends를 제외한 유저 정보를 가져옴
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("user_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output key로 저장
-            json.remove("friends"); // user 데이터에서 friends는 삭제함
+            // json 파일에서 user_id 값을 mapper의 output key로 저장
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key)) {
+                metrics.invalid("User record without user_id: " + value);
+                return;
+            }
+            if (reviewers != null && !reviewers.mightContain(_key)) { // 리뷰가 없는 유저는 최종 잡에서 버려짐
+                pruned++;
+                prunedBytes += value.getLength();
+                return;
+            }
+            // 설정된 필드만 남김 (friends는 설정할 수 없음), projection이 없거나 실패하면 이전 레코드가 남지 않도록 friends만 삭제함
+            if (projection == null || !projection.project(value, _value.getText())) {
+                extractor.writeWithout(1, _value.getText()); // user 데이터에서 friends는 삭제함 (원본 바이트에서 해당 구간만 제외)
+            }
+            _value.setTag(USER);
+            metrics.output(_key.getLength() + _value.serializedSize());
 
-            context.write(new Text(_key), new Text("user, " + json.toString()));
+            context.getCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES).increment(_value.textEncodedSize("user"));
+            context.getCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES).increment(_value.serializedSize());
+            skew.saltNext(_key, context); // hot key라면 salt 중 하나로 보냄 (2단계에서 주(state) 개수와 합쳐짐)
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            if (reviewers != null) {
+                metrics.counter(context, "PRUNED_RECORDS").increment(pruned);
+                metrics.counter(context, "PRUNED_BYTES").increment(prunedBytes);
+            }
+            metrics.flush(context);
         }
     }
 
-    public static class Job1Mapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    // 유저 레코드의 projection (설정되지 않았으면 null)
+    static JsonProjection projection(Configuration conf) {
+        return JsonProjection.get(conf, USER_PROJECTION, new String[] {"user_id"}, "friends");
+    }
+
+    public static class Job1Mapper extends Mapper<Object, Text, Text, TaggedValue> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("state", "visited_users"); // 필요한 필드만 추출
+        SkewedKeys skew; // 리뷰를 많이 작성한 유저
+        ByteBloomFilter users; // 유저 데이터셋의 user_id (semi-join 모드에서만 사용)
+        StageMetrics metrics;
+        long pruned = 0; // users에 없어서 버린 방문 기록 수
+        long prunedBytes = 0;
+        Text _key = new Text();
+        TaggedValue _value = new TaggedValue();
 
-        // business 데이터셋에서 state를 가져옴
+        @Override
+        protected void setup(Context context) throws IOException {
+            skew = new SkewedKeys(context.getConfiguration());
+            users = SemiJoinFilters.load(context.getConfiguration(), context.getCacheFiles(), SemiJoinFilters.USERS);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        // job1의 결과에서 가게의 주(state)와 방문한 유저들을 가져옴
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String businessState = json.get("state").toString().replaceAll("\"", ""); // 가게가 위치한 주(state)에 특수기호를 제외하고 저장
-            String[] visistedUsers = json.get("visited_users").toString().split(", "); // 해당 가게에 방문한 손님들 배열
+            if (!metrics.parse(extractor, value)) {
+                metrics.invalid("Malformed job1 record: " + value);
+                return;
+            }
+            if (!extractor.hasValue(1) || extractor.getValueEnd(1) == extractor.getValueStart(1)) { // 방문한 유저가 없는 가게
+                return;
+            }
+
+            _value.set(STATE, extractor.hasValue(0) ? extractor.getString(0) : ""); // 가게가 위치한 주(state)
+            String[] visistedUsers = extractor.getString(1).split(", "); // 해당 가게에 방문한 손님들 배열
+            long written = 0;
             for (String visitedUser : visistedUsers) { // 해당 가게를 방문한 유저들에 대해 해당 가게가 위치한 주(state)를 value 값으로 전달
-                context.write(new Text(visitedUser), new Text("job1, " + businessState));
+                _key.set(visitedUser);
+                if (users != null && !users.mightContain(_key)) { // 유저 데이터셋에 없는 유저는 최종 잡에서 버려짐
+                    pruned++;
+                    prunedBytes += _key.getLength() + _value.serializedSize();
+                    continue;
+                }
+                skew.saltNext(_key, context); // hot key라면 여러 reducer로 나눔
+                context.write(_key, _value);
+                metrics.output(_key.getLength() + _value.serializedSize());
+                written++;
+            }
+            context.getCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES).increment(written * _value.textEncodedSize("job1"));
+            context.getCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES).increment(written * _value.serializedSize());
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            if (users != null) {
+                metrics.counter(context, "PRUNED_RECORDS").increment(pruned);
+                metrics.counter(context, "PRUNED_BYTES").increment(prunedBytes);
             }
+            metrics.flush(context);
         }
     }
 
-    public static class Reduce extends Reducer<Text, Text, NullWritable, Text> {
+    // broadcast 모드에서 사용하는 mapper (job1 없이 한 번의 shuffle로 처리)
+    // distributed cache로 받은 business_id -> state 정보로 리뷰의 주(state)를 바로 찾아 (user_id, state)를 출력함
+    public static class BroadcastReviewMapper extends Mapper<Object, Text, Text, TaggedValue> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "user_id"); // 리뷰 본문은 파싱하지 않음
+        CompactStringMap businessStates; // business_id -> 주(state) id
+        StringDictionary states = new StringDictionary(); // 주(state) 목록
+        SkewedKeys skew; // 리뷰를 많이 작성한 유저
+        ByteBloomFilter users; // 유저 데이터셋의 user_id (semi-join 모드에서만 사용)
+        StageMetrics metrics;
+        long pruned = 0; // users에 없어서 버린 리뷰 수
+        long prunedBytes = 0;
+        Text _key = new Text();
+        Text businessId = new Text();
+        TaggedValue _value = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            businessStates = new CompactStringMap(conf.getInt(BUSINESS_COUNT, 1024));
+            skew = new SkewedKeys(conf);
+            users = SemiJoinFilters.load(conf, context.getCacheFiles(), SemiJoinFilters.USERS);
+            metrics = new StageMetrics(getClass(), conf);
+
+            LineReader reader = BroadcastSideFile.open(conf, BroadcastSideFile.find(context.getCacheFiles(), BUSINESS_STATES_FILE));
+            try {
+                Text line = new Text();
+                while (reader.readLine(line) > 0) {
+                    int tab = line.find("\t");
+                    int state = states.add(line.getBytes(), tab + 1, line.getLength() - tab - 1); // 처음 나온 주(state)라면 목록에 추가
+                    businessStates.put(line.getBytes(), 0, tab, state);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, businessId) || !extractor.getText(1, _key)) {
+                metrics.invalid("Review record without business_id or user_id: " + value);
+                return;
+            }
+            if (users != null && !users.mightContain(_key)) { // 유저 데이터셋에 없는 유저는 reducer에서 버려짐
+                pruned++;
+                prunedBytes += _key.getLength() + businessId.getLength();
+                return;
+            }
+
+            // 비즈니스 데이터셋에 없는 가게는 두 개의 잡으로 처리할 때와 같이 빈 주(state)로 처리
+            int state = businessStates.get(businessId);
+            if (state == CompactStringMap.NOT_FOUND) {
+                _value.set(STATE, "");
+            } else {
+                _value.set(STATE, states.getText(state));
+            }
+            metrics.output(_key.getLength() + _value.serializedSize());
+
+            context.getCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES).increment(_value.textEncodedSize("job1"));
+            context.getCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES).increment(_value.serializedSize());
+            skew.saltNext(_key, context); // hot key라면 여러 reducer로 나눔
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            if (users != null) {
+                metrics.counter(context, "PRUNED_RECORDS").increment(pruned);
+                metrics.counter(context, "PRUNED_BYTES").increment(prunedBytes);
+            }
+            metrics.flush(context);
+        }
+    }
+
+    // 유저별 주(state) 개수를 세는 도구 (combiner, reducer에서 사용)
+    // 주(state)는 task 동안 유지되는 사전의 id로 바꾸고, id를 index로 하는 int 배열에서 셈
+    // 한 유저가 끝나면 이번 유저에서 센 id만 0으로 되돌림
+    static class StateCounter {
+        StringDictionary states = new StringDictionary();
+        int[] counts = new int[64];
+        int[] touched = new int[64]; // 이번 유저에서 센 주(state) id
+        int touchedCount = 0;
+
+        void add(Text state, int count) {
+            int id = states.add(state);
+            if (id >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, id + 1));
+                touched = Arrays.copyOf(touched, counts.length);
+            }
+            if (counts[id] == 0) { touched[touchedCount++] = id; }
+            counts[id] += count;
+        }
+
+        int size() {
+            return touchedCount;
+        }
+
+        Text state(int index) {
+            return states.getText(touched[index]);
+        }
+
+        int count(int index) {
+            return counts[touched[index]];
+        }
+
+        // 가장 많이 센 주(state)
+        // 개수가 같으면 값이 들어온 순서와 상관없이 같은 결과가 나오도록 사전순으로 앞선 주를 선택
+        String top() {
+            String maximumState = ""; // 주가 저장될 문자열 변수
+            int maximumCount = 0; // 리뷰의 수가 저장될 변수
+            for (int i = 0; i < touchedCount; i++) {
+                String state = states.getString(touched[i]);
+                int count = counts[touched[i]];
+                if (count > maximumCount || (count == maximumCount && state.compareTo(maximumState) < 0)) {
+                    maximumState = state;
+                    maximumCount = count;
+                }
+            }
+            return maximumState;
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    // 유저별로 같은 주(state)의 레코드를 (state, 개수) 하나로 합치는 combiner
+    // 유저 정보는 그대로 전달함
+    public static class Combine extends Reducer<Text, TaggedValue, Text, TaggedValue> {
+        StateCounter stateCounts = new StateCounter();
+        StageMetrics metrics;
+        TaggedValue _value = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            long size = 0;
+            for (TaggedValue value : values) {
+                size++;
+                if (value.getTag() == STATE) {
+                    stateCounts.add(value.getText(), value.getCount());
+                } else {
+                    context.write(key, value);
+                    metrics.output(key.getLength() + value.serializedSize());
+                }
+            }
+
+            for (int i = 0; i < stateCounts.size(); i++) {
+                _value.set(STATE, stateCounts.state(i));
+                _value.setCount(stateCounts.count(i));
+                context.write(key, _value);
+                metrics.output(key.getLength() + _value.serializedSize());
+            }
+            stateCounts.clear();
+            metrics.group(key, size);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // hot key(salt가 붙은 유저)는 유저 정보와 주(state)별 개수를 부분 결과로 남기고, 2단계 잡에서 같은 reducer로 합침
+    public static class Reduce extends Reducer<Text, TaggedValue, NullWritable, Text> {
         Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        StateCounter userReviewStates = new StateCounter(); // 유저가 작성한 리뷰의 가게 주(state)
+        MultipleOutputs<NullWritable, Text> partials; // hot key의 부분 결과
+        StageMetrics metrics;
+        Text userId = new Text();
+        TaggedValue partial = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) {
+            partials = new MultipleOutputs<NullWritable, Text>(context);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void reduce(Text key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            userId.set(key);
+            if (SkewedKeys.unsalt(userId, context)) {
+                writePartials(values, context);
+                return;
+            }
 
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
             JsonObject json = new JsonObject();
-            HashMap<String, Integer> userReviewStates = new HashMap<String, Integer>(); // 유저가 작성한 리뷰의 가게 주(state)
 
-            for (Text value : values) {
-                String[] identityAndValue = value.toString().split(", ", 2); // 2개의 요소로 split
-                if(identityAndValue[0].equals("user")) {
-                    Set<Entry<String, JsonElement>> userJson = gson.fromJson(identityAndValue[1], JsonObject.class).entrySet();
+            long size = 0;
+            for (TaggedValue value : values) {
+                size++;
+                if(value.getTag() == USER) {
+                    long begin = System.nanoTime();
+                    Set<Entry<String, JsonElement>> userJson = gson.fromJson(value.getText().toString(), JsonObject.class).entrySet();
+                    metrics.addParseNanos(System.nanoTime() - begin);
                     for (Entry<String, JsonElement> userJsonElement : userJson) {
                         json.add(userJsonElement.getKey(), userJsonElement.getValue());
                     }
-                } else if(identityAndValue[0].equals("job1")) {
+                } else if(value.getTag() == STATE) {
                     // 유저가 현재 주(state)의 가게들에 대한 리뷰를 작성개수 카운팅
-                    userReviewStates.put(identityAndValue[1], userReviewStates.getOrDefault(identityAndValue[1], 0) + 1);
+                    userReviewStates.add(value.getText(), value.getCount());
                 }
             }
 
             if(json.has("user_id") && userReviewStates.size() > 0) { // 유저 정보와 주(state) 정보가 모두 들어온 경우에만 실행
-                // 유저가 가장 많이 리뷰를 작성한 주(state)를 찾음
-                String maximumReviewState = ""; // 주가 저장될 문자열 변수
-                Integer maximumReviewStateCount = 0; // 리뷰의 수가 저장될 변수
-                for (Entry<String, Integer> userReviewState : userReviewStates.entrySet()) {
-                    if(userReviewState.getValue() > maximumReviewStateCount) {
-                        maximumReviewState = userReviewState.getKey();
-                        maximumReviewStateCount = userReviewState.getValue();
-                    }
-                }
+                String maximumReviewState = userReviewStates.top(); // 유저가 가장 많이 리뷰를 작성한 주(state)를 찾음
 
                 json.addProperty("home_state", maximumReviewState); // 가장 리뷰를 많이 작성한 주(state)를 사용자가 살고 있는 주로 정의하고 저장
 
-                context.write(NullWritable.get(), new Text(gson.toJson(json)));
+                Text line = new Text(gson.toJson(json));
+                metrics.output(line.getLength());
+                context.write(NullWritable.get(), line);
+            } else if (!json.has("user_id")) {
+                metrics.counter(context, "USERS_WITHOUT_RECORD").increment(1); // 리뷰는 있지만 유저 데이터셋에 없는 유저
+            } else {
+                metrics.counter(context, "USERS_WITHOUT_REVIEWS").increment(1);
+            }
+            metrics.group(userId, size);
+            userReviewStates.clear();
+        }
+
+        private void writePartials(Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            long size = 0;
+            for (TaggedValue value : values) {
+                size++;
+                if (value.getTag() == STATE) {
+                    userReviewStates.add(value.getText(), value.getCount());
+                } else {
+                    SkewedKeys.writePartial(partials, userId, value, context);
+                }
+            }
+            for (int i = 0; i < userReviewStates.size(); i++) {
+                partial.set(STATE, userReviewStates.state(i));
+                partial.setCount(userReviewStates.count(i));
+                SkewedKeys.writePartial(partials, userId, partial, context);
             }
+            userReviewStates.clear();
+            metrics.group(userId, size);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            partials.close();
+            metrics.flush(context);
         }
     }
 }
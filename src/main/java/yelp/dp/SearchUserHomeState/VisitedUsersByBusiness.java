@@ -1,11 +1,18 @@
 package yelp.dp.SearchUserHomeState;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 // json 형식을 사용하기 위해 gson 라이브러리 이용
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
+
+import yelp.dp.Common.ByteBloomFilter;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Common.TaggedValue;
 
 // 하둡 라이브러리
 import org.apache.hadoop.io.NullWritable;
@@ -13,63 +20,232 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 
+// map output key는 (business_id, tag)인 TaggedKey이므로 가게 그룹 안에서 주(state)가 방문 유저보다 항상 먼저 들어옴 (secondary sort)
 public class VisitedUsersByBusiness {
-    public static class BusinessMapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    // mapper output key(TaggedKey)와 value(TaggedValue)의 tag
+    public static final byte BUSINESS = 0; // 본문: 가게의 주(state)
+    public static final byte REVIEW = 1; // 본문: 리뷰를 작성한 user_id
+
+    public static final String CHUNK_SIZE = "searchUserHomeState.visitedUsers.chunkSize"; // 한 줄에 담는 방문 유저 수 (기본값 1000)
+
+    public static class BusinessMapper extends Mapper<Object, Text, TaggedKey, TaggedValue> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "state"); // 필요한 필드만 추출
+        SkewedKeys skew; // 리뷰가 몰리는 가게
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        TaggedValue _value = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) {
+            skew = new SkewedKeys(context.getConfiguration());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
 
         // business 데이터셋에서 state를 가져옴
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("business_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output key로 저장
-            String _value = json.get("state").getAsString(); // json 파일에서 business_id 값을 mapper의 output value로 저장
+            // json 파일에서 business_id 값을 mapper의 output key로, state 값을 output value로 저장
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey()) || !extractor.getText(1, _value.getText())) {
+                metrics.invalid("Business record without business_id or state: " + value);
+                return;
+            }
+            _key.setTag(BUSINESS);
+            _value.setTag(BUSINESS);
+            metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
 
-            context.write(new Text(_key), new Text("business, " + _value));
+            context.getCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES).increment(_value.textEncodedSize("business"));
+            context.getCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES).increment(_value.serializedSize());
+            if (!skew.replicate(_key, _value, context)) { // hot key라면 리뷰가 나뉘어 가는 모든 reducer로 주(state)를 복제
+                context.write(_key, _value);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 
-    public static class ReviewMapper extends Mapper<Object, Text, Text, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ' 등)을 그대로 유지
+    public static class ReviewMapper extends Mapper<Object, Text, TaggedKey, TaggedValue> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "user_id"); // 리뷰 본문은 파싱하지 않음
+        SkewedKeys skew; // 리뷰가 몰리는 가게
+        ByteBloomFilter users; // 유저 데이터셋의 user_id (semi-join 모드에서만 사용)
+        StageMetrics metrics;
+        long pruned = 0; // users에 없어서 버린 리뷰 수
+        long prunedBytes = 0;
+        TaggedKey _key = new TaggedKey();
+        TaggedValue _value = new TaggedValue();
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            skew = new SkewedKeys(context.getConfiguration());
+            users = SemiJoinFilters.load(context.getConfiguration(), context.getCacheFiles(), SemiJoinFilters.USERS);
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
 
         // 리뷰 데이터셋에서 리뷰를 작성한 user_id를 가져옴
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            JsonObject json = gson.fromJson(value.toString(), JsonObject.class); // input의 line으로 json 정의
-            
-            String _key = json.get("business_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output key로 저장
-            String _value = json.get("user_id").getAsString(); // json 파일에서 business_id 값을 mapper의 output value로 저장
+            // json 파일에서 business_id 값을 mapper의 output key로, user_id 값을 output value로 저장
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey()) || !extractor.getText(1, _value.getText())) {
+                metrics.invalid("Review record without business_id or user_id: " + value);
+                return;
+            }
+            if (users != null && !users.mightContain(_value.getText())) { // 유저 데이터셋에 없는 유저는 최종 잡에서 버려짐
+                pruned++;
+                prunedBytes += _key.getKey().getLength() + _value.getText().getLength();
+                return;
+            }
+            _key.setTag(REVIEW);
+            _value.setTag(REVIEW);
+            metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+
+            context.getCounter(TaggedValue.ShuffleCounter.TEXT_ENCODED_BYTES).increment(_value.textEncodedSize("review"));
+            context.getCounter(TaggedValue.ShuffleCounter.BINARY_ENCODED_BYTES).increment(_value.serializedSize());
+            skew.saltNext(_key.getKey(), context); // hot key라면 여러 reducer로 나눔
+            context.write(_key, _value);
+        }
 
-            context.write(new Text(_key), new Text("review, " + _value));
+        @Override
+        protected void cleanup(Context context) {
+            if (users != null) {
+                metrics.counter(context, "PRUNED_RECORDS").increment(pruned);
+                metrics.counter(context, "PRUNED_BYTES").increment(prunedBytes);
+            }
+            metrics.flush(context);
         }
     }
 
-    public static class Reduce extends Reducer<Text, Text, NullWritable, Text> {
-        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
-
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            JsonObject json = new JsonObject();
-            String visited_users = "";
-
-            json.addProperty("business_id", key.toString());
-            json.addProperty("state", "");
-            
-            for (Text value : values) {
-                String[] identityAndValue = value.toString().split(", ");
-                if(identityAndValue[0].equals("business")) {
-                    json.addProperty("state", identityAndValue[1]);
-                } else if(identityAndValue[0].equals("review")) {
-                    if(visited_users.equals("")) { // 방문한 유저 데이터가 비어있다면
-                        visited_users = identityAndValue[1]; // 방문한 유저에 추가
-                    } else { // 아니면
-                        visited_users += ", " + identityAndValue[1]; // 방문한 유저들 뒤에 추가
-                    }
-                } else {
-                    System.out.println("Else case ocurred! " + identityAndValue[1]);
+    // 가게 하나의 방문 유저 목록을 최대 chunkSize명씩 나누어 한 줄씩 출력하는 도구
+    // 유저를 재사용하는 버퍼 뒤에 바로 덧붙이므로, 문자열을 매번 새로 만들던 방식과 달리 유저 수에 비례하는 시간만 걸림
+    // reducer는 secondary sort로 주(state)를 방문 유저보다 먼저 받으므로 chunk가 찰 때마다 바로 출력함 (주(state)가 없는 가게는 빈 주(state))
+    // 줄 형식은 기존과 같음: {"business_id":"...","state":"...","visited_users":"id1, id2, ..."}
+    public abstract static class VisitedUsersWriter {
+        private static final byte[] BUSINESS_ID = "{\"business_id\":\"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] STATE = "\",\"state\":\"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] VISITED_USERS = "\",\"visited_users\":\"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] END = "\"}".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] SEPARATOR = ", ".getBytes(StandardCharsets.UTF_8);
+
+        private final Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // escape가 필요한 값에만 사용
+        private final int chunkSize;
+        private final Text businessId = new Text(); // 모든 값은 escape된 상태로 보관
+        private final Text state = new Text();
+        private final Text users = new Text(); // 현재 chunk
+        private int userCount;
+        private int lines;
+        private final Text line = new Text();
+
+        public VisitedUsersWriter(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        // 완성된 한 줄을 출력
+        protected abstract void write(Text line) throws IOException, InterruptedException;
+
+        public void start(Text businessId) {
+            this.businessId.clear();
+            appendEscaped(this.businessId, businessId);
+            state.clear();
+            users.clear();
+            userCount = 0;
+            lines = 0;
+        }
+
+        // 방문 유저를 추가하기 전에 호출해야 함
+        public void setState(Text state) {
+            this.state.clear();
+            appendEscaped(this.state, state);
+        }
+
+        public void add(Text user) throws IOException, InterruptedException {
+            if (userCount > 0) { users.append(SEPARATOR, 0, SEPARATOR.length); }
+            appendEscaped(users, user);
+            if (++userCount < chunkSize) { return; }
+
+            writeLine(users.getBytes(), users.getLength());
+            users.clear();
+            userCount = 0;
+        }
+
+        // 남은 유저를 출력 (방문한 유저가 없는 가게도 기존과 같이 한 줄을 출력함)
+        public void finish() throws IOException, InterruptedException {
+            if (userCount > 0 || lines == 0) {
+                writeLine(users.getBytes(), users.getLength());
+            }
+        }
+
+        private void writeLine(byte[] chunk, int length) throws IOException, InterruptedException {
+            line.clear();
+            line.append(BUSINESS_ID, 0, BUSINESS_ID.length);
+            line.append(businessId.getBytes(), 0, businessId.getLength());
+            line.append(STATE, 0, STATE.length);
+            line.append(state.getBytes(), 0, state.getLength());
+            line.append(VISITED_USERS, 0, VISITED_USERS.length);
+            line.append(chunk, 0, length);
+            line.append(END, 0, END.length);
+            write(line);
+            lines++;
+        }
+
+        // json 문자열 안에 들어갈 값을 덧붙임
+        // escape가 필요한 문자(", \, 제어 문자, U+2028, U+2029)가 없으면 그대로 복사하고, 있으면 gson과 같은 결과가 나오도록 gson으로 escape
+        private void appendEscaped(Text out, Text value) {
+            byte[] bytes = value.getBytes();
+            int length = value.getLength();
+            for (int i = 0; i < length; i++) {
+                int b = bytes[i] & 0xff;
+                if (b < 0x20 || b == '"' || b == '\\'
+                        || (b == 0xE2 && i + 2 < length && bytes[i + 1] == (byte) 0x80 && (bytes[i + 2] == (byte) 0xA8 || bytes[i + 2] == (byte) 0xA9))) {
+                    byte[] escaped = gson.toJson(value.toString()).getBytes(StandardCharsets.UTF_8);
+                    out.append(escaped, 1, escaped.length - 2); // 앞뒤 따옴표 제외
+                    return;
                 }
             }
+            out.append(bytes, 0, length);
+        }
+    }
+
+    // hot key는 salt마다 방문 유저의 일부만 담은 줄을 출력함
+    // job2의 Job1Mapper는 줄마다 (user_id, state)를 만들기 때문에 방문 유저가 여러 줄로 나뉘어도 따로 합칠 필요가 없음
+    public static class Reduce extends Reducer<TaggedKey, TaggedValue, NullWritable, Text> {
+        VisitedUsersWriter writer;
+        StageMetrics metrics;
+        Text businessId = new Text();
+
+        @Override
+        protected void setup(final Context context) {
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+            writer = new VisitedUsersWriter(context.getConfiguration().getInt(CHUNK_SIZE, 1000)) {
+                @Override
+                protected void write(Text line) throws IOException, InterruptedException {
+                    metrics.output(line.getLength());
+                    context.write(NullWritable.get(), line);
+                }
+            };
+        }
 
-            json.addProperty("visited_users", visited_users); // 방문 유저들 저장
+        public void reduce(TaggedKey key, Iterable<TaggedValue> values, Context context) throws IOException, InterruptedException {
+            businessId.set(key.getKey());
+            SkewedKeys.unsalt(businessId, context);
+            writer.start(businessId);
+
+            long size = 0;
+            for (TaggedValue value : values) {
+                size++;
+                if(value.getTag() == BUSINESS) {
+                    writer.setState(value.getText()); // 가게가 위치한 주(state)
+                } else if(value.getTag() == REVIEW) {
+                    writer.add(value.getText()); // 방문한 유저 추가 (chunk가 차면 출력)
+                } else {
+                    metrics.counter(context, "UNKNOWN_TAGS").increment(1); // 다른 잡의 map 결과가 섞이지 않는 한 발생하지 않음
+                }
+            }
+            writer.finish();
+            metrics.group(businessId, size);
+        }
 
-            context.write(NullWritable.get(), new Text(gson.toJson(json)));
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
         }
     }
 }
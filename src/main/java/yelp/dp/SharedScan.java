@@ -0,0 +1,436 @@
+package yelp.dp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// json 형식을 사용하기 위해 gson 라이브러리 이용
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import yelp.dp.Common.Compression;
+import yelp.dp.Common.JsonFieldExtractor;
+import yelp.dp.Common.JsonProjection;
+import yelp.dp.Common.ShuffleStats;
+import yelp.dp.Common.StageMetrics;
+import yelp.dp.Common.StateSummaryWritable;
+import yelp.dp.Common.StringDictionary;
+import yelp.dp.Common.TaggedKey;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
+import yelp.dp.ExtractUSData.ReviewDataset;
+import yelp.dp.SearchUserHomeState.VisitedUsersByBusiness;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// 비즈니스 데이터셋과 리뷰 데이터셋을 한 번씩만 읽어서 세 가지 결과를 하나의 잡으로 만듦
+// - summary : BusinessSummaryByState의 주(state)별 합계 (정확한 값, 사전은 BusinessSummaryByState와 같이 준비)
+// - reviews : ReviewDataset의 미국 리뷰 (미국 가게는 us_business.json으로 정함, projection.review 적용)
+// - visitedUsers : SearchUserHomeState 첫 번째 잡의 가게별 방문 유저 (chunkSize 적용)
+// 결과는 <output>/<이름>/part-r-xxxxx (named output)로 나뉘고, 각 결과의 줄은 따로 실행한 잡의 결과와 같음 (reducer 수에 따라 part 파일 구성과 순서는 다름)
+// 가게와 리뷰는 business_id로, 주별 부분 합계는 SUMMARY_PREFIX + 주(state)로 shuffle하며, 한 가게의 레코드는 tag 순서로 들어옴 (secondary sort)
+// top-K, 증분, skew, semi-join 모드는 지원하지 않음
+public class SharedScan {
+    public static final String SUMMARY = "summary"; // named output 이름이자 -D sharedScan.<이름>=false로 끄는 결과
+    public static final String REVIEWS = "reviews";
+    public static final String VISITED_USERS = "visitedUsers";
+    public static final String REDUCES = "sharedScan.reduces"; // reducer 수
+    static final String PREFIX = "sharedScan.";
+
+    // 같은 business_id 그룹 안의 정렬 순서 (미국 가게 표시 -> 가게의 주(state) -> 리뷰 본문 -> 리뷰 작성자)
+    public static final byte US_BUSINESS = 0; // 값 없음
+    public static final byte BUSINESS = 1; // 본문: 가게의 주(state)
+    public static final byte REVIEW = 2; // 본문: 리뷰 (projection 적용)
+    public static final byte VISIT = 3; // 본문: 리뷰를 작성한 user_id
+    public static final byte STATE_SUMMARY = 4; // 값: 주(state)별 부분 합계 (key는 SUMMARY_PREFIX + 주)
+    static final String SUMMARY_PREFIX = "\u0000"; // json에서 읽은 business_id와 겹치지 않고 모든 가게보다 앞에 정렬됨
+
+    // map 결과의 값: 가게와 리뷰의 본문(Text) 또는 주(state)별 부분 합계 (앞의 1byte로 구분, 복사 없이 넘겨받은 객체를 씀)
+    public static class Value implements Writable {
+        private Text text;
+        private StateSummaryWritable summary;
+        private final Text readText = new Text();
+        private final StateSummaryWritable readSummary = new StateSummaryWritable();
+
+        public void set(Text text) {
+            this.text = text;
+            this.summary = null;
+        }
+
+        public void set(StateSummaryWritable summary) {
+            this.text = null;
+            this.summary = summary;
+        }
+
+        public Text getText() {
+            return text;
+        }
+
+        public StateSummaryWritable getSummary() {
+            return summary;
+        }
+
+        public int serializedSize() {
+            return 1 + (summary != null ? summary.serializedSize() : text.getLength() + 1);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeBoolean(summary != null);
+            if (summary != null) {
+                summary.write(out);
+            } else {
+                text.write(out);
+            }
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            if (in.readBoolean()) {
+                readSummary.readFields(in);
+                set(readSummary);
+            } else {
+                readText.readFields(in);
+                set(readText);
+            }
+        }
+    }
+
+    // 가게 하나를 읽어서 주(state)별 부분 합계에 더하고(summary), 주(state)를 business_id로 보냄(visitedUsers)
+    public static class BusinessMapper extends Mapper<Object, Text, TaggedKey, Value> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "state", "categories"); // 필요한 필드만 추출
+        BusinessSummaryByState.StateAggregator aggregator; // summary를 끄면 null
+        boolean visitedUsers;
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        Text state = new Text();
+        Value _value = new Value();
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            if (enabled(conf, SUMMARY)) { aggregator = new BusinessSummaryByState.StateAggregator(conf, context.getCacheFiles()); }
+            visitedUsers = enabled(conf, VISITED_USERS);
+            metrics = new StageMetrics(getClass(), conf);
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.hasValue(1)) {
+                metrics.invalid("Business record without state: " + value);
+                return;
+            }
+            if (aggregator != null && aggregator.add(extractor, 1, 2, value)) { // 메모리 기준을 넘으면 중간에 내보냄
+                flush(context);
+            }
+            if (!visitedUsers) { return; }
+
+            if (!extractor.getText(0, _key.getKey()) || !extractor.getText(1, state)) {
+                metrics.invalid("Business record without business_id or state: " + value);
+                return;
+            }
+            _key.setTag(BUSINESS);
+            _value.set(state);
+            metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (aggregator != null) { flush(context); }
+            metrics.flush(context);
+        }
+
+        private void flush(Context context) throws IOException, InterruptedException {
+            for (int state = 0; state < aggregator.summaries.length; state++) {
+                if (aggregator.summaries[state] == null) { continue; }
+                _key.set(SUMMARY_PREFIX + aggregator.states.getString(state), STATE_SUMMARY);
+                _value.set(aggregator.summaries[state]);
+                metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+                context.write(_key, _value);
+            }
+            aggregator.clear();
+        }
+    }
+
+    // 미국 가게 표시 (reviews를 켰을 때만 입력으로 사용)
+    public static class UsBusinessMapper extends Mapper<Object, Text, TaggedKey, Value> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id"); // business_id만 추출
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        Value _value = new Value();
+
+        @Override
+        protected void setup(Context context) {
+            _value.set(new Text());
+            metrics = new StageMetrics(getClass(), context.getConfiguration());
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey())) {
+                metrics.invalid("Business record without business_id: " + value);
+                return;
+            }
+            _key.setTag(US_BUSINESS);
+            metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+            context.write(_key, _value);
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // 리뷰 하나를 읽어서 본문(reviews)과 작성자(visitedUsers)를 business_id로 보냄 (둘 다 켜면 같은 가게로 두 번 보냄)
+    public static class ReviewMapper extends Mapper<Object, Text, TaggedKey, Value> {
+        JsonFieldExtractor extractor = new JsonFieldExtractor("business_id", "user_id"); // 리뷰 본문은 파싱하지 않음
+        JsonProjection projection; // 설정된 경우에만 사용
+        boolean reviews;
+        boolean visitedUsers;
+        StageMetrics metrics;
+        TaggedKey _key = new TaggedKey();
+        Text projected = new Text();
+        Text user = new Text();
+        Value _value = new Value();
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            reviews = enabled(conf, REVIEWS);
+            visitedUsers = enabled(conf, VISITED_USERS);
+            if (reviews) { projection = ReviewDataset.projection(conf); }
+            metrics = new StageMetrics(getClass(), conf);
+        }
+
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+            if (!metrics.parse(extractor, value) || !extractor.getText(0, _key.getKey())) {
+                metrics.invalid("Review record without business_id: " + value);
+                return;
+            }
+            if (reviews) {
+                _key.setTag(REVIEW);
+                _value.set(projection != null && projection.project(value, projected) ? projected : value); // 결과에 남길 필드만 shuffle
+                metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+                context.write(_key, _value);
+            }
+            if (visitedUsers) {
+                if (!extractor.getText(1, user)) {
+                    metrics.invalid("Review record without user_id: " + value);
+                    return;
+                }
+                _key.setTag(VISIT);
+                _value.set(user);
+                metrics.output(_key.getKey().getLength() + 1 + _value.serializedSize());
+                context.write(_key, _value);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) {
+            metrics.flush(context);
+        }
+    }
+
+    // 주(state) 그룹은 부분 합계를 합쳐서 summary로, 가게 그룹은 한 번 순회하면서 reviews와 visitedUsers로 씀
+    // 가게 그룹 안에서는 미국 가게 표시와 주(state)가 리뷰보다 먼저 들어오므로 리뷰를 메모리에 모아두지 않음
+    public static class Reduce extends Reducer<TaggedKey, Value, NullWritable, Text> {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create(); // html의 주요 특수문자(<, >, ', ...)등을 그대로 유지
+        MultipleOutputs<NullWritable, Text> outputs;
+        StringDictionary categories; // summary를 끄면 null
+        StateSummaryWritable merged = new StateSummaryWritable();
+        VisitedUsersByBusiness.VisitedUsersWriter writer; // visitedUsers를 끄면 null
+        StageMetrics metrics;
+        Text businessId = new Text();
+        long nonUsGroups = 0; // 미국 가게가 아닌 리뷰 그룹 수
+
+        @Override
+        protected void setup(final Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            outputs = new MultipleOutputs<NullWritable, Text>(context);
+            metrics = new StageMetrics(getClass(), conf);
+            if (enabled(conf, SUMMARY)) {
+                categories = BusinessSummaryByState.readDictionary(conf, context.getCacheFiles(), BusinessSummaryByState.CATEGORY_DICTIONARY);
+            }
+            if (enabled(conf, VISITED_USERS)) {
+                writer = new VisitedUsersByBusiness.VisitedUsersWriter(conf.getInt(VisitedUsersByBusiness.CHUNK_SIZE, 1000)) {
+                    @Override
+                    protected void write(Text line) throws IOException, InterruptedException {
+                        SharedScan.Reduce.this.write(VISITED_USERS, line);
+                    }
+                };
+            }
+        }
+
+        public void reduce(TaggedKey key, Iterable<Value> values, Context context) throws IOException, InterruptedException {
+            if (key.getTag() == STATE_SUMMARY) { // 주(state) 그룹에는 부분 합계만 있음
+                merged.clear();
+                long size = 0;
+                for (Value value : values) {
+                    merged.merge(value.getSummary());
+                    size++;
+                }
+                String state = key.getKey().toString().substring(SUMMARY_PREFIX.length());
+                metrics.group(state, size);
+                write(SUMMARY, new Text(gson.toJson(BusinessSummaryByState.summaryJson(state, merged, categories))));
+                return;
+            }
+
+            businessId.set(key.getKey());
+            if (writer != null) { writer.start(businessId); }
+            boolean us = false;
+            boolean known = false; // 비즈니스 데이터셋에 있는 가게
+            long reviews = 0;
+            long visits = 0;
+            long size = 0;
+            // 순회하면서 key도 현재 값의 key로 바뀌므로 tag로 레코드를 구분함
+            for (Value value : values) {
+                size++;
+                switch (key.getTag()) {
+                    case US_BUSINESS:
+                        us = true;
+                        break;
+                    case BUSINESS:
+                        known = true;
+                        writer.setState(value.getText()); // 가게가 위치한 주(state)
+                        break;
+                    case REVIEW:
+                        reviews++;
+                        if (us) { write(REVIEWS, value.getText()); }
+                        break;
+                    case VISIT:
+                        visits++;
+                        writer.add(value.getText()); // 방문한 유저 추가 (chunk가 차면 출력)
+                        break;
+                    default:
+                        metrics.counter(context, "UNKNOWN_TAGS").increment(1); // 다른 잡의 map 결과가 섞이지 않는 한 발생하지 않음
+                }
+            }
+            if (writer != null && (known || visits > 0)) { writer.finish(); } // 미국 가게 표시만 있는 그룹은 VisitedUsersByBusiness에 없음
+            if (reviews > 0 && !us) { nonUsGroups++; }
+            metrics.group(businessId, size);
+        }
+
+        private void write(String name, Text line) throws IOException, InterruptedException {
+            metrics.output(line.getLength());
+            outputs.write(name, NullWritable.get(), line, name + "/part");
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            outputs.close();
+            metrics.counter(context, "NON_US_GROUPS").increment(nonUsGroups);
+            metrics.flush(context);
+        }
+    }
+
+    // -D sharedScan.<이름>=false로 끈 결과가 아니면 true
+    static boolean enabled(Configuration conf, String name) {
+        return conf.getBoolean(PREFIX + name, true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // usage : hadoop jar ... [path: business.json file path in local] \
+        //                        [path: review.json file path in local] (reviews와 visitedUsers를 모두 끄면 읽지 않음) \
+        //                        [path: us_business.json file path in local] (reviews를 끄면 읽지 않음) \
+        //                        [path: working directory in hdfs]
+
+        System.out.println("###############################");
+        System.out.println("  Shared Scan of Business and  ");
+        System.out.println("        Review Datasets        ");
+        System.out.println("###############################");
+
+        Configuration conf = new Configuration(); // 설정 정의
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
+
+    // -D 옵션을 뺀 인자로 driver를 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("SharedScan", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
+
+        // 잡을 실행하기 전에 설정을 확인
+        boolean summary = enabled(conf, SUMMARY);
+        boolean reviews = enabled(conf, REVIEWS);
+        boolean visitedUsers = enabled(conf, VISITED_USERS);
+        if (!summary && !reviews && !visitedUsers) {
+            throw new IllegalArgumentException("At least one of " + PREFIX + SUMMARY + ", " + PREFIX + REVIEWS + " and " + PREFIX + VISITED_USERS + " must be on");
+        }
+        System.out.println("Outputs: " + (summary ? SUMMARY + " " : "") + (reviews ? REVIEWS + " " : "") + (visitedUsers ? VISITED_USERS : ""));
+        if (reviews) {
+            JsonProjection projection = ReviewDataset.projection(conf);
+            if (projection != null) { System.out.println("Project reviews to " + projection + "."); }
+        }
+        if (summary && conf.getInt(BusinessSummaryByState.TOP_K, 0) > 0) { System.out.println(BusinessSummaryByState.TOP_K + " is ignored in the shared scan."); }
+
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[3]);
+        Path businessInput = Staging.input(conf, workDir, args[0]); // 비즈니스 데이터셋
+        Path reviewInput = reviews || visitedUsers ? Staging.input(conf, workDir, args[1]) : null; // 리뷰 데이터셋 (summary만 만들면 필요 없음)
+        Path usBusinessInput = reviews ? Staging.input(conf, workDir, args[2]) : null; // 미국 비즈니스 데이터셋
+        Path output = Staging.output(conf, workDir);
+
+        RunReport.phase("shared scan");
+        Job job = createJob(conf, workDir, businessInput, reviewInput, usBusinessInput, output);
+
+        // mapreduce 작업이 끝날 떄까지 대기 후 작업 실시
+        Counters counters = JobRunner.run(job);
+        if(counters != null) {
+            ShuffleStats.print(job, counters); // shuffle 크기 출력
+            RunReport.phase("copy output");
+            Staging.copyOutput(conf, output); // 결과 파일을 로컬로 복사 (hdfs 내의 원본 output 폴더는 유지)
+        }
+        RunReport.finish(counters != null);
+        return counters != null;
+    }
+
+    // 사전을 준비하고 켜진 결과를 한 번에 만드는 잡을 만듦 (reviewInput, usBusinessInput은 해당 결과를 끄면 null)
+    public static Job createJob(Configuration conf, Path workDir, Path businessInput, Path reviewInput, Path usBusinessInput, Path output) throws IOException {
+        boolean summary = enabled(conf, SUMMARY);
+        boolean reviews = enabled(conf, REVIEWS);
+        if (summary) { BusinessSummaryByState.prepareDictionaries(conf, workDir, businessInput); } // 주(state)와 카테고리 사전 준비
+
+        // 잡 생성 및 설정
+        Job job = Job.getInstance(conf, "Shared scan of business and review");
+        job.setJarByClass(SharedScan.class); // Job 클래스 설정
+        job.setReducerClass(Reduce.class); // Reducer 클래스 설정
+        JobRunner.setReduces(job, REDUCES); // reducer 수 설정
+        job.setPartitionerClass(TaggedKey.NaturalKeyPartitioner.class); // business_id(또는 주)만으로 reducer를 정함
+        job.setSortComparatorClass(TaggedKey.Comparator.class); // (business_id, tag) 순서로 정렬
+        job.setGroupingComparatorClass(TaggedKey.GroupingComparator.class); // business_id만으로 그룹을 묶음
+
+        job.setMapOutputKeyClass(TaggedKey.class); // Mapper의 ouput key 자료형 설정
+        job.setMapOutputValueClass(Value.class); // Mapper의 output value 자료형 설정
+        job.setOutputKeyClass(NullWritable.class); // Reducer의 output key 자료형 설정
+        job.setOutputValueClass(Text.class); // Reducer의 output value 자료형 설정
+        LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class); // 모든 결과를 named output으로 쓰므로 빈 part 파일을 만들지 않음
+        for (String name : new String[] {SUMMARY, REVIEWS, VISITED_USERS}) {
+            if (enabled(conf, name)) { MultipleOutputs.addNamedOutput(job, name, TextOutputFormat.class, NullWritable.class, Text.class); }
+        }
+
+        if (summary) { BusinessSummaryByState.addDictionaries(job); } // 사전 배포
+        MultipleInputs.addInputPath(job, businessInput, TextInputFormat.class, BusinessMapper.class); // 비즈니스 데이터셋
+        if (reviewInput != null) { MultipleInputs.addInputPath(job, reviewInput, TextInputFormat.class, ReviewMapper.class); } // 리뷰 데이터셋
+        if (reviews) { MultipleInputs.addInputPath(job, usBusinessInput, TextInputFormat.class, UsBusinessMapper.class); } // 미국 비즈니스 데이터셋
+        FileOutputFormat.setOutputPath(job, output); // output file 설정
+        return job;
+    }
+}
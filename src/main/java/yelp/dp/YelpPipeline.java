@@ -0,0 +1,129 @@
+package yelp.dp;
+
+import java.util.Map;
+
+import yelp.dp.Common.Compression;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.Pipeline;
+import yelp.dp.Engine.RunReport;
+import yelp.dp.Engine.Staging;
+import yelp.dp.ExtractUSData.ReviewDataset;
+import yelp.dp.SearchUserHomeState.Main;
+import yelp.dp.SearchUserHomeState.SemiJoinFilters;
+
+// 하둡 라이브러리
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+// MergeJson, BusinessSummaryByState, ReviewDataset, SearchUserHomeState의 잡을 하나의 DAG로 실행하는 driver
+//   business ──┬─ mergedBusiness (MergeJson, business_id로 business와 us_business 병합)
+//   usBusiness ┤
+//              ├─ summary (BusinessSummaryByState)
+//   review ────┼─ usReviews (ReviewDataset)
+//              └─ visitedUsers (SearchUserHomeState의 첫 번째 잡) ── homeState (두 번째 잡, user와 합침)
+// 입력은 한 번만 준비하고 visitedUsers까지의 네 단계는 동시에 실행되며, 바뀌지 않은 단계는 이전 결과를 사용함 (Pipeline 참고)
+// 각 driver의 -D 설정을 그대로 사용하며, 결과는 로컬의 ./output/<데이터셋>으로 복사함
+// 증분 모드, semi-join filter와 SearchUserHomeState의 broadcast 모드는 단계의 결과만으로 다시 실행할 수 없으므로 사용하지 않음
+public class YelpPipeline {
+    static final String[] RESULTS = {"mergedBusiness", "summary", "usReviews", "homeState"}; // 로컬로 복사하는 데이터셋
+
+    public static void main(String[] args) throws Exception {
+        // usage : hadoop jar ... [path: business.json file path in local] \
+        //                        [path: review.json file path in local] \
+        //                        [path: user.json file path in local] \
+        //                        [path: us_business.json file path in local] \
+        //                        [path: working directory in hdfs]
+
+        System.out.println("###############################");
+        System.out.println("      Yelp Dataset Pipeline    ");
+        System.out.println("###############################");
+
+        Configuration conf = new Configuration(); // 설정 정의
+        args = new GenericOptionsParser(conf, args).getRemainingArgs(); // -D 옵션은 conf에 저장하고 나머지 인자만 사용
+        if (args.length != 5) {
+            System.err.println("Usage: YelpPipeline <business> <review> <user> <us_business> <working directory>");
+            System.exit(2);
+        }
+        System.exit(run(conf, args) ? 0 : 1); // 정상 종료 0, 비정상 종료 1
+    }
+
+    // -D 옵션을 뺀 인자로 pipeline을 실행 (성공하면 true, 프로세스는 끝내지 않음)
+    public static boolean run(Configuration conf, String[] args) throws Exception {
+        Compression.configure(conf); // -D compression.*으로 설정한 map 결과, 최종 결과 압축
+        RunReport.begin("YelpPipeline", conf); // 단계별 시간과 counter를 report.path에 json으로 기록
+        for (String ignored : new String[] {BusinessSummaryByState.INCREMENTAL, Main.INCREMENTAL, SemiJoinFilters.ENABLED}) {
+            if (conf.getBoolean(ignored, false)) { System.out.println(ignored + " is ignored in the pipeline."); }
+        }
+        if (!conf.get(Main.JOIN_MODE, "reduce").equals("reduce")) { System.out.println(Main.JOIN_MODE + " is ignored in the pipeline."); }
+
+        RunReport.phase("stage inputs");
+        // 입력은 가능하면 원래 위치에서 바로 읽고, hdfs로 복사가 필요하면 바뀐 파일만 복사함 (복사한 입력은 다음 실행을 위해 유지)
+        Path workDir = JobRunner.resolve(conf, args[4]);
+        Pipeline pipeline = new Pipeline(conf, workDir);
+        pipeline.addInput("business", Staging.input(conf, workDir, args[0])); // 비즈니스 데이터셋
+        pipeline.addInput("review", Staging.input(conf, workDir, args[1])); // 리뷰 데이터셋
+        pipeline.addInput("user", Staging.input(conf, workDir, args[2])); // 유저 데이터셋
+        pipeline.addInput("usBusiness", Staging.input(conf, workDir, args[3])); // 미국 비즈니스 데이터셋
+
+        pipeline.addStage(new Pipeline.Stage("mergedBusiness", new String[] {"business", "usBusiness"}, "mergeJson.") {
+            @Override
+            protected Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception {
+                return MergeJson.createJob(conf, "business_id", inputs.values().toArray(new Path[0]), output);
+            }
+
+            @Override
+            protected boolean finish(Configuration conf, Job job, Map<String, Path> inputs, Path output) throws Exception {
+                return MergeJson.finish(conf, job, inputs.values().toArray(new Path[0]), output);
+            }
+        });
+        pipeline.addStage(new Pipeline.Stage("summary", new String[] {"business"}, "businessSummary.") {
+            @Override
+            protected Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception {
+                return BusinessSummaryByState.createJob(conf, workDir, inputs.get("business"), output);
+            }
+        });
+        pipeline.addStage(new Pipeline.Stage("usReviews", new String[] {"usBusiness", "review"}, "reviewDataset.") {
+            @Override
+            protected Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception {
+                return ReviewDataset.createJob(conf, workDir, inputs.get("usBusiness"), inputs.get("review"), output);
+            }
+        });
+        // SearchUserHomeState의 visited_users_output (입력이나 설정이 바뀌지 않으면 다시 만들지 않음)
+        pipeline.addStage(new Pipeline.Stage("visitedUsers", new String[] {"business", "review"}, "searchUserHomeState.visitedUsers.") {
+            @Override
+            protected Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception {
+                return Main.createVisitedUsersJob(conf, inputs.get("business"), inputs.get("review"), output);
+            }
+        });
+        // 리뷰 데이터셋은 hot user를 찾을 때 샘플링함
+        pipeline.addStage(new Pipeline.Stage("homeState", new String[] {"user", "visitedUsers", "review"}, "searchUserHomeState.") {
+            @Override
+            protected Job createJob(Configuration conf, Path workDir, Map<String, Path> inputs, Path output) throws Exception {
+                Job job = Main.createHomeStateJob(conf, inputs.get("user"), inputs.get("visitedUsers"), output);
+                Main.configureFinalJob(conf, workDir, job, inputs.get("user"), inputs.get("review"));
+                return job;
+            }
+
+            @Override
+            protected boolean finish(Configuration conf, Job job, Map<String, Path> inputs, Path output) throws Exception {
+                return Main.finish(conf, job, output);
+            }
+        });
+
+        RunReport.phase("pipeline");
+        boolean succeeded = pipeline.run();
+        if (succeeded) {
+            RunReport.phase("copy output");
+            Path localOutput = JobRunner.localOutput(conf);
+            if (conf.getBoolean(Staging.COPY_OUTPUT, true)) { FileSystem.getLocal(conf).delete(localOutput, true); } // 이전 실행의 결과가 남지 않도록 비움
+            for (String result : RESULTS) {
+                Staging.copyOutput(conf, pipeline.output(result), new Path(localOutput, result)); // 데이터셋마다 ./output/<이름>으로 복사
+            }
+        }
+        RunReport.finish(succeeded);
+        return succeeded;
+    }
+}
@@ -0,0 +1,149 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import yelp.dp.Common.CategorySketchWritable;
+
+public class CategorySketchWritableTest
+{
+    private static CategorySketchWritable sketch( int width, int depth )
+    {
+        CategorySketchWritable sketch = new CategorySketchWritable();
+        sketch.configure( width, depth );
+        return sketch;
+    }
+
+    private static CategorySketchWritable roundTrip( CategorySketchWritable sketch, CategorySketchWritable target ) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        sketch.write( out );
+        assertEquals( sketch.serializedSize(), out.getLength() );
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset( out.getData(), out.getLength() );
+        target.readFields( in );
+        assertEquals( out.getLength(), in.getPosition() );
+        return target;
+    }
+
+    @Test
+    public void writeAndReadFieldsRoundTrip() throws IOException
+    {
+        CategorySketchWritable sketch = sketch( 50, 3 );
+        sketch.addBusiness( 12 );
+        for ( int id = 0; id < 30; id++ )
+        {
+            sketch.add( id, id * 1000L + 1 ); // vlong이 여러 byte인 개수
+            if ( id % 3 == 0 ) { sketch.addCandidate( id ); }
+        }
+
+        // 다른 크기로 쓰던 객체를 재사용해도 이전 칸과 후보가 남지 않음
+        CategorySketchWritable reused = sketch( 7, 2 );
+        reused.add( 99, 5 );
+        reused.addCandidate( 99 );
+        for ( CategorySketchWritable copy : new CategorySketchWritable[] { new CategorySketchWritable(), reused } )
+        {
+            roundTrip( sketch, copy );
+            assertEquals( 12, copy.getCount() );
+            assertEquals( sketch.total(), copy.total() );
+            for ( int id = 0; id < 100; id++ )
+            {
+                assertEquals( sketch.estimate( id ), copy.estimate( id ) );
+            }
+            assertEquals( sketch.getCandidateCount(), copy.getCandidateCount() );
+            for ( int i = 0; i < sketch.getCandidateCount(); i++ )
+            {
+                assertEquals( sketch.getCandidate( i ), copy.getCandidate( i ) );
+            }
+        }
+
+        CategorySketchWritable empty = roundTrip( sketch( 50, 3 ), reused );
+        assertEquals( 0, empty.getCount() );
+        assertEquals( 0, empty.total() );
+        assertEquals( 0, empty.getCandidateCount() );
+    }
+
+    @Test
+    public void estimatesNeverUnderCount()
+    {
+        CategorySketchWritable sketch = sketch( 8, 2 ); // 칸이 적어서 충돌이 많음
+        for ( int id = 0; id < 40; id++ )
+        {
+            sketch.add( id, id + 1 );
+        }
+        for ( int id = 0; id < 40; id++ )
+        {
+            long estimate = sketch.estimate( id );
+            if ( estimate < id + 1 ) { fail( "Estimate " + estimate + " of " + id + " is below " + ( id + 1 ) ); }
+        }
+        assertEquals( 40 * 41 / 2, sketch.total() );
+    }
+
+    @Test
+    public void retainTopKeepsLargestUniqueCandidatesInOrder()
+    {
+        CategorySketchWritable sketch = sketch( 1000, 4 ); // 충돌이 없을 만큼 넓음
+        long[] counts = { 5, 9, 1, 9, 7, 3, 9, 2 };
+        for ( int id = 0; id < counts.length; id++ )
+        {
+            sketch.add( id, counts[id] );
+        }
+        for ( int id : new int[] { 7, 3, 0, 6, 1, 3, 4, 2, 1, 5, 6 } ) // 중복 포함
+        {
+            sketch.addCandidate( id );
+        }
+
+        sketch.retainTop( 5 );
+        int[] expected = { 1, 3, 6, 4, 0 }; // 추정값이 큰 순서, 같으면 id 순서
+        assertEquals( expected.length, sketch.getCandidateCount() );
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertEquals( expected[i], sketch.getCandidate( i ) );
+        }
+
+        sketch.retainTop( 100 ); // capacity가 후보 수보다 커도 순서 유지
+        assertEquals( expected.length, sketch.getCandidateCount() );
+        assertEquals( 1, sketch.getCandidate( 0 ) );
+        assertEquals( 0, sketch.getCandidate( 4 ) );
+
+        sketch.retainTop( 0 );
+        assertEquals( 0, sketch.getCandidateCount() );
+    }
+
+    @Test
+    public void mergeAddsCellsAndCandidates()
+    {
+        CategorySketchWritable a = sketch( 100, 3 );
+        CategorySketchWritable b = sketch( 100, 3 );
+        a.addBusiness( 2 );
+        a.add( 1, 4 );
+        a.addCandidate( 1 );
+        b.addBusiness( 3 );
+        b.add( 1, 6 );
+        b.add( 2, 20 );
+        b.addCandidate( 2 );
+        b.addCandidate( 1 );
+
+        a.merge( b );
+        a.retainTop( 1 );
+        assertEquals( 5, a.getCount() );
+        assertEquals( 10, a.estimate( 1 ) );
+        assertEquals( 1, a.getCandidateCount() );
+        assertEquals( 2, a.getCandidate( 0 ) );
+
+        try
+        {
+            a.merge( sketch( 50, 3 ) );
+            fail( "Expected IllegalArgumentException for sketches of different sizes" );
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+    }
+}
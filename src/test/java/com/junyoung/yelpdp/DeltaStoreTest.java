@@ -0,0 +1,210 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import yelp.dp.Common.DeltaStore;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.LocalEngine;
+
+public class DeltaStoreTest
+{
+    private static final String STORE = "users";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        conf = new Configuration();
+        conf.set( JobRunner.ENGINE, "local" );
+        conf.setInt( LocalEngine.THREADS, 2 );
+        fs = FileSystem.getLocal( conf );
+        root = new Path( folder.getRoot().toURI() );
+    }
+
+    // 한 번의 실행: 바뀐 key를 새 층에 쓰고 (commit이 true면) 완료함
+    private DeltaStore run( boolean commit, String... keyValues ) throws IOException
+    {
+        DeltaStore store = new DeltaStore( conf, root );
+        Path layer = store.newLayer( STORE );
+        TreeMap<String, String> sorted = new TreeMap<String, String>(); // MapFile은 key 순서로 써야 함
+        for ( int i = 0; i < keyValues.length; i += 2 )
+        {
+            sorted.put( keyValues[i], keyValues[i + 1] );
+        }
+        MapFile.Writer writer = new MapFile.Writer( conf, new Path( layer, "part-r-00000" ),
+                MapFile.Writer.keyClass( Text.class ), SequenceFile.Writer.valueClass( Text.class ) );
+        try
+        {
+            for ( Map.Entry<String, String> entry : sorted.entrySet() )
+            {
+                writer.append( new Text( entry.getKey() ), new Text( entry.getValue() ) );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        fs.create( new Path( layer, "_SUCCESS" ) ).close();
+        write( store.next( "totals" ), "totals of " + ( store.generation() + 1 ) );
+        if ( commit )
+        {
+            store.commit();
+        }
+        return store;
+    }
+
+    private void write( Path file, String content ) throws IOException
+    {
+        OutputStream out = fs.create( file, true );
+        try
+        {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    // 완료된 층을 최신순으로 조회 (없으면 null)
+    private String get( DeltaStore store, String key ) throws IOException
+    {
+        Job job = Job.getInstance( conf );
+        store.configure( job, STORE );
+        DeltaStore.Reader reader = new DeltaStore.Reader( job.getConfiguration(), STORE );
+        try
+        {
+            Text value = new Text();
+            return reader.get( new Text( key ), value ) ? value.toString() : null;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private int files( String store, String prefix ) throws IOException
+    {
+        int count = 0;
+        for ( FileStatus status : fs.listStatus( new Path( root, store ) ) )
+        {
+            if ( status.getPath().getName().startsWith( prefix ) ) { count++; }
+        }
+        return count;
+    }
+
+    @Test
+    public void newerLayersShadowOlderOnes() throws IOException
+    {
+        run( true, "a", "1", "b", "1" );
+        run( true, "a", "2", "c", "2" );
+        DeltaStore store = run( true, "c", "3" );
+
+        DeltaStore reopened = new DeltaStore( conf, root );
+        assertEquals( 3, reopened.generation() );
+        assertEquals( "2", get( reopened, "a" ) );
+        assertEquals( "1", get( reopened, "b" ) );
+        assertEquals( "3", get( reopened, "c" ) );
+        assertNull( get( reopened, "d" ) );
+        assertEquals( 3, files( STORE, "layer-" ) );
+        assertEquals( 2, store.generation() ); // 열었을 때의 번호 (commit 후에는 새로 열어야 함)
+    }
+
+    @Test
+    public void generationMarksCommittedRuns() throws IOException
+    {
+        assertEquals( 0, new DeltaStore( conf, root ).generation() );
+        assertNull( new DeltaStore( conf, root ).current( "totals" ) );
+
+        run( true, "a", "1" );
+        Path marker = new Path( root, "GENERATION" );
+        assertTrue( fs.exists( marker ) );
+        assertFalse( fs.exists( new Path( root, "GENERATION.tmp" ) ) );
+        DeltaStore store = new DeltaStore( conf, root );
+        assertEquals( 1, store.generation() );
+        assertEquals( new Path( root, "totals-00001" ), store.current( "totals" ) );
+
+        run( true, "a", "2" );
+        store = new DeltaStore( conf, root );
+        assertEquals( new Path( root, "totals-00002" ), store.current( "totals" ) );
+        assertFalse( fs.exists( new Path( root, "totals-00001" ) ) ); // commit이 이전 실행의 파일을 지움
+
+        // GENERATION을 지운 뒤 새 파일로 옮기기 전에 중단되었으면 .tmp를 읽음
+        fs.rename( marker, new Path( root, "GENERATION.tmp" ) );
+        assertEquals( 2, new DeltaStore( conf, root ).generation() );
+    }
+
+    @Test
+    public void uncommittedRunIsDiscarded() throws IOException
+    {
+        run( true, "a", "1" );
+        run( false, "a", "2", "b", "2" ); // commit 전에 실패한 실행
+        assertTrue( fs.exists( new Path( root, "totals-00002" ) ) );
+
+        DeltaStore store = new DeltaStore( conf, root );
+        assertEquals( 1, store.generation() );
+        assertFalse( fs.exists( new Path( root, "totals-00002" ) ) );
+        assertFalse( fs.exists( new Path( new Path( root, STORE ), "layer-00002" ) ) );
+        assertEquals( "1", get( store, "a" ) );
+        assertNull( get( store, "b" ) );
+
+        // 다시 실행하면 같은 번호의 층을 새로 씀
+        run( true, "b", "3" );
+        store = new DeltaStore( conf, root );
+        assertEquals( 2, store.generation() );
+        assertEquals( "3", get( store, "b" ) );
+    }
+
+    @Test
+    public void compactionMergesLayersIntoBase() throws Exception
+    {
+        conf.setInt( DeltaStore.MAX_LAYERS, 2 );
+        run( true, "a", "1", "b", "1" );
+        run( true, "a", "2" );
+        assertTrue( new DeltaStore( conf, root ).compact( STORE ) ); // 층이 2개 이하면 합치지 않음
+        assertEquals( 0, files( STORE, "base-" ) );
+
+        run( true, "b", "3", "c", "3" );
+        DeltaStore store = new DeltaStore( conf, root );
+        assertTrue( store.compact( STORE ) );
+        assertEquals( 1, files( STORE, "base-" ) );
+        assertEquals( 0, files( STORE, "layer-" ) );
+        assertEquals( "2", get( store, "a" ) );
+        assertEquals( "3", get( store, "b" ) );
+        assertEquals( "3", get( store, "c" ) );
+
+        // compaction 뒤의 층은 base보다 먼저 조회됨
+        run( true, "a", "4" );
+        store = new DeltaStore( conf, root );
+        assertEquals( "4", get( store, "a" ) );
+        assertEquals( "3", get( store, "b" ) );
+    }
+}
@@ -0,0 +1,157 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import yelp.dp.SearchUserHomeState.HomeStateIndex;
+
+public class HomeStateIndexTest
+{
+    private static String repeat( char c, int count )
+    {
+        char[] chars = new char[count];
+        Arrays.fill( chars, c );
+        return new String( chars );
+    }
+
+    // 블록 경계, 128byte 이상의 같은 앞부분, 8byte 이후에만 다른 key, 128개 이상의 주(state) 코드를 모두 포함하는 유저
+    private static TreeMap<String, String> users()
+    {
+        TreeMap<String, String> users = new TreeMap<String, String>();
+        String longPrefix = repeat( 'x', 150 );
+        for ( int i = 0; i < 40; i++ )
+        {
+            users.put( "abcdefgh" + i, "S" + i );
+            users.put( longPrefix + i, "S" + ( 40 + i ) );
+            users.put( "u" + ( 1000 + i * 7 ), "S" + ( 80 + i ) );
+            users.put( "zzzzzzzzzz" + repeat( 'q', i ), "S" + ( 120 + i ) );
+        }
+        users.put( "abcdefgh", "NV" );
+        users.put( "m", "AZ" );
+        return users;
+    }
+
+    private static HomeStateIndex write( Map<String, String> users, int blockSize ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HomeStateIndex.Writer writer = new HomeStateIndex.Writer( bytes, blockSize );
+        for ( Map.Entry<String, String> user : users.entrySet() )
+        {
+            writer.add( new Text( user.getKey() ), new Text( user.getValue() ) );
+        }
+        assertEquals( users.size(), writer.size() );
+        writer.close();
+        return new HomeStateIndex( ByteBuffer.wrap( bytes.toByteArray() ) );
+    }
+
+    // 있는 id와 그 사이, 앞, 뒤의 없는 id (더 짧은 id, 더 긴 id 포함)
+    private static List<String> queries( TreeMap<String, String> users )
+    {
+        List<String> queries = new ArrayList<String>( users.keySet() );
+        for ( String userId : users.keySet() )
+        {
+            queries.add( userId.substring( 0, userId.length() - 1 ) );
+            queries.add( userId + "0" );
+            queries.add( userId + "~" );
+        }
+        queries.add( "" );
+        queries.add( "A" );
+        queries.add( "abcdefg" );
+        queries.add( "abcdefgi" );
+        queries.add( repeat( 'x', 149 ) );
+        queries.add( repeat( 'x', 151 ) );
+        queries.add( repeat( 'x', 150 ) + "~" );
+        queries.add( repeat( '~', 3 ) );
+        return queries;
+    }
+
+    @Test
+    public void looksUpEveryUserAfterRoundTrip() throws IOException
+    {
+        TreeMap<String, String> users = users();
+        for ( int blockSize : new int[] { 1, 3, 16, 1000 } ) // users.size()는 3으로도 16으로도 나누어떨어지지 않음 (마지막 block이 일부만 참)
+        {
+            HomeStateIndex index = write( users, blockSize );
+            assertEquals( users.size(), index.size() );
+            assertEquals( 162, index.stateCount() );
+            for ( String query : queries( users ) )
+            {
+                assertEquals( "block " + blockSize + ", " + query, users.get( query ), index.get( query ) );
+            }
+        }
+    }
+
+    @Test
+    public void batchLookupMatchesSingleLookups() throws IOException
+    {
+        TreeMap<String, String> users = users();
+        HomeStateIndex index = write( users, 4 );
+        List<String> queries = queries( users );
+        queries.addAll( users.keySet() ); // 같은 id를 여러 번 조회
+        Collections.shuffle( queries, new Random( 7 ) );
+
+        Text[] userIds = new Text[queries.size()];
+        int[] expected = new int[queries.size()];
+        for ( int i = 0; i < userIds.length; i++ )
+        {
+            userIds[i] = new Text( queries.get( i ) );
+            expected[i] = index.lookup( userIds[i] );
+            String state = users.get( queries.get( i ) );
+            assertEquals( state, expected[i] == HomeStateIndex.NOT_FOUND ? null : index.state( expected[i] ) );
+        }
+        int[] codes = new int[userIds.length];
+        index.lookup( userIds, codes );
+        assertArrayEquals( expected, codes );
+    }
+
+    @Test
+    public void handlesEmptyIndex() throws IOException
+    {
+        HomeStateIndex index = write( new TreeMap<String, String>(), 16 );
+        assertEquals( 0, index.size() );
+        assertNull( index.get( "u1" ) );
+        int[] codes = new int[1];
+        index.lookup( new Text[] { new Text( "u1" ) }, codes );
+        assertEquals( HomeStateIndex.NOT_FOUND, codes[0] );
+    }
+
+    @Test
+    public void rejectsUnsortedUsersAndOtherFiles() throws IOException
+    {
+        HomeStateIndex.Writer writer = new HomeStateIndex.Writer( new ByteArrayOutputStream(), 16 );
+        writer.add( new Text( "u2" ), new Text( "NV" ) );
+        try
+        {
+            writer.add( new Text( "u1" ), new Text( "NV" ) );
+            fail( "Expected IOException for unsorted user ids" );
+        }
+        catch ( IOException expected )
+        {
+        }
+
+        try
+        {
+            new HomeStateIndex( ByteBuffer.wrap( new byte[64] ) );
+            fail( "Expected IOException for a file without the index footer" );
+        }
+        catch ( IOException expected )
+        {
+        }
+    }
+}
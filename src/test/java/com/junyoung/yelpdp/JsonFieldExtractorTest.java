@@ -0,0 +1,88 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import yelp.dp.Common.JsonFieldExtractor;
+
+public class JsonFieldExtractorTest
+{
+    @Test
+    public void extractsRequestedTopLevelFields()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "business_id", "state", "stars" );
+        assertTrue( extractor.parse( new Text( "{\"attributes\":{\"state\":\"XX\"},\"business_id\":\"b1\", \"stars\" : 4.5, \"state\":\"NV\"}" ) ) );
+        assertEquals( "b1", extractor.getString( 0 ) );
+        assertEquals( "NV", extractor.getString( 1 ) );
+        assertEquals( "4.5", extractor.getString( 2 ) );
+    }
+
+    @Test
+    public void handlesNullMissingAndEscapedValues()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "categories", "name", "hours" );
+        assertTrue( extractor.parse( new Text( "{\"categories\":null,\"name\":\"Caf\\u00e9 \\\"Q\\\"\"}" ) ) );
+        assertTrue( extractor.has( 0 ) );
+        assertTrue( extractor.isNull( 0 ) );
+        assertNull( extractor.getString( 0 ) );
+        assertEquals( "Café \"Q\"", extractor.getString( 1 ) );
+        assertFalse( extractor.has( 2 ) );
+    }
+
+    @Test
+    public void rejectsMalformedInput()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "user_id" );
+        assertFalse( extractor.parse( new Text( "[1,2]" ) ) );
+        assertFalse( extractor.parse( new Text( "{\"user_id\":\"abc" ) ) );
+        assertFalse( extractor.parse( new Text( "{\"a\":1 \"user_id\":\"u\"}" ) ) );
+    }
+
+    @Test
+    public void rejectsMalformedUnicodeEscapes()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "user_id" );
+        assertFalse( extractor.parse( new Text( "{\"user_id\":\"u\\u00zz\"}" ) ) );
+        assertFalse( extractor.parse( new Text( "{\"user_id\":\"u\\u12\"}" ) ) );
+        assertFalse( extractor.parse( new Text( "{\"n\\u0g61me\":1,\"user_id\":\"u\"}" ) ) ); // 요청하지 않은 key
+        assertFalse( extractor.parse( new Text( "{\"text\":\"\\u\",\"user_id\":\"u\"}" ) ) ); // 건너뛰는 값
+
+        assertTrue( extractor.parse( new Text( "{\"user_id\":\"\\u0041\\u00E9\"}" ) ) );
+        assertEquals( "Aé", extractor.getString( 0 ) );
+    }
+
+    @Test
+    public void removesSingleMember()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "user_id", "friends" );
+        Text out = new Text();
+
+        extractor.parse( new Text( "{\"user_id\":\"u1\",\"friends\":\"a, b\",\"fans\":3}" ) );
+        extractor.writeWithout( 1, out );
+        assertEquals( "{\"user_id\":\"u1\",\"fans\":3}", out.toString() );
+
+        extractor.parse( new Text( "{\"user_id\":\"u1\",\"friends\":\"a, b\"}" ) );
+        extractor.writeWithout( 1, out );
+        assertEquals( "{\"user_id\":\"u1\"}", out.toString() );
+    }
+
+    @Test
+    public void keepsFoundMembersInOriginalOrder()
+    {
+        JsonFieldExtractor extractor = new JsonFieldExtractor( "fans", "user_id", "elite" );
+        Text out = new Text();
+
+        extractor.parse( new Text( "{\"user_id\":\"u\\\"1\", \"friends\":\"a, b\", \"fans\": [1, 2]}" ) );
+        extractor.writeFound( out );
+        assertEquals( "{\"user_id\":\"u\\\"1\",\"fans\": [1, 2]}", out.toString() );
+
+        extractor.parse( new Text( "{\"name\":\"x\"}" ) );
+        extractor.writeFound( out );
+        assertEquals( "{}", out.toString() );
+    }
+}
@@ -0,0 +1,123 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import yelp.dp.Common.JsonObjectMerger;
+
+public class JsonObjectMergerTest
+{
+    private static String merge( JsonObjectMerger merger ) throws IOException
+    {
+        Text out = new Text();
+        merger.merge( out );
+        return out.toString();
+    }
+
+    @Test
+    public void laterWriterWinsWithinAndAcrossOrders() throws IOException
+    {
+        JsonObjectMerger merger = new JsonObjectMerger();
+        merger.add( 1, new Text( "{\"id\":\"b1\",\"stars\":2,\"stars\":3}" ) );
+        merger.add( 0, new Text( "{\"id\":\"b1\",\"name\":\"a\",\"stars\":1}" ) );
+        merger.add( 1, new Text( "{\"name\":\"b\"}" ) );
+        assertEquals( "{\"id\":\"b1\",\"name\":\"b\",\"stars\":3}", merge( merger ) );
+        assertEquals( 3, merger.objects() );
+        assertEquals( 1, merger.maxOrder() );
+    }
+
+    @Test
+    public void treatsDifferentlyEscapedKeysAsTheSameField() throws IOException
+    {
+        JsonObjectMerger merger = new JsonObjectMerger();
+        merger.add( 0, new Text( "{\"name\":1,\"a\\\"b\":2}" ) );
+        merger.add( 1, new Text( "{\"n\\u0061me\":3,\"a\\u0022b\":4}" ) );
+        assertEquals( "{\"n\\u0061me\":3,\"a\\u0022b\":4}", merge( merger ) );
+
+        merger.clear();
+        merger.add( 0, new Text( "{\"n\\u0061me\":1}" ) );
+        merger.add( 1, new Text( "{\"name\":2,\"n\\u0061me2\":3}" ) );
+        assertEquals( "{\"name\":2,\"n\\u0061me2\":3}", merge( merger ) );
+    }
+
+    @Test
+    public void copiesNestedValuesWithBracesAndQuotes() throws IOException
+    {
+        JsonObjectMerger merger = new JsonObjectMerger();
+        merger.add( 0, new Text( "{\"attributes\":{\"note\":\"}\\\"{\",\"list\":[\"]\",{\"x\":\"}\"}]},\"id\":\"b1\"}" ) );
+        merger.add( 1, new Text( "{ \"text\" : \"say \\\"}\\\"\" , \"id\" : \"b2\" }" ) );
+        assertEquals( "{\"attributes\":{\"note\":\"}\\\"{\",\"list\":[\"]\",{\"x\":\"}\"}]},\"id\" : \"b2\",\"text\" : \"say \\\"}\\\"\"}",
+                merge( merger ) );
+    }
+
+    @Test
+    public void mergesEmptyObjects() throws IOException
+    {
+        JsonObjectMerger merger = new JsonObjectMerger();
+        merger.add( 0, new Text( "{}" ) );
+        merger.add( 1, new Text( " { } " ) );
+        assertEquals( "{}", merge( merger ) );
+
+        merger.add( 2, new Text( "{\"id\":1}" ) );
+        assertEquals( "{\"id\":1}", merge( merger ) );
+    }
+
+    @Test
+    public void rejectsMalformedInput()
+    {
+        String[] malformed = { "[1,2]", "{\"id\":\"abc", "{\"a\":1 \"b\":2}", "{\"a\":}", "{\"a\":{\"b\":1}", "{\"a\":1,}", "",
+            "{\"a\":\"\\u12\"}", "{\"n\\u00zzme\":1}" };
+        JsonObjectMerger merger = new JsonObjectMerger();
+        for ( String json : malformed )
+        {
+            merger.clear();
+            merger.add( 0, new Text( "{\"ok\":1}" ) );
+            merger.add( 1, new Text( json ) );
+            try
+            {
+                merge( merger );
+                fail( "Expected IOException for " + json );
+            }
+            catch ( IOException expected )
+            {
+            }
+        }
+    }
+
+    @Test
+    public void partialMergesRecombineToTheFullMerge() throws IOException
+    {
+        String[][] objects = {
+            { "2", "{\"id\":\"u1\",\"fans\":5,\"name\":\"c\"}" },
+            { "0", "{\"id\":\"u1\",\"name\":\"a\",\"n\\u0061me\":\"a2\",\"friends\":\"x, y\"}" },
+            { "1", "{\"fans\":3,\"elite\":[2019]}" },
+            { "0", "{\"friends\":\"z\"}" },
+            { "2", "{}" },
+        };
+        JsonObjectMerger merger = new JsonObjectMerger();
+        for ( String[] object : objects )
+        {
+            merger.add( Integer.parseInt( object[0] ), new Text( object[1] ) );
+        }
+        String full = merge( merger );
+
+        // 순서 번호별로 합친 결과를 같은 순서 번호로 다시 합치면 한 번에 합친 결과와 같아야 함
+        JsonObjectMerger recombined = new JsonObjectMerger();
+        Text partial = new Text();
+        for ( int order = 0; order <= merger.maxOrder(); order++ )
+        {
+            assertTrue( merger.merge( partial, order ) );
+            recombined.add( order, partial );
+        }
+        assertFalse( merger.merge( partial, 3 ) );
+        assertEquals( full, merge( recombined ) );
+        assertEquals( "{\"id\":\"u1\",\"name\":\"c\",\"friends\":\"z\",\"fans\":5,\"elite\":[2019]}", full );
+    }
+}
@@ -0,0 +1,150 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.TokenCounterMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import yelp.dp.Engine.LocalEngine;
+
+public class LocalEngineTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Job wordCount( Configuration conf, File input, File output, int reduces ) throws IOException
+    {
+        Job job = Job.getInstance( conf, "word count" );
+        job.setMapperClass( TokenCounterMapper.class );
+        job.setCombinerClass( IntSumReducer.class );
+        job.setReducerClass( IntSumReducer.class );
+        job.setOutputKeyClass( Text.class );
+        job.setOutputValueClass( IntWritable.class );
+        job.setNumReduceTasks( reduces );
+        FileInputFormat.addInputPath( job, new Path( input.toURI() ) );
+        FileOutputFormat.setOutputPath( job, new Path( output.toURI() ) );
+        return job;
+    }
+
+    private File input( String... lines ) throws IOException
+    {
+        File dir = folder.newFolder( "input" );
+        Files.write( new File( dir, "a.txt" ).toPath(), Arrays.asList( lines ), StandardCharsets.UTF_8 );
+        Files.write( new File( dir, "empty.txt" ).toPath(), new byte[0] ); // 레코드가 없는 map task
+        return dir;
+    }
+
+    // part 파일을 순서대로 이어 붙인 결과 (파일 안의 순서는 그대로 유지)
+    private static List<String> read( File output, int reduces ) throws IOException
+    {
+        assertTrue( new File( output, "_SUCCESS" ).exists() );
+        List<String> lines = new ArrayList<String>();
+        for ( int partition = 0; partition < reduces; partition++ )
+        {
+            lines.addAll( Files.readAllLines( new File( output, String.format( "part-r-%05d", partition ) ).toPath(), StandardCharsets.UTF_8 ) );
+        }
+        return lines;
+    }
+
+    @Test
+    public void matchesExpectedOutput() throws Exception
+    {
+        File input = input( "b a c", "a b", "a" );
+        File output = new File( folder.getRoot(), "output" );
+        Counters counters = new LocalEngine( wordCount( new Configuration(), input, output, 1 ) ).run();
+
+        assertNotNull( counters );
+        assertEquals( Arrays.asList( "a\t3", "b\t2", "c\t1" ), read( output, 1 ) );
+        assertEquals( 3, counters.findCounter( TaskCounter.MAP_INPUT_RECORDS ).getValue() );
+        assertEquals( 6, counters.findCounter( TaskCounter.MAP_OUTPUT_RECORDS ).getValue() );
+        assertEquals( 3, counters.findCounter( TaskCounter.REDUCE_OUTPUT_RECORDS ).getValue() );
+    }
+
+    @Test
+    public void partitionsByKeyHash() throws Exception
+    {
+        File input = input( "w x y z", "z y", "z" );
+        File output = new File( folder.getRoot(), "output" );
+        assertNotNull( new LocalEngine( wordCount( new Configuration(), input, output, 2 ) ).run() );
+
+        // HashPartitioner: "w", "y"는 0번, "x", "z"는 1번 reducer로 감
+        assertEquals( Arrays.asList( "w\t1", "y\t2" ), Files.readAllLines( new File( output, "part-r-00000" ).toPath(), StandardCharsets.UTF_8 ) );
+        assertEquals( Arrays.asList( "x\t1", "z\t3" ), Files.readAllLines( new File( output, "part-r-00001" ).toPath(), StandardCharsets.UTF_8 ) );
+    }
+
+    // 드라이버와 같이 이전 결과 폴더를 지우고 다시 실행하면 같은 결과가 나옴
+    @Test
+    public void rerunAfterDeletingOutput() throws Exception
+    {
+        Configuration conf = new Configuration();
+        File input = input( "b a c", "a b", "a" );
+        File output = new File( folder.getRoot(), "output" );
+        assertNotNull( new LocalEngine( wordCount( conf, input, output, 2 ) ).run() );
+        List<String> first = read( output, 2 );
+
+        try
+        {
+            new LocalEngine( wordCount( conf, input, output, 2 ) ).run();
+            fail( "An existing output directory must be rejected" );
+        }
+        catch ( FileAlreadyExistsException e )
+        {
+            // 예상한 예외
+        }
+
+        FileSystem.getLocal( conf ).delete( new Path( output.toURI() ), true );
+        assertNotNull( new LocalEngine( wordCount( conf, input, output, 2 ) ).run() );
+        assertEquals( first, read( output, 2 ) );
+    }
+
+    @Test
+    public void emptyInputWritesEmptyParts() throws Exception
+    {
+        File input = input();
+        File output = new File( folder.getRoot(), "output" );
+        Counters counters = new LocalEngine( wordCount( new Configuration(), input, output, 2 ) ).run();
+
+        assertNotNull( counters );
+        assertEquals( new ArrayList<String>(), read( output, 2 ) );
+        assertEquals( 0, counters.findCounter( TaskCounter.MAP_OUTPUT_RECORDS ).getValue() );
+    }
+
+    @Test
+    public void failsWhenMapOutputExceedsBuffer() throws Exception
+    {
+        Configuration conf = new Configuration();
+        conf.setLong( LocalEngine.BUFFER_MB, 0 );
+        File output = new File( folder.getRoot(), "output" );
+        LocalEngine engine = new LocalEngine( wordCount( conf, input( "a b" ), output, 1 ) );
+
+        assertNull( engine.run() );
+        assertTrue( String.valueOf( engine.getFailure() ).contains( LocalEngine.BUFFER_MB ) ); // task의 IOException을 감싼 예외
+        assertTrue( !new File( output, "_SUCCESS" ).exists() );
+    }
+}
@@ -0,0 +1,195 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import yelp.dp.BusinessSummaryByState;
+import yelp.dp.SharedScan;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.LocalEngine;
+import yelp.dp.ExtractUSData.ReviewDataset;
+import yelp.dp.SearchUserHomeState.Main;
+import yelp.dp.SearchUserHomeState.VisitedUsersByBusiness;
+
+// 한 번의 shared scan이 만든 named output이 각각 따로 실행한 잡의 결과와 같은지 확인
+public class SharedScanTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path business;
+    private Path review;
+    private Path usBusiness;
+
+    private static String business( String businessId, String state, String categories )
+    {
+        return "{\"business_id\":\"" + businessId + "\",\"state\":\"" + state + "\",\"categories\":\"" + categories + "\"}";
+    }
+
+    private static String review( String reviewId, String userId, String businessId )
+    {
+        return "{\"review_id\":\"" + reviewId + "\",\"user_id\":\"" + userId + "\",\"business_id\":\"" + businessId + "\",\"stars\":4.0,\"text\":\"good\"}";
+    }
+
+    private Path write( String name, List<String> lines ) throws IOException
+    {
+        File file = folder.newFile( name );
+        Files.write( file.toPath(), lines, StandardCharsets.UTF_8 );
+        return new Path( file.toURI() );
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        // business_id가 주(state) 이름과 같은 가게("NV", "AZ")가 있어도 주별 합계와 섞이지 않아야 함
+        List<String> us = Arrays.asList( business( "NV", "AZ", "Food, Bars" ), business( "AZ", "NV", "Food" ), business( "b1", "NV", "Bars" ),
+                business( "b2", "OH", "Food, Cafés" ), business( "0", "AZ", "" ) );
+        List<String> all = new ArrayList<String>( us );
+        all.addAll( Arrays.asList( business( "c1", "ON", "Food" ), business( "c2", "BC", "Bars, Food" ) ) ); // 미국이 아닌 가게
+        business = write( "business.json", all );
+        usBusiness = write( "us_business.json", us );
+
+        List<String> reviews = new ArrayList<String>();
+        String[] businessIds = {"NV", "AZ", "b1", "b2", "0", "c1", "c2", "unknown"};
+        for ( int i = 0; i < 24; i++ )
+        {
+            reviews.add( review( "r" + i, "u" + ( i % 5 ), businessIds[i % businessIds.length] ) );
+        }
+        review = write( "review.json", reviews );
+    }
+
+    private static Configuration conf()
+    {
+        Configuration conf = new Configuration();
+        conf.set( JobRunner.ENGINE, "local" );
+        conf.setInt( LocalEngine.THREADS, 2 );
+        conf.setInt( VisitedUsersByBusiness.CHUNK_SIZE, 2 );
+        return conf;
+    }
+
+    private Path output( String name )
+    {
+        return new Path( new File( folder.getRoot(), name ).toURI() );
+    }
+
+    private static void run( Job job ) throws Exception
+    {
+        assertNotNull( job.getJobName() + " failed", JobRunner.run( job ) );
+    }
+
+    // 폴더 안 part 파일의 모든 줄 (reducer 수가 달라도 비교할 수 있도록 정렬)
+    private static List<String> lines( Path dir ) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        for ( File file : new File( dir.toUri() ).listFiles() )
+        {
+            if ( file.getName().startsWith( "part-" ) )
+            {
+                lines.addAll( Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) );
+            }
+        }
+        Collections.sort( lines );
+        return lines;
+    }
+
+    // 가게별 방문 유저 (chunk로 나뉜 줄을 합치고 유저 순서는 무시)
+    private static Map<String, String> visitedUsers( Path dir ) throws IOException
+    {
+        Map<String, TreeSet<String>> users = new TreeMap<String, TreeSet<String>>();
+        Map<String, String> states = new TreeMap<String, String>();
+        for ( String line : lines( dir ) )
+        {
+            JsonObject json = new JsonParser().parse( line ).getAsJsonObject();
+            String businessId = json.get( "business_id" ).getAsString();
+            states.put( businessId, json.get( "state" ).getAsString() );
+            if ( !users.containsKey( businessId ) ) { users.put( businessId, new TreeSet<String>() ); }
+            String visited = json.get( "visited_users" ).getAsString();
+            if ( !visited.isEmpty() ) { users.get( businessId ).addAll( Arrays.asList( visited.split( ", " ) ) ); }
+        }
+        Map<String, String> result = new TreeMap<String, String>();
+        for ( Map.Entry<String, String> entry : states.entrySet() )
+        {
+            result.put( entry.getKey(), entry.getValue() + " " + users.get( entry.getKey() ) );
+        }
+        return result;
+    }
+
+    @Test
+    public void namedOutputsMatchStandaloneDrivers() throws Exception
+    {
+        Configuration conf = conf();
+        conf.setInt( SharedScan.REDUCES, 3 );
+        Path shared = output( "shared" );
+        run( SharedScan.createJob( conf, output( "sharedWork" ), business, review, usBusiness, shared ) );
+
+        // 모든 결과는 named output 폴더로만 가고 빈 part 파일은 만들지 않음
+        File sharedDir = new File( shared.toUri() );
+        assertTrue( new File( sharedDir, "_SUCCESS" ).exists() );
+        for ( File file : sharedDir.listFiles() )
+        {
+            assertFalse( file.getName(), file.getName().startsWith( "part-" ) );
+        }
+
+        Path summary = output( "summary" );
+        run( BusinessSummaryByState.createJob( conf(), output( "summaryWork" ), business, summary ) );
+        List<String> expectedSummary = lines( summary );
+        assertEquals( 5, expectedSummary.size() ); // AZ, BC, NV, OH, ON
+        assertEquals( expectedSummary, lines( new Path( shared, SharedScan.SUMMARY ) ) );
+
+        Path reviews = output( "reviews" );
+        run( ReviewDataset.createJob( conf(), output( "reviewsWork" ), usBusiness, review, reviews ) );
+        List<String> expectedReviews = lines( reviews );
+        assertEquals( 15, expectedReviews.size() ); // 미국 가게 5곳의 리뷰
+        assertEquals( expectedReviews, lines( new Path( shared, SharedScan.REVIEWS ) ) );
+
+        Path visited = output( "visitedUsers" );
+        run( Main.createVisitedUsersJob( conf(), business, review, visited ) );
+        Map<String, String> expectedVisited = visitedUsers( visited );
+        assertEquals( "AZ [u0, u1, u3]", expectedVisited.get( "NV" ) );
+        assertEquals( " [u0, u2, u3]", expectedVisited.get( "unknown" ) ); // 비즈니스 데이터셋에 없는 가게
+        assertEquals( expectedVisited, visitedUsers( new Path( shared, SharedScan.VISITED_USERS ) ) );
+    }
+
+    // 끈 결과는 named output 폴더를 만들지 않고, 나머지 결과는 그대로
+    @Test
+    public void disabledOutputsAreSkipped() throws Exception
+    {
+        Configuration conf = conf();
+        conf.setBoolean( "sharedScan." + SharedScan.REVIEWS, false );
+        conf.setBoolean( "sharedScan." + SharedScan.VISITED_USERS, false );
+        Path shared = output( "shared" );
+        run( SharedScan.createJob( conf, output( "sharedWork" ), business, null, null, shared ) );
+
+        assertFalse( new File( new File( shared.toUri() ), SharedScan.REVIEWS ).exists() );
+        assertFalse( new File( new File( shared.toUri() ), SharedScan.VISITED_USERS ).exists() );
+
+        Path summary = output( "summary" );
+        run( BusinessSummaryByState.createJob( conf(), output( "summaryWork" ), business, summary ) );
+        assertEquals( lines( summary ), lines( new Path( shared, SharedScan.SUMMARY ) ) );
+    }
+}
@@ -0,0 +1,233 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.LocalEngine;
+
+public class SkewedKeysTest
+{
+    private static final int REDUCES = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 줄마다 단어 하나를 세고, hot key는 salt마다 나누어 센 뒤 2단계에서 합침
+    public static class WordMapper extends Mapper<LongWritable, Text, Text, IntWritable>
+    {
+        private static final IntWritable ONE = new IntWritable( 1 );
+        private SkewedKeys skew;
+
+        @Override
+        protected void setup( Context context )
+        {
+            skew = new SkewedKeys( context.getConfiguration() );
+        }
+
+        @Override
+        protected void map( LongWritable key, Text value, Context context ) throws IOException, InterruptedException
+        {
+            Text word = new Text( value );
+            skew.saltNext( word, context );
+            context.write( word, ONE );
+        }
+    }
+
+    public static class SumReducer extends Reducer<Text, IntWritable, NullWritable, Text>
+    {
+        private MultipleOutputs<NullWritable, Text> outputs;
+
+        @Override
+        protected void setup( Context context )
+        {
+            outputs = new MultipleOutputs<NullWritable, Text>( context );
+        }
+
+        @Override
+        protected void reduce( Text key, Iterable<IntWritable> values, Context context ) throws IOException, InterruptedException
+        {
+            Text word = new Text( key );
+            boolean salted = SkewedKeys.unsalt( word, context );
+            int sum = 0;
+            for ( IntWritable value : values )
+            {
+                sum += value.get();
+            }
+            if ( salted )
+            {
+                SkewedKeys.writePartial( outputs, word, new IntWritable( sum ), context );
+            }
+            else
+            {
+                context.write( NullWritable.get(), new Text( word + "\t" + sum ) );
+            }
+        }
+
+        @Override
+        protected void cleanup( Context context ) throws IOException, InterruptedException
+        {
+            outputs.close();
+        }
+    }
+
+    private static Configuration skewConf( String... hotKeys )
+    {
+        Configuration conf = new Configuration();
+        conf.set( JobRunner.ENGINE, "local" );
+        conf.setInt( LocalEngine.THREADS, 2 );
+        conf.setBoolean( "test.skew", true );
+        conf.setStrings( "test.hotKeys", hotKeys );
+        conf.setBoolean( SkewedKeys.SAMPLE, false ); // 설정한 목록만 사용
+        return conf;
+    }
+
+    private static Job wordCount( Configuration conf, Path input, Path output ) throws Exception
+    {
+        Job job = Job.getInstance( conf, "skewed word count" );
+        job.setMapperClass( WordMapper.class );
+        job.setReducerClass( SumReducer.class );
+        job.setMapOutputKeyClass( Text.class );
+        job.setMapOutputValueClass( IntWritable.class );
+        job.setOutputKeyClass( NullWritable.class );
+        job.setOutputValueClass( Text.class );
+        job.setNumReduceTasks( REDUCES );
+        FileInputFormat.addInputPath( job, input );
+        FileOutputFormat.setOutputPath( job, output );
+        SkewedKeys.configure( job, "test", "word" );
+        return job;
+    }
+
+    private static SkewedKeys.SaltPartitioner partitioner( Job job )
+    {
+        return ReflectionUtils.newInstance( SkewedKeys.SaltPartitioner.class, job.getConfiguration() );
+    }
+
+    @Test
+    public void saltAppendsSeparatorAndNumber() throws Exception
+    {
+        Job job = wordCount( skewConf( "hot" ), new Path( "in" ), new Path( "out" ) );
+        SkewedKeys skew = new SkewedKeys( job.getConfiguration() );
+        assertEquals( REDUCES, skew.salts() );
+        assertTrue( skew.isHot( new Text( "hot" ) ) );
+        assertFalse( skew.isHot( new Text( "cold" ) ) );
+
+        Text key = new Text( "hot" );
+        skew.salt( key, 2 );
+        assertEquals( "hot\0" + 2, key.toString() );
+        assertEquals( 5, key.getLength() );
+    }
+
+    @Test
+    public void partitionerSpreadsOnlySaltedKeys() throws Exception
+    {
+        Job job = wordCount( skewConf( "hot" ), new Path( "in" ), new Path( "out" ) );
+        SkewedKeys skew = new SkewedKeys( job.getConfiguration() );
+        SkewedKeys.SaltPartitioner partitioner = partitioner( job );
+        HashPartitioner<Text, Object> hash = new HashPartitioner<Text, Object>();
+
+        // salt가 없는 key는 숫자로 끝나도 원래 Partitioner를 따름
+        for ( String cold : new String[] {"cold", "u12", "7"} )
+        {
+            Text key = new Text( cold );
+            assertEquals( hash.getPartition( key, null, REDUCES ), partitioner.getPartition( key, null, REDUCES ) );
+        }
+
+        // hot key의 salt는 모두 다른 reducer로 감
+        Set<Integer> partitions = new HashSet<Integer>();
+        for ( int salt = 0; salt < skew.salts(); salt++ )
+        {
+            Text key = new Text( "hot" );
+            skew.salt( key, salt );
+            partitions.add( partitioner.getPartition( key, null, REDUCES ) );
+        }
+        assertEquals( REDUCES, partitions.size() );
+    }
+
+    @Test
+    public void notConfiguredWithoutHotKeysOrSingleReducer() throws Exception
+    {
+        Configuration conf = skewConf();
+        Job job = wordCount( conf, new Path( "in" ), new Path( "out" ) );
+        assertEquals( HashPartitioner.class, job.getPartitionerClass() );
+
+        Job single = Job.getInstance( skewConf( "hot" ) );
+        single.setNumReduceTasks( 1 );
+        SkewedKeys.configure( single, "test", "word" );
+        assertEquals( HashPartitioner.class, single.getPartitionerClass() );
+    }
+
+    // salt를 떼어낸 부분 결과가 2단계에서 합쳐져 part-s-* 파일로 옮겨지고, 결과는 salting 없이 센 것과 같음
+    @Test
+    public void unsaltsAndMergesPartials() throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        for ( int i = 0; i < 30; i++ )
+        {
+            lines.add( "hot" );
+        }
+        lines.addAll( Arrays.asList( "a", "b", "a", "u12", "hot" ) );
+        File inputFile = folder.newFile( "words.txt" );
+        Files.write( inputFile.toPath(), lines, StandardCharsets.UTF_8 );
+        File outputDir = new File( folder.getRoot(), "output" );
+
+        Configuration conf = skewConf( "hot" );
+        Job job = wordCount( conf, new Path( inputFile.toURI() ), new Path( outputDir.toURI() ) );
+        Counters counters = JobRunner.run( job );
+        assertNotNull( counters );
+        assertEquals( 31, counters.findCounter( SkewedKeys.Counter.SALTED_RECORDS ).getValue() );
+        assertEquals( REDUCES, counters.findCounter( SkewedKeys.Counter.SALTED_GROUPS ).getValue() );
+        assertEquals( 1, counters.findCounter( SkewedKeys.Counter.HOT_KEYS ).getValue() );
+        assertEquals( REDUCES, counters.findCounter( SkewedKeys.Counter.PARTIAL_RECORDS ).getValue() );
+        assertTrue( new File( outputDir, SkewedKeys.PARTIALS ).isDirectory() );
+
+        assertTrue( SkewedKeys.mergePartials( conf, job, new Path( outputDir.toURI() ) ) );
+        assertFalse( new File( outputDir, SkewedKeys.PARTIALS ).exists() );
+        assertFalse( new File( folder.getRoot(), "output_" + SkewedKeys.PARTIALS ).exists() );
+        assertEquals( Collections.singletonList( "hot\t31" ), Files.readAllLines( new File( outputDir, "part-s-00000" ).toPath(), StandardCharsets.UTF_8 ) );
+
+        List<String> result = new ArrayList<String>();
+        for ( File file : outputDir.listFiles() )
+        {
+            if ( file.getName().startsWith( "part-" ) )
+            {
+                result.addAll( Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) );
+            }
+        }
+        Collections.sort( result );
+        assertEquals( Arrays.asList( "a\t2", "b\t1", "hot\t31", "u12\t1" ), result );
+    }
+}
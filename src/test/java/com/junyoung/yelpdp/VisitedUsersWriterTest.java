@@ -0,0 +1,180 @@
+package com.junyoung.yelpdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import yelp.dp.Common.SkewedKeys;
+import yelp.dp.Engine.JobRunner;
+import yelp.dp.Engine.LocalEngine;
+import yelp.dp.SearchUserHomeState.Main;
+import yelp.dp.SearchUserHomeState.VisitedUsersByBusiness;
+
+public class VisitedUsersWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class CollectingWriter extends VisitedUsersByBusiness.VisitedUsersWriter
+    {
+        final List<String> lines = new ArrayList<String>();
+
+        CollectingWriter( int chunkSize )
+        {
+            super( chunkSize );
+        }
+
+        @Override
+        protected void write( Text line )
+        {
+            lines.add( line.toString() );
+        }
+    }
+
+    private static String line( String businessId, String state, String users )
+    {
+        return "{\"business_id\":\"" + businessId + "\",\"state\":\"" + state + "\",\"visited_users\":\"" + users + "\"}";
+    }
+
+    private static void business( CollectingWriter writer, String businessId, String state, String... users ) throws Exception
+    {
+        writer.start( new Text( businessId ) );
+        if ( state != null )
+        {
+            writer.setState( new Text( state ) );
+        }
+        for ( String user : users )
+        {
+            writer.add( new Text( user ) );
+        }
+        writer.finish();
+    }
+
+    @Test
+    public void splitsUsersAtChunkBoundaries() throws Exception
+    {
+        CollectingWriter writer = new CollectingWriter( 2 );
+        business( writer, "b1", "NV", "u1", "u2", "u3", "u4", "u5" );
+        assertEquals( Arrays.asList( line( "b1", "NV", "u1, u2" ), line( "b1", "NV", "u3, u4" ), line( "b1", "NV", "u5" ) ), writer.lines );
+
+        writer.lines.clear();
+        business( writer, "b2", "AZ", "u1", "u2" ); // chunk가 딱 맞게 차면 빈 줄을 덧붙이지 않음
+        assertEquals( Collections.singletonList( line( "b2", "AZ", "u1, u2" ) ), writer.lines );
+    }
+
+    @Test
+    public void writesOneLineForBusinessWithoutUsersOrState() throws Exception
+    {
+        CollectingWriter writer = new CollectingWriter( 2 );
+        business( writer, "b1", "NV" );
+        business( writer, "b2", null, "u1", "u2", "u3" ); // 비즈니스 데이터셋에 없는 가게
+        assertEquals( Arrays.asList( line( "b1", "NV", "" ), line( "b2", "", "u1, u2" ), line( "b2", "", "u3" ) ), writer.lines );
+    }
+
+    @Test
+    public void startResetsPreviousBusiness() throws Exception
+    {
+        CollectingWriter writer = new CollectingWriter( 3 );
+        writer.start( new Text( "b1" ) );
+        writer.setState( new Text( "NV" ) );
+        writer.add( new Text( "u1" ) );
+        writer.start( new Text( "b2" ) ); // finish 없이 다음 가게로 넘어가도 이전 유저와 주(state)가 남지 않음
+        writer.add( new Text( "u2" ) );
+        writer.finish();
+        assertEquals( Collections.singletonList( line( "b2", "", "u2" ) ), writer.lines );
+    }
+
+    @Test
+    public void escapesLikeGson() throws Exception
+    {
+        CollectingWriter writer = new CollectingWriter( 10 );
+        business( writer, "b\"1", "N\\V", "u\"1", "u2" );
+        JsonObject json = new JsonParser().parse( writer.lines.get( 0 ) ).getAsJsonObject();
+        assertEquals( "b\"1", json.get( "business_id" ).getAsString() );
+        assertEquals( "N\\V", json.get( "state" ).getAsString() );
+        assertEquals( "u\"1, u2", json.get( "visited_users" ).getAsString() );
+    }
+
+    // 리뷰가 입력에서 가게보다 먼저 나오고 hot key로 여러 reducer에 나뉘어도 모든 줄에 주(state)가 들어감
+    @Test
+    public void jobSortsStateBeforeVisits() throws Exception
+    {
+        List<String> reviews = new ArrayList<String>();
+        for ( int i = 0; i < 7; i++ )
+        {
+            reviews.add( "{\"business_id\":\"hot\",\"user_id\":\"h" + i + "\"}" );
+        }
+        for ( int i = 0; i < 3; i++ )
+        {
+            reviews.add( "{\"business_id\":\"b" + i + "\",\"user_id\":\"u" + i + "\"}" );
+            reviews.add( "{\"business_id\":\"b" + i + "\",\"user_id\":\"v" + i + "\"}" );
+        }
+        reviews.add( "{\"business_id\":\"unknown\",\"user_id\":\"x\"}" );
+        List<String> businesses = Arrays.asList( "{\"business_id\":\"b0\",\"state\":\"NV\"}", "{\"business_id\":\"b1\",\"state\":\"AZ\"}",
+                "{\"business_id\":\"b2\",\"state\":\"OH\"}", "{\"business_id\":\"hot\",\"state\":\"PA\"}" );
+        File reviewFile = folder.newFile( "review.json" );
+        File businessFile = folder.newFile( "business.json" );
+        Files.write( reviewFile.toPath(), reviews, StandardCharsets.UTF_8 );
+        Files.write( businessFile.toPath(), businesses, StandardCharsets.UTF_8 );
+        File output = new File( folder.getRoot(), "output" );
+
+        Configuration conf = new Configuration();
+        conf.set( JobRunner.ENGINE, "local" );
+        conf.setInt( LocalEngine.THREADS, 2 );
+        conf.setInt( Main.VISITED_USERS_REDUCES, 3 );
+        conf.setInt( VisitedUsersByBusiness.CHUNK_SIZE, 2 );
+        conf.setBoolean( "searchUserHomeState.visitedUsers.skew", true );
+        conf.set( "searchUserHomeState.visitedUsers.hotKeys", "hot" );
+        conf.setBoolean( SkewedKeys.SAMPLE, false );
+        Job job = Main.createVisitedUsersJob( conf, new Path( businessFile.toURI() ), new Path( reviewFile.toURI() ), new Path( output.toURI() ) );
+        Counters counters = JobRunner.run( job );
+        assertNotNull( counters );
+        assertEquals( 7, counters.findCounter( SkewedKeys.Counter.SALTED_RECORDS ).getValue() );
+        assertEquals( 2, counters.findCounter( SkewedKeys.Counter.REPLICATED_RECORDS ).getValue() ); // 주(state)를 salt 3개로 복제
+
+        Map<String, String> states = new TreeMap<String, String>();
+        Map<String, List<String>> users = new TreeMap<String, List<String>>();
+        for ( File file : output.listFiles() )
+        {
+            if ( !file.getName().startsWith( "part-r-" ) ) { continue; }
+            for ( String line : Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) )
+            {
+                JsonObject json = new JsonParser().parse( line ).getAsJsonObject();
+                String businessId = json.get( "business_id" ).getAsString();
+                String state = json.get( "state" ).getAsString();
+                String previous = states.put( businessId, state );
+                assertEquals( previous == null ? state : previous, state ); // 같은 가게의 모든 줄이 같은 주(state)
+                if ( !users.containsKey( businessId ) ) { users.put( businessId, new ArrayList<String>() ); }
+                users.get( businessId ).addAll( Arrays.asList( json.get( "visited_users" ).getAsString().split( ", " ) ) );
+            }
+        }
+
+        assertEquals( "{b0=NV, b1=AZ, b2=OH, hot=PA, unknown=}", states.toString() );
+        for ( List<String> visited : users.values() )
+        {
+            Collections.sort( visited );
+        }
+        assertEquals( "{b0=[u0, v0], b1=[u1, v1], b2=[u2, v2], hot=[h0, h1, h2, h3, h4, h5, h6], unknown=[x]}", users.toString() );
+    }
+}